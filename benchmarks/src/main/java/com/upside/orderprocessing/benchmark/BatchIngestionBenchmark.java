@@ -0,0 +1,101 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code OrderService.processBatchOrders} end to end against in-memory H2. One operation is one
+ * request of {@code batchSize} new orders; divide by it for per-order figures. Run with
+ * {@code -prof gc} to compare the allocation of the two persistence engines as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchIngestionBenchmark {
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    /**
+     * Whether orders go through the partitioned pipeline or straight to multi-row INSERTs.
+     */
+    @Param({"true", "false"})
+    private boolean pipeline;
+
+    /**
+     * Driver that writes the orders, see {@code app.order.persistence.engine}.
+     */
+    @Param({"r2dbc", "jdbc"})
+    private String engine;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private DatabaseClient databaseClient;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start("app.order.processing.pipeline.enabled=" + pipeline,
+                "app.order.persistence.engine=" + engine);
+        orderService = context.getBean(OrderService.class);
+        databaseClient = context.getBean(DatabaseClient.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearOrders() {
+        // Keeps index depth the same from one iteration to the next
+        databaseClient.sql("DELETE FROM order_events").then()
+                .then(databaseClient.sql("DELETE FROM orders").then())
+                .block();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Order> processBatchOrders() {
+        List<Order> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(newOrder(sequence.incrementAndGet()));
+        }
+        return orderService.processBatchOrders(Flux.fromIterable(batch)).collectList().block();
+    }
+
+    private static Order newOrder(long n) {
+        Order order = new Order();
+        order.setOrderNumber("BENCH-" + n);
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-" + (n % 64));
+        order.setProductId("PROD-" + (n % 16));
+        order.setQuantity(1);
+        return order;
+    }
+}
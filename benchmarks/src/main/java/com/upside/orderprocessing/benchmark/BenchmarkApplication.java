@@ -0,0 +1,40 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.upside.orderprocessing.OrderProcessingApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+
+/**
+ * Starts the application without a web server against a private in-memory H2 database, so
+ * benchmarks exercise the real beans and wiring but no network.
+ */
+final class BenchmarkApplication {
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        String database = "bench-" + UUID.randomUUID();
+        return new SpringApplicationBuilder(OrderProcessingApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties(
+                        "spring.r2dbc.url=r2dbc:h2:mem:///" + database + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+                        "spring.r2dbc.username=sa",
+                        // Same database, for the JDBC engine
+                        "app.order.persistence.jdbc.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+                        "app.order.persistence.jdbc.username=sa",
+                        "spring.sql.init.mode=always",
+                        "spring.sql.init.schema-locations=classpath:benchmark-schema.sql",
+                        "app.order.cache.redis.enabled=false",
+                        "app.order.change-feed.enabled=false",
+                        "app.order.retention.enabled=false",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+}
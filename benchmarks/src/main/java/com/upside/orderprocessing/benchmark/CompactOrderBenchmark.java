@@ -0,0 +1,104 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.CompactOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What an order costs while it waits in a pipeline lane, as the {@link Order} entity the lanes used
+ * to hold and as the {@link CompactOrder} they hold now. Retained bytes per order are printed at
+ * setup; allocation per operation comes from the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactOrderBenchmark {
+    private static final int ORDERS = 1024;
+
+    private final Order[] orders = new Order[ORDERS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        CompactOrder[] compact = new CompactOrder[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            orders[i] = decodedOrder(i);
+            compact[i] = CompactOrder.from(orders[i]);
+            compact[i].price();
+        }
+        System.out.printf("%nRetained bytes per order: entity %d, compact %d%n",
+                retainedPerOrder(orders), retainedPerOrder(compact));
+    }
+
+    /**
+     * The price stage as it ran on the entity.
+     */
+    @Benchmark
+    public BigDecimal priceEntity() {
+        return nextOrder().getTotalAmount().setScale(2, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Entering a lane and the price stage.
+     */
+    @Benchmark
+    public CompactOrder convertAndPrice() {
+        CompactOrder compact = CompactOrder.from(nextOrder());
+        compact.price();
+        return compact;
+    }
+
+    /**
+     * Everything the pipeline now does to an order outside the database: converting it on the
+     * way in, pricing it and turning it back into the entity the INSERT is bound from.
+     */
+    @Benchmark
+    public Order roundTrip() {
+        CompactOrder compact = CompactOrder.from(nextOrder());
+        compact.price();
+        return compact.toOrder();
+    }
+
+    private Order nextOrder() {
+        Order order = orders[next];
+        next = (next + 1) & (ORDERS - 1);
+        return order;
+    }
+
+    private static long retainedPerOrder(Object[] objects) {
+        // Each element is a root, so the array is left out; objects shared by orders count once
+        return GraphLayout.parseInstance(objects).totalSize() / objects.length;
+    }
+
+    /**
+     * A new order as JSON decoding produces it: every string and number freshly allocated.
+     */
+    private static Order decodedOrder(int n) {
+        Order order = new Order();
+        order.setOrderNumber(new String("ORD-" + (1_000_000 + n)));
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("1" + n % 1000 + ".995"));
+        order.setCustomerId(new String("CUST-" + n % 64));
+        order.setProductId(new String("PROD-" + n % 16));
+        order.setQuantity(1 + n % 5);
+        return order;
+    }
+}
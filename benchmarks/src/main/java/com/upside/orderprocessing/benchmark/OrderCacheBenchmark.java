@@ -0,0 +1,75 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.upside.orderprocessing.cache.OrderCache;
+import com.upside.orderprocessing.cache.RedisOrderCacheTier;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Overhead the near cache adds to {@code getOrderById}, compared with handing back the loaded
+ * order directly. The loader is in memory, so only the cache's own cost is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderCacheBenchmark {
+    private static final long CACHED_ID = 1L;
+
+    private OrderCache orderCache;
+    private Supplier<Mono<Order>> loader;
+    private long missId = CACHED_ID;
+
+    @Setup
+    public void setUp() {
+        orderCache = new OrderCache(new OrderProcessingProperties(), new SimpleMeterRegistry(),
+                (RedisOrderCacheTier) null);
+        Order order = new Order();
+        order.setId(CACHED_ID);
+        order.setOrderNumber("ORD-1");
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-1");
+        order.setProductId("PROD-1");
+        order.setQuantity(1);
+        loader = () -> Mono.just(order);
+        orderCache.getById(CACHED_ID, loader).block();
+    }
+
+    @Benchmark
+    public Order uncached() {
+        return Mono.defer(loader).block();
+    }
+
+    @Benchmark
+    public Order hit() {
+        return orderCache.getById(CACHED_ID, loader).block();
+    }
+
+    /**
+     * Ids never asked for before, so every call falls through to the loader.
+     */
+    @Benchmark
+    public Order miss() {
+        return orderCache.getById(++missId, loader).block();
+    }
+}
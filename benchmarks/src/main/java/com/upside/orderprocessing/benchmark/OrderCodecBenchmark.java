@@ -0,0 +1,166 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.upside.orderprocessing.config.CodecConfig;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.AbstractJackson2Decoder;
+import org.springframework.http.codec.json.AbstractJackson2Encoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of {@link Order} through the WebFlux Jackson codecs, configured the way
+ * the server configures them, for each format the batch endpoint accepts. The encoded size of a
+ * batch is printed during setup so bytes per order can be compared along with CPU time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderCodecBenchmark {
+    private static final ResolvableType ORDER = ResolvableType.forClass(Order.class);
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * {@code json} is an array, {@code ndjson} one order per line, {@code smile} a stream of
+     * Smile values as the batch endpoint writes it.
+     */
+    @Param({"json", "ndjson", "smile"})
+    public String format;
+
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private AbstractJackson2Encoder encoder;
+    private AbstractJackson2Decoder decoder;
+    private MediaType mediaType;
+    private Order order;
+    private List<Order> batch;
+    private byte[] orderBytes;
+    private byte[] batchBytes;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .featuresToEnable(JsonParser.Feature.USE_FAST_BIG_NUMBER_PARSER, JsonParser.Feature.USE_FAST_DOUBLE_PARSER);
+        if (format.equals("smile")) {
+            ObjectMapper objectMapper = builder.factory(new SmileFactory()).build();
+            Jackson2SmileEncoder smileEncoder = new Jackson2SmileEncoder(objectMapper, CodecConfig.SMILE_STREAM);
+            smileEncoder.setStreamingMediaTypes(List.of(CodecConfig.SMILE_STREAM));
+            encoder = smileEncoder;
+            decoder = new Jackson2SmileDecoder(objectMapper, CodecConfig.SMILE_STREAM);
+            mediaType = CodecConfig.SMILE_STREAM;
+        } else {
+            ObjectMapper objectMapper = builder.build();
+            encoder = new Jackson2JsonEncoder(objectMapper);
+            decoder = new Jackson2JsonDecoder(objectMapper);
+            mediaType = format.equals("ndjson") ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        }
+
+        order = newOrder(1);
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= BATCH_SIZE; i++) {
+            batch.add(newOrder(i));
+        }
+        orderBytes = toBytes(Flux.just(encoder.encodeValue(order, bufferFactory, ORDER, mediaType, null)));
+        batchBytes = toBytes(encodeBatchBuffers());
+        System.out.printf("%n%s: %d bytes per order in a batch of %d%n", format, batchBytes.length / BATCH_SIZE, BATCH_SIZE);
+    }
+
+    @Benchmark
+    public int encodeOrder() {
+        DataBuffer buffer = encoder.encodeValue(order, bufferFactory, ORDER, mediaType, null);
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public Object decodeOrder() {
+        return decoder.decode(bufferFactory.wrap(orderBytes), ORDER, mediaType, null);
+    }
+
+    /**
+     * A batch written the way the batch endpoint writes its response.
+     */
+    @Benchmark
+    public int encodeBatch() {
+        return encodeBatchBuffers()
+                .map(buffer -> {
+                    int size = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return size;
+                })
+                .reduce(0, Integer::sum)
+                .block();
+    }
+
+    /**
+     * A batch split into orders the way the batch endpoint reads its request body.
+     */
+    @Benchmark
+    public List<Object> decodeBatch() {
+        return decoder.decode(Flux.just(bufferFactory.wrap(batchBytes)), ORDER, mediaType, null)
+                .collectList()
+                .block();
+    }
+
+    private Flux<DataBuffer> encodeBatchBuffers() {
+        return encoder.encode(Flux.fromIterable(batch), bufferFactory, ORDER, mediaType, null);
+    }
+
+    private static byte[] toBytes(Flux<DataBuffer> buffers) {
+        DataBuffer joined = DataBufferUtils.join(buffers).block();
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        DataBufferUtils.release(joined);
+        return bytes;
+    }
+
+    private static Order newOrder(long id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setOrderNumber("ORD-" + id);
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-" + (id % 64));
+        order.setProductId("PROD-" + (id % 16));
+        order.setQuantity(1);
+        order.setCreatedAt(LocalDateTime.now());
+        order.setUpdatedAt(LocalDateTime.now());
+        order.setVersion(1L);
+        return order;
+    }
+}
@@ -0,0 +1,29 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.upside.orderprocessing.loadtest.TestOrders;
+import com.upside.orderprocessing.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating one synthetic stress-test order.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestOrderBenchmark {
+
+    @Benchmark
+    public Order createTestOrder() {
+        return TestOrders.createTestOrder();
+    }
+}
@@ -0,0 +1,105 @@
+package com.upside.orderprocessing.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.OrderService;
+import com.upside.orderprocessing.service.impl.OrderWriteAheadLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time until {@code /api/orders/ingest} can acknowledge one order with the write-ahead log in
+ * front of the database, from one thread and from eight, where a flush covers the orders of
+ * several requests. The log lives in a temporary directory, so put {@code java.io.tmpdir} on the
+ * disk to measure. Draining discards the orders, to keep the log from filling up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteAheadLogBenchmark {
+    /**
+     * Whether an order is acknowledged once flushed to disk or once in the page cache.
+     */
+    @Param({"true", "false"})
+    private boolean fsync;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private Path directory;
+    private OrderWriteAheadLog log;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("order-wal");
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        properties.getIngestion().getWal().setDirectory(directory.toString());
+        properties.getIngestion().getWal().setFsync(fsync);
+        OrderService discard = (OrderService) Proxy.newProxyInstance(OrderService.class.getClassLoader(),
+                new Class<?>[]{OrderService.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("processBatchOrders")) {
+                        return args[0];
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        log = new OrderWriteAheadLog(new ObjectMapper(new SmileFactory()).registerModule(new JavaTimeModule()),
+                discard, properties, new SimpleMeterRegistry());
+        log.start();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.shutdown();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public IngestionReceipt enqueue() {
+        return log.enqueue(Flux.just(order())).block();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public IngestionReceipt enqueueConcurrently() {
+        return log.enqueue(Flux.just(order())).block();
+    }
+
+    private Order order() {
+        Order order = new Order();
+        order.setOrderNumber("WAL-" + sequence.incrementAndGet());
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-1");
+        order.setProductId("PROD-1");
+        order.setQuantity(1);
+        return order;
+    }
+}
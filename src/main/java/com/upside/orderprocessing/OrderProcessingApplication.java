@@ -2,12 +2,10 @@ package com.upside.orderprocessing;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
-@EnableCaching
-@EnableAsync
+@ConfigurationPropertiesScan
 public class OrderProcessingApplication {
     public static void main(String[] args) {
         SpringApplication.run(OrderProcessingApplication.class, args);
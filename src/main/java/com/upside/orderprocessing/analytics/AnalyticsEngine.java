@@ -0,0 +1,169 @@
+package com.upside.orderprocessing.analytics;
+
+import com.upside.orderprocessing.model.OrderStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process request and order analytics. Every {@code record*} method is lock-free and
+ * allocation-free once warmed up, so it can sit on the request path; the snapshot methods
+ * do the aggregation work and are only called by {@code AnalyticsController}.
+ */
+@Component
+public class AnalyticsEngine {
+    static final long LATENCY_WINDOW_SECONDS = 30;
+    private static final int THROUGHPUT_WINDOW_SECONDS = 300;
+
+    private final LongAdder totalRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder inFlightRequests = new LongAdder();
+    private final LongAdder totalOrders = new LongAdder();
+    private final SlidingWindowCounter requestRate;
+    private final SlidingWindowCounter orderRate;
+    private final LatencyHistogram lifetimeLatency = new LatencyHistogram();
+    // Recent latency is the active histogram plus the one it replaced at the last rotation
+    private volatile LatencyHistogram activeLatency = new LatencyHistogram();
+    private volatile LatencyHistogram previousLatency = new LatencyHistogram();
+    private final Map<OrderStatus, LongAdder> statusCounts = new EnumMap<>(OrderStatus.class);
+    private final Map<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+    private Disposable rotation;
+
+    public AnalyticsEngine() {
+        this(new SlidingWindowCounter(THROUGHPUT_WINDOW_SECONDS), new SlidingWindowCounter(THROUGHPUT_WINDOW_SECONDS));
+    }
+
+    AnalyticsEngine(SlidingWindowCounter requestRate, SlidingWindowCounter orderRate) {
+        this.requestRate = requestRate;
+        this.orderRate = orderRate;
+        for (OrderStatus status : OrderStatus.values()) {
+            statusCounts.put(status, new LongAdder());
+        }
+    }
+
+    @PostConstruct
+    public void startLatencyRotation() {
+        rotation = Schedulers.parallel().schedulePeriodically(this::rotateLatency,
+                LATENCY_WINDOW_SECONDS, LATENCY_WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rotation != null) {
+            rotation.dispose();
+        }
+    }
+
+    void rotateLatency() {
+        LatencyHistogram recycled = previousLatency;
+        recycled.reset();
+        previousLatency = activeLatency;
+        activeLatency = recycled;
+    }
+
+    public void requestStarted() {
+        inFlightRequests.increment();
+    }
+
+    public void requestCompleted(long latencyNanos, boolean failed) {
+        inFlightRequests.decrement();
+        totalRequests.increment();
+        if (failed) {
+            failedRequests.increment();
+        }
+        requestRate.add(1);
+        lifetimeLatency.record(latencyNanos);
+        activeLatency.record(latencyNanos);
+    }
+
+    /**
+     * Records {@code count} newly persisted orders, which enter the pipeline as
+     * {@link OrderStatus#PROCESSING}.
+     */
+    public void recordOrdersProcessed(long count) {
+        totalOrders.add(count);
+        orderRate.add(count);
+        statusCounts.get(OrderStatus.PROCESSING).add(count);
+    }
+
+    public void recordTransitions(OrderStatus status, long count) {
+        statusCounts.get(status).add(count);
+    }
+
+    public void recordError(String type) {
+        errorCounts.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public Map<String, Object> throughputSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long requests = totalRequests.sum();
+        snapshot.put("totalRequests", requests);
+        snapshot.put("totalOrders", totalOrders.sum());
+        snapshot.put("averageProcessingTime", averageMillis(lifetimeLatency.getTotalMicros(), requests));
+        snapshot.put("requestsPerSecond", rates(requestRate));
+        snapshot.put("ordersPerSecond", rates(orderRate));
+        return snapshot;
+    }
+
+    public Map<String, Object> latencySnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long requests = totalRequests.sum();
+        snapshot.put("averageLatency", averageMillis(lifetimeLatency.getTotalMicros(), requests));
+        snapshot.put("totalProcessingTime", lifetimeLatency.getTotalMicros() / 1_000);
+        snapshot.put("recent", LatencyHistogram.summary(activeLatency, previousLatency));
+        snapshot.put("lifetime", LatencyHistogram.summary(lifetimeLatency));
+        return snapshot;
+    }
+
+    public Map<String, Object> bottleneckSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("statusDistribution", statusDistribution());
+        snapshot.put("inFlightRequests", inFlightRequests.sum());
+        snapshot.put("errorRate", errorRate());
+        snapshot.put("recentP99", LatencyHistogram.summary(activeLatency, previousLatency).get("p99"));
+        return snapshot;
+    }
+
+    public Map<String, Object> errorSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("totalErrors", failedRequests.sum());
+        snapshot.put("errorRate", errorRate());
+        snapshot.put("errorDistribution", errorCounts.entrySet().stream()
+                .map(entry -> Map.<String, Object>of("type", entry.getKey(), "count", entry.getValue().sum()))
+                .sorted((a, b) -> Long.compare((Long) b.get("count"), (Long) a.get("count")))
+                .toList());
+        return snapshot;
+    }
+
+    private Map<String, Long> statusDistribution() {
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        statusCounts.forEach((status, count) -> distribution.put(status.name(), count.sum()));
+        return distribution;
+    }
+
+    private double errorRate() {
+        long requests = totalRequests.sum();
+        return requests == 0 ? 0 : (double) failedRequests.sum() / requests;
+    }
+
+    private static Map<String, Double> rates(SlidingWindowCounter counter) {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        rates.put("1s", counter.ratePerSecond(1));
+        rates.put("1m", counter.ratePerSecond(60));
+        rates.put("5m", counter.ratePerSecond(THROUGHPUT_WINDOW_SECONDS));
+        return rates;
+    }
+
+    private static double averageMillis(long totalMicros, long samples) {
+        return samples == 0 ? 0 : totalMicros / 1_000.0 / samples;
+    }
+}
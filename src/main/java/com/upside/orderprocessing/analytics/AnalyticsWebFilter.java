@@ -0,0 +1,54 @@
+package com.upside.orderprocessing.analytics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Times every order API request and feeds the outcome to {@link AnalyticsEngine}. Handler
+ * errors reach this filter before the exception handlers map them to a response, so they
+ * are classified by exception type; completed requests are classified by status code.
+ */
+@Component
+@RequiredArgsConstructor
+public class AnalyticsWebFilter implements WebFilter {
+    static final String MEASURED_PATH_PREFIX = "/api/orders";
+    // Long-lived subscriptions would swamp the request latency figures
+    static final String CHANGE_FEED_PATH = "/api/orders/changes";
+
+    private final AnalyticsEngine analyticsEngine;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().value();
+        if (!path.startsWith(MEASURED_PATH_PREFIX) || path.equals(CHANGE_FEED_PATH)) {
+            return chain.filter(exchange);
+        }
+        long start = System.nanoTime();
+        analyticsEngine.requestStarted();
+        return chain.filter(exchange)
+                .doOnSuccess(ignored -> {
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    boolean failed = status != null && status.isError();
+                    if (failed) {
+                        analyticsEngine.recordError(errorType(status));
+                    }
+                    analyticsEngine.requestCompleted(System.nanoTime() - start, failed);
+                })
+                .doOnError(error -> {
+                    analyticsEngine.recordError(error.getClass().getSimpleName());
+                    analyticsEngine.requestCompleted(System.nanoTime() - start, true);
+                })
+                .doOnCancel(() -> analyticsEngine.requestCompleted(System.nanoTime() - start, false));
+    }
+
+    private static String errorType(HttpStatusCode status) {
+        HttpStatus resolved = HttpStatus.resolve(status.value());
+        return resolved != null ? resolved.name() : "HTTP_" + status.value();
+    }
+}
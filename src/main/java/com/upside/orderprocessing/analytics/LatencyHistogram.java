@@ -0,0 +1,132 @@
+package com.upside.orderprocessing.analytics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in microseconds. Every power of two is split into eight
+ * sub-buckets, which bounds the relative error of a reported percentile at 12.5% while
+ * covering up to ~12 days with a few hundred buckets. Buckets are striped counters, so
+ * concurrent recording neither locks nor allocates once the counters have warmed up.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        buckets[indexOf(micros)].increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalMicros.reset();
+        maxMicros.reset();
+    }
+
+    /**
+     * Adds this histogram's counts to {@code counts}, which must hold {@link #BUCKET_COUNT}
+     * entries, and returns the number of samples added.
+     */
+    long addCountsTo(long[] counts) {
+        long samples = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            long count = buckets[i].sum();
+            counts[i] += count;
+            samples += count;
+        }
+        return samples;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Sample count, p50/p90/p99/p999 and max, in milliseconds, over the combined samples of
+     * all given histograms.
+     */
+    public static Map<String, Object> summary(LatencyHistogram... histograms) {
+        long[] counts = new long[BUCKET_COUNT];
+        long samples = 0;
+        long maxMicros = 0;
+        for (LatencyHistogram histogram : histograms) {
+            samples += histogram.addCountsTo(counts);
+            maxMicros = Math.max(maxMicros, histogram.getMaxMicros());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("samples", samples);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            long micros = Math.min(valueAtQuantile(counts, samples, QUANTILES[i]), maxMicros);
+            result.put(QUANTILE_NAMES[i], micros / 1_000.0);
+        }
+        result.put("max", maxMicros / 1_000.0);
+        return result;
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the bucket holding the {@code quantile}
+     * sample, or 0 when there are no samples.
+     */
+    static long valueAtQuantile(long[] counts, long samples, double quantile) {
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * samples));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    static long upperBound(int index) {
+        return index + 1 < BUCKET_COUNT ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+}
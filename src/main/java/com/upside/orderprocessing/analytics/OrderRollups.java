@@ -0,0 +1,220 @@
+package com.upside.orderprocessing.analytics;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.InvalidAnalyticsRangeException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderRollup;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRollupRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the order rollup tables up to date. Committed changes are first added up in memory per
+ * minute and status, and per day, status and product, and the totals are written every
+ * {@code flush-interval}, so a burst of orders costs a handful of upserts instead of one per order.
+ * Analytics queries read only the rollup tables, whose size depends on time and product count
+ * rather than on the number of orders.
+ */
+@Slf4j
+@Component
+public class OrderRollups {
+    private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(5);
+
+    private final OrderRollupRepository rollupRepository;
+    private final OrderProcessingProperties.Rollups config;
+    private final Counter flushed;
+    private final Map<StatusKey, Totals> byMinute = new ConcurrentHashMap<>();
+    private final Map<ProductKey, Totals> byProduct = new ConcurrentHashMap<>();
+    private final Disposable.Swap task = Disposables.swap();
+
+    public OrderRollups(OrderRollupRepository rollupRepository, OrderProcessingProperties properties,
+                        MeterRegistry meterRegistry) {
+        this.rollupRepository = rollupRepository;
+        this.config = properties.getRollups();
+        this.flushed = meterRegistry.counter("orders.rollups.flushed");
+        Gauge.builder("orders.rollups.pending", this, rollups -> rollups.byMinute.size() + rollups.byProduct.size())
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        task.update(Flux.interval(config.getFlushInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush(), 1)
+                .subscribe(null, e -> log.error("Order rollup flushing stopped", e)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        task.dispose();
+        if (config.isEnabled()) {
+            flush().block(SHUTDOWN_FLUSH_TIMEOUT);
+        }
+    }
+
+    /**
+     * Counts {@code order} as having entered its current status when it was last updated. Called
+     * once the change has committed.
+     */
+    public void record(Order order) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        LocalDateTime changedAt = order.getUpdatedAt() != null ? order.getUpdatedAt() : LocalDateTime.now();
+        BigDecimal amount = order.getTotalAmount() != null ? order.getTotalAmount() : BigDecimal.ZERO;
+        // compute() updates under the map's lock for that key, which flush() takes to remove it
+        byMinute.compute(new StatusKey(changedAt.truncatedTo(ChronoUnit.MINUTES), order.getStatus()),
+                (key, totals) -> Totals.add(totals, amount));
+        byProduct.compute(new ProductKey(changedAt.toLocalDate(), order.getStatus(), order.getProductId()),
+                (key, totals) -> Totals.add(totals, amount));
+    }
+
+    public void recordAll(List<Order> orders) {
+        for (Order order : orders) {
+            record(order);
+        }
+    }
+
+    /**
+     * Writes out everything recorded so far. Totals that fail to be written are put back and
+     * retried on the next flush.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            List<OrderRollup> minutes = new ArrayList<>();
+            for (StatusKey key : byMinute.keySet()) {
+                Totals totals = byMinute.remove(key);
+                if (totals != null) {
+                    minutes.add(new OrderRollup(key.minute(), key.status(), null, totals.count, totals.revenue));
+                }
+            }
+            List<OrderRollup> products = new ArrayList<>();
+            for (ProductKey key : byProduct.keySet()) {
+                Totals totals = byProduct.remove(key);
+                if (totals != null) {
+                    products.add(new OrderRollup(key.day().atStartOfDay(), key.status(), key.productId(),
+                            totals.count, totals.revenue));
+                }
+            }
+            if (minutes.isEmpty() && products.isEmpty()) {
+                return Mono.empty();
+            }
+            return rollupRepository.addAll(minutes, products)
+                    .doOnSuccess(done -> flushed.increment(minutes.size() + products.size()))
+                    .onErrorResume(e -> {
+                        log.warn("Could not write order rollups; retrying on the next flush", e);
+                        minutes.forEach(rollup -> byMinute.merge(
+                                new StatusKey(rollup.getBucket(), rollup.getStatus()), Totals.of(rollup), Totals::sum));
+                        products.forEach(rollup -> byProduct.merge(
+                                new ProductKey(rollup.getBucket().toLocalDate(), rollup.getStatus(), rollup.getProductId()),
+                                Totals.of(rollup), Totals::sum));
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    /**
+     * Orders that entered each status in [{@code from}, {@code to}), by default the last hour.
+     */
+    public Flux<OrderRollup> byStatus(LocalDateTime from, LocalDateTime to) {
+        return Flux.defer(() -> {
+            LocalDateTime end = to != null ? to : LocalDateTime.now();
+            LocalDateTime start = from != null ? from : end.minusHours(1);
+            checkRange(start, end);
+            return rollupRepository.sumByStatus(start, end);
+        });
+    }
+
+    /**
+     * Per-minute counts of orders entering {@code status} in [{@code from}, {@code to}), by default
+     * the last hour. Minutes without any are left out.
+     */
+    public Flux<OrderRollup> byMinute(OrderStatus status, LocalDateTime from, LocalDateTime to) {
+        return Flux.defer(() -> {
+            LocalDateTime end = to != null ? to : LocalDateTime.now();
+            LocalDateTime start = from != null ? from : end.minusHours(1);
+            checkRange(start, end);
+            return rollupRepository.findByMinute(start, end, status);
+        });
+    }
+
+    /**
+     * The {@code limit} products with the highest revenue among orders entering {@code status}
+     * from day {@code from} through day {@code to}, by default the last seven days.
+     */
+    public Flux<OrderRollup> topProducts(OrderStatus status, LocalDate from, LocalDate to, int limit) {
+        return Flux.defer(() -> {
+            LocalDate last = to != null ? to : LocalDate.now();
+            LocalDate first = from != null ? from : last.minusDays(6);
+            checkRange(first.atStartOfDay(), last.plusDays(1).atStartOfDay());
+            if (limit < 1) {
+                throw new InvalidAnalyticsRangeException("limit must be positive");
+            }
+            return rollupRepository.findTopProducts(first, last.plusDays(1), status, limit);
+        });
+    }
+
+    private void checkRange(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new InvalidAnalyticsRangeException("from must be before to");
+        }
+        if (Duration.between(from, to).compareTo(config.getMaxRange()) > 0) {
+            throw new InvalidAnalyticsRangeException("Range may cover at most " + config.getMaxRange());
+        }
+    }
+
+    private record StatusKey(LocalDateTime minute, OrderStatus status) {
+    }
+
+    private record ProductKey(LocalDate day, OrderStatus status, String productId) {
+    }
+
+    private static final class Totals {
+        long count;
+        BigDecimal revenue = BigDecimal.ZERO;
+
+        static Totals add(Totals totals, BigDecimal amount) {
+            Totals result = totals != null ? totals : new Totals();
+            result.count++;
+            result.revenue = result.revenue.add(amount);
+            return result;
+        }
+
+        static Totals of(OrderRollup rollup) {
+            Totals totals = new Totals();
+            totals.count = rollup.getOrderCount();
+            totals.revenue = rollup.getRevenue();
+            return totals;
+        }
+
+        static Totals sum(Totals a, Totals b) {
+            a.count += b.count;
+            a.revenue = a.revenue.add(b.revenue);
+            return a;
+        }
+    }
+}
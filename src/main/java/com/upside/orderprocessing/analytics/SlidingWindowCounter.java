@@ -0,0 +1,59 @@
+package com.upside.orderprocessing.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Event counter over a ring of one-second slots. A slot is lazily reclaimed by the first
+ * writer of a new second, so recording is a striped add with no locks or allocation; a
+ * write racing that reclaim may be dropped, which is acceptable for rate reporting.
+ */
+public class SlidingWindowCounter {
+    private final int slots;
+    private final LongAdder[] counts;
+    private final AtomicLongArray seconds;
+    private final LongSupplier clockMillis;
+
+    public SlidingWindowCounter(int windowSeconds) {
+        this(windowSeconds, System::currentTimeMillis);
+    }
+
+    SlidingWindowCounter(int windowSeconds, LongSupplier clockMillis) {
+        // One spare slot so the second being written never overlaps the oldest one read
+        this.slots = windowSeconds + 1;
+        this.counts = new LongAdder[slots];
+        this.seconds = new AtomicLongArray(slots);
+        this.clockMillis = clockMillis;
+        for (int i = 0; i < slots; i++) {
+            counts[i] = new LongAdder();
+            seconds.set(i, -1);
+        }
+    }
+
+    public void add(long count) {
+        long second = clockMillis.getAsLong() / 1_000;
+        int slot = (int) (second % slots);
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+            counts[slot].reset();
+        }
+        counts[slot].add(count);
+    }
+
+    /**
+     * Average events per second over the last {@code windowSeconds} complete seconds.
+     */
+    public double ratePerSecond(int windowSeconds) {
+        int window = Math.min(windowSeconds, slots - 1);
+        long now = clockMillis.getAsLong() / 1_000;
+        long total = 0;
+        for (long second = now - window; second < now; second++) {
+            int slot = (int) (second % slots);
+            if (seconds.get(slot) == second) {
+                total += counts[slot].sum();
+            }
+        }
+        return (double) total / window;
+    }
+}
@@ -0,0 +1,46 @@
+package com.upside.orderprocessing.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Pub/sub payload naming the cache entries to drop; either part may be null. Several
+ * invalidations travel in one message, one per line.
+ */
+public record CacheInvalidation(Long id, String orderNumber) {
+    private static final char SEPARATOR = '|';
+    private static final char LINE_SEPARATOR = '\n';
+
+    static String encode(Collection<CacheInvalidation> invalidations) {
+        StringBuilder payload = new StringBuilder(invalidations.size() * 32);
+        for (CacheInvalidation invalidation : invalidations) {
+            if (!payload.isEmpty()) {
+                payload.append(LINE_SEPARATOR);
+            }
+            payload.append(invalidation.id != null ? invalidation.id.toString() : "")
+                    .append(SEPARATOR)
+                    .append(invalidation.orderNumber != null ? invalidation.orderNumber : "");
+        }
+        return payload.toString();
+    }
+
+    static List<CacheInvalidation> decode(String payload) {
+        List<CacheInvalidation> invalidations = new ArrayList<>();
+        int start = 0;
+        while (start < payload.length()) {
+            int end = payload.indexOf(LINE_SEPARATOR, start);
+            if (end < 0) {
+                end = payload.length();
+            }
+            int separator = payload.indexOf(SEPARATOR, start);
+            String id = payload.substring(start, separator);
+            String orderNumber = payload.substring(separator + 1, end);
+            invalidations.add(new CacheInvalidation(
+                    id.isEmpty() ? null : Long.valueOf(id),
+                    orderNumber.isEmpty() ? null : orderNumber));
+            start = end + 1;
+        }
+        return invalidations;
+    }
+}
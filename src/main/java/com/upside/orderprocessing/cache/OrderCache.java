@@ -0,0 +1,234 @@
+package com.upside.orderprocessing.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache of resolved orders: a bounded, TTL-evicting in-process tier in front of an
+ * optional shared Redis tier. Lookups by id and by order number live in separate namespaces,
+ * and invalidations are broadcast so every instance drops its near copy. Concurrent misses for the
+ * same key share a single load (single flight), so a hot key costs one lookup however many
+ * requests arrive before it is cached.
+ */
+@Slf4j
+@Component
+public class OrderCache {
+    private final Cache<Long, Order> nearById;
+    private final Cache<String, Order> nearByOrderNumber;
+    private final RedisOrderCacheTier remote;
+    private final Map<Long, Mono<Order>> loadsById = new ConcurrentHashMap<>();
+    private final Map<String, Mono<Order>> loadsByOrderNumber = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+    private Disposable invalidationSubscription;
+
+    @Autowired
+    public OrderCache(OrderProcessingProperties properties,
+                      MeterRegistry meterRegistry,
+                      ObjectProvider<RedisOrderCacheTier> remote) {
+        this(properties, meterRegistry, remote.getIfAvailable());
+    }
+
+    public OrderCache(OrderProcessingProperties properties,
+                      MeterRegistry meterRegistry,
+                      RedisOrderCacheTier remote) {
+        Duration ttl = Duration.ofSeconds(properties.getCache().getTtl());
+        long maxSize = properties.getCache().getMaxSize();
+        this.nearById = CaffeineCacheMetrics.monitor(meterRegistry, newNearCache(ttl, maxSize), "orders.near.id");
+        this.nearByOrderNumber = CaffeineCacheMetrics.monitor(meterRegistry, newNearCache(ttl, maxSize), "orders.near.number");
+        this.remote = remote;
+        this.coalesced = Counter.builder("orders.cache.coalesced")
+                .description("Cache misses that joined a load already in flight for the same key")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void subscribeToInvalidations() {
+        if (remote == null) {
+            return;
+        }
+        invalidationSubscription = remote.invalidations()
+                .doOnNext(invalidation -> evictNear(invalidation.id(), invalidation.orderNumber()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Order cache invalidation listener failed, resubscribing",
+                                signal.failure())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+
+    public Mono<Order> getById(Long id, Supplier<Mono<Order>> loader) {
+        return Mono.defer(() -> {
+            Order cached = nearById.getIfPresent(id);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return singleFlight(loadsById, id,
+                    current -> load(remote != null ? remote.getById(id) : Mono.empty(), loader, current));
+        });
+    }
+
+    public Mono<Order> getByOrderNumber(String orderNumber, Supplier<Mono<Order>> loader) {
+        return Mono.defer(() -> {
+            Order cached = nearByOrderNumber.getIfPresent(orderNumber);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return singleFlight(loadsByOrderNumber, orderNumber,
+                    current -> load(remote != null ? remote.getByOrderNumber(orderNumber) : Mono.empty(), loader, current));
+        });
+    }
+
+    /**
+     * Drops the order from both tiers on every instance.
+     */
+    public Mono<Void> evict(Order order) {
+        return evict(order.getId(), order.getOrderNumber());
+    }
+
+    /**
+     * Drops the order from both tiers on every instance. A missing order number is resolved
+     * from the near tier when possible.
+     */
+    public Mono<Void> evict(Long id, String orderNumber) {
+        return Mono.defer(() -> invalidate(List.of(new CacheInvalidation(id, orderNumber))));
+    }
+
+    /**
+     * Drops all given orders from both tiers on every instance with a single Redis round trip.
+     */
+    public Mono<Void> evictAll(Collection<Order> orders) {
+        return Mono.defer(() -> {
+            List<CacheInvalidation> invalidations = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                invalidations.add(new CacheInvalidation(order.getId(), order.getOrderNumber()));
+            }
+            return invalidate(invalidations);
+        });
+    }
+
+    private Mono<Void> invalidate(List<CacheInvalidation> invalidations) {
+        List<CacheInvalidation> resolved = new ArrayList<>(invalidations.size());
+        for (CacheInvalidation invalidation : invalidations) {
+            String orderNumber = invalidation.orderNumber();
+            if (orderNumber == null && invalidation.id() != null) {
+                Order cached = nearById.getIfPresent(invalidation.id());
+                orderNumber = cached != null ? cached.getOrderNumber() : null;
+            }
+            evictNear(invalidation.id(), orderNumber);
+            resolved.add(new CacheInvalidation(invalidation.id(), orderNumber));
+        }
+        return remote != null ? remote.evictAll(resolved) : Mono.empty();
+    }
+
+    /**
+     * Joins the load of {@code key} already in flight or starts one. The load runs to completion
+     * even if every caller cancels, since its result is cached anyway. It is told whether it is
+     * still the registered flight, which an invalidation ends: what it read may predate the change.
+     */
+    private <K> Mono<Order> singleFlight(Map<K, Mono<Order>> loads, K key,
+                                         Function<BooleanSupplier, Mono<Order>> load) {
+        Mono<Order> inFlight = loads.get(key);
+        if (inFlight != null) {
+            coalesced.increment();
+            return inFlight;
+        }
+        Sinks.One<Order> result = Sinks.one();
+        Mono<Order> shared = result.asMono();
+        inFlight = loads.putIfAbsent(key, shared);
+        if (inFlight != null) {
+            coalesced.increment();
+            return inFlight;
+        }
+        Mono.defer(() -> load.apply(() -> loads.get(key) == shared))
+                .doFinally(signal -> loads.remove(key, shared))
+                .subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty);
+        return shared;
+    }
+
+    /**
+     * Resolves the order from Redis or the loader and caches it in the tiers it was missing from,
+     * unless an invalidation ended the flight first; callers still get what was read.
+     */
+    private Mono<Order> load(Mono<Order> remoteLookup, Supplier<Mono<Order>> loader, BooleanSupplier current) {
+        return remoteLookup
+                .switchIfEmpty(Mono.defer(loader).flatMap(order -> putRemote(order, current).thenReturn(order)))
+                .doOnNext(order -> {
+                    if (current.getAsBoolean()) {
+                        putNear(order);
+                    }
+                });
+    }
+
+    private Mono<Void> putRemote(Order order, BooleanSupplier current) {
+        if (remote == null || !current.getAsBoolean()) {
+            return Mono.empty();
+        }
+        // An invalidation may have deleted the keys before this write landed; repeat it if so
+        return remote.put(order)
+                .then(Mono.defer(() -> current.getAsBoolean() ? Mono.empty()
+                        : remote.evictAll(List.of(new CacheInvalidation(order.getId(), order.getOrderNumber())))));
+    }
+
+    private void putNear(Order order) {
+        if (order.getId() != null) {
+            nearById.put(order.getId(), order);
+        }
+        if (order.getOrderNumber() != null) {
+            nearByOrderNumber.put(order.getOrderNumber(), order);
+        }
+    }
+
+    private void evictNear(Long id, String orderNumber) {
+        // Loads already in flight may have read the old state; they no longer cache it, and later
+        // misses start afresh
+        if (id != null) {
+            loadsById.remove(id);
+            Order cached = nearById.asMap().remove(id);
+            if (cached != null && orderNumber == null) {
+                orderNumber = cached.getOrderNumber();
+            }
+        }
+        if (orderNumber != null) {
+            loadsByOrderNumber.remove(orderNumber);
+            nearByOrderNumber.invalidate(orderNumber);
+        }
+    }
+
+    private static <K> Cache<K, Order> newNearCache(Duration ttl, long maxSize) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+}
@@ -0,0 +1,123 @@
+package com.upside.orderprocessing.cache;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Shared Redis tier of {@link OrderCache}. Redis failures are treated as cache misses so an
+ * outage degrades to database reads instead of failing requests.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.order.cache.redis", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RedisOrderCacheTier {
+    private static final String CACHE_NAME = "orders.redis";
+
+    private final ReactiveRedisTemplate<String, Order> orderRedisTemplate;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final String channel;
+    private final Duration ttl;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public RedisOrderCacheTier(ReactiveRedisTemplate<String, Order> orderRedisTemplate,
+                               ReactiveStringRedisTemplate stringRedisTemplate,
+                               OrderProcessingProperties properties,
+                               MeterRegistry meterRegistry) {
+        OrderProcessingProperties.Cache cache = properties.getCache();
+        this.orderRedisTemplate = orderRedisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = cache.getRedis().getKeyPrefix();
+        this.channel = cache.getRedis().getInvalidationChannel();
+        this.ttl = Duration.ofSeconds(cache.getTtl());
+        this.hits = meterRegistry.counter("cache.gets", "cache", CACHE_NAME, "result", "hit");
+        this.misses = meterRegistry.counter("cache.gets", "cache", CACHE_NAME, "result", "miss");
+        this.evictions = meterRegistry.counter("cache.evictions", "cache", CACHE_NAME);
+    }
+
+    public Mono<Order> getById(Long id) {
+        return get(idKey(id));
+    }
+
+    public Mono<Order> getByOrderNumber(String orderNumber) {
+        return get(numberKey(orderNumber));
+    }
+
+    public Mono<Void> put(Order order) {
+        return Flux.just(idKey(order.getId()), numberKey(order.getOrderNumber()))
+                .flatMap(key -> orderRedisTemplate.opsForValue().set(key, order, ttl))
+                .onErrorResume(e -> {
+                    log.warn("Failed to write order {} to Redis", order.getId(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Deletes the orders' entries and tells every instance, including this one, to drop
+     * them from its near cache.
+     */
+    public Mono<Void> evictAll(Collection<CacheInvalidation> invalidations) {
+        List<String> keys = new ArrayList<>(invalidations.size() * 2);
+        for (CacheInvalidation invalidation : invalidations) {
+            if (invalidation.id() != null) {
+                keys.add(idKey(invalidation.id()));
+            }
+            if (invalidation.orderNumber() != null) {
+                keys.add(numberKey(invalidation.orderNumber()));
+            }
+        }
+        if (keys.isEmpty()) {
+            return Mono.empty();
+        }
+        return stringRedisTemplate.delete(keys.toArray(String[]::new))
+                .doOnNext(evictions::increment)
+                .then(stringRedisTemplate.convertAndSend(channel, CacheInvalidation.encode(invalidations)))
+                .onErrorResume(e -> {
+                    log.warn("Failed to invalidate {} orders in Redis", invalidations.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    public Flux<CacheInvalidation> invalidations() {
+        return stringRedisTemplate.listenToChannel(channel)
+                .flatMapIterable(message -> CacheInvalidation.decode(message.getMessage()));
+    }
+
+    private Mono<Order> get(String key) {
+        return orderRedisTemplate.opsForValue().get(key)
+                .doOnNext(order -> hits.increment())
+                .switchIfEmpty(Mono.fromRunnable(misses::increment))
+                .onErrorResume(e -> {
+                    log.warn("Failed to read {} from Redis", key, e);
+                    misses.increment();
+                    return Mono.empty();
+                });
+    }
+
+    private String idKey(Long id) {
+        return keyPrefix + "id:" + id;
+    }
+
+    private String numberKey(String orderNumber) {
+        return keyPrefix + "number:" + orderNumber;
+    }
+}
@@ -1,27 +0,0 @@
-package com.upside.orderprocessing.config;
-
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
-
-@Configuration
-@EnableAsync
-public class AsyncConfig {
-    
-    @Bean(name = "orderProcessingExecutor")
-    public Executor orderProcessingExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(20);
-        executor.setMaxPoolSize(50);
-        executor.setQueueCapacity(10000);
-        executor.setThreadNamePrefix("OrderProcessor-");
-        executor.setRejectedExecutionHandler((r, e) -> {
-            throw new RuntimeException("Task rejected due to thread pool exhaustion");
-        });
-        executor.initialize();
-        return executor;
-    }
-} 
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.upside.orderprocessing.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upside.orderprocessing.model.Order;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+@Configuration
+@ConditionalOnProperty(prefix = "app.order.cache.redis", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CacheConfig {
+
+    @Bean
+    public ReactiveRedisTemplate<String, Order> orderRedisTemplate(ReactiveRedisConnectionFactory connectionFactory,
+                                                                   ObjectMapper objectMapper) {
+        RedisSerializationContext<String, Order> context = RedisSerializationContext
+                .<String, Order>newSerializationContext(StringRedisSerializer.UTF_8)
+                .value(new Jackson2JsonRedisSerializer<>(objectMapper, Order.class))
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, context);
+    }
+}
@@ -0,0 +1,46 @@
+package com.upside.orderprocessing.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.List;
+
+/**
+ * Registers the Smile codecs with the same Jackson setup Spring Boot applies to JSON, so a binary
+ * client sees exactly the fields and date handling a JSON client does. WebFlux would otherwise
+ * build them from a default mapper that writes dates as numeric arrays.
+ */
+@Configuration
+public class CodecConfig implements WebFluxConfigurer {
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final String SMILE_STREAM_VALUE = "application/stream+x-jackson-smile";
+    public static final MediaType SMILE_STREAM = MediaType.parseMediaType(SMILE_STREAM_VALUE);
+
+    // Given a mapper, the Smile codecs fall back to the JSON types unless told otherwise
+    private static final MimeType[] SMILE_MIME_TYPES = {
+            MimeType.valueOf(SMILE_VALUE),
+            new MimeType("application", "*+x-jackson-smile")
+    };
+
+    private final ObjectMapper smileMapper;
+
+    public CodecConfig(Jackson2ObjectMapperBuilder builder) {
+        this.smileMapper = builder.factory(new SmileFactory()).build();
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, SMILE_MIME_TYPES));
+        Jackson2SmileEncoder encoder = new Jackson2SmileEncoder(smileMapper, SMILE_MIME_TYPES);
+        encoder.setStreamingMediaTypes(List.of(SMILE_STREAM));
+        configurer.defaultCodecs().jackson2SmileEncoder(encoder);
+    }
+}
@@ -0,0 +1,38 @@
+package com.upside.orderprocessing.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.upside.orderprocessing.service.OrderService;
+import com.upside.orderprocessing.service.impl.OrderIngestionQueue;
+import com.upside.orderprocessing.service.impl.OrderWriteAheadLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * The queue behind {@code /api/orders/ingest}, chosen by {@code app.order.ingestion.queue}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "app.order.ingestion", name = "enabled", havingValue = "true")
+public class IngestionConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.order.ingestion", name = "queue", havingValue = "redis", matchIfMissing = true)
+    public OrderIngestionQueue orderIngestionQueue(ReactiveStringRedisTemplate redis, ObjectMapper objectMapper,
+                                                   OrderService orderService, OrderProcessingProperties properties,
+                                                   MeterRegistry meterRegistry) {
+        return new OrderIngestionQueue(redis, objectMapper, orderService, properties, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.order.ingestion", name = "queue", havingValue = "wal")
+    public OrderWriteAheadLog orderWriteAheadLog(Jackson2ObjectMapperBuilder builder, OrderService orderService,
+                                                 OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        // Smile keeps log records about half the size of JSON, with the fields and dates JSON has
+        return new OrderWriteAheadLog(builder.factory(new SmileFactory()).build(), orderService, properties,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,52 @@
+package com.upside.orderprocessing.config;
+
+import com.upside.orderprocessing.instrumentation.InstrumentedConnectionFactory;
+import com.upside.orderprocessing.instrumentation.QueryMetrics;
+import com.upside.orderprocessing.instrumentation.SchedulerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Database and scheduler instrumentation. The connection factory that repositories, the
+ * transaction manager and every other component share is decorated where it is created, so
+ * they all keep using one instance. Pool gauges ({@code r2dbc.pool.*}) come from Spring Boot,
+ * which finds the pool behind the decorator.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "app.order.instrumentation", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class InstrumentationConfig {
+    private static final String CONNECTION_FACTORY_BEAN = "connectionFactory";
+
+    @Bean
+    public QueryMetrics queryMetrics(OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        return new QueryMetrics(properties, meterRegistry);
+    }
+
+    @Bean
+    public static BeanPostProcessor connectionFactoryInstrumentation(ObjectProvider<QueryMetrics> queryMetrics,
+                                                                     ObjectProvider<MeterRegistry> meterRegistry,
+                                                                     Environment environment) {
+        // Post-processors are created before other beans, which lets scheduler metrics cover
+        // the schedulers those beans create. Boot adds its registries to the global one.
+        if (environment.getProperty("app.order.instrumentation.scheduler-metrics", Boolean.class, true)) {
+            SchedulerMetrics.enable(Metrics.globalRegistry);
+        }
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (CONNECTION_FACTORY_BEAN.equals(beanName) && bean instanceof ConnectionFactory connectionFactory) {
+                    return new InstrumentedConnectionFactory(connectionFactory, queryMetrics.getObject(),
+                            meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
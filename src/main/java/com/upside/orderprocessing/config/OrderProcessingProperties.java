@@ -0,0 +1,632 @@
+package com.upside.orderprocessing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+@Data
+@ConfigurationProperties(prefix = "app.order")
+public class OrderProcessingProperties {
+    /**
+     * Maximum number of orders written by a single multi-row INSERT.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Most distinct orders one bulk status update may name; larger requests get 400.
+     */
+    private int maxBulkStatusUpdate = 1000;
+
+    private final Cache cache = new Cache();
+
+    private final Processing processing = new Processing();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    private final ChangeFeed changeFeed = new ChangeFeed();
+
+    private final Limiter limiter = new Limiter();
+
+    private final Retention retention = new Retention();
+
+    private final Rollups rollups = new Rollups();
+
+    private final Replica replica = new Replica();
+
+    private final Lookup lookup = new Lookup();
+
+    private final Persistence persistence = new Persistence();
+
+    private final Instrumentation instrumentation = new Instrumentation();
+
+    private final Index index = new Index();
+
+    private final Ingestion ingestion = new Ingestion();
+
+    private final Timeouts timeouts = new Timeouts();
+
+    private final Worker worker = new Worker();
+
+    @Data
+    public static class Cache {
+        /**
+         * Time-to-live of cached orders, in seconds.
+         */
+        private long ttl = 300;
+
+        /**
+         * Maximum number of orders held per key namespace in the in-process tier.
+         */
+        private long maxSize = 10000;
+
+        private final Redis redis = new Redis();
+    }
+
+    @Data
+    public static class Redis {
+        /**
+         * Whether orders are shared through Redis and invalidated across instances.
+         */
+        private boolean enabled = true;
+
+        private String keyPrefix = "orders:";
+
+        private String invalidationChannel = "orders:cache:invalidate";
+    }
+
+    @Data
+    public static class Processing {
+        private int threadPoolSize = 20;
+
+        private int queueCapacity = 10000;
+
+        private final Coalescing coalescing = new Coalescing();
+
+        private final Pipeline pipeline = new Pipeline();
+    }
+
+    @Data
+    public static class Coalescing {
+        /**
+         * Number of single-order writes that triggers an immediate flush.
+         */
+        private int batchSize = 64;
+
+        /**
+         * Longest time the first write of a batch waits for others to join it.
+         */
+        private Duration maxWait = Duration.of(500, ChronoUnit.MICROS);
+
+        /**
+         * Writes that may be waiting for a flush before new ones are rejected.
+         */
+        private int queueDepth = 10000;
+
+        /**
+         * Batches that may be written to the database concurrently.
+         */
+        private int maxInFlightBatches = 4;
+    }
+
+    @Data
+    public static class Pipeline {
+        /**
+         * Whether orders are ingested through the partitioned pipeline rather than the coalescer.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Lanes orders are hash-partitioned into by customer; each lane has one worker thread.
+         */
+        private int partitions = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Orders that may wait in one lane before new ones for that lane are rejected.
+         */
+        private int laneCapacity = 4096;
+
+        /**
+         * Orders a lane persists with one multi-row INSERT.
+         */
+        private int batchSize = 64;
+
+        /**
+         * Longest time the first order of a lane batch waits for others to join it.
+         */
+        private Duration maxWait = Duration.of(500, ChronoUnit.MICROS);
+    }
+
+    @Data
+    public static class Idempotency {
+        /**
+         * Order numbers the duplicate filter is sized for; past this its false-positive rate rises.
+         */
+        private long expectedOrderNumbers = 1_000_000;
+
+        /**
+         * Target share of new order numbers that are needlessly looked up before insertion.
+         */
+        private double falsePositiveRate = 0.01;
+    }
+
+    @Data
+    public static class ChangeFeed {
+        private boolean enabled = true;
+
+        /**
+         * How often the outbox is read without a notification; the only trigger on databases
+         * without LISTEN/NOTIFY and a safety net for missed notifications on PostgreSQL.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        /**
+         * Outbox rows read per query while catching up.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Events buffered per subscriber; a slower subscriber loses its oldest events.
+         */
+        private int subscriberBuffer = 256;
+
+        /**
+         * How long a missing outbox id is awaited before it is treated as a rolled-back write.
+         */
+        private Duration gapTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Age after which outbox rows are deleted.
+         */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Limiter {
+        private boolean enabled = true;
+
+        /**
+         * Concurrent database calls allowed before any latency has been measured.
+         */
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 200;
+
+        /**
+         * Interval over which latency samples are averaged before the limit is adjusted.
+         */
+        private Duration window = Duration.ofMillis(100);
+
+        /**
+         * How long the lowest observed latency is trusted as the no-load baseline.
+         */
+        private Duration baselinePeriod = Duration.ofSeconds(30);
+
+        /**
+         * Calls that may wait for a free slot once the limit is reached; further calls are shed.
+         */
+        private int maxQueued = 50;
+
+        /**
+         * Longest wait for a slot. Kept short: under sustained overload the queue stays full,
+         * so every admitted call pays this wait on top of its own latency.
+         */
+        private Duration maxQueueWait = Duration.ofMillis(10);
+
+        /**
+         * Retry-After advertised to clients whose calls were shed.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Retention {
+        private boolean enabled = true;
+
+        /**
+         * Age after which COMPLETED and CANCELLED orders are moved to {@code orders_archive}.
+         */
+        private Duration archiveAfter = Duration.ofDays(30);
+
+        /**
+         * Orders moved per transaction; small batches keep locks and write bursts short.
+         */
+        private int batchSize = 500;
+
+        /**
+         * How often aged orders are archived and missing partitions are created.
+         */
+        private Duration interval = Duration.ofMinutes(1);
+
+        /**
+         * Months past the current one whose partitions are kept created in advance.
+         */
+        private int partitionsAhead = 3;
+    }
+
+    @Data
+    public static class Rollups {
+        private boolean enabled = true;
+
+        /**
+         * How often buffered counts are added to the rollup tables; analytics lag by up to this much.
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * Longest time range one analytics query may cover.
+         */
+        private Duration maxRange = Duration.ofDays(31);
+    }
+
+    @Data
+    public static class Replica {
+        /**
+         * Sends read-only queries to the replica below through a pool of its own; writes stay on
+         * the spring.r2dbc primary.
+         */
+        private boolean enabled = false;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        private int initialSize = 10;
+
+        private int maxSize = 50;
+
+        private Duration maxIdleTime = Duration.ofMinutes(30);
+
+        /**
+         * Whether status updates check conflicts against the primary and reads of an order stay on
+         * the primary for read-your-writes-window after its status changed here.
+         */
+        private boolean readYourWrites = true;
+
+        /**
+         * Should cover the usual replication lag.
+         */
+        private Duration readYourWritesWindow = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Lookup {
+        /**
+         * Whether cache misses of lookups by id are gathered into shared queries.
+         */
+        private boolean batching = true;
+
+        /**
+         * Number of waiting lookups that triggers an immediate query.
+         */
+        private int batchSize = 100;
+
+        /**
+         * Longest time the first lookup of a batch waits for others to join it; added to the
+         * latency of every cache miss.
+         */
+        private Duration maxWait = Duration.of(500, ChronoUnit.MICROS);
+
+        /**
+         * Lookups that may be waiting for a query; further ones query on their own.
+         */
+        private int queueDepth = 10000;
+
+        /**
+         * Batched queries that may run concurrently.
+         */
+        private int maxInFlightBatches = 8;
+    }
+
+    @Data
+    public static class Persistence {
+        public enum Engine {
+            R2DBC, JDBC
+        }
+
+        /**
+         * Driver that writes new orders. JDBC sends each chunk as one JDBC batch from a pool of
+         * blocking workers; every other query stays on spring.r2dbc.
+         */
+        private Engine engine = Engine.R2DBC;
+
+        private final Jdbc jdbc = new Jdbc();
+    }
+
+    @Data
+    public static class Jdbc {
+        /**
+         * JDBC URL of the spring.r2dbc database. Leave PostgreSQL's reWriteBatchedInserts off:
+         * per-row update counts tell which order numbers were already taken.
+         */
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        /**
+         * Worker threads, each holding one connection; also the number of batches written at once.
+         */
+        private int poolSize = 16;
+
+        /**
+         * Batches waiting for a free worker; batches beyond it are turned away with 429 rather
+         * than queued on the heap while the database is slow.
+         */
+        private int queueDepth = 64;
+    }
+
+    @Data
+    public static class Instrumentation {
+        /**
+         * Whether statements and connection acquisitions on spring.r2dbc are timed.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Statements at least this slow are counted and logged.
+         */
+        private Duration slowQueryThreshold = Duration.ofMillis(100);
+
+        /**
+         * Each query fingerprint logs at most one slow statement per interval.
+         */
+        private Duration slowQueryLogInterval = Duration.ofSeconds(10);
+
+        /**
+         * Distinct query fingerprints that get timers of their own; later ones share one.
+         */
+        private int maxFingerprints = 200;
+
+        /**
+         * Whether workers of Reactor schedulers report executor metrics.
+         */
+        private boolean schedulerMetrics = true;
+    }
+
+    @Data
+    public static class Index {
+        /**
+         * Whether orders in an active status are listed and counted from an in-memory index
+         * instead of the orders table.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Orders the index has room for before it first grows.
+         */
+        private int initialCapacity = 65536;
+
+        /**
+         * Number of parts the index is split into by id, each with its own lock, rounded up to a
+         * power of two. More let more writers update the index at once.
+         */
+        private int stripes = 16;
+
+        /**
+         * How long an order that left the active statuses is remembered, so that an older change
+         * to it that arrives late is recognised as such. Must exceed the time between a write
+         * committing and this instance recording it.
+         */
+        private Duration tombstoneTtl = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Ingestion {
+        public enum Queue {
+            REDIS, WAL
+        }
+
+        /**
+         * Whether {@code POST /api/orders/ingest} queues orders that this instance drains into
+         * the database.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Where orders wait: a Redis stream shared by all instances, or a write-ahead log on
+         * this instance's disk.
+         */
+        private Queue queue = Queue.REDIS;
+
+        private String streamKey = "orders:ingest";
+
+        private String group = "order-writers";
+
+        /**
+         * Prefix of this instance's consumer names in the group; by default host name and pid.
+         */
+        private String consumerName;
+
+        /**
+         * Consumers reading the stream on this instance, each writing one batch at a time.
+         */
+        private int consumers = 2;
+
+        /**
+         * Most entries read, and written to the database, at once.
+         */
+        private int batchSize = 1000;
+
+        /**
+         * How long a read waits for entries before it is retried.
+         */
+        private Duration block = Duration.ofSeconds(2);
+
+        /**
+         * Entries delivered this long ago and still not acknowledged, e.g. because their
+         * consumer crashed or the database was unavailable, are taken over and written again.
+         */
+        private Duration claimIdle = Duration.ofMinutes(1);
+
+        private Duration claimInterval = Duration.ofSeconds(15);
+
+        /**
+         * Deliveries after which an entry that still cannot be written is marked as failed.
+         */
+        private int maxDeliveries = 5;
+
+        /**
+         * Entries the stream may hold; beyond it orders are refused with 503.
+         */
+        private long maxBacklog = 1_000_000;
+
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * How long the outcome of an ingested order can be looked up by its tracking id.
+         */
+        private Duration resultTtl = Duration.ofHours(1);
+
+        private String resultKeyPrefix = "orders:ingest:result:";
+
+        private final Wal wal = new Wal();
+    }
+
+    @Data
+    public static class Wal {
+        /**
+         * Directory of the log segments and the drain checkpoint. Must be on a local disk that
+         * survives a restart of this instance.
+         */
+        private String directory = "data/wal";
+
+        /**
+         * Size each segment file is created with; also the largest order that can be queued.
+         */
+        private int segmentSize = 64 * 1024 * 1024;
+
+        /**
+         * Whether orders are acknowledged only once flushed to disk, by one flush for all orders
+         * appended meanwhile. Without it they are acknowledged once in the page cache, which
+         * survives the process being killed but not the machine failing.
+         */
+        private boolean fsync = true;
+
+        /**
+         * How often the log is checked for orders to write to the database while it is empty.
+         */
+        private Duration drainInterval = Duration.ofMillis(20);
+    }
+
+    @Data
+    public static class Timeouts {
+        /**
+         * Whether orders left PENDING or PROCESSING too long are failed and FAILED orders are
+         * retried. Learns of changes from the active order index, so needs it enabled.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Resolution of the timing wheel; deadlines are rounded up to a whole tick.
+         */
+        private Duration tick = Duration.ofMillis(100);
+
+        /**
+         * How long an order may stay PENDING before it is moved to FAILED.
+         */
+        private Duration pendingTimeout = Duration.ofMinutes(15);
+
+        /**
+         * How long an order may stay PROCESSING before it is moved to FAILED. Orders an order
+         * worker holds a live lease on are not failed; they are checked again this long later.
+         */
+        private Duration processingTimeout = Duration.ofMinutes(30);
+
+        /**
+         * Instances sharing the timeouts of one database. Each times out the orders whose id
+         * modulo {@code shards} is its {@code shard}, so they split the work instead of racing
+         * each other for every order.
+         */
+        private int shards = 1;
+
+        /**
+         * Which of the {@code shards} this instance handles, from 0; must differ between instances.
+         */
+        private int shard = 0;
+
+        /**
+         * Wait before a FAILED order is first moved back to PENDING. It doubles with each retry up
+         * to {@code max-retry-backoff}, and a random part of up to half of it is left out, so that
+         * orders that failed together are not retried together.
+         */
+        private Duration retryBackoff = Duration.ofSeconds(30);
+
+        private Duration maxRetryBackoff = Duration.ofMinutes(30);
+
+        /**
+         * Retries after which an order that fails again is CANCELLED instead.
+         */
+        private int maxRetries = 5;
+
+        /**
+         * Most orders taken off the wheel at once; more are taken once their updates finish.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Status updates of a batch in flight at once.
+         */
+        private int concurrency = 16;
+
+        /**
+         * Orders the wheel has room for before it first grows.
+         */
+        private int initialCapacity = 65536;
+    }
+
+    @Data
+    public static class Worker {
+        /**
+         * Whether this instance leases PENDING orders and works them through to COMPLETED. Any
+         * number of instances can, against the same database. Orders taken in by an instance are
+         * written PENDING when this is on and PROCESSING otherwise, so every instance that takes
+         * orders in needs it on for the workers to see them.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Name this instance holds leases under, followed by a random part per claim; by default
+         * host name and pid. Must differ between instances.
+         */
+        private String owner;
+
+        /**
+         * Most orders leased at once.
+         */
+        private int batchSize = 100;
+
+        /**
+         * Batches this instance works on at once.
+         */
+        private int batches = 2;
+
+        /**
+         * Orders of a batch handled at once.
+         */
+        private int concurrency = 16;
+
+        /**
+         * How long a lease lasts unless renewed. An instance that stops renewing, e.g. because it
+         * crashed, loses its orders to another one this long after the last renewal. Instance
+         * clocks must agree to well within it.
+         */
+        private Duration lease = Duration.ofSeconds(30);
+
+        /**
+         * How often the leases on orders still being worked on are renewed.
+         */
+        private Duration heartbeatInterval = Duration.ofSeconds(10);
+
+        /**
+         * How long a worker that found less than a full batch waits before claiming again.
+         */
+        private Duration pollInterval = Duration.ofMillis(500);
+    }
+}
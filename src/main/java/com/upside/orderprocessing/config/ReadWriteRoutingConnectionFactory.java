@@ -0,0 +1,43 @@
+package com.upside.orderprocessing.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Map;
+
+/**
+ * Hands out primary connections unless the subscriber context asks for the replica, so queries
+ * choose their database without repositories knowing there is more than one. Connections already
+ * bound to a transaction are reused as they are, so everything inside a transaction stays on the
+ * primary.
+ */
+public class ReadWriteRoutingConnectionFactory extends AbstractRoutingConnectionFactory {
+    private static final String REPLICA_KEY = ReadWriteRoutingConnectionFactory.class.getName() + ".replica";
+
+    public ReadWriteRoutingConnectionFactory(ConnectionFactory primary, ConnectionFactory replica) {
+        setTargetConnectionFactories(Map.of(REPLICA_KEY, replica));
+        setDefaultTargetConnectionFactory(primary);
+    }
+
+    /**
+     * Routes the connections acquired upstream of {@code contextWrite} to the replica.
+     */
+    public static Context onReplica(Context context) {
+        return context.put(REPLICA_KEY, REPLICA_KEY);
+    }
+
+    /**
+     * Whether connections acquired under {@code context} come from the replica.
+     */
+    public static boolean isOnReplica(ContextView context) {
+        return context.hasKey(REPLICA_KEY);
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(REPLICA_KEY)));
+    }
+}
@@ -0,0 +1,71 @@
+package com.upside.orderprocessing.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Primary and replica pools behind a {@link ReadWriteRoutingConnectionFactory}. Declaring a
+ * connection factory turns off Spring Boot's pool, so the primary pool is built here from the
+ * same {@code spring.r2dbc} properties.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.order.replica", name = "enabled", havingValue = "true")
+public class ReplicaConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool primaryConnectionFactory(R2dbcProperties r2dbc) {
+        R2dbcProperties.Pool pool = r2dbc.getPool();
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration
+                .builder(connectionFactory(r2dbc.getUrl(), r2dbc.getUsername(), r2dbc.getPassword()))
+                .name("primary");
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        map.from(pool.getInitialSize()).to(builder::initialSize);
+        map.from(pool.getMaxSize()).to(builder::maxSize);
+        map.from(pool.getMinIdle()).to(builder::minIdle);
+        map.from(pool.getMaxIdleTime()).to(builder::maxIdleTime);
+        map.from(pool.getMaxLifeTime()).to(builder::maxLifeTime);
+        map.from(pool.getMaxAcquireTime()).to(builder::maxAcquireTime);
+        map.from(pool.getMaxCreateConnectionTime()).to(builder::maxCreateConnectionTime);
+        map.from(pool.getValidationQuery()).to(builder::validationQuery);
+        return new ConnectionPool(builder.build());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool replicaConnectionFactory(OrderProcessingProperties properties) {
+        OrderProcessingProperties.Replica replica = properties.getReplica();
+        return new ConnectionPool(ConnectionPoolConfiguration
+                .builder(connectionFactory(replica.getUrl(), replica.getUsername(), replica.getPassword()))
+                .name("replica")
+                .initialSize(replica.getInitialSize())
+                .maxSize(replica.getMaxSize())
+                .maxIdleTime(replica.getMaxIdleTime())
+                .build());
+    }
+
+    @Bean
+    @Primary
+    public ConnectionFactory connectionFactory(@Qualifier("primaryConnectionFactory") ConnectionFactory primary,
+                                               @Qualifier("replicaConnectionFactory") ConnectionFactory replica) {
+        return new ReadWriteRoutingConnectionFactory(primary, replica);
+    }
+
+    private static ConnectionFactory connectionFactory(String url, String username, String password) {
+        ConnectionFactoryBuilder builder = ConnectionFactoryBuilder.withUrl(url);
+        if (username != null) {
+            builder.username(username);
+        }
+        if (password != null) {
+            builder.password(password);
+        }
+        return builder.build();
+    }
+}
@@ -1,59 +1,85 @@
 package com.upside.orderprocessing.controller;
 
+import com.upside.orderprocessing.analytics.AnalyticsEngine;
+import com.upside.orderprocessing.analytics.OrderRollups;
+import com.upside.orderprocessing.model.OrderRollup;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.ActiveOrderIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @RestController
 @RequestMapping("/api/analytics")
 @RequiredArgsConstructor
 public class AnalyticsController {
-    private final AtomicLong totalRequests = new AtomicLong(0);
-    private final AtomicLong totalProcessingTime = new AtomicLong(0);
-    private final Map<String, AtomicLong> statusCounts = new HashMap<>();
+    private final AnalyticsEngine analyticsEngine;
+    private final OrderRollups orderRollups;
+    private final ActiveOrderIndex activeOrders;
 
     @GetMapping("/throughput")
     public ResponseEntity<Map<String, Object>> getThroughputMetrics() {
-        Map<String, Object> metrics = new HashMap<>();
-        metrics.put("totalRequests", totalRequests.get());
-        metrics.put("averageProcessingTime", calculateAverageProcessingTime());
-        return ResponseEntity.ok(metrics);
+        return ResponseEntity.ok(analyticsEngine.throughputSnapshot());
     }
 
     @GetMapping("/latency")
     public ResponseEntity<Map<String, Object>> getLatencyStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("averageLatency", calculateAverageProcessingTime());
-        stats.put("totalProcessingTime", totalProcessingTime.get());
-        return ResponseEntity.ok(stats);
+        return ResponseEntity.ok(analyticsEngine.latencySnapshot());
     }
 
     @GetMapping("/bottlenecks")
     public ResponseEntity<Map<String, Object>> getBottleneckAnalysis() {
-        Map<String, Object> analysis = new HashMap<>();
-        analysis.put("statusDistribution", getStatusDistribution());
+        Map<String, Object> analysis = analyticsEngine.bottleneckSnapshot();
         analysis.put("memoryUsage", getMemoryUsage());
         return ResponseEntity.ok(analysis);
     }
 
-    private double calculateAverageProcessingTime() {
-        long requests = totalRequests.get();
-        if (requests == 0) return 0;
-        return (double) totalProcessingTime.get() / requests;
+    @GetMapping("/errors")
+    public ResponseEntity<Map<String, Object>> getErrorDistribution() {
+        return ResponseEntity.ok(analyticsEngine.errorSnapshot());
     }
 
-    private Map<String, Long> getStatusDistribution() {
-        Map<String, Long> distribution = new HashMap<>();
-        statusCounts.forEach((status, count) -> distribution.put(status, count.get()));
-        return distribution;
+    // The order endpoints read the rollup tables or the active order index, never the orders table
+
+    @GetMapping("/orders/active")
+    public Flux<OrderRollup> getActiveOrders() {
+        return activeOrders.totals();
+    }
+
+    @GetMapping("/orders/status")
+    public Flux<OrderRollup> getOrdersByStatus(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return orderRollups.byStatus(from, to);
+    }
+
+    @GetMapping("/orders/minutes")
+    public Flux<OrderRollup> getOrdersByMinute(
+            @RequestParam(defaultValue = "COMPLETED") OrderStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return orderRollups.byMinute(status, from, to);
+    }
+
+    @GetMapping("/orders/products")
+    public Flux<OrderRollup> getTopProducts(
+            @RequestParam(defaultValue = "COMPLETED") OrderStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int limit) {
+        return orderRollups.topProducts(status, from, to, limit);
     }
 
     private Map<String, Object> getMemoryUsage() {
@@ -64,4 +90,4 @@ public class AnalyticsController {
         memory.put("maxMemory", runtime.maxMemory());
         return memory;
     }
-} 
\ No newline at end of file
+}
@@ -1,37 +1,88 @@
 package com.upside.orderprocessing.controller;
 
+import com.upside.orderprocessing.config.CodecConfig;
+import com.upside.orderprocessing.exception.IngestionNotFoundException;
+import com.upside.orderprocessing.model.BulkStatusUpdateRequest;
+import com.upside.orderprocessing.model.BulkStatusUpdateResult;
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.IngestionStatus;
 import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderFilter;
+import com.upside.orderprocessing.model.OrderPage;
 import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.OrderIngestion;
 import com.upside.orderprocessing.service.OrderService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
-import java.math.BigDecimal;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.LocalDateTime;
 
 @Slf4j
 @RestController
 @RequestMapping("/api/orders")
 @RequiredArgsConstructor
 public class OrderController {
+    private static final Duration CHANGE_FEED_KEEP_ALIVE = Duration.ofSeconds(15);
+
     private final OrderService orderService;
-    private final AtomicInteger activeStressTests = new AtomicInteger(0);
+    private final ObjectProvider<OrderIngestion> ingestion;
 
-    @PostMapping("/batch")
+    /**
+     * Accepts a JSON array, newline-delimited JSON or Smile (Jackson's binary JSON). Orders are
+     * decoded and handed on one at a time as the body arrives, whatever the format. Asking for
+     * {@code application/x-ndjson} or {@code application/stream+x-jackson-smile} streams each saved
+     * order back as soon as it is written instead of returning one array at the end. Smile is only
+     * returned as such a stream, since WebFlux frames a Smile array with JSON delimiters.
+     */
+    @PostMapping(value = "/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, CodecConfig.SMILE_VALUE,
+                    CodecConfig.SMILE_STREAM_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    CodecConfig.SMILE_STREAM_VALUE})
     public Flux<Order> processBatchOrders(@RequestBody Flux<Order> orders) {
         return orderService.processBatchOrders(orders);
     }
 
+    /**
+     * Queues the orders to be written in the background and answers with a tracking id per
+     * order, in request order, before any of them is written. Every order needs an order number.
+     */
+    @PostMapping(value = "/ingest", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<IngestionReceipt> ingestOrders(@RequestBody Flux<Order> orders) {
+        return ingestion().enqueue(orders);
+    }
+
+    @GetMapping("/ingest/{trackingId}")
+    public Mono<IngestionStatus> getIngestionStatus(@PathVariable String trackingId) {
+        return ingestion().status(trackingId)
+                .switchIfEmpty(Mono.error(() -> new IngestionNotFoundException(trackingId)));
+    }
+
+    @GetMapping
+    public Mono<OrderPage> getOrders(
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) String customerId,
+            @RequestParam(required = false) String productId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "50") int size) {
+        return orderService.getOrderPage(new OrderFilter(status, customerId, productId, from, to), cursor, size);
+    }
+
     @GetMapping("/{id}")
     public Mono<Order> getOrder(@PathVariable Long id) {
         return orderService.getOrderById(id);
@@ -40,96 +91,46 @@ public class OrderController {
     @PutMapping("/{id}/status")
     public Mono<Order> updateOrderStatus(
             @PathVariable Long id,
-            @RequestParam OrderStatus status) {
-        return orderService.updateOrderStatus(id, status);
+            @RequestParam OrderStatus status,
+            @RequestParam(required = false) Long version) {
+        return orderService.updateOrderStatus(id, status, version);
+    }
+
+    @PutMapping("/status")
+    public Mono<BulkStatusUpdateResult> updateOrderStatuses(@Valid @RequestBody BulkStatusUpdateRequest request) {
+        return orderService.updateOrderStatuses(request.getIds(), request.getStatus());
     }
 
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<Order> getOrderStream(
             @RequestParam(required = false) OrderStatus status,
             @RequestParam(required = false, defaultValue = "0") int limit) {
-        Flux<Order> orders = orderService.getOrdersByStatus(status);
         if (limit > 0) {
-            orders = orders.take(limit);
+            return orderService.getOrders(OrderFilter.byStatus(status), limit);
         }
-        return orders;
+        return orderService.getOrdersByStatus(status);
     }
 
-    @PostMapping("/stress-test")
-    public Mono<Map<String, Object>> stressTest(
-            @RequestParam int orderCount,
-            @RequestParam(required = false, defaultValue = "100") int batchSize) {
-        if (orderCount > 10000) {
-            return Mono.just(Map.of(
-                "error", "Maximum 10,000 orders allowed for stress test",
-                "status", "rejected"
-            ));
-        }
-
-        if (activeStressTests.incrementAndGet() > 1) {
-            activeStressTests.decrementAndGet();
-            return Mono.just(Map.of(
-                "error", "Another stress test is already running",
-                "status", "rejected"
-            ));
-        }
-
-        Instant startTime = Instant.now();
-        AtomicInteger processedCount = new AtomicInteger(0);
-        AtomicInteger successCount = new AtomicInteger(0);
-        AtomicInteger failureCount = new AtomicInteger(0);
-
-        return Flux.range(1, orderCount)
-                .map(i -> createTestOrder())
-                .buffer(batchSize)
-                .flatMap(batch -> orderService.processBatchOrders(Flux.fromIterable(batch))
-                        .doOnNext(order -> {
-                            processedCount.incrementAndGet();
-                            if (order.getStatus() == OrderStatus.PROCESSING) {
-                                successCount.incrementAndGet();
-                            } else {
-                                failureCount.incrementAndGet();
-                            }
-                        })
-                        .onErrorResume(e -> {
-                            log.error("Error processing batch", e);
-                            failureCount.addAndGet(batch.size());
-                            return Mono.empty();
-                        }))
-                .subscribeOn(Schedulers.boundedElastic())
-                .doFinally(signalType -> {
-                    activeStressTests.decrementAndGet();
-                    Duration duration = Duration.between(startTime, Instant.now());
-                    log.info("Stress test completed: processed={}, success={}, failure={}, duration={}",
-                            processedCount.get(), successCount.get(), failureCount.get(), duration);
-                })
-                .then(Mono.defer(() -> {
-                    Duration duration = Duration.between(startTime, Instant.now());
-                    Map<String, Object> results = new HashMap<>();
-                    results.put("status", "completed");
-                    results.put("totalOrders", orderCount);
-                    results.put("processedOrders", processedCount.get());
-                    results.put("successfulOrders", successCount.get());
-                    results.put("failedOrders", failureCount.get());
-                    results.put("durationMillis", duration.toMillis());
-                    results.put("throughput", calculateThroughput(processedCount.get(), duration));
-                    return Mono.just(results);
-                }));
-    }
-
-    private Order createTestOrder() {
-        Order order = new Order();
-        order.setOrderNumber("STRESS-" + UUID.randomUUID().toString());
-        order.setStatus(OrderStatus.PENDING);
-        order.setTotalAmount(new BigDecimal("100.00"));
-        order.setCustomerId("CUST-" + UUID.randomUUID().toString().substring(0, 8));
-        order.setProductId("PROD-" + UUID.randomUUID().toString().substring(0, 8));
-        order.setQuantity(1);
-        return order;
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<OrderEvent>> streamOrderChanges(
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) String customerId) {
+        Flux<ServerSentEvent<OrderEvent>> changes = orderService.getOrderChanges(status, customerId)
+                .map(event -> ServerSentEvent.builder(event)
+                        .id(String.valueOf(event.getId()))
+                        .event(event.getType().name())
+                        .build());
+        // Comments keep idle connections from being closed by proxies between changes
+        Flux<ServerSentEvent<OrderEvent>> keepAlive = Flux.interval(CHANGE_FEED_KEEP_ALIVE)
+                .map(tick -> ServerSentEvent.<OrderEvent>builder().comment("keep-alive").build());
+        return changes.mergeWith(keepAlive);
     }
 
-    private double calculateThroughput(int processedOrders, Duration duration) {
-        return duration.toMillis() > 0 ? 
-            (double) processedOrders / duration.toMillis() * 1000 : 0;
+    private OrderIngestion ingestion() {
+        OrderIngestion queue = ingestion.getIfAvailable();
+        if (queue == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Asynchronous ingestion is not enabled");
+        }
+        return queue;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.upside.orderprocessing.controller;
+
+import com.upside.orderprocessing.loadtest.LoadGenerator;
+import com.upside.orderprocessing.model.LoadTestRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stress-test")
+@RequiredArgsConstructor
+public class StressTestController {
+    private final LoadGenerator loadGenerator;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<Map<String, Object>> startTest(@Valid @RequestBody LoadTestRequest request) {
+        return Mono.fromCallable(() -> loadGenerator.start(request));
+    }
+
+    @GetMapping("/status")
+    public Mono<Map<String, Object>> getTestStatus() {
+        return Mono.fromCallable(loadGenerator::status);
+    }
+
+    @PostMapping("/stop")
+    public Mono<Map<String, Object>> stopTest() {
+        return Mono.fromCallable(loadGenerator::stop);
+    }
+}
@@ -0,0 +1,11 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BulkStatusUpdateTooLargeException extends RuntimeException {
+    public BulkStatusUpdateTooLargeException(int requested, int max) {
+        super("A bulk status update may name at most " + max + " orders, got " + requested);
+    }
+}
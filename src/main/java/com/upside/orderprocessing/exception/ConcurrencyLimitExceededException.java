@@ -0,0 +1,31 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * Raised when the database concurrency limit is reached; rendered as 429 with a Retry-After
+ * header, which {@code @ResponseStatus} alone cannot express.
+ */
+public class ConcurrencyLimitExceededException extends ResponseStatusException {
+    private final Duration retryAfter;
+
+    public ConcurrencyLimitExceededException(int limit, Duration retryAfter) {
+        super(HttpStatus.TOO_MANY_REQUESTS, "Concurrency limit of " + limit + " reached");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1_000)));
+        return headers;
+    }
+}
@@ -0,0 +1,31 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * Raised when the ingestion queue holds as many orders as it may; rendered as 503 with a
+ * Retry-After header.
+ */
+public class IngestionBacklogFullException extends ResponseStatusException {
+    private final Duration retryAfter;
+
+    public IngestionBacklogFullException(long backlog, Duration retryAfter) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Ingestion backlog of " + backlog + " orders is full");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1_000)));
+        return headers;
+    }
+}
@@ -0,0 +1,11 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class IngestionNotFoundException extends RuntimeException {
+    public IngestionNotFoundException(String trackingId) {
+        super("Unknown or expired tracking id: " + trackingId);
+    }
+}
@@ -0,0 +1,11 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidAnalyticsRangeException extends RuntimeException {
+    public InvalidAnalyticsRangeException(String message) {
+        super(message);
+    }
+}
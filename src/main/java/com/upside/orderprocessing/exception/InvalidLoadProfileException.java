@@ -0,0 +1,11 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidLoadProfileException extends RuntimeException {
+    public InvalidLoadProfileException(String reason) {
+        super("Invalid load profile: " + reason);
+    }
+}
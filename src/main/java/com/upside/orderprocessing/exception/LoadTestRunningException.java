@@ -0,0 +1,11 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class LoadTestRunningException extends RuntimeException {
+    public LoadTestRunningException(String runId) {
+        super("Load test " + runId + " is already running");
+    }
+}
@@ -0,0 +1,15 @@
+package com.upside.orderprocessing.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Raised when a status change is not allowed from the order's current status, or when the
+ * caller's expected version no longer matches the stored row.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class OrderStatusConflictException extends RuntimeException {
+    public OrderStatusConflictException(String message) {
+        super(message);
+    }
+}
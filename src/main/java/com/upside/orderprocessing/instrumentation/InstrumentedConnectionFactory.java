@@ -0,0 +1,76 @@
+package com.upside.orderprocessing.instrumentation;
+
+import com.upside.orderprocessing.config.ReadWriteRoutingConnectionFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates the application's connection factory so that every statement is timed by
+ * {@link QueryMetrics} and every connection acquisition by {@code orders.db.connection.acquire},
+ * tagged with the pool it came from. With a pool underneath, acquisition time is time spent
+ * waiting for a free connection, which is what separates pool starvation from slow SQL.
+ */
+public class InstrumentedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+    private final ConnectionFactory delegate;
+    private final QueryMetrics metrics;
+    private final Timer primaryAcquire;
+    private final Timer replicaAcquire;
+
+    public InstrumentedConnectionFactory(ConnectionFactory delegate, QueryMetrics metrics, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.primaryAcquire = acquireTimer("primary", meterRegistry);
+        this.replicaAcquire = acquireTimer("replica", meterRegistry);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.deferContextual(context -> {
+            Timer acquire = ReadWriteRoutingConnectionFactory.isOnReplica(context) ? replicaAcquire : primaryAcquire;
+            long start = System.nanoTime();
+            return Mono.<Connection>from(delegate.create())
+                    .doOnNext(connection -> acquire.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .map(connection -> new InstrumentedConnection(connection, metrics));
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return delegate;
+    }
+
+    /**
+     * Disposes the decorated pool, which is the destroy method its bean was declared with.
+     */
+    @Override
+    public void dispose() {
+        if (delegate instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate instanceof Disposable disposable && disposable.isDisposed();
+    }
+
+    private static Timer acquireTimer(String pool, MeterRegistry meterRegistry) {
+        return Timer.builder("orders.db.connection.acquire")
+                .description("Time to obtain a connection, including waiting for a free one")
+                .tag("pool", pool)
+                .register(meterRegistry);
+    }
+}
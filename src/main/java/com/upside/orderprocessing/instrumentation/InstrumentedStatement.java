@@ -0,0 +1,117 @@
+package com.upside.orderprocessing.instrumentation;
+
+import io.r2dbc.spi.Parameter;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Wrapped;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times {@link #execute()} and notes the types of the first set of bind values, which is what
+ * the slow-query log shows. Multi-row statements bind thousands of values, so only the first
+ * {@value #MAX_BIND_SHAPES} are kept.
+ */
+final class InstrumentedStatement implements Statement, Wrapped<Statement> {
+    static final int MAX_BIND_SHAPES = 32;
+
+    private final Statement delegate;
+    private final String fingerprint;
+    private final QueryMetrics metrics;
+    private final List<String> bindShapes = new ArrayList<>();
+    private int bindings = 1;
+
+    InstrumentedStatement(Statement delegate, String fingerprint, QueryMetrics metrics) {
+        this.delegate = delegate;
+        this.fingerprint = fingerprint;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Statement add() {
+        delegate.add();
+        bindings++;
+        return this;
+    }
+
+    @Override
+    public Statement bind(int index, Object value) {
+        delegate.bind(index, value);
+        shape(value);
+        return this;
+    }
+
+    @Override
+    public Statement bind(String name, Object value) {
+        delegate.bind(name, value);
+        shape(value);
+        return this;
+    }
+
+    @Override
+    public Statement bindNull(int index, Class<?> type) {
+        delegate.bindNull(index, type);
+        nullShape(type);
+        return this;
+    }
+
+    @Override
+    public Statement bindNull(String name, Class<?> type) {
+        delegate.bindNull(name, type);
+        nullShape(type);
+        return this;
+    }
+
+    @Override
+    public Publisher<? extends Result> execute() {
+        return QueryExecution.time(delegate.execute(), metrics, fingerprint, List.copyOf(bindShapes), bindings);
+    }
+
+    @Override
+    public Statement returnGeneratedValues(String... columns) {
+        delegate.returnGeneratedValues(columns);
+        return this;
+    }
+
+    @Override
+    public Statement fetchSize(int rows) {
+        delegate.fetchSize(rows);
+        return this;
+    }
+
+    @Override
+    public Statement unwrap() {
+        return delegate;
+    }
+
+    private void shape(Object value) {
+        if (recordingShapes()) {
+            bindShapes.add(shapeOf(value));
+        }
+    }
+
+    private void nullShape(Class<?> type) {
+        if (recordingShapes()) {
+            bindShapes.add("null " + type.getSimpleName());
+        }
+    }
+
+    private boolean recordingShapes() {
+        return bindings == 1 && bindShapes.size() < MAX_BIND_SHAPES;
+    }
+
+    static String shapeOf(Object value) {
+        if (value instanceof Parameter parameter) {
+            return parameter.getValue() != null ? shapeOf(parameter.getValue()) : "null " + parameter.getType();
+        }
+        if (value instanceof Object[] array) {
+            return array.getClass().getComponentType().getSimpleName() + "[" + array.length + "]";
+        }
+        if (value instanceof CharSequence text) {
+            return "String(" + text.length() + ")";
+        }
+        return value.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,103 @@
+package com.upside.orderprocessing.instrumentation;
+
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * One execution of a statement. Drivers stream rows while they are consumed, so the execution
+ * only ends once the driver has emitted all results and every one of them has been consumed,
+ * or cancelled. A result that is emitted but never consumed leaves the execution unrecorded.
+ */
+final class QueryExecution {
+    private final QueryMetrics metrics;
+    private final String fingerprint;
+    private final List<String> bindShapes;
+    private final int bindings;
+    private final long startNanos = System.nanoTime();
+    // The results publisher itself, plus every result not yet consumed
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private volatile Throwable error;
+
+    private QueryExecution(QueryMetrics metrics, String fingerprint, List<String> bindShapes, int bindings) {
+        this.metrics = metrics;
+        this.fingerprint = fingerprint;
+        this.bindShapes = bindShapes;
+        this.bindings = bindings;
+    }
+
+    static Flux<Result> time(Publisher<? extends Result> results, QueryMetrics metrics, String fingerprint,
+                             List<String> bindShapes, int bindings) {
+        return Flux.defer(() -> {
+            QueryExecution execution = new QueryExecution(metrics, fingerprint, bindShapes, bindings);
+            return Flux.<Result>from(results)
+                    .map(execution::track)
+                    .doOnError(e -> execution.error = e)
+                    .doFinally(execution::finished);
+        });
+    }
+
+    private Result track(Result result) {
+        pending.incrementAndGet();
+        return new TrackedResult(result);
+    }
+
+    private void finished(SignalType signal) {
+        if (pending.decrementAndGet() == 0) {
+            metrics.record(fingerprint, bindShapes, bindings, System.nanoTime() - startNanos, error);
+        }
+    }
+
+    private <T> Publisher<T> consumed(Publisher<T> consumption) {
+        return Flux.from(consumption)
+                .doOnError(e -> error = e)
+                .doFinally(this::finished);
+    }
+
+    /**
+     * Counts as consumed when its rows or update count have been read. A result can only be
+     * consumed once, either itself or through the result filtering returns.
+     */
+    private final class TrackedResult implements Result {
+        private final Result delegate;
+
+        TrackedResult(Result delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Publisher<Long> getRowsUpdated() {
+            return consumed(delegate.getRowsUpdated());
+        }
+
+        @Override
+        public <T> Publisher<T> map(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+            return consumed(delegate.map(mappingFunction));
+        }
+
+        @Override
+        public <T> Publisher<T> map(Function<? super Readable, ? extends T> mappingFunction) {
+            return consumed(delegate.map(mappingFunction));
+        }
+
+        @Override
+        public Result filter(Predicate<Segment> filter) {
+            return new TrackedResult(delegate.filter(filter));
+        }
+
+        @Override
+        public <T> Publisher<T> flatMap(Function<Segment, ? extends Publisher<? extends T>> mappingFunction) {
+            return consumed(delegate.flatMap(mappingFunction));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.upside.orderprocessing.instrumentation;
+
+import java.util.regex.Pattern;
+
+/**
+ * Reduces SQL to a fingerprint that is the same for every execution of one query: literals and
+ * bind markers become {@code ?}, lists of them collapse to one, and a multi-row VALUES list
+ * becomes a single row, so that batches of any size share a fingerprint.
+ */
+final class QueryFingerprints {
+    static final int MAX_LENGTH = 200;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern BIND_MARKER = Pattern.compile("\\$\\d+");
+    private static final Pattern NUMBER = Pattern.compile("(?<![\\w$.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern REPEATED_ROWS = Pattern.compile("\\(\\?\\)(?:\\s*,\\s*\\(\\?\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private QueryFingerprints() {
+    }
+
+    static String of(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = BIND_MARKER.matcher(normalized).replaceAll("?");
+        normalized = NUMBER.matcher(normalized).replaceAll("?");
+        normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("(?)");
+        normalized = REPEATED_ROWS.matcher(normalized).replaceAll("(?)");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        if (normalized.length() <= MAX_LENGTH) {
+            return normalized;
+        }
+        // Long statements often differ only towards the end, so the hash keeps them apart
+        String hash = Integer.toHexString(normalized.hashCode());
+        return normalized.substring(0, MAX_LENGTH - hash.length() - 4) + "... " + hash;
+    }
+}
@@ -0,0 +1,110 @@
+package com.upside.orderprocessing.instrumentation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records executed statements as {@code orders.db.query} timers tagged by query fingerprint and
+ * outcome, and logs statements slower than {@code slow-query-threshold}. The slow-query log is
+ * sampled per fingerprint: one line per {@code slow-query-log-interval}, carrying the number of
+ * slow executions it stands for, so a query that turns slow under load cannot flood the log.
+ * Bind values are never logged, only their types.
+ */
+@Slf4j
+public class QueryMetrics {
+    static final String OTHER_QUERIES = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final long slowQueryNanos;
+    private final long logIntervalNanos;
+    private final int maxFingerprints;
+    // Statements are rebuilt for every execution, so fingerprints are looked up by SQL text
+    private final Cache<String, String> fingerprints = Caffeine.newBuilder().maximumSize(1024).build();
+    private final Map<String, QueryMeters> meters = new ConcurrentHashMap<>();
+    private final Counter slow;
+
+    public QueryMetrics(OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        OrderProcessingProperties.Instrumentation config = properties.getInstrumentation();
+        this.meterRegistry = meterRegistry;
+        this.slowQueryNanos = config.getSlowQueryThreshold().toNanos();
+        this.logIntervalNanos = config.getSlowQueryLogInterval().toNanos();
+        this.maxFingerprints = config.getMaxFingerprints();
+        this.slow = Counter.builder("orders.db.slow.queries")
+                .description("Statements slower than the slow-query threshold")
+                .register(meterRegistry);
+    }
+
+    String fingerprint(String sql) {
+        return fingerprints.get(sql, QueryFingerprints::of);
+    }
+
+    /**
+     * Records one execution of the statement with the given fingerprint, from execution until
+     * its results were consumed.
+     */
+    void record(String fingerprint, List<String> bindShapes, int bindings, long nanos, Throwable error) {
+        QueryMeters query = meters(fingerprint);
+        (error == null ? query.succeeded : query.failed).record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= slowQueryNanos) {
+            slow.increment();
+            logSlowQuery(query, fingerprint, bindShapes, bindings, nanos, error);
+        }
+    }
+
+    private QueryMeters meters(String fingerprint) {
+        QueryMeters query = meters.get(fingerprint);
+        if (query != null) {
+            return query;
+        }
+        // Every fingerprint is a set of time series, so past the limit new ones share a tag
+        String tag = meters.size() < maxFingerprints ? fingerprint : OTHER_QUERIES;
+        return meters.computeIfAbsent(tag, key -> new QueryMeters(key, meterRegistry));
+    }
+
+    private void logSlowQuery(QueryMeters queries, String fingerprint, List<String> bindShapes, int bindings,
+                              long nanos, Throwable error) {
+        long now = System.nanoTime();
+        long last = queries.lastLoggedNanos.get();
+        queries.unlogged.incrementAndGet();
+        if (last != 0 && now - last < logIntervalNanos || !queries.lastLoggedNanos.compareAndSet(last, now)) {
+            return;
+        }
+        long count = queries.unlogged.getAndSet(0);
+        log.warn("Slow query took {} ms ({} slow since last logged){}: {} binds {}{}",
+                Duration.ofNanos(nanos).toMillis(), count, error != null ? " and failed" : "", fingerprint,
+                bindShapes, bindings > 1 ? " x " + bindings : "");
+    }
+
+    private static final class QueryMeters {
+        final Timer succeeded;
+        final Timer failed;
+        // Slow executions are sampled per tag, which bounds this state along with the meters
+        final AtomicLong lastLoggedNanos = new AtomicLong();
+        final AtomicLong unlogged = new AtomicLong();
+
+        QueryMeters(String tag, MeterRegistry meterRegistry) {
+            this.succeeded = timer(tag, "success", meterRegistry);
+            this.failed = timer(tag, "error", meterRegistry);
+        }
+
+        private static Timer timer(String tag, String outcome, MeterRegistry meterRegistry) {
+            return Timer.builder("orders.db.query")
+                    .description("Statements from execution until their results were consumed")
+                    .tag("query", tag)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.upside.orderprocessing.instrumentation;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reports the workers of Reactor schedulers as {@code reactor.executor.*} meters: tasks queued,
+ * running and completed, and how long tasks run and sit idle. A worker whose queue keeps growing
+ * or whose tasks run long is blocked. Only schedulers created after {@link #enable} are covered.
+ * Bounded elastic schedulers are left out, since they create and evict a worker per burst of
+ * blocking work; a worker's meters are removed when it shuts down and its number is reused, so
+ * the series stay bounded by the workers alive.
+ */
+public final class SchedulerMetrics {
+    private static final String DECORATOR_KEY = SchedulerMetrics.class.getName();
+    private static final String METRIC_PREFIX = "reactor";
+    // How bounded elastic schedulers, Schedulers.boundedElastic() among them, start describing themselves
+    private static final String BOUNDED_ELASTIC = "boundedElastic(";
+    private static final Pattern SCHEDULER_NAME = Pattern.compile("\"([^\"]+)\"");
+
+    private SchedulerMetrics() {
+    }
+
+    public static void enable(MeterRegistry meterRegistry) {
+        // Worker numbers in use per scheduler name; guarded by itself
+        Map<String, BitSet> workers = new HashMap<>();
+        Schedulers.addExecutorServiceDecorator(DECORATOR_KEY, (scheduler, executor) -> {
+            if (scheduler.toString().startsWith(BOUNDED_ELASTIC)) {
+                return executor;
+            }
+            String name = nameOf(scheduler);
+            int worker;
+            synchronized (workers) {
+                BitSet taken = workers.computeIfAbsent(name, key -> new BitSet());
+                worker = taken.nextClearBit(0);
+                taken.set(worker);
+            }
+            String executorName = name + "-" + worker;
+            ScheduledExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, executor, executorName,
+                    METRIC_PREFIX, Tags.of("scheduler", name));
+            return new OnShutdown(monitored, () -> {
+                removeMeters(meterRegistry, executorName);
+                synchronized (workers) {
+                    workers.get(name).clear(worker);
+                }
+            });
+        });
+    }
+
+    static String nameOf(Scheduler scheduler) {
+        // Schedulers describe themselves as e.g. parallel(8,"parallel") or single("order-lane-0")
+        Matcher matcher = SCHEDULER_NAME.matcher(scheduler.toString());
+        return matcher.find() ? matcher.group(1) : scheduler.getClass().getSimpleName();
+    }
+
+    private static void removeMeters(MeterRegistry meterRegistry, String executorName) {
+        for (Meter meter : List.copyOf(meterRegistry.getMeters())) {
+            Meter.Id id = meter.getId();
+            if (id.getName().startsWith(METRIC_PREFIX + ".executor") && executorName.equals(id.getTag("name"))) {
+                meterRegistry.remove(meter);
+            }
+        }
+    }
+
+    /**
+     * Runs a callback once when the executor is shut down, and otherwise delegates.
+     */
+    private static final class OnShutdown implements ScheduledExecutorService {
+        private final ScheduledExecutorService delegate;
+        private Runnable onShutdown;
+
+        OnShutdown(ScheduledExecutorService delegate, Runnable onShutdown) {
+            this.delegate = delegate;
+            this.onShutdown = onShutdown;
+        }
+
+        private void shutDown() {
+            Runnable callback;
+            synchronized (this) {
+                callback = onShutdown;
+                onShutdown = null;
+            }
+            if (callback != null) {
+                callback.run();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+            shutDown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> pending = delegate.shutdownNow();
+            shutDown();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(command);
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return delegate.submit(task);
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return delegate.submit(task, result);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return delegate.submit(task);
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return delegate.invokeAll(tasks);
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException {
+            return delegate.invokeAll(tasks, timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+            return delegate.invokeAny(tasks);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.invokeAny(tasks, timeout, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return delegate.schedule(command, delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return delegate.schedule(callable, delay, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return delegate.scheduleAtFixedRate(command, initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay,
+                                                         TimeUnit unit) {
+            return delegate.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.upside.orderprocessing.limiter;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.ConcurrencyLimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.R2dbcTransientException;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caps concurrent database calls at a limit that follows measured latency, in the style of
+ * TCP Vegas. The lowest recent latency is the no-load baseline, and {@code limit * (1 - baseline
+ * / latency)} estimates how many calls are queueing inside the database: the limit grows while
+ * that queue is short and shrinks once it builds up. Timeouts and transient failures cut the
+ * limit multiplicatively. Calls over the limit wait briefly in a bounded queue and are otherwise
+ * shed with {@link ConcurrencyLimitExceededException}, so overload is answered with fast 429s
+ * instead of every call slowing down until all of them miss their deadline.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final OrderProcessingProperties.Limiter config;
+    private final LongSupplier nanoClock;
+    private final Counter shed;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private long windowStart;
+    private int windowMaxInFlight;
+    private long windowSamples;
+    private long windowRttSum;
+    private boolean windowDropped;
+    private long baselineStart;
+    private long baselineRtt = Long.MAX_VALUE;
+    private long previousBaselineRtt = Long.MAX_VALUE;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(OrderProcessingProperties properties, MeterRegistry meterRegistry,
+                               LongSupplier nanoClock) {
+        this.config = properties.getLimiter();
+        this.nanoClock = nanoClock;
+        this.limit = config.getInitialLimit();
+        this.windowStart = nanoClock.getAsLong();
+        this.baselineStart = windowStart;
+        this.shed = Counter.builder("orders.limiter.shed")
+                .description("Database calls rejected because the concurrency limit was reached")
+                .register(meterRegistry);
+        Gauge.builder("orders.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on concurrent database calls")
+                .register(meterRegistry);
+        Gauge.builder("orders.limiter.in.flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Database calls currently holding a slot")
+                .register(meterRegistry);
+        Gauge.builder("orders.limiter.queued", this, AdaptiveConcurrencyLimiter::getQueued)
+                .description("Database calls waiting for a slot")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> mono(Supplier<? extends Mono<T>> call) {
+        if (!config.isEnabled()) {
+            return Mono.defer(call);
+        }
+        return Mono.usingWhen(acquire(), permit -> call.get(),
+                permit -> release(permit, Outcome.SUCCESS),
+                (permit, error) -> release(permit, isOverload(error) ? Outcome.DROPPED : Outcome.IGNORED),
+                permit -> release(permit, Outcome.IGNORED));
+    }
+
+    public <T> Flux<T> flux(Supplier<? extends Publisher<T>> call) {
+        if (!config.isEnabled()) {
+            return Flux.defer(call);
+        }
+        return Flux.usingWhen(acquire(), permit -> call.get(),
+                permit -> release(permit, Outcome.SUCCESS),
+                (permit, error) -> release(permit, isOverload(error) ? Outcome.DROPPED : Outcome.IGNORED),
+                permit -> release(permit, Outcome.IGNORED));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter = null;
+            boolean granted = false;
+            synchronized (this) {
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+                    granted = true;
+                } else if (waiters.size() < config.getMaxQueued()) {
+                    waiter = new Waiter(sink);
+                    waiters.addLast(waiter);
+                }
+            }
+            if (granted) {
+                sink.success(new Permit(nanoClock.getAsLong()));
+            } else if (waiter == null) {
+                reject(sink);
+            } else {
+                Waiter queued = waiter;
+                queued.timeout = Schedulers.parallel().schedule(() -> {
+                    if (dequeue(queued)) {
+                        reject(sink);
+                    }
+                }, config.getMaxQueueWait().toNanos(), TimeUnit.NANOSECONDS);
+                sink.onCancel(() -> {
+                    if (dequeue(queued)) {
+                        queued.timeout.dispose();
+                    }
+                });
+            }
+        })
+        // A permit handed to a waiter that was cancelled at the same moment is discarded, not leaked
+        .doOnDiscard(Permit.class, permit -> release(permit, Outcome.IGNORED).subscribe());
+    }
+
+    private Mono<Void> release(Permit permit, Outcome outcome) {
+        return Mono.fromRunnable(() -> {
+            long now = nanoClock.getAsLong();
+            Waiter next;
+            synchronized (this) {
+                if (outcome != Outcome.IGNORED) {
+                    sample(now - permit.startNanos(), outcome == Outcome.DROPPED, now);
+                }
+                // The slot passes straight to the oldest waiter unless the limit has shrunk below it
+                next = inFlight <= (int) limit ? waiters.pollFirst() : null;
+                if (next == null) {
+                    inFlight--;
+                }
+            }
+            if (next != null) {
+                Disposable timeout = next.timeout;
+                if (timeout != null) {
+                    timeout.dispose();
+                }
+                next.sink.success(new Permit(now));
+            }
+        });
+    }
+
+    private void sample(long rttNanos, boolean dropped, long now) {
+        if (dropped) {
+            windowDropped = true;
+        } else {
+            windowSamples++;
+            windowRttSum += rttNanos;
+            baselineRtt = Math.min(baselineRtt, rttNanos);
+        }
+        if (now - baselineStart >= config.getBaselinePeriod().toNanos()) {
+            // Keeping the previous period's minimum lets the baseline rise when the database
+            // gets permanently slower without ever leaving the limiter without one
+            previousBaselineRtt = baselineRtt;
+            baselineRtt = Long.MAX_VALUE;
+            baselineStart = now;
+        }
+        if (now - windowStart < config.getWindow().toNanos()) {
+            return;
+        }
+
+        double newLimit = limit;
+        if (windowDropped) {
+            newLimit = limit * BACKOFF_RATIO;
+        } else if (windowSamples > 0) {
+            double baseline = Math.min(baselineRtt, previousBaselineRtt);
+            double rtt = (double) windowRttSum / windowSamples;
+            double queued = limit * (1 - baseline / rtt);
+            double step = Math.max(1, Math.log10(limit));
+            if (queued > 6 * step) {
+                newLimit = limit - step;
+            } else if (queued < 3 * step && windowMaxInFlight * 2 >= limit) {
+                // Only grow a limit that is actually being used
+                newLimit = limit + step;
+            }
+        }
+        limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), newLimit));
+
+        windowStart = now;
+        windowMaxInFlight = inFlight;
+        windowSamples = 0;
+        windowRttSum = 0;
+        windowDropped = false;
+    }
+
+    private synchronized boolean dequeue(Waiter waiter) {
+        return waiters.remove(waiter);
+    }
+
+    private void reject(MonoSink<Permit> sink) {
+        shed.increment();
+        sink.error(new ConcurrencyLimitExceededException(getLimit(), config.getRetryAfter()));
+    }
+
+    private static boolean isOverload(Throwable error) {
+        return error instanceof TimeoutException
+                || error instanceof R2dbcTransientException
+                || error instanceof TransientDataAccessException;
+    }
+
+    private enum Outcome {
+        SUCCESS,
+        DROPPED,
+        IGNORED
+    }
+
+    private record Permit(long startNanos) {
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private volatile Disposable timeout;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.upside.orderprocessing.loadtest;
+
+import com.upside.orderprocessing.exception.InvalidLoadProfileException;
+import com.upside.orderprocessing.model.LoadTestRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * When each arrival of an open-model run is due. The profile is a sequence of segments whose
+ * rate changes linearly, so the arrival count up to any time is a quadratic that can be inverted
+ * exactly: the n-th arrival is due at the time the integral of the rate reaches n. Arrivals are
+ * therefore scheduled independently of how quickly the system under test answers.
+ */
+final class ArrivalSchedule {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Segment[] segments;
+    private final long totalArrivals;
+
+    private ArrivalSchedule(List<Segment> segments, long maxArrivals) {
+        this.segments = segments.toArray(new Segment[0]);
+        Segment last = this.segments[this.segments.length - 1];
+        double scheduled = last.startCount + last.arrivals();
+        this.totalArrivals = (long) Math.min(maxArrivals, Math.floor(scheduled));
+    }
+
+    static ArrivalSchedule of(LoadTestRequest request) {
+        long maxArrivals = request.getNumOrders() != null ? request.getNumOrders() : Long.MAX_VALUE;
+        List<Segment> segments = new ArrayList<>();
+        if (request.getStages() != null && !request.getStages().isEmpty()) {
+            double rate = request.getStartRate();
+            for (LoadTestRequest.Stage stage : request.getStages()) {
+                addSegment(segments, rate, stage.getTargetRate(), stage.getDuration());
+                rate = stage.getTargetRate();
+            }
+        } else {
+            double rate = constantRate(request);
+            if (request.getRampUp() != null) {
+                addSegment(segments, 0, rate, request.getRampUp());
+            }
+            if (request.getDuration() != null) {
+                addSegment(segments, rate, rate, request.getDuration());
+            } else if (request.getNumOrders() != null) {
+                addSegment(segments, rate, rate, null);
+            } else {
+                throw new InvalidLoadProfileException("numOrders, duration or stages must bound the run");
+            }
+        }
+        if (segments.isEmpty()) {
+            throw new InvalidLoadProfileException("the profile schedules no orders");
+        }
+        return new ArrivalSchedule(segments, maxArrivals);
+    }
+
+    private static double constantRate(LoadTestRequest request) {
+        if (request.getRatePerSecond() != null) {
+            return request.getRatePerSecond();
+        }
+        if (request.getBatchSize() != null && request.getDelayBetweenBatches() != null) {
+            return request.getBatchSize() * 1_000.0 / request.getDelayBetweenBatches();
+        }
+        throw new InvalidLoadProfileException("ratePerSecond or stages is required");
+    }
+
+    private static void addSegment(List<Segment> segments, double startRate, double endRate, Duration duration) {
+        if (duration != null && (duration.isNegative() || duration.isZero())) {
+            return;
+        }
+        double startSeconds = 0;
+        double startCount = 0;
+        if (!segments.isEmpty()) {
+            Segment previous = segments.get(segments.size() - 1);
+            startSeconds = previous.startSeconds + previous.seconds;
+            startCount = previous.startCount + previous.arrivals();
+        }
+        double seconds = duration != null ? duration.toNanos() / NANOS_PER_SECOND : Double.POSITIVE_INFINITY;
+        segments.add(new Segment(startSeconds, seconds, startRate, endRate, startCount));
+    }
+
+    long totalArrivals() {
+        return totalArrivals;
+    }
+
+    /**
+     * Nanoseconds after the start of the run at which arrival {@code n} (zero-based) is due.
+     */
+    long offsetNanos(long n) {
+        for (Segment segment : segments) {
+            if (n < segment.startCount + segment.arrivals()) {
+                return (long) ((segment.startSeconds + segment.secondsUntil(n - segment.startCount)) * NANOS_PER_SECOND);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Target arrival rate, in orders per second, at {@code elapsedNanos} into the run.
+     */
+    double rateAt(long elapsedNanos) {
+        double elapsed = elapsedNanos / NANOS_PER_SECOND;
+        for (Segment segment : segments) {
+            if (elapsed < segment.startSeconds + segment.seconds) {
+                return segment.rateAt(elapsed - segment.startSeconds);
+            }
+        }
+        return 0;
+    }
+
+    private record Segment(double startSeconds, double seconds, double startRate, double endRate,
+                           double startCount) {
+        double arrivals() {
+            if (Double.isInfinite(seconds)) {
+                return startRate > 0 ? Double.POSITIVE_INFINITY : 0;
+            }
+            return (startRate + endRate) / 2 * seconds;
+        }
+
+        double rateAt(double t) {
+            return Double.isInfinite(seconds) ? startRate : startRate + (endRate - startRate) * t / seconds;
+        }
+
+        /**
+         * Solves {@code startRate * t + slope / 2 * t^2 = n} for the earliest t. Written as
+         * {@code 2n / (r0 + sqrt(r0^2 + 2 * slope * n))}, which stays exact when the slope is
+         * zero and well conditioned when it is tiny.
+         */
+        double secondsUntil(double n) {
+            double slope = Double.isInfinite(seconds) ? 0 : (endRate - startRate) / seconds;
+            double root = Math.sqrt(Math.max(0, startRate * startRate + 2 * slope * n));
+            double denominator = startRate + root;
+            return denominator > 0 ? 2 * n / denominator : 0;
+        }
+    }
+}
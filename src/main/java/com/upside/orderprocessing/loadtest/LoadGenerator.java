@@ -0,0 +1,167 @@
+package com.upside.orderprocessing.loadtest;
+
+import com.upside.orderprocessing.exception.LoadTestRunningException;
+import com.upside.orderprocessing.model.LoadTestRequest;
+import com.upside.orderprocessing.service.OrderService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Open-model load generator. Orders are sent when the {@link ArrivalSchedule} says they are due,
+ * never because an earlier one completed, so a slow system faces a growing backlog instead of a
+ * politely slowing client. Response times are taken from the due time rather than the send time,
+ * which keeps any delay in sending (coordinated omission) inside the reported percentiles.
+ * Arrivals dropped at the in-flight cap and orders that time out count at the timeout, the
+ * least a client would have waited for them. One test runs at a time.
+ */
+@Slf4j
+@Component
+public class LoadGenerator {
+    private static final long TICK_MICROS = 1_000;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 10_000;
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final OrderService orderService;
+    private final Scheduler dispatcher = Schedulers.newSingle("load-generator");
+    private final AtomicReference<LoadTestRun> current = new AtomicReference<>();
+
+    public LoadGenerator(OrderService orderService) {
+        this.orderService = orderService;
+    }
+
+    /**
+     * Starts a test with the given profile. Errors with {@link LoadTestRunningException} while
+     * another test is running.
+     */
+    public Map<String, Object> start(LoadTestRequest request) {
+        ArrivalSchedule schedule = ArrivalSchedule.of(request);
+        int maxInFlight = request.getMaxInFlight() != null ? request.getMaxInFlight() : DEFAULT_MAX_IN_FLIGHT;
+        Duration timeout = request.getTimeout() != null ? request.getTimeout() : DEFAULT_TIMEOUT;
+        LoadTestRun run = new LoadTestRun(UUID.randomUUID().toString(), request, schedule, maxInFlight, timeout);
+
+        LoadTestRun previous = current.get();
+        if (previous != null && previous.isRunning()) {
+            throw new LoadTestRunningException(previous.id);
+        }
+        if (!current.compareAndSet(previous, run)) {
+            throw new LoadTestRunningException(current.get().id);
+        }
+        log.info("Load test {} started: {}", run.id, request);
+        run.ticker.update(dispatcher.schedulePeriodically(() -> dispatchDue(run), 0, TICK_MICROS, TimeUnit.MICROSECONDS));
+        return run.status();
+    }
+
+    /**
+     * Stops sending and abandons outstanding orders of the running test, if any, and returns
+     * the status of the latest test.
+     */
+    public Map<String, Object> stop() {
+        LoadTestRun run = current.get();
+        if (run == null) {
+            return idle();
+        }
+        if (run.finish(LoadTestRun.State.STOPPED)) {
+            run.ticker.dispose();
+            run.stopSignal.tryEmitEmpty();
+            log.info("Load test {} stopped", run.id);
+        }
+        return run.status();
+    }
+
+    public Map<String, Object> status() {
+        LoadTestRun run = current.get();
+        return run != null ? run.status() : idle();
+    }
+
+    private void dispatchDue(LoadTestRun run) {
+        if (!run.isRunning()) {
+            return;
+        }
+        long elapsed = System.nanoTime() - run.startNanos;
+        long total = run.schedule.totalArrivals();
+        long due;
+        while (run.isRunning() && run.dispatched < total
+                && (due = run.schedule.offsetNanos(run.dispatched)) <= elapsed) {
+            dispatch(run, run.startNanos + due);
+            run.dispatched++;
+        }
+        if (run.dispatched >= total) {
+            run.ticker.dispose();
+            run.dispatchDone = true;
+            if (run.inFlight.get() == 0) {
+                complete(run);
+            }
+        }
+    }
+
+    private void dispatch(LoadTestRun run, long dueNanos) {
+        if (run.inFlight.get() >= run.maxInFlight) {
+            run.dropped.increment();
+            run.responseTime.record(run.timeout.toNanos());
+            return;
+        }
+        run.inFlight.incrementAndGet();
+        run.sent.increment();
+        long sentNanos = System.nanoTime();
+        try {
+            orderService.processOrder(TestOrders.createTestOrder())
+                    .timeout(run.timeout)
+                    .takeUntilOther(run.stopSignal.asMono())
+                    .subscribe(order -> {
+                                long now = System.nanoTime();
+                                run.responseTime.record(now - dueNanos);
+                                run.serviceTime.record(now - sentNanos);
+                                run.completed.increment();
+                            },
+                            e -> {
+                                if (e instanceof TimeoutException) {
+                                    run.responseTime.record(System.nanoTime() - dueNanos);
+                                }
+                                recordFailure(run, e);
+                                release(run);
+                            },
+                            () -> release(run));
+        } catch (RuntimeException e) {
+            recordFailure(run, e);
+            release(run);
+        }
+    }
+
+    private void recordFailure(LoadTestRun run, Throwable e) {
+        run.failed.increment();
+        run.errors.computeIfAbsent(e.getClass().getSimpleName(), type -> new LongAdder()).increment();
+    }
+
+    private void release(LoadTestRun run) {
+        if (run.inFlight.decrementAndGet() == 0 && run.dispatchDone) {
+            complete(run);
+        }
+    }
+
+    private void complete(LoadTestRun run) {
+        if (run.finish(LoadTestRun.State.COMPLETED)) {
+            log.info("Load test {} completed: {}", run.id, run.status());
+        }
+    }
+
+    private static Map<String, Object> idle() {
+        return Map.of("state", "IDLE", "isRunning", false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+        dispatcher.dispose();
+    }
+}
@@ -0,0 +1,137 @@
+package com.upside.orderprocessing.loadtest;
+
+import com.upside.orderprocessing.analytics.LatencyHistogram;
+import com.upside.orderprocessing.model.LoadTestRequest;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * State of one load test. Everything recorded per order goes into counters and histograms of
+ * fixed size, so a run of any length needs the same memory.
+ */
+final class LoadTestRun {
+    enum State {
+        RUNNING, COMPLETED, STOPPED
+    }
+
+    final String id;
+    final ArrivalSchedule schedule;
+    final int maxInFlight;
+    final Duration timeout;
+    final long startNanos = System.nanoTime();
+    final Instant startedAt = Instant.now();
+    final Sinks.Empty<Void> stopSignal = Sinks.empty();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final AtomicLong inFlight = new AtomicLong();
+    final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    // Measured from when an order was due, so time spent waiting to be sent is not hidden; dropped
+    // and timed out orders are in it too, at the timeout
+    final LatencyHistogram responseTime = new LatencyHistogram();
+    // Measured from when an order was actually sent
+    final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.RUNNING);
+    private final LoadTestRequest request;
+    private volatile long finishedNanos;
+    volatile boolean dispatchDone;
+    // Only touched by the dispatching thread
+    long dispatched;
+    // Disposing it before the ticker is set also cancels the ticker once it is
+    final Disposable.Swap ticker = Disposables.swap();
+
+    LoadTestRun(String id, LoadTestRequest request, ArrivalSchedule schedule, int maxInFlight, Duration timeout) {
+        this.id = id;
+        this.request = request;
+        this.schedule = schedule;
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+    }
+
+    boolean isRunning() {
+        return state.get() == State.RUNNING;
+    }
+
+    /**
+     * Moves a running test to {@code finalState}; returns false when it had already finished.
+     */
+    boolean finish(State finalState) {
+        if (!state.compareAndSet(State.RUNNING, finalState)) {
+            return false;
+        }
+        finishedNanos = System.nanoTime();
+        return true;
+    }
+
+    Map<String, Object> status() {
+        State current = state.get();
+        long elapsedNanos = (current == State.RUNNING ? System.nanoTime() : finishedNanos) - startNanos;
+        long completedOrders = completed.sum();
+        long failedOrders = failed.sum();
+        long droppedOrders = dropped.sum();
+        long attempted = sent.sum() + droppedOrders;
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("runId", id);
+        status.put("state", current);
+        status.put("isRunning", current == State.RUNNING);
+        status.put("startedAt", startedAt);
+        status.put("elapsedMillis", elapsedNanos / 1_000_000);
+        status.put("profile", request);
+        status.put("plannedOrders", schedule.totalArrivals() == Long.MAX_VALUE ? null : schedule.totalArrivals());
+        status.put("targetRate", current == State.RUNNING ? schedule.rateAt(elapsedNanos) : 0.0);
+        status.put("sent", sent.sum());
+        status.put("completed", completedOrders);
+        status.put("failed", failedOrders);
+        status.put("dropped", droppedOrders);
+        status.put("inFlight", inFlight.get());
+        status.put("throughput", elapsedNanos > 0 ? completedOrders * 1e9 / elapsedNanos : 0.0);
+
+        Map<String, Object> responseTimes = summary(responseTime);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("responseTime", responseTimes);
+        latency.put("serviceTime", summary(serviceTime));
+        status.put("latency", latency);
+
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+        errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+        status.put("errors", errorCounts);
+
+        if (current != State.RUNNING) {
+            double successRate = attempted > 0 ? completedOrders * 100.0 / attempted : 0;
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("totalTime", elapsedNanos / 1e9);
+            metrics.put("avgLatency", responseTimes.get("mean"));
+            metrics.put("successRate", successRate);
+            metrics.put("errorRate", attempted > 0 ? (failedOrders + droppedOrders) * 100.0 / attempted : 0.0);
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("success", current == State.COMPLETED && failedOrders + droppedOrders == 0);
+            results.put("message", current == State.COMPLETED
+                    ? "Load test completed: " + completedOrders + " of " + attempted + " orders processed"
+                    : "Load test stopped after " + attempted + " orders");
+            results.put("metrics", metrics);
+            status.put("results", results);
+        }
+        return status;
+    }
+
+    private static Map<String, Object> summary(LatencyHistogram histogram) {
+        Map<String, Object> summary = LatencyHistogram.summary(histogram);
+        long samples = (long) summary.get("samples");
+        summary.put("mean", samples > 0 ? histogram.getTotalMicros() / 1_000.0 / samples : 0.0);
+        return summary;
+    }
+}
@@ -0,0 +1,48 @@
+package com.upside.orderprocessing.loadtest;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Synthetic orders for load tests. Customer and product ids come from pools generated once, and
+ * order numbers are a per-process prefix plus a counter, so producing an order costs a few
+ * small allocations instead of random UUIDs. Customers are spread evenly over the pool.
+ */
+public final class TestOrders {
+    private static final int CUSTOMERS = 1024;
+    private static final int PRODUCTS = 256;
+    private static final BigDecimal AMOUNT = new BigDecimal("100.00");
+
+    // Unique per process, so numbers do not collide with orders left over from earlier runs
+    private static final String ORDER_NUMBER_PREFIX = "STRESS-" + UUID.randomUUID().toString().substring(0, 8) + "-";
+    private static final String[] CUSTOMER_IDS = pool("CUST-", CUSTOMERS);
+    private static final String[] PRODUCT_IDS = pool("PROD-", PRODUCTS);
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private TestOrders() {
+    }
+
+    public static Order createTestOrder() {
+        long n = SEQUENCE.incrementAndGet();
+        Order order = new Order();
+        order.setOrderNumber(ORDER_NUMBER_PREFIX + n);
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotalAmount(AMOUNT);
+        order.setCustomerId(CUSTOMER_IDS[(int) (n % CUSTOMERS)]);
+        order.setProductId(PRODUCT_IDS[(int) (n % PRODUCTS)]);
+        order.setQuantity(1);
+        return order;
+    }
+
+    private static String[] pool(String prefix, int size) {
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = prefix + UUID.randomUUID().toString().substring(0, 8);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,18 @@
+package com.upside.orderprocessing.model;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class BulkStatusUpdateRequest {
+    @NotNull
+    private OrderStatus status;
+
+    @NotEmpty
+    private List<@NotNull Long> ids;
+}
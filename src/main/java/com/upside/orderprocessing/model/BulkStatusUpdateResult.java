@@ -0,0 +1,36 @@
+package com.upside.orderprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkStatusUpdateResult {
+    private OrderStatus status;
+
+    private int requested;
+
+    private List<Long> updated;
+
+    private List<Conflict> conflicts;
+
+    public enum Reason {
+        NOT_FOUND,
+        ILLEGAL_TRANSITION
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Conflict {
+        private Long id;
+
+        private Reason reason;
+
+        private OrderStatus currentStatus;
+    }
+}
@@ -0,0 +1,19 @@
+package com.upside.orderprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Orders accepted for asynchronous ingestion, with one tracking id per order in request order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionReceipt {
+    private int accepted;
+
+    private List<String> trackingIds;
+}
@@ -0,0 +1,30 @@
+package com.upside.orderprocessing.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Where an order accepted for asynchronous ingestion is: still queued, written with
+ * {@code orderId}, or failed with {@code error}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestionStatus {
+    private String trackingId;
+
+    private State state;
+
+    private Long orderId;
+
+    private String error;
+
+    public enum State {
+        QUEUED,
+        WRITTEN,
+        FAILED
+    }
+}
@@ -0,0 +1,89 @@
+package com.upside.orderprocessing.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Open-model load profile: orders arrive at a target rate regardless of how fast earlier ones
+ * complete. Either give {@code ratePerSecond} (optionally with {@code rampUp}) or a list of
+ * {@code stages}, and bound the run with {@code numOrders}, {@code duration} or the stages.
+ */
+@Data
+@NoArgsConstructor
+public class LoadTestRequest {
+    /**
+     * Upper bound on the orders sent; the run also ends when the profile does.
+     */
+    @Positive
+    private Long numOrders;
+
+    /**
+     * Constant arrival rate, in orders per second.
+     */
+    @Positive
+    private Double ratePerSecond;
+
+    /**
+     * Linear ramp from zero to {@code ratePerSecond} before the constant phase.
+     */
+    private Duration rampUp;
+
+    /**
+     * Length of the constant phase; unbounded when only {@code numOrders} is given.
+     */
+    private Duration duration;
+
+    /**
+     * Rate at which the first stage starts.
+     */
+    @PositiveOrZero
+    private double startRate;
+
+    /**
+     * Stages whose rate moves linearly from the previous stage's target to their own.
+     */
+    private List<@Valid @NotNull Stage> stages;
+
+    /**
+     * Requests that may be outstanding at once; arrivals beyond it are counted as dropped
+     * instead of delaying later arrivals.
+     */
+    @Positive
+    private Integer maxInFlight;
+
+    /**
+     * How long a sent order is waited for before it counts as failed; 30 seconds by default.
+     * Dropped arrivals are recorded in the response times at this value, so saturation shows up
+     * in the percentiles rather than only in {@code dropped}.
+     */
+    private Duration timeout;
+
+    /**
+     * With {@code delayBetweenBatches}, the arrival rate of older clients that send batches:
+     * {@code batchSize} orders every {@code delayBetweenBatches} milliseconds.
+     */
+    @Positive
+    private Integer batchSize;
+
+    @Positive
+    private Long delayBetweenBatches;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Stage {
+        @PositiveOrZero
+        private double targetRate;
+
+        @NotNull
+        private Duration duration;
+    }
+}
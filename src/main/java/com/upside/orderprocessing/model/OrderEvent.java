@@ -0,0 +1,50 @@
+package com.upside.orderprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A change to an order as recorded in the {@code order_events} outbox.
+ */
+@Table("order_events")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+    @Id
+    private Long id;
+
+    private Long orderId;
+
+    private String orderNumber;
+
+    private String customerId;
+
+    /**
+     * Status of the order after the change.
+     */
+    private OrderStatus status;
+
+    /**
+     * Total amount and version of the order after the change, which order changes to the same
+     * order when they are seen out of sequence.
+     */
+    private BigDecimal totalAmount;
+
+    private Long version;
+
+    private Type type;
+
+    private LocalDateTime createdAt;
+
+    public enum Type {
+        CREATED,
+        STATUS_CHANGED
+    }
+}
@@ -0,0 +1,32 @@
+package com.upside.orderprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional listing filters; null fields do not restrict the result. The time range is
+ * inclusive of {@code createdFrom} and exclusive of {@code createdTo}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderFilter {
+    private OrderStatus status;
+
+    private String customerId;
+
+    private String productId;
+
+    private LocalDateTime createdFrom;
+
+    private LocalDateTime createdTo;
+
+    public static OrderFilter byStatus(OrderStatus status) {
+        OrderFilter filter = new OrderFilter();
+        filter.setStatus(status);
+        return filter;
+    }
+}
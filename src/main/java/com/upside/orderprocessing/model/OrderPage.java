@@ -0,0 +1,19 @@
+package com.upside.orderprocessing.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPage {
+    private List<Order> items;
+
+    /**
+     * Opaque cursor for the next page, or null when this is the last page.
+     */
+    private String nextCursor;
+}
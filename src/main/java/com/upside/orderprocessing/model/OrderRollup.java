@@ -0,0 +1,32 @@
+package com.upside.orderprocessing.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Number of orders that entered {@code status}, and their total amount, aggregated over the
+ * dimensions a query groups by. Dimensions it does not group by are null and left out of JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderRollup {
+    /**
+     * Start of the minute, or of the day for product rollups.
+     */
+    private LocalDateTime bucket;
+
+    private OrderStatus status;
+
+    private String productId;
+
+    private long orderCount;
+
+    private BigDecimal revenue;
+}
@@ -1,9 +1,46 @@
 package com.upside.orderprocessing.model;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 public enum OrderStatus {
     PENDING,
     PROCESSING,
     COMPLETED,
     CANCELLED,
-    FAILED
-} 
\ No newline at end of file
+    FAILED;
+
+    private static final Map<OrderStatus, Set<OrderStatus>> TARGETS = new EnumMap<>(OrderStatus.class);
+    private static final Map<OrderStatus, Set<OrderStatus>> SOURCES = new EnumMap<>(OrderStatus.class);
+
+    static {
+        TARGETS.put(PENDING, EnumSet.of(PROCESSING, CANCELLED, FAILED));
+        TARGETS.put(PROCESSING, EnumSet.of(COMPLETED, CANCELLED, FAILED));
+        TARGETS.put(FAILED, EnumSet.of(PENDING, CANCELLED));
+        TARGETS.put(COMPLETED, EnumSet.noneOf(OrderStatus.class));
+        TARGETS.put(CANCELLED, EnumSet.noneOf(OrderStatus.class));
+
+        for (OrderStatus status : values()) {
+            SOURCES.put(status, EnumSet.noneOf(OrderStatus.class));
+        }
+        TARGETS.forEach((source, targets) -> targets.forEach(target -> SOURCES.get(target).add(source)));
+    }
+
+    public boolean canTransitionTo(OrderStatus target) {
+        return TARGETS.get(this).contains(target);
+    }
+
+    public boolean isTerminal() {
+        return TARGETS.get(this).isEmpty();
+    }
+
+    /**
+     * Statuses an order may be in for a move to {@code target} to be legal.
+     */
+    public static Set<OrderStatus> sourcesOf(OrderStatus target) {
+        return Collections.unmodifiableSet(SOURCES.get(target));
+    }
+}
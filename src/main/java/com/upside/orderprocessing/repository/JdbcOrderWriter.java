@@ -0,0 +1,209 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.ConcurrencyLimitExceededException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes new orders over JDBC when {@code app.order.persistence.engine} is {@code jdbc}. Each
+ * chunk is one JDBC batch followed by the outbox events of the rows it inserted, committed
+ * together. Calls block, so they run on workers of their own that each keep one connection,
+ * which makes the worker count the connection pool size as well.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.order.persistence", name = "engine", havingValue = "jdbc")
+public class JdbcOrderWriter {
+    private static final String INSERT_SQL = "INSERT INTO orders (order_number, status, total_amount, "
+            + "customer_id, product_id, quantity, created_at, updated_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_EVENTS_SQL = "INSERT INTO order_events "
+            + "(order_id, order_number, customer_id, status, total_amount, version, type, created_at) "
+            + "SELECT id, order_number, customer_id, status, total_amount, version, 'CREATED', CURRENT_TIMESTAMP "
+            + "FROM orders WHERE order_number = ANY(?)";
+    private static final String SELECT_SQL = "SELECT " + OrderRetentionRepositoryImpl.COLUMNS
+            + " FROM orders WHERE order_number = ANY(?)";
+
+    private final OrderProcessingProperties.Jdbc jdbc;
+    private final String insertSql;
+    private final Duration retryAfter;
+    private final ExecutorService executor;
+    private final Scheduler scheduler;
+    private final ThreadLocal<Connection> connection = new ThreadLocal<>();
+    private final Queue<Connection> connections = new ConcurrentLinkedQueue<>();
+
+    public JdbcOrderWriter(OrderProcessingProperties properties) {
+        this.jdbc = properties.getPersistence().getJdbc();
+        if (jdbc.getUrl() == null) {
+            throw new IllegalStateException("app.order.persistence.jdbc.url is required for the jdbc engine");
+        }
+        // PostgreSQL skips rows with a taken order number in a trigger, see OrderBulkRepositoryImpl
+        this.insertSql = jdbc.getUrl().startsWith("jdbc:h2:") ? INSERT_SQL + " ON CONFLICT DO NOTHING" : INSERT_SQL;
+        this.retryAfter = properties.getLimiter().getRetryAfter();
+        AtomicInteger workers = new AtomicInteger();
+        // Bounded, so a slow database pushes back on callers instead of filling the heap
+        this.executor = new ThreadPoolExecutor(jdbc.getPoolSize(), jdbc.getPoolSize(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(jdbc.getQueueDepth()), task -> {
+            Thread thread = new Thread(task, "order-jdbc-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Schedulers.fromExecutorService(executor, "order-jdbc");
+    }
+
+    /**
+     * Inserts the orders, skipping those whose number is taken, and emits the inserted rows in
+     * no particular order. Orders must have their timestamps and version set. Fails with
+     * {@link ConcurrencyLimitExceededException} when {@code queue-depth} batches already wait.
+     */
+    public Flux<Order> insert(List<Order> orders) {
+        return Mono.fromCallable(() -> insertBlocking(orders))
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class,
+                        e -> new ConcurrencyLimitExceededException(jdbc.getPoolSize() + jdbc.getQueueDepth(), retryAfter))
+                .flatMapIterable(rows -> rows);
+    }
+
+    private List<Order> insertBlocking(List<Order> orders) throws SQLException {
+        Connection conn = connection();
+        try {
+            List<String> inserted = new ArrayList<>(orders.size());
+            try (PreparedStatement statement = conn.prepareStatement(insertSql)) {
+                for (Order order : orders) {
+                    statement.setString(1, order.getOrderNumber());
+                    statement.setString(2, order.getStatus() != null ? order.getStatus().name() : null);
+                    statement.setBigDecimal(3, order.getTotalAmount());
+                    statement.setString(4, order.getCustomerId());
+                    statement.setString(5, order.getProductId());
+                    if (order.getQuantity() != null) {
+                        statement.setInt(6, order.getQuantity());
+                    } else {
+                        statement.setNull(6, Types.INTEGER);
+                    }
+                    statement.setObject(7, order.getCreatedAt());
+                    statement.setObject(8, order.getUpdatedAt());
+                    statement.setLong(9, order.getVersion());
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                        throw new IllegalStateException("The JDBC driver did not report which orders were "
+                                + "inserted; turn off batch rewriting (reWriteBatchedInserts) in the JDBC URL");
+                    }
+                    if (counts[i] > 0) {
+                        inserted.add(orders.get(i).getOrderNumber());
+                    }
+                }
+            }
+
+            List<Order> rows = new ArrayList<>(inserted.size());
+            if (!inserted.isEmpty()) {
+                Array numbers = conn.createArrayOf("VARCHAR", inserted.toArray());
+                try (PreparedStatement events = conn.prepareStatement(INSERT_EVENTS_SQL)) {
+                    events.setArray(1, numbers);
+                    events.executeUpdate();
+                }
+                try (PreparedStatement select = conn.prepareStatement(SELECT_SQL)) {
+                    select.setArray(1, numbers);
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            rows.add(read(resultSet));
+                        }
+                    }
+                }
+            }
+            conn.commit();
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            rollback(conn);
+            throw e;
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        Connection conn = connection.get();
+        if (conn != null) {
+            return conn;
+        }
+        conn = DriverManager.getConnection(jdbc.getUrl(), jdbc.getUsername(), jdbc.getPassword());
+        conn.setAutoCommit(false);
+        connection.set(conn);
+        connections.add(conn);
+        return conn;
+    }
+
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+            if (conn.isValid(1)) {
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn("Rollback failed, reconnecting", e);
+        }
+        // A broken connection is replaced on this worker's next write
+        connection.remove();
+        connections.remove(conn);
+        close(conn);
+    }
+
+    private static Order read(ResultSet resultSet) throws SQLException {
+        Order order = new Order();
+        order.setId(resultSet.getLong("id"));
+        order.setOrderNumber(resultSet.getString("order_number"));
+        order.setStatus(OrderStatus.valueOf(resultSet.getString("status")));
+        order.setTotalAmount(resultSet.getBigDecimal("total_amount"));
+        order.setCustomerId(resultSet.getString("customer_id"));
+        order.setProductId(resultSet.getString("product_id"));
+        order.setQuantity(resultSet.getInt("quantity"));
+        order.setCreatedAt(resultSet.getObject("created_at", LocalDateTime.class));
+        order.setUpdatedAt(resultSet.getObject("updated_at", LocalDateTime.class));
+        order.setVersion(resultSet.getLong("version"));
+        return order;
+    }
+
+    private static void close(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.debug("Closing a JDBC connection failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+        executor.shutdown();
+        connections.forEach(JdbcOrderWriter::close);
+    }
+}
@@ -0,0 +1,19 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Set-based write operations that bypass the one-statement-per-entity
+ * behaviour of {@link org.springframework.data.repository.reactive.ReactiveCrudRepository#save}.
+ */
+public interface OrderBulkRepository {
+    /**
+     * Inserts all orders with multi-row INSERT statements and emits one persisted row per
+     * input, in input order. Insertion is idempotent on the order number: an order whose
+     * number already exists, in the table or earlier in the list, resolves to that row.
+     */
+    Flux<Order> insertAll(List<Order> orders);
+}
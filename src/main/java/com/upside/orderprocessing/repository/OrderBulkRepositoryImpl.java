@@ -0,0 +1,230 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class OrderBulkRepositoryImpl implements OrderBulkRepository {
+    private static final String INSERT_PREFIX = "INSERT INTO orders (order_number, status, total_amount, "
+            + "customer_id, product_id, quantity, created_at, updated_at, version) VALUES ";
+    private static final int COLUMN_COUNT = 9;
+
+    // PostgreSQL rejects statements with more than 32767 bind parameters
+    static final int MAX_ROWS_PER_STATEMENT = Short.MAX_VALUE / COLUMN_COUNT;
+    // Each attempt past the first needs an order deleted between its insert and read-back
+    private static final int INSERT_ATTEMPTS = 3;
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+    private final ObjectProvider<OrderNumberFilter> orderNumberFilter;
+    private final JdbcOrderWriter jdbcWriter;
+    private final OrderEventOutbox outbox;
+    private final String onConflictDoNothing;
+
+    public OrderBulkRepositoryImpl(DatabaseClient databaseClient, R2dbcConverter converter,
+                                   ReactiveTransactionManager transactionManager,
+                                   ObjectProvider<OrderNumberFilter> orderNumberFilter,
+                                   ObjectProvider<JdbcOrderWriter> jdbcWriter) {
+        this.databaseClient = databaseClient;
+        this.converter = converter;
+        this.orderNumberFilter = orderNumberFilter;
+        this.jdbcWriter = jdbcWriter.getIfAvailable();
+        this.outbox = new OrderEventOutbox(databaseClient, converter, transactionManager);
+        // PostgreSQL skips rows with a taken order number in a trigger, since its partitioned
+        // orders table cannot carry a unique index on the number alone
+        this.onConflictDoNothing = OrderEventOutbox.isH2(databaseClient) ? " ON CONFLICT DO NOTHING" : "";
+    }
+
+    @Override
+    public Flux<Order> insertAll(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> {
+            // The pipeline validates its orders, but the other write paths reach this unchecked
+            for (Order order : orders) {
+                if (!StringUtils.hasText(order.getOrderNumber())) {
+                    return Flux.error(new InvalidOrderException(order.getOrderNumber(), "order number is required"));
+                }
+            }
+            OrderNumberFilter filter = orderNumberFilter.getIfAvailable();
+            Map<String, Order> persisted = new HashMap<>(orders.size() * 2);
+            Set<String> probablyPersisted = new LinkedHashSet<>();
+            if (filter != null) {
+                for (Order order : orders) {
+                    if (filter.mightContain(order.getOrderNumber())) {
+                        probablyPersisted.add(order.getOrderNumber());
+                    }
+                }
+            }
+
+            return findAllByOrderNumber(probablyPersisted)
+                    .doOnNext(order -> persisted.put(order.getOrderNumber(), order))
+                    .then(Mono.defer(() -> insertUnpersisted(orders, persisted, INSERT_ATTEMPTS)))
+                    .thenMany(Flux.defer(() -> {
+                        if (filter != null) {
+                            persisted.keySet().forEach(filter::put);
+                        }
+                        List<Order> results = new ArrayList<>(orders.size());
+                        for (Order order : orders) {
+                            Order row = persisted.get(order.getOrderNumber());
+                            if (row == null) {
+                                return Flux.error(new IllegalStateException(
+                                        "Order " + order.getOrderNumber() + " was neither inserted nor found"));
+                            }
+                            results.add(row);
+                        }
+                        return Flux.fromIterable(results);
+                    }));
+        });
+    }
+
+    /**
+     * Inserts the orders not persisted yet and reads back those skipped for a taken number, which
+     * another instance or request wrote. If that order was deleted before it could be read, its
+     * number is free again, so the order is inserted once more rather than failing the batch.
+     */
+    private Mono<Void> insertUnpersisted(List<Order> orders, Map<String, Order> persisted, int attempts) {
+        return insertChunks(unpersisted(orders, persisted))
+                .doOnNext(order -> persisted.put(order.getOrderNumber(), order))
+                .thenMany(Flux.defer(() -> findAllByOrderNumber(missing(orders, persisted))))
+                .doOnNext(order -> persisted.put(order.getOrderNumber(), order))
+                .then(Mono.defer(() -> attempts > 1 && !missing(orders, persisted).isEmpty()
+                        ? insertUnpersisted(orders, persisted, attempts - 1)
+                        : Mono.empty()));
+    }
+
+    private Flux<Order> findAllByOrderNumber(Set<String> orderNumbers) {
+        if (orderNumbers.isEmpty()) {
+            return Flux.empty();
+        }
+        // Archived orders keep their numbers, so a resubmitted one resolves to its archived row
+        String columns = OrderRetentionRepositoryImpl.COLUMNS;
+        return databaseClient.sql("SELECT " + columns + " FROM orders WHERE order_number = ANY($1) UNION ALL "
+                        + "SELECT " + columns + " FROM orders_archive WHERE order_number = ANY($1)")
+                .bind(0, orderNumbers.toArray(String[]::new))
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .all();
+    }
+
+    private static List<Order> unpersisted(List<Order> orders, Map<String, Order> persisted) {
+        // Only the first of several orders sharing a number is inserted; the rest resolve to its row
+        Set<String> seen = new HashSet<>();
+        List<Order> pending = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            if (!persisted.containsKey(order.getOrderNumber()) && seen.add(order.getOrderNumber())) {
+                pending.add(order);
+            }
+        }
+        return pending;
+    }
+
+    private static Set<String> missing(List<Order> orders, Map<String, Order> persisted) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (Order order : orders) {
+            if (!persisted.containsKey(order.getOrderNumber())) {
+                missing.add(order.getOrderNumber());
+            }
+        }
+        return missing;
+    }
+
+    private Flux<Order> insertChunks(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return Flux.empty();
+        }
+        if (orders.size() <= MAX_ROWS_PER_STATEMENT) {
+            return insertChunk(orders);
+        }
+        return Flux.range(0, (orders.size() + MAX_ROWS_PER_STATEMENT - 1) / MAX_ROWS_PER_STATEMENT)
+                .concatMap(chunk -> insertChunk(orders.subList(
+                        chunk * MAX_ROWS_PER_STATEMENT,
+                        Math.min(orders.size(), (chunk + 1) * MAX_ROWS_PER_STATEMENT))));
+    }
+
+    private Flux<Order> insertChunk(List<Order> orders) {
+        LocalDateTime now = LocalDateTime.now();
+        for (Order order : orders) {
+            if (order.getCreatedAt() == null) {
+                order.setCreatedAt(now);
+            }
+            if (order.getUpdatedAt() == null) {
+                order.setUpdatedAt(now);
+            }
+            if (order.getVersion() == null) {
+                order.setVersion(1L);
+            }
+        }
+        if (jdbcWriter != null) {
+            return jdbcWriter.insert(orders);
+        }
+
+        // Parameters are bound on the driver statement directly: DatabaseClient copies its
+        // binding map on every bind() call, which is quadratic for thousands of parameters.
+        // Conflicting rows are skipped rather than returned, so results are matched by order number.
+        return outbox.execute(buildInsertSql(orders.size()) + onConflictDoNothing, OrderEvent.Type.CREATED,
+                statement -> bindAll(statement, orders));
+    }
+
+    private static Statement bindAll(Statement statement, List<Order> orders) {
+        int index = 0;
+        for (Order order : orders) {
+            bind(statement, index++, order.getOrderNumber(), String.class);
+            bind(statement, index++, order.getStatus() != null ? order.getStatus().name() : null, String.class);
+            bind(statement, index++, order.getTotalAmount(), BigDecimal.class);
+            bind(statement, index++, order.getCustomerId(), String.class);
+            bind(statement, index++, order.getProductId(), String.class);
+            bind(statement, index++, order.getQuantity(), Integer.class);
+            bind(statement, index++, order.getCreatedAt(), LocalDateTime.class);
+            bind(statement, index++, order.getUpdatedAt(), LocalDateTime.class);
+            bind(statement, index++, order.getVersion(), Long.class);
+        }
+        return statement;
+    }
+
+    private static void bind(Statement statement, int index, Object value, Class<?> type) {
+        if (value != null) {
+            statement.bind(index, value);
+        } else {
+            statement.bindNull(index, type);
+        }
+    }
+
+    static String buildInsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * COLUMN_COUNT * 6);
+        sql.append(INSERT_PREFIX);
+        int parameter = 1;
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                sql.append(", ");
+            }
+            sql.append('(');
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                if (column > 0) {
+                    sql.append(", ");
+                }
+                sql.append('$').append(parameter++);
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import io.r2dbc.spi.Statement;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs statements that change orders and records an {@link OrderEvent} for every changed row
+ * in the {@code order_events} outbox, atomically with the change. On PostgreSQL both happen in
+ * one statement through a writable CTE; H2 has neither those nor {@code RETURNING}, so it reads
+ * the changed rows through {@code FINAL TABLE} and inserts the events in the same transaction.
+ */
+final class OrderEventOutbox {
+    private static final String EVENT_COLUMNS = "order_id, order_number, customer_id, status, total_amount, version, type, created_at";
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+    private final TransactionalOperator transactionalOperator;
+    private final boolean supportsWritableCtes;
+
+    OrderEventOutbox(DatabaseClient databaseClient, R2dbcConverter converter,
+                     ReactiveTransactionManager transactionManager) {
+        this.databaseClient = databaseClient;
+        this.converter = converter;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+        this.supportsWritableCtes = !isH2(databaseClient);
+    }
+
+    static boolean isH2(DatabaseClient databaseClient) {
+        return "H2".equals(databaseClient.getConnectionFactory().getMetadata().getName());
+    }
+
+    /**
+     * Runs {@code dml}, an INSERT into or UPDATE of orders without a {@code RETURNING} clause,
+     * and emits the rows it changed.
+     */
+    Flux<Order> execute(String dml, OrderEvent.Type type, UnaryOperator<Statement> binder) {
+        String eventSelect = "SELECT id, order_number, customer_id, status, total_amount, version, '" + type.name()
+                + "', CURRENT_TIMESTAMP FROM ";
+        if (supportsWritableCtes) {
+            return databaseClient.sql("WITH changed AS (" + dml + " RETURNING *), "
+                            + "events AS (INSERT INTO order_events (" + EVENT_COLUMNS + ") " + eventSelect + "changed) "
+                            + "SELECT * FROM changed")
+                    .filter(binder::apply)
+                    .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                    .all();
+        }
+        return databaseClient.sql("SELECT * FROM FINAL TABLE (" + dml + ")")
+                .filter(binder::apply)
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .all()
+                .collectList()
+                .flatMapMany(changed -> {
+                    if (changed.isEmpty()) {
+                        return Flux.empty();
+                    }
+                    return databaseClient.sql("INSERT INTO order_events (" + EVENT_COLUMNS + ") "
+                                    + eventSelect + "orders WHERE id = ANY($1)")
+                            .bind(0, changed.stream().map(Order::getId).toArray(Long[]::new))
+                            .then()
+                            .thenMany(Flux.fromIterable(changed));
+                })
+                .as(transactionalOperator::transactional);
+    }
+}
@@ -0,0 +1,24 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.OrderEvent;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface OrderEventRepository extends ReactiveCrudRepository<OrderEvent, Long> {
+    @Query("SELECT * FROM order_events WHERE id > :afterId ORDER BY id LIMIT :limit")
+    Flux<OrderEvent> findAfter(long afterId, int limit);
+
+    @Query("SELECT COALESCE(MAX(id), 0) FROM order_events")
+    Mono<Long> findLatestId();
+
+    @Modifying
+    @Query("DELETE FROM order_events WHERE created_at < :cutoff")
+    Mono<Integer> deleteCreatedBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,43 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Leases on orders, so that several instances can work through the same orders without
+ * coordinating: an order is worked on by whoever holds its lease, until the lease is released or
+ * runs out. Claims lock their rows with {@code FOR UPDATE SKIP LOCKED}, so concurrent claimers
+ * skip each other's rows instead of waiting for them or claiming them twice. An owner should name
+ * a single claim rather than an instance, so that renewing or releasing a claim that was given up
+ * cannot touch orders claimed again since; any status change made elsewhere ends the lease too.
+ */
+public interface OrderLeaseRepository {
+    /**
+     * Moves up to {@code limit} PENDING orders, oldest first, to PROCESSING, leased to
+     * {@code owner} until {@code expiresAt}, and emits them.
+     */
+    Flux<Order> claimPending(String owner, LocalDateTime expiresAt, int limit);
+
+    /**
+     * Leases to {@code owner} up to {@code limit} PROCESSING orders whose lease ran out before
+     * {@code now}, and emits them. Their status and version stay as they are.
+     */
+    Flux<Order> claimExpired(String owner, LocalDateTime now, LocalDateTime expiresAt, int limit);
+
+    /**
+     * Extends the leases {@code owner} still holds on {@code ids} to {@code expiresAt}, and
+     * returns how many it still holds.
+     */
+    Mono<Integer> renewLeases(String owner, Collection<Long> ids, LocalDateTime expiresAt);
+
+    /**
+     * Moves the orders of {@code ids} that {@code owner} still holds from PROCESSING to
+     * {@code target}, ends their leases, and emits the updated rows.
+     */
+    Flux<Order> releaseLeases(String owner, Collection<Long> ids, OrderStatus target);
+}
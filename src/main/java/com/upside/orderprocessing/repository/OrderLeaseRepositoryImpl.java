@@ -0,0 +1,94 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public class OrderLeaseRepositoryImpl implements OrderLeaseRepository {
+    // The subqueries lock the rows they pick and skip those locked by other claims; the update
+    // then only touches rows no other transaction can take meanwhile
+    private static final String CLAIM_PENDING = "UPDATE orders SET status = 'PROCESSING', version = version + 1, "
+            + "updated_at = $1, lease_owner = $2, lease_expires_at = $3 WHERE (id, created_at) IN ("
+            + "SELECT id, created_at FROM orders WHERE status = 'PENDING' "
+            + "ORDER BY created_at, id LIMIT $4 FOR UPDATE SKIP LOCKED)";
+    private static final String CLAIM_EXPIRED = "UPDATE orders SET lease_owner = $1, lease_expires_at = $2 "
+            + "WHERE (id, created_at) IN (SELECT id, created_at FROM orders WHERE status = 'PROCESSING' "
+            + "AND lease_expires_at < $3 ORDER BY lease_expires_at LIMIT $4 FOR UPDATE SKIP LOCKED)";
+    private static final String HELD = "id = ANY($%d) AND lease_owner = $%d AND status = 'PROCESSING'";
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+    private final OrderEventOutbox outbox;
+    private final boolean supportsReturning;
+
+    public OrderLeaseRepositoryImpl(DatabaseClient databaseClient, R2dbcConverter converter,
+                                    ReactiveTransactionManager transactionManager) {
+        this.databaseClient = databaseClient;
+        this.converter = converter;
+        this.outbox = new OrderEventOutbox(databaseClient, converter, transactionManager);
+        this.supportsReturning = !OrderEventOutbox.isH2(databaseClient);
+    }
+
+    @Override
+    public Flux<Order> claimPending(String owner, LocalDateTime expiresAt, int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return outbox.execute(CLAIM_PENDING, OrderEvent.Type.STATUS_CHANGED, statement -> statement
+                .bind(0, now)
+                .bind(1, owner)
+                .bind(2, expiresAt)
+                .bind(3, limit));
+    }
+
+    @Override
+    public Flux<Order> claimExpired(String owner, LocalDateTime now, LocalDateTime expiresAt, int limit) {
+        // Only the lease changes, which is not an order change the outbox records
+        String sql = supportsReturning ? CLAIM_EXPIRED + " RETURNING *" : "SELECT * FROM FINAL TABLE (" + CLAIM_EXPIRED + ")";
+        return databaseClient.sql(sql)
+                .bind(0, owner)
+                .bind(1, expiresAt)
+                .bind(2, now)
+                .bind(3, limit)
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .all();
+    }
+
+    @Override
+    public Mono<Integer> renewLeases(String owner, Collection<Long> ids, LocalDateTime expiresAt) {
+        if (ids.isEmpty()) {
+            return Mono.just(0);
+        }
+        return databaseClient.sql("UPDATE orders SET lease_expires_at = $1 WHERE " + HELD.formatted(2, 3))
+                .bind(0, expiresAt)
+                .bind(1, ids.toArray(Long[]::new))
+                .bind(2, owner)
+                .fetch()
+                .rowsUpdated()
+                .map(Long::intValue);
+    }
+
+    @Override
+    public Flux<Order> releaseLeases(String owner, Collection<Long> ids, OrderStatus target) {
+        if (!OrderStatus.PROCESSING.canTransitionTo(target)) {
+            return Flux.error(new IllegalArgumentException("Leased orders cannot move to " + target));
+        }
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return outbox.execute("UPDATE orders SET status = $1, version = version + 1, updated_at = $2, "
+                        + "lease_owner = NULL, lease_expires_at = NULL WHERE " + HELD.formatted(3, 4),
+                OrderEvent.Type.STATUS_CHANGED, statement -> statement
+                        .bind(0, target.name())
+                        .bind(1, now)
+                        .bind(2, ids.toArray(Long[]::new))
+                        .bind(3, owner));
+    }
+}
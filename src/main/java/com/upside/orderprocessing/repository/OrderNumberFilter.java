@@ -0,0 +1,105 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the order numbers already persisted, live or archived, warmed from both
+ * tables at startup. A negative answer is definitive for everything this instance has seen, so new
+ * order numbers go straight to the insert; positives are looked up first so retried orders never
+ * reach it. Numbers written by other instances are caught by the insert's conflict handling instead.
+ */
+@Slf4j
+@Component
+public class OrderNumberFilter {
+    private final DatabaseClient databaseClient;
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    // Until the table has been loaded every number may be a duplicate
+    private volatile boolean warm;
+
+    public OrderNumberFilter(OrderProcessingProperties properties, DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        long expected = Math.max(1, properties.getIdempotency().getExpectedOrderNumbers());
+        double falsePositiveRate = properties.getIdempotency().getFalsePositiveRate();
+        long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+        this.bitCount = words.length() * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.nanoTime();
+        databaseClient.sql("SELECT order_number FROM orders UNION ALL SELECT order_number FROM orders_archive")
+                .map(row -> row.get(0, String.class))
+                .all()
+                .doOnNext(this::put)
+                .count()
+                .subscribe(count -> {
+                    warm = true;
+                    log.info("Loaded {} order numbers into the duplicate filter in {} ms",
+                            count, (System.nanoTime() - start) / 1_000_000);
+                }, e -> log.warn("Could not warm the duplicate filter; every order number will be looked up", e));
+    }
+
+    public boolean mightContain(String orderNumber) {
+        if (!warm) {
+            return true;
+        }
+        long hash1 = hash(orderNumber);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String orderNumber) {
+        long hash1 = hash(orderNumber);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = words.get(word)) & mask) == 0
+                    && !words.compareAndSet(word, current, current | mask)) {
+                // Another writer changed the word; retry with its bits
+            }
+        }
+    }
+
+    void markWarm() {
+        warm = true;
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over the UTF-16 code units, finished with a mixer for better bit spread
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
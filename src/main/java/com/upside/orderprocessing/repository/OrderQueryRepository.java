@@ -0,0 +1,22 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderFilter;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface OrderQueryRepository {
+    /**
+     * Seeks to the position after {@code (afterCreatedAt, afterId)} in newest-first order and
+     * returns at most {@code limit} matching orders. Pass null for both to start at the top.
+     */
+    Flux<Order> findPage(OrderFilter filter, LocalDateTime afterCreatedAt, Long afterId, int limit);
+
+    /**
+     * Live orders with any of the given ids, in no particular order. One statement text whatever
+     * the number of ids, unlike {@code findAllById}, so the database plans it once.
+     */
+    Flux<Order> findAllByIdIn(Collection<Long> ids);
+}
@@ -0,0 +1,75 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class OrderQueryRepositoryImpl implements OrderQueryRepository {
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+
+    @Override
+    public Flux<Order> findPage(OrderFilter filter, LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM orders");
+        List<Object> parameters = new ArrayList<>(7);
+        List<String> predicates = new ArrayList<>(6);
+
+        if (filter.getStatus() != null) {
+            parameters.add(filter.getStatus().name());
+            predicates.add("status = $" + parameters.size());
+        }
+        if (filter.getCustomerId() != null) {
+            parameters.add(filter.getCustomerId());
+            predicates.add("customer_id = $" + parameters.size());
+        }
+        if (filter.getProductId() != null) {
+            parameters.add(filter.getProductId());
+            predicates.add("product_id = $" + parameters.size());
+        }
+        if (filter.getCreatedFrom() != null) {
+            parameters.add(filter.getCreatedFrom());
+            predicates.add("created_at >= $" + parameters.size());
+        }
+        if (filter.getCreatedTo() != null) {
+            parameters.add(filter.getCreatedTo());
+            predicates.add("created_at < $" + parameters.size());
+        }
+        if (afterCreatedAt != null && afterId != null) {
+            // Row-value comparison lets the (..., created_at, id) indexes seek straight to the cursor
+            parameters.add(afterCreatedAt);
+            parameters.add(afterId);
+            predicates.add("(created_at, id) < ($" + (parameters.size() - 1) + ", $" + parameters.size() + ")");
+        }
+
+        if (!predicates.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ").append(limit);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < parameters.size(); i++) {
+            spec = spec.bind(i, parameters.get(i));
+        }
+        return spec.map((row, metadata) -> converter.read(Order.class, row, metadata)).all();
+    }
+
+    @Override
+    public Flux<Order> findAllByIdIn(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("SELECT * FROM orders WHERE id = ANY($1)")
+                .bind(0, ids.toArray(Long[]::new))
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .all();
+    }
+}
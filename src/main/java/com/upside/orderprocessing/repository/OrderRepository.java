@@ -1,8 +1,8 @@
 package com.upside.orderprocessing.repository;
 
 import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderRollup;
 import com.upside.orderprocessing.model.OrderStatus;
-import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
@@ -10,16 +10,20 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 
 @Repository
-public interface OrderRepository extends ReactiveCrudRepository<Order, Long> {
+public interface OrderRepository extends ReactiveCrudRepository<Order, Long>, OrderBulkRepository, OrderStatusRepository, OrderQueryRepository,
+        OrderRetentionRepository, OrderLeaseRepository {
     Mono<Order> findByOrderNumber(String orderNumber);
     
     Flux<Order> findByStatus(OrderStatus status);
     
-    @Modifying
-    @Query("UPDATE orders SET status = :status WHERE id = :id")
-    Mono<Integer> updateOrderStatus(Long id, OrderStatus status);
+    Flux<Order> findByStatusIn(Collection<OrderStatus> statuses);
+    
+    @Query("SELECT status, COUNT(*) AS order_count, SUM(total_amount) AS revenue FROM orders "
+            + "WHERE status IN (:statuses) GROUP BY status ORDER BY status")
+    Flux<OrderRollup> sumByStatusIn(Collection<String> statuses);
     
     @Query("SELECT * FROM orders WHERE status = :status AND created_at >= :startTime")
     Flux<Order> findRecentOrdersByStatus(OrderStatus status, LocalDateTime startTime);
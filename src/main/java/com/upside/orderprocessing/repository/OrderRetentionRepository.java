@@ -0,0 +1,43 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+
+/**
+ * Keeps the live {@code orders} table to what is still being worked on: monthly partitions are
+ * created before rows arrive for them, and terminal orders are moved to {@code orders_archive}
+ * once they are old enough.
+ */
+public interface OrderRetentionRepository {
+    /**
+     * Creates the monthly partitions of {@code orders} from {@code first} through {@code last} that
+     * do not exist yet, and emits the months it created. Orders the default partition holds for a
+     * created month are moved into it. A month that cannot be created is logged and skipped, so it
+     * is tried again on the next call. Emits nothing on databases without declarative partitioning.
+     */
+    Flux<YearMonth> createPartitions(YearMonth first, YearMonth last);
+
+    /**
+     * Detaches and drops the monthly partitions of {@code orders} that end by {@code before} and
+     * hold no orders, typically once archiving has emptied them, and emits the months it dropped.
+     * Emits nothing on databases without declarative partitioning.
+     */
+    Flux<YearMonth> dropEmptyPartitions(LocalDateTime before);
+
+    /**
+     * Moves up to {@code limit} COMPLETED or CANCELLED orders created before {@code cutoff}, oldest
+     * first, to the archive in one transaction, and returns how many were moved.
+     */
+    Mono<Integer> archiveTerminalOrders(LocalDateTime cutoff, int limit);
+
+    Mono<Order> findArchivedById(Long id);
+
+    Flux<Order> findAllArchivedById(Collection<Long> ids);
+
+    Mono<Order> findArchivedByOrderNumber(String orderNumber);
+}
@@ -0,0 +1,216 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class OrderRetentionRepositoryImpl implements OrderRetentionRepository {
+    // orders_archive adds archived_at, so both tables are always read through this list
+    static final String COLUMNS = "id, order_number, status, total_amount, customer_id, product_id, "
+            + "quantity, created_at, updated_at, version";
+    private static final String TERMINAL_STATUSES = Arrays.stream(OrderStatus.values())
+            .filter(OrderStatus::isTerminal)
+            .map(status -> "'" + status.name() + "'")
+            .collect(Collectors.joining(", "));
+    private static final String ARCHIVABLE = "status IN (" + TERMINAL_STATUSES + ") AND created_at < $1";
+    // Rows moved between partitions keep their lease
+    private static final String PARTITION_COLUMNS = COLUMNS + ", lease_owner, lease_expires_at";
+    // Marks the transaction as moving orders, to the archive or into a new partition, so the
+    // order number triggers leave their numbers claimed
+    private static final String MOVING_ORDERS = "SELECT set_config('app.moving_orders', 'on', true)";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'orders_p'yyyy_MM");
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+    private final TransactionalOperator transactionalOperator;
+    private final boolean partitioned;
+
+    public OrderRetentionRepositoryImpl(DatabaseClient databaseClient, R2dbcConverter converter,
+                                        ReactiveTransactionManager transactionManager) {
+        this.databaseClient = databaseClient;
+        this.converter = converter;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+        // The H2 schema used by tests keeps orders in a single table
+        this.partitioned = !OrderEventOutbox.isH2(databaseClient);
+    }
+
+    @Override
+    public Flux<YearMonth> createPartitions(YearMonth first, YearMonth last) {
+        if (!partitioned || first.isAfter(last)) {
+            return Flux.empty();
+        }
+        return Flux.range(0, (int) ChronoUnit.MONTHS.between(first, last) + 1)
+                .map(first::plusMonths)
+                .concatMap(month -> databaseClient.sql("SELECT COUNT(*) FROM pg_class WHERE relname = $1")
+                        .bind(0, PARTITION_NAME.format(month))
+                        .map(row -> row.get(0, Long.class))
+                        .one()
+                        .filter(count -> count == 0)
+                        .flatMap(missing -> createPartition(month))
+                        // A month that fails is retried on the next run without holding up the others
+                        .onErrorResume(e -> {
+                            log.warn("Could not create the orders partition for {}", month, e);
+                            return Mono.empty();
+                        }));
+    }
+
+    private Mono<YearMonth> createPartition(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        // Months are created ahead, so the default partition normally holds none of their rows
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM orders_default WHERE created_at >= $1 "
+                        + "AND created_at < $2)")
+                .bind(0, from.atStartOfDay())
+                .bind(1, to.atStartOfDay())
+                .map(row -> row.get(0, Boolean.class))
+                .one()
+                .flatMap(strays -> strays ? createPartitionMovingStrays(month, from, to)
+                        : databaseClient.sql(createPartitionSql(month, from, to)).then().thenReturn(month));
+    }
+
+    private Mono<YearMonth> createPartitionMovingStrays(YearMonth month, LocalDate from, LocalDate to) {
+        // PostgreSQL refuses a partition for rows the default partition already holds, so the
+        // default is detached while they are moved over; orders stay locked until commit
+        return databaseClient.sql(MOVING_ORDERS)
+                .then()
+                .then(databaseClient.sql("ALTER TABLE orders DETACH PARTITION orders_default").then())
+                .then(databaseClient.sql(createPartitionSql(month, from, to)).then())
+                .then(databaseClient.sql("WITH moved AS (DELETE FROM orders_default WHERE created_at >= $1 "
+                                + "AND created_at < $2 RETURNING " + PARTITION_COLUMNS + ") "
+                                + "INSERT INTO orders (" + PARTITION_COLUMNS + ") SELECT " + PARTITION_COLUMNS + " FROM moved")
+                        .bind(0, from.atStartOfDay())
+                        .bind(1, to.atStartOfDay())
+                        .then())
+                .then(databaseClient.sql("ALTER TABLE orders ATTACH PARTITION orders_default DEFAULT").then())
+                .thenReturn(month)
+                .as(transactionalOperator::transactional);
+    }
+
+    private static String createPartitionSql(YearMonth month, LocalDate from, LocalDate to) {
+        // Month boundaries are generated here, never taken from input, so inlining them into the
+        // DDL is safe
+        return "CREATE TABLE IF NOT EXISTS " + PARTITION_NAME.format(month) + " PARTITION OF orders "
+                + "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+    }
+
+    @Override
+    public Flux<YearMonth> dropEmptyPartitions(LocalDateTime before) {
+        if (!partitioned) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "WHERE i.inhparent = 'orders'::regclass AND c.relname ~ '^orders_p[0-9]{4}_[0-9]{2}$' "
+                        + "ORDER BY c.relname")
+                .map(row -> YearMonth.parse(row.get(0, String.class), PARTITION_NAME))
+                .all()
+                .filter(month -> !month.plusMonths(1).atDay(1).atStartOfDay().isAfter(before))
+                .concatMap(month -> dropPartitionIfEmpty(month)
+                        .onErrorResume(e -> {
+                            log.warn("Could not drop the orders partition for {}", month, e);
+                            return Mono.empty();
+                        }));
+    }
+
+    private Mono<YearMonth> dropPartitionIfEmpty(YearMonth month) {
+        String partition = PARTITION_NAME.format(month);
+        // Checked before taking the lock, so months still holding orders never block the table
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM " + partition + ")")
+                .map(row -> row.get(0, Boolean.class))
+                .one()
+                .filter(holdsOrders -> !holdsOrders)
+                .flatMap(empty -> databaseClient.sql("ALTER TABLE orders DETACH PARTITION " + partition)
+                        .then()
+                        // An order may have been written to the month meanwhile; keep it attached then
+                        .then(databaseClient.sql("SELECT EXISTS (SELECT 1 FROM " + partition + ")")
+                                .map(row -> row.get(0, Boolean.class))
+                                .one())
+                        .flatMap(holdsOrders -> holdsOrders
+                                ? Mono.<YearMonth>error(new IllegalStateException(partition + " is no longer empty"))
+                                : databaseClient.sql("DROP TABLE " + partition).then().thenReturn(month))
+                        .as(transactionalOperator::transactional));
+    }
+
+    @Override
+    public Mono<Integer> archiveTerminalOrders(LocalDateTime cutoff, int limit) {
+        if (partitioned) {
+            // One statement moves the rows; SKIP LOCKED lets several instances archive side by side
+            return databaseClient.sql(MOVING_ORDERS)
+                    .then()
+                    .then(databaseClient.sql("WITH moved AS (DELETE FROM orders WHERE (id, created_at) IN ("
+                                    + "SELECT id, created_at FROM orders WHERE " + ARCHIVABLE
+                                    + " ORDER BY created_at LIMIT $2 FOR UPDATE SKIP LOCKED) RETURNING " + COLUMNS + ") "
+                                    + "INSERT INTO orders_archive (" + COLUMNS + ") SELECT " + COLUMNS + " FROM moved")
+                            .bind(0, cutoff)
+                            .bind(1, limit)
+                            .fetch()
+                            .rowsUpdated())
+                    .map(Long::intValue)
+                    .as(transactionalOperator::transactional);
+        }
+        return databaseClient.sql("SELECT id FROM orders WHERE " + ARCHIVABLE + " ORDER BY created_at, id LIMIT $2")
+                .bind(0, cutoff)
+                .bind(1, limit)
+                .map(row -> row.get(0, Long.class))
+                .all()
+                .collectList()
+                .flatMap(ids -> {
+                    if (ids.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    Long[] idArray = ids.toArray(Long[]::new);
+                    return databaseClient.sql("INSERT INTO orders_archive (" + COLUMNS + ") SELECT " + COLUMNS
+                                    + " FROM orders WHERE id = ANY($1)")
+                            .bind(0, idArray)
+                            .then()
+                            .then(databaseClient.sql("DELETE FROM orders WHERE id = ANY($1)")
+                                    .bind(0, idArray)
+                                    .fetch()
+                                    .rowsUpdated())
+                            .map(Long::intValue);
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<Order> findArchivedById(Long id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM orders_archive WHERE id = $1")
+                .bind(0, id)
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .one();
+    }
+
+    @Override
+    public Flux<Order> findAllArchivedById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM orders_archive WHERE id = ANY($1)")
+                .bind(0, ids.toArray(Long[]::new))
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .all();
+    }
+
+    @Override
+    public Mono<Order> findArchivedByOrderNumber(String orderNumber) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM orders_archive WHERE order_number = $1")
+                .bind(0, orderNumber)
+                .map((row, metadata) -> converter.read(Order.class, row, metadata))
+                .one();
+    }
+}
@@ -0,0 +1,165 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.OrderRollup;
+import com.upside.orderprocessing.model.OrderStatus;
+import io.r2dbc.spi.Readable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * The {@code order_status_rollups} (per minute) and {@code order_product_rollups} (per product and
+ * day) tables. Counts are only ever added to, so rows from several instances merge by summing.
+ */
+@Repository
+public class OrderRollupRepository {
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+    // Rows are upserted in key order so concurrent flushes lock them in the same order
+    private static final Comparator<OrderRollup> KEY_ORDER = Comparator.comparing(OrderRollup::getBucket)
+            .thenComparing(OrderRollup::getStatus)
+            .thenComparing(rollup -> rollup.getProductId() != null ? rollup.getProductId() : "");
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final boolean supportsOnConflictUpdate;
+
+    public OrderRollupRepository(DatabaseClient databaseClient, ReactiveTransactionManager transactionManager) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+        // H2 only supports ON CONFLICT DO NOTHING, so it merges instead
+        this.supportsOnConflictUpdate = !OrderEventOutbox.isH2(databaseClient);
+    }
+
+    /**
+     * Adds the counts and revenue of {@code statusRollups} (bucketed by minute) and
+     * {@code productRollups} (bucketed by day) to the stored rows, in one transaction.
+     */
+    public Mono<Void> addAll(List<OrderRollup> statusRollups, List<OrderRollup> productRollups) {
+        return upsert("order_status_rollups", false, statusRollups)
+                .then(upsert("order_product_rollups", true, productRollups))
+                .as(transactionalOperator::transactional);
+    }
+
+    public Flux<OrderRollup> sumByStatus(LocalDateTime from, LocalDateTime to) {
+        return databaseClient.sql("SELECT status, SUM(order_count), SUM(revenue) FROM order_status_rollups "
+                        + "WHERE bucket >= $1 AND bucket < $2 GROUP BY status ORDER BY status")
+                .bind(0, from)
+                .bind(1, to)
+                .map(row -> new OrderRollup(null, OrderStatus.valueOf(row.get(0, String.class)), null,
+                        count(row, 1), revenue(row, 2)))
+                .all();
+    }
+
+    public Flux<OrderRollup> findByMinute(LocalDateTime from, LocalDateTime to, OrderStatus status) {
+        return databaseClient.sql("SELECT bucket, order_count, revenue FROM order_status_rollups "
+                        + "WHERE bucket >= $1 AND bucket < $2 AND status = $3 ORDER BY bucket")
+                .bind(0, from)
+                .bind(1, to)
+                .bind(2, status.name())
+                .map(row -> new OrderRollup(row.get(0, LocalDateTime.class), status, null,
+                        count(row, 1), revenue(row, 2)))
+                .all();
+    }
+
+    /**
+     * Products with the highest revenue among orders that entered {@code status} on the days from
+     * {@code from} up to but excluding {@code to}.
+     */
+    public Flux<OrderRollup> findTopProducts(LocalDate from, LocalDate to, OrderStatus status, int limit) {
+        return databaseClient.sql("SELECT product_id, SUM(order_count), SUM(revenue) FROM order_product_rollups "
+                        + "WHERE bucket >= $1 AND bucket < $2 AND status = $3 "
+                        + "GROUP BY product_id ORDER BY SUM(revenue) DESC, product_id LIMIT $4")
+                .bind(0, from)
+                .bind(1, to)
+                .bind(2, status.name())
+                .bind(3, limit)
+                .map(row -> new OrderRollup(null, status, row.get(0, String.class), count(row, 1), revenue(row, 2)))
+                .all();
+    }
+
+    private Mono<Void> upsert(String table, boolean byProduct, List<OrderRollup> rollups) {
+        if (rollups.isEmpty()) {
+            return Mono.empty();
+        }
+        List<OrderRollup> sorted = rollups.stream().sorted(KEY_ORDER).toList();
+        return Flux.range(0, (sorted.size() + MAX_ROWS_PER_STATEMENT - 1) / MAX_ROWS_PER_STATEMENT)
+                .map(chunk -> sorted.subList(chunk * MAX_ROWS_PER_STATEMENT,
+                        Math.min(sorted.size(), (chunk + 1) * MAX_ROWS_PER_STATEMENT)))
+                .concatMap(chunk -> databaseClient.sql(upsertSql(table, byProduct, chunk.size()))
+                        .filter(statement -> {
+                            int index = 0;
+                            for (OrderRollup rollup : chunk) {
+                                statement.bind(index++, byProduct ? rollup.getBucket().toLocalDate() : rollup.getBucket());
+                                statement.bind(index++, rollup.getStatus().name());
+                                if (byProduct) {
+                                    statement.bind(index++, rollup.getProductId());
+                                }
+                                statement.bind(index++, rollup.getOrderCount());
+                                statement.bind(index++, rollup.getRevenue());
+                            }
+                            return statement;
+                        })
+                        .then())
+                .then();
+    }
+
+    private String upsertSql(String table, boolean byProduct, int rows) {
+        String keyColumns = byProduct ? "bucket, status, product_id" : "bucket, status";
+        String columns = keyColumns + ", order_count, revenue";
+        int columnCount = byProduct ? 5 : 4;
+        StringJoiner values = new StringJoiner(", ");
+        for (int row = 0; row < rows; row++) {
+            StringJoiner markers = new StringJoiner(", ", "(", ")");
+            int first = row * columnCount;
+            if (supportsOnConflictUpdate) {
+                for (int column = 1; column <= columnCount; column++) {
+                    markers.add("$" + (first + column));
+                }
+            } else {
+                // Parameters in a MERGE source have no type of their own in H2
+                markers.add("CAST($" + (first + 1) + (byProduct ? " AS DATE)" : " AS TIMESTAMP)"));
+                markers.add("CAST($" + (first + 2) + " AS VARCHAR)");
+                if (byProduct) {
+                    markers.add("CAST($" + (first + 3) + " AS VARCHAR)");
+                }
+                markers.add("CAST($" + (first + columnCount - 1) + " AS BIGINT)");
+                markers.add("CAST($" + (first + columnCount) + " AS DECIMAL(19,2))");
+            }
+            values.add(markers.toString());
+        }
+        if (supportsOnConflictUpdate) {
+            return "INSERT INTO " + table + " (" + columns + ") VALUES " + values
+                    + " ON CONFLICT (" + keyColumns + ") DO UPDATE SET "
+                    + "order_count = " + table + ".order_count + EXCLUDED.order_count, "
+                    + "revenue = " + table + ".revenue + EXCLUDED.revenue";
+        }
+        String match = byProduct
+                ? "t.bucket = s.bucket AND t.status = s.status AND t.product_id = s.product_id"
+                : "t.bucket = s.bucket AND t.status = s.status";
+        return "MERGE INTO " + table + " t USING (VALUES " + values + ") s (" + columns + ") ON " + match
+                + " WHEN MATCHED THEN UPDATE SET order_count = t.order_count + s.order_count, "
+                + "revenue = t.revenue + s.revenue"
+                + " WHEN NOT MATCHED THEN INSERT (" + columns + ") VALUES (s."
+                + String.join(", s.", columns.split(", ")) + ")";
+    }
+
+    private static long count(Readable row, int index) {
+        Number count = row.get(index, Number.class);
+        return count != null ? count.longValue() : 0;
+    }
+
+    private static BigDecimal revenue(Readable row, int index) {
+        BigDecimal revenue = row.get(index, BigDecimal.class);
+        return revenue != null ? revenue : BigDecimal.ZERO;
+    }
+}
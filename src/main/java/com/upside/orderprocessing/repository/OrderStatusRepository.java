@@ -0,0 +1,33 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Conditional status updates that only apply when {@link OrderStatus#canTransitionTo} allows
+ * the move, and return the updated rows from the same statement.
+ */
+public interface OrderStatusRepository {
+    /**
+     * Moves the order to {@code target} and bumps its version. Completes empty when the order
+     * does not exist, its current status does not allow the move, or {@code expectedVersion}
+     * is non-null and does not match.
+     */
+    Mono<Order> transitionStatus(Long id, OrderStatus target, Long expectedVersion);
+
+    /**
+     * Like {@link #transitionStatus} with a version, but also completes empty while an order
+     * worker holds an unexpired lease on the order.
+     */
+    Mono<Order> transitionUnleased(Long id, OrderStatus target, Long expectedVersion);
+
+    /**
+     * Moves every order in {@code ids} whose current status allows it to {@code target} in one
+     * statement, and emits the updated rows. Ids that were not updated are simply absent.
+     */
+    Flux<Order> transitionStatuses(Collection<Long> ids, OrderStatus target);
+}
@@ -0,0 +1,70 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+public class OrderStatusRepositoryImpl implements OrderStatusRepository {
+    private final OrderEventOutbox outbox;
+
+    public OrderStatusRepositoryImpl(DatabaseClient databaseClient, R2dbcConverter converter,
+                                     ReactiveTransactionManager transactionManager) {
+        this.outbox = new OrderEventOutbox(databaseClient, converter, transactionManager);
+    }
+
+    @Override
+    public Mono<Order> transitionStatus(Long id, OrderStatus target, Long expectedVersion) {
+        String predicate = "id = $3" + (expectedVersion != null ? " AND version = $4" : "");
+        LocalDateTime now = LocalDateTime.now();
+        return outbox.execute(buildUpdateSql(target, predicate), OrderEvent.Type.STATUS_CHANGED, statement -> {
+            statement.bind(0, target.name()).bind(1, now).bind(2, id);
+            return expectedVersion != null ? statement.bind(3, expectedVersion) : statement;
+        }).singleOrEmpty();
+    }
+
+    @Override
+    public Mono<Order> transitionUnleased(Long id, OrderStatus target, Long expectedVersion) {
+        LocalDateTime now = LocalDateTime.now();
+        return outbox.execute(buildUpdateSql(target, "id = $3 AND version = $4 "
+                        + "AND (lease_expires_at IS NULL OR lease_expires_at < $2)"), OrderEvent.Type.STATUS_CHANGED,
+                statement -> statement.bind(0, target.name()).bind(1, now).bind(2, id).bind(3, expectedVersion))
+                .singleOrEmpty();
+    }
+
+    @Override
+    public Flux<Order> transitionStatuses(Collection<Long> ids, OrderStatus target) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        Long[] idArray = ids.toArray(Long[]::new);
+        LocalDateTime now = LocalDateTime.now();
+        return outbox.execute(buildUpdateSql(target, "id = ANY($3)"), OrderEvent.Type.STATUS_CHANGED,
+                statement -> statement.bind(0, target.name()).bind(1, now).bind(2, idArray));
+    }
+
+    private static String buildUpdateSql(OrderStatus target, String predicate) {
+        // Whatever moves an order ends any lease on it; a lease only ever covers the move its claim made
+        return "UPDATE orders SET status = $1, version = version + 1, updated_at = $2, "
+                + "lease_owner = NULL, lease_expires_at = NULL WHERE "
+                + predicate + " AND status IN (" + sourceList(target) + ")";
+    }
+
+    private static String sourceList(OrderStatus target) {
+        if (OrderStatus.sourcesOf(target).isEmpty()) {
+            // No status may move to target; keep the statement valid but matching nothing
+            return "NULL";
+        }
+        return OrderStatus.sourcesOf(target).stream()
+                .map(source -> "'" + source.name() + "'")
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,15 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.model.Order;
+import reactor.core.publisher.Mono;
+
+/**
+ * The work done on an order leased by a worker, while it is PROCESSING. The order moves to
+ * COMPLETED when the returned Mono completes and to FAILED when it errors. An order may be
+ * handled more than once, when its lease runs out before it is finished. Without a bean of this
+ * type, leased orders complete straight away.
+ */
+@FunctionalInterface
+public interface OrderHandler {
+    Mono<Void> handle(Order order);
+}
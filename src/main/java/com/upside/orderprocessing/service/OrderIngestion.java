@@ -0,0 +1,24 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.IngestionStatus;
+import com.upside.orderprocessing.model.Order;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Accepts orders to be written to the database later, answering as soon as they are queued.
+ */
+public interface OrderIngestion {
+    /**
+     * Queues the orders and returns their tracking ids, or fails without queueing any when an
+     * order has no number or the backlog is full.
+     */
+    Mono<IngestionReceipt> enqueue(Flux<Order> orders);
+
+    /**
+     * The outcome of the order with {@code trackingId}, or empty when it is unknown or its
+     * outcome has expired.
+     */
+    Mono<IngestionStatus> status(String trackingId);
+}
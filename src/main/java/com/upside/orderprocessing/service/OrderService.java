@@ -1,10 +1,17 @@
 package com.upside.orderprocessing.service;
 
+import com.upside.orderprocessing.model.BulkStatusUpdateResult;
 import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderFilter;
+import com.upside.orderprocessing.model.OrderPage;
 import com.upside.orderprocessing.model.OrderStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Collection;
+
 public interface OrderService {
     Mono<Order> processOrder(Order order);
     
@@ -16,7 +23,43 @@ public interface OrderService {
     
     Mono<Order> updateOrderStatus(Long id, OrderStatus status);
     
+    Mono<Order> updateOrderStatus(Long id, OrderStatus status, Long expectedVersion);
+
+    /**
+     * Like {@link #updateOrderStatus(Long, OrderStatus, Long)}, but completes empty instead while
+     * an order worker holds an unexpired lease on the order.
+     */
+    Mono<Order> updateUnleasedOrderStatus(Long id, OrderStatus status, Long expectedVersion);
+    
+    Mono<BulkStatusUpdateResult> updateOrderStatuses(Collection<Long> ids, OrderStatus status);
+    
     Flux<Order> getOrdersByStatus(OrderStatus status);
     
+    Flux<Order> getOrders(OrderFilter filter, int limit);
+    
+    Mono<OrderPage> getOrderPage(OrderFilter filter, String cursor, int size);
+    
+    Flux<OrderEvent> getOrderChanges(OrderStatus status, String customerId);
+    
     Mono<Void> deleteOrder(Long id);
+
+    /**
+     * Leases up to {@code limit} orders to {@code owner} for {@code lease}: first PROCESSING
+     * orders whose lease ran out, then PENDING orders, oldest first, which move to PROCESSING.
+     * Concurrent claims, from this instance or any other, never get the same order. Each claim
+     * should use an owner of its own, which renewing and finishing it then go by.
+     */
+    Flux<Order> claimOrders(String owner, int limit, Duration lease);
+
+    /**
+     * Extends the leases {@code owner} still holds on {@code ids} by {@code lease} from now, and
+     * returns how many it still holds.
+     */
+    Mono<Integer> renewClaims(String owner, Collection<Long> ids, Duration lease);
+
+    /**
+     * Moves the orders of {@code ids} that {@code owner} still holds to {@code status} and ends
+     * their leases; orders whose lease was taken over are left to their new owner.
+     */
+    Flux<Order> finishClaims(String owner, Collection<Long> ids, OrderStatus status);
 } 
\ No newline at end of file
@@ -0,0 +1,482 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderRollup;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * In-memory index of the orders that are not in a terminal status, so that listing and counting
+ * them does not scan the orders table. Each order is an entry of id, status, version and amount
+ * in direct memory, plus its id in the set of its status: 55 to 110 bytes per order depending on
+ * how full the tables are, and nothing on the heap. The index is filled from the database once
+ * at startup and then kept current by the writes of this instance and by the change feed, which
+ * carries those of every other one; versions decide between the two, so an older change never
+ * overwrites a newer one. With more than one instance the change feed must be enabled. Until
+ * the index is filled, queries fall back to the database. The tables are split by id into
+ * {@code stripes}, each behind its own lock, so writes to different orders seldom wait for each
+ * other; queries read the stripes one after another rather than as one snapshot.
+ */
+@Slf4j
+@Component
+public class ActiveOrderIndex {
+    private static final Set<OrderStatus> ACTIVE = EnumSet.noneOf(OrderStatus.class);
+    private static final int WARM_UP_BATCH = 1000;
+
+    // Entry layout after the id; finished entries keep the time they finished in place of the amount
+    private static final int VERSION = 0;
+    private static final int AMOUNT = 8;
+    private static final int FINISHED_AT = 8;
+    private static final int STATUS = 16;
+    private static final int ENTRY_BYTES = 17;
+    // An order that left the active statuses is remembered for tombstone-ttl, so that an older
+    // change applied late, or a row read by the warm-up before it finished, cannot bring it back
+    private static final byte FINISHED = -1;
+
+    static {
+        for (OrderStatus status : OrderStatus.values()) {
+            if (!status.isTerminal()) {
+                ACTIVE.add(status);
+            }
+        }
+    }
+
+    private enum State { WARMING, READY, OFF }
+
+    /**
+     * Told of every change the index applies, after it has released the lock the change was
+     * applied under. The changes to one order arrive one at a time and in version order, and an
+     * older one that arrives late is never passed on; they may arrive on any writer's thread.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * {@code status} is null once the order is terminal or deleted; {@code since} is when the
+         * change was made, or null if that is not known.
+         */
+        void changed(long id, OrderStatus status, long version, LocalDateTime since);
+    }
+
+    private record Change(long id, OrderStatus status, long version, LocalDateTime since) {
+    }
+
+    /**
+     * The orders whose id falls into one stripe, behind a lock of their own. Changes applied
+     * under the lock are queued in that order and passed on after it is released, by whichever
+     * writer of the stripe gets to drain the queue.
+     */
+    private final class Stripe {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger draining = new AtomicInteger();
+
+        // Guarded by lock
+        private OffHeapLongTable orders;
+        private final OffHeapLongTable[] idsByStatus = new OffHeapLongTable[OrderStatus.values().length];
+        private final long[] amountByStatus = new long[OrderStatus.values().length];
+        private int finished;
+
+        private void put(Order order) {
+            put(order.getId(), order.getStatus(), order.getVersion(), order.getTotalAmount(), order.getUpdatedAt());
+        }
+
+        /**
+         * Moves the order to {@code status}, or removes it when {@code status} is null or terminal,
+         * unless the index already holds the same or a later version of it.
+         */
+        private void put(long id, OrderStatus status, long version, BigDecimal amount, LocalDateTime since) {
+            int slot = orders.find(id);
+            if (slot >= 0) {
+                if (orders.getLong(slot, VERSION) >= version) {
+                    return;
+                }
+                byte current = orders.getByte(slot, STATUS);
+                if (current != FINISHED) {
+                    idsByStatus[current].remove(id);
+                    amountByStatus[current] -= orders.getLong(slot, AMOUNT);
+                }
+            }
+            if (status == null || !ACTIVE.contains(status)) {
+                if (slot < 0 || orders.getByte(slot, STATUS) != FINISHED) {
+                    finished++;
+                }
+                slot = orders.insert(id);
+                orders.putLong(slot, VERSION, version);
+                orders.putLong(slot, FINISHED_AT, System.nanoTime());
+                orders.putByte(slot, STATUS, FINISHED);
+                queueChange(id, null, version, since);
+                return;
+            }
+            if (slot >= 0 && orders.getByte(slot, STATUS) == FINISHED) {
+                finished--;
+            }
+            long minorUnits = toMinorUnits(amount);
+            slot = orders.insert(id);
+            orders.putLong(slot, VERSION, version);
+            orders.putLong(slot, AMOUNT, minorUnits);
+            orders.putByte(slot, STATUS, (byte) status.ordinal());
+            idsByStatus[status.ordinal()].insert(id);
+            amountByStatus[status.ordinal()] += minorUnits;
+            queueChange(id, status, version, since);
+        }
+
+        private void queueChange(long id, OrderStatus status, long version, LocalDateTime since) {
+            if (!listeners.isEmpty()) {
+                changes.add(new Change(id, status, version, since));
+            }
+        }
+
+        /**
+         * Passes the queued changes on, unless another writer is already doing so; that one then
+         * also passes on those queued meanwhile.
+         */
+        private void tellListeners() {
+            if (changes.isEmpty() || draining.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                for (Change change; (change = changes.poll()) != null; ) {
+                    for (Listener listener : listeners) {
+                        try {
+                            listener.changed(change.id(), change.status(), change.version(), change.since());
+                        } catch (RuntimeException e) {
+                            log.warn("Active order index listener failed on order {}", change.id(), e);
+                        }
+                    }
+                }
+                missed = draining.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Forgets orders that finished before {@code cutoff}. Walks the whole table, so it runs
+         * once per TTL rather than on every change.
+         */
+        private void sweep(long cutoff) {
+            if (finished == 0) {
+                return;
+            }
+            long[] expired = new long[finished];
+            int count = 0;
+            for (int slot = 0; slot < orders.capacity() && count < expired.length; slot++) {
+                if (orders.key(slot) != 0 && orders.getByte(slot, STATUS) == FINISHED
+                        && orders.getLong(slot, FINISHED_AT) - cutoff < 0) {
+                    expired[count++] = orders.key(slot);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                orders.remove(expired[i]);
+            }
+            finished -= count;
+        }
+
+        private void allocate(int capacity) {
+            orders = new OffHeapLongTable(ENTRY_BYTES, capacity);
+            for (OrderStatus status : ACTIVE) {
+                idsByStatus[status.ordinal()] = new OffHeapLongTable(0, capacity / ACTIVE.size());
+                amountByStatus[status.ordinal()] = 0;
+            }
+            finished = 0;
+        }
+
+        private long activeCount() {
+            return orders.size() - finished;
+        }
+
+        private long memoryBytes() {
+            long bytes = orders.memoryBytes();
+            for (OrderStatus status : ACTIVE) {
+                bytes += idsByStatus[status.ordinal()].memoryBytes();
+            }
+            return bytes;
+        }
+    }
+
+    private final OrderRepository orderRepository;
+    private final OrderChangeFeed changeFeed;
+    private final OrderProcessingProperties.Index config;
+    private final Stripe[] stripes;
+    private final Disposable.Composite tasks = Disposables.composite();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile State state;
+
+    public ActiveOrderIndex(OrderRepository orderRepository, OrderChangeFeed changeFeed,
+                            OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.changeFeed = changeFeed;
+        this.config = properties.getIndex();
+        this.state = config.isEnabled() ? State.WARMING : State.OFF;
+        // A power of two, so that the low bits of an id pick its stripe
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, Math.min(1 << 16, config.getStripes())) * 2 - 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+            stripes[i].allocate(capacityPerStripe());
+        }
+        Gauge.builder("orders.index.active", this, index -> index.sum(Stripe::activeCount))
+                .description("Orders in the active order index")
+                .register(meterRegistry);
+        Gauge.builder("orders.index.memory", this, index -> index.sum(Stripe::memoryBytes))
+                .description("Direct memory held by the active order index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (state == State.OFF) {
+            return;
+        }
+        tasks.add(changeFeed.subscribe(null, null)
+                .subscribe(this::apply, e -> log.error("Active order index stopped following changes", e)));
+        tasks.add(Flux.interval(config.getTombstoneTtl())
+                .subscribe(tick -> sweep()));
+        // Changes from the moment the feed starts reach the index, so the warm-up cannot miss any
+        tasks.add(changeFeed.started()
+                .thenMany(Flux.defer(() -> orderRepository.findByStatusIn(ACTIVE)))
+                .buffer(WARM_UP_BATCH)
+                .doOnNext(this::recordAll)
+                .then(Mono.fromRunnable(this::finishWarmUp))
+                .retryWhen(Retry.backoff(5, Duration.ofSeconds(1)))
+                .subscribe(null, e -> {
+                    log.error("Could not fill the active order index; status queries read the database", e);
+                    turnOff();
+                }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tasks.dispose();
+    }
+
+    /**
+     * Passes on the changes applied from now on, including those of the warm-up.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Whether orders in {@code status} can be listed and counted from the index.
+     */
+    public boolean serves(OrderStatus status) {
+        return state == State.READY && ACTIVE.contains(status);
+    }
+
+    /**
+     * Ids of the orders in {@code status}, ascending. Only valid when {@link #serves} is true.
+     */
+    public long[] idsWithStatus(OrderStatus status) {
+        long[][] parts = new long[stripes.length][];
+        int total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            parts[i] = read(stripes[i], stripe -> stripe.idsByStatus[status.ordinal()].keys());
+            total += parts[i].length;
+        }
+        long[] ids = new long[total];
+        int offset = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, ids, offset, part.length);
+            offset += part.length;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Number and total amount of the orders in each active status, read from the index once it
+     * is filled and from the database until then.
+     */
+    public Flux<OrderRollup> totals() {
+        return Flux.defer(() -> {
+            if (state != State.READY) {
+                return orderRepository.sumByStatusIn(ACTIVE.stream().map(Enum::name).toList());
+            }
+            long[] counts = new long[OrderStatus.values().length];
+            long[] amounts = new long[OrderStatus.values().length];
+            for (Stripe stripe : stripes) {
+                read(stripe, locked -> {
+                    for (OrderStatus status : ACTIVE) {
+                        counts[status.ordinal()] += locked.idsByStatus[status.ordinal()].size();
+                        amounts[status.ordinal()] += locked.amountByStatus[status.ordinal()];
+                    }
+                    return null;
+                });
+            }
+            List<OrderRollup> totals = new ArrayList<>(ACTIVE.size());
+            for (OrderStatus status : ACTIVE) {
+                totals.add(new OrderRollup(null, status, null, counts[status.ordinal()],
+                        BigDecimal.valueOf(amounts[status.ordinal()], 2)));
+            }
+            return Flux.fromIterable(totals);
+        });
+    }
+
+    /**
+     * Records a committed change to {@code order}, which must carry its id and version.
+     */
+    public void record(Order order) {
+        if (state == State.OFF || order.getId() == null || order.getVersion() == null) {
+            return;
+        }
+        Stripe stripe = stripe(order.getId());
+        write(stripe, () -> stripe.put(order));
+    }
+
+    public void recordAll(Collection<Order> orders) {
+        if (state == State.OFF || orders.isEmpty()) {
+            return;
+        }
+        // One lock per stripe the batch touches rather than one per order
+        List<List<Order>> byStripe = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            byStripe.add(new ArrayList<>());
+        }
+        for (Order order : orders) {
+            if (order.getId() != null && order.getVersion() != null) {
+                byStripe.get(stripeIndex(order.getId())).add(order);
+            }
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            List<Order> batch = byStripe.get(i);
+            if (!batch.isEmpty()) {
+                Stripe stripe = stripes[i];
+                write(stripe, () -> batch.forEach(stripe::put));
+            }
+        }
+    }
+
+    /**
+     * Forgets a deleted order.
+     */
+    public void remove(Long id) {
+        if (state == State.OFF) {
+            return;
+        }
+        // No later version of a deleted order exists
+        Stripe stripe = stripe(id);
+        write(stripe, () -> stripe.put(id, null, Long.MAX_VALUE, null, null));
+    }
+
+    private void apply(OrderEvent event) {
+        if (event.getVersion() == null) {
+            // Written before events carried versions, so it cannot be ordered against others
+            return;
+        }
+        Stripe stripe = stripe(event.getOrderId());
+        write(stripe, () -> stripe.put(event.getOrderId(), event.getStatus(), event.getVersion(),
+                event.getTotalAmount(), event.getCreatedAt()));
+    }
+
+    private void finishWarmUp() {
+        state = State.READY;
+        log.info("Active order index holds {} orders in {} bytes", sum(Stripe::activeCount), sum(Stripe::memoryBytes));
+    }
+
+    /**
+     * Forgets orders that finished more than {@code tombstone-ttl} ago; not while warming up,
+     * which needs every finished order to be remembered until it is done.
+     */
+    private void sweep() {
+        if (state != State.READY) {
+            return;
+        }
+        long cutoff = System.nanoTime() - config.getTombstoneTtl().toNanos();
+        for (Stripe stripe : stripes) {
+            write(stripe, () -> stripe.sweep(cutoff));
+        }
+    }
+
+    private void turnOff() {
+        state = State.OFF;
+        for (Stripe stripe : stripes) {
+            write(stripe, () -> stripe.allocate(0));
+        }
+        tasks.dispose();
+    }
+
+    private int capacityPerStripe() {
+        return state == State.OFF ? 0 : config.getInitialCapacity() / stripes.length;
+    }
+
+    private Stripe stripe(long id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    private int stripeIndex(long id) {
+        // Ids are handed out in sequence, so their low bits already spread them evenly
+        return (int) id & (stripes.length - 1);
+    }
+
+    private long sum(ToLongFunction<Stripe> value) {
+        long sum = 0;
+        for (Stripe stripe : stripes) {
+            sum += read(stripe, value::applyAsLong);
+        }
+        return sum;
+    }
+
+    private static long toMinorUnits(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        try {
+            return amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            // More cents than a long holds; counted as zero rather than failing a committed write
+            return 0;
+        }
+    }
+
+    private static <T> T read(Stripe stripe, Function<Stripe, T> reader) {
+        stripe.lock.readLock().lock();
+        try {
+            return reader.apply(stripe);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    private static void write(Stripe stripe, Runnable writer) {
+        stripe.lock.writeLock().lock();
+        try {
+            writer.run();
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        stripe.tellListeners();
+    }
+}
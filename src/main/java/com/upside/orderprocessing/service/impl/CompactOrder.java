@@ -0,0 +1,173 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The form an order takes inside the pipeline. Amounts are long minor units, timestamps are
+ * microseconds since the epoch and the remaining fields are primitives, while customer and product
+ * ids are interned so the many orders of one customer share a single copy of each. Orders are
+ * converted from the {@link Order} entity when submitted and back to it only to be written, which
+ * keeps what waits in a lane to a small fraction of the entity's object graph.
+ */
+public final class CompactOrder {
+    /**
+     * Marks an absent id, version or timestamp.
+     */
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int MONEY_SCALE = 2;
+    // Unscaled values of at most 18 digits always fit in a long
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final int NO_AMOUNT = Integer.MIN_VALUE;
+    private static final int AMOUNT_OUT_OF_RANGE = Integer.MAX_VALUE;
+    private static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final StringInterner IDS = new StringInterner(1 << 14);
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    final long id;
+    final String orderNumber;
+    final OrderStatus status;
+    final String customerId;
+    final String productId;
+    // Zero when absent, which validation rejects just like a zero quantity
+    final int quantity;
+    final long createdAtMicros;
+    final long updatedAtMicros;
+    final long version;
+
+    // The submitted amount is kept as given until pricing rounds it into minor units
+    private final long unscaledAmount;
+    private final int amountScale;
+    private long amountMinor;
+
+    private CompactOrder(Order order) {
+        this.id = order.getId() != null ? order.getId() : ABSENT;
+        this.orderNumber = order.getOrderNumber();
+        this.status = order.getStatus();
+        this.customerId = IDS.intern(order.getCustomerId());
+        this.productId = IDS.intern(order.getProductId());
+        this.quantity = order.getQuantity() != null ? order.getQuantity() : 0;
+        this.createdAtMicros = toEpochMicros(order.getCreatedAt());
+        this.updatedAtMicros = toEpochMicros(order.getUpdatedAt());
+        this.version = order.getVersion() != null ? order.getVersion() : ABSENT;
+
+        BigDecimal amount = order.getTotalAmount();
+        if (amount == null) {
+            unscaledAmount = 0;
+            amountScale = NO_AMOUNT;
+            return;
+        }
+        if (amount.precision() > MAX_LONG_DIGITS) {
+            // Rare enough that rounding through BigDecimal here costs nothing overall
+            amount = amount.setScale(MONEY_SCALE, RoundingMode.HALF_EVEN);
+        }
+        BigInteger unscaled = amount.unscaledValue();
+        if (unscaled.compareTo(MIN_LONG) < 0 || unscaled.compareTo(MAX_LONG) > 0) {
+            unscaledAmount = unscaled.signum();
+            amountScale = AMOUNT_OUT_OF_RANGE;
+        } else {
+            unscaledAmount = unscaled.longValue();
+            amountScale = amount.scale();
+        }
+    }
+
+    public static CompactOrder from(Order order) {
+        return new CompactOrder(order);
+    }
+
+    boolean hasAmount() {
+        return amountScale != NO_AMOUNT;
+    }
+
+    /**
+     * Sign of the submitted amount; zero when there is none.
+     */
+    int amountSignum() {
+        return Long.signum(unscaledAmount);
+    }
+
+    /**
+     * Rounds the amount half-even into minor units. Returns false when there is no amount or it
+     * does not fit in a long once expressed in minor units.
+     */
+    public boolean price() {
+        if (amountScale == NO_AMOUNT || amountScale == AMOUNT_OUT_OF_RANGE) {
+            return false;
+        }
+        if (amountScale <= MONEY_SCALE) {
+            int shift = MONEY_SCALE - amountScale;
+            if (shift > MAX_LONG_DIGITS) {
+                return unscaledAmount == 0;
+            }
+            try {
+                amountMinor = Math.multiplyExact(unscaledAmount, POWERS_OF_TEN[shift]);
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+        int shift = amountScale - MONEY_SCALE;
+        if (shift > MAX_LONG_DIGITS) {
+            // Less than a hundredth of the smallest unit away from zero
+            amountMinor = 0;
+            return true;
+        }
+        long divisor = POWERS_OF_TEN[shift];
+        long quotient = unscaledAmount / divisor;
+        long twiceRemainder = Math.abs(unscaledAmount % divisor) * 2;
+        if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+            quotient += Long.signum(unscaledAmount);
+        }
+        amountMinor = quotient;
+        return true;
+    }
+
+    /**
+     * The entity to write, with the amount as priced.
+     */
+    public Order toOrder() {
+        Order order = new Order();
+        order.setId(id != ABSENT ? id : null);
+        order.setOrderNumber(orderNumber);
+        order.setStatus(status);
+        order.setTotalAmount(BigDecimal.valueOf(amountMinor, MONEY_SCALE));
+        order.setCustomerId(customerId);
+        order.setProductId(productId);
+        order.setQuantity(quantity);
+        order.setCreatedAt(toLocalDateTime(createdAtMicros));
+        order.setUpdatedAt(toLocalDateTime(updatedAtMicros));
+        order.setVersion(version != ABSENT ? version : null);
+        return order;
+    }
+
+    // Timestamps are stored with microsecond precision, so nothing the database keeps is lost
+    private static long toEpochMicros(LocalDateTime time) {
+        if (time == null) {
+            return ABSENT;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMicros) {
+        if (epochMicros == ABSENT) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMicros, 1_000_000),
+                (int) Math.floorMod(epochMicros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
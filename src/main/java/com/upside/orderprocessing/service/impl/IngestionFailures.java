@@ -0,0 +1,25 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+final class IngestionFailures {
+
+    private IngestionFailures() {
+    }
+
+    /**
+     * Whether writing an order failed because of the order itself, so that writing it again
+     * would fail the same way.
+     */
+    static boolean isPermanent(Throwable e) {
+        return e instanceof InvalidOrderException
+                || e instanceof DataIntegrityViolationException
+                || e instanceof R2dbcDataIntegrityViolationException
+                // Integrity constraint violations from the JDBC engine
+                || e instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("23");
+    }
+}
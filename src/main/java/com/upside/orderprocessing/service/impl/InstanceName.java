@@ -0,0 +1,22 @@
+package com.upside.orderprocessing.service.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Names this process among the instances sharing Redis or the database: host name and pid.
+ */
+final class InstanceName {
+    private InstanceName() {
+    }
+
+    static String get() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "order-service";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+}
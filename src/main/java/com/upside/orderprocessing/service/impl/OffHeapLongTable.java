@@ -0,0 +1,213 @@
+package com.upside.orderprocessing.service.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open-addressing hash table of positive {@code long} keys, each with a fixed number of value
+ * bytes, kept in one direct buffer. An entry costs its key and value bytes divided by the load
+ * factor and nothing on the heap, however many entries there are. Slots are returned by lookups
+ * and stay valid until the next insert or remove. Not thread-safe.
+ */
+final class OffHeapLongTable {
+    private static final int EMPTY = 0;
+    private static final float MAX_LOAD = 0.75f;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final int valueBytes;
+    private final int entryBytes;
+    private final int maxCapacity;
+    private ByteBuffer entries;
+    private int capacity;
+    private int shift;
+    private int size;
+
+    OffHeapLongTable(int valueBytes, int initialCapacity) {
+        this.valueBytes = valueBytes;
+        // Entries stay 8-byte aligned so that longs are never split across cache lines
+        this.entryBytes = (Long.BYTES + valueBytes + 7) & ~7;
+        this.maxCapacity = Integer.highestOneBit(Integer.MAX_VALUE / entryBytes);
+        allocate(Math.max(16, Math.min(maxCapacity, ceilingPowerOfTwo(initialCapacity))));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Number of slots; a slot whose key is 0 is empty.
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Bytes of direct memory the table holds.
+     */
+    long memoryBytes() {
+        return (long) capacity * entryBytes;
+    }
+
+    /**
+     * The slot of {@code key}, or -1 if the table does not contain it.
+     */
+    int find(long key) {
+        checkKey(key);
+        for (int slot = home(key); ; slot = next(slot)) {
+            long stored = key(slot);
+            if (stored == key) {
+                return slot;
+            }
+            if (stored == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * The slot of {@code key}, added with zeroed values if the table did not contain it.
+     */
+    int insert(long key) {
+        checkKey(key);
+        if (size + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        for (int slot = home(key); ; slot = next(slot)) {
+            long stored = key(slot);
+            if (stored == key) {
+                return slot;
+            }
+            if (stored == EMPTY) {
+                entries.putLong(offset(slot), key);
+                size++;
+                return slot;
+            }
+        }
+    }
+
+    boolean remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        // Backward-shift deletion: later entries of the probe run move up, so no tombstones
+        // are needed and lookups never walk past deleted entries
+        int hole = slot;
+        for (int next = next(hole); key(next) != EMPTY; next = next(next)) {
+            int home = home(key(next));
+            if (((next - home) & (capacity - 1)) >= ((next - hole) & (capacity - 1))) {
+                copy(next, hole);
+                hole = next;
+            }
+        }
+        clear(hole);
+        size--;
+        return true;
+    }
+
+    /**
+     * The keys, in no particular order.
+     */
+    long[] keys() {
+        long[] keys = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long key = key(slot);
+            if (key != EMPTY) {
+                keys[count++] = key;
+            }
+        }
+        return keys;
+    }
+
+    long key(int slot) {
+        return entries.getLong(offset(slot));
+    }
+
+    long getLong(int slot, int valueOffset) {
+        return entries.getLong(offset(slot) + Long.BYTES + valueOffset);
+    }
+
+    void putLong(int slot, int valueOffset, long value) {
+        entries.putLong(offset(slot) + Long.BYTES + valueOffset, value);
+    }
+
+    int getInt(int slot, int valueOffset) {
+        return entries.getInt(offset(slot) + Long.BYTES + valueOffset);
+    }
+
+    void putInt(int slot, int valueOffset, int value) {
+        entries.putInt(offset(slot) + Long.BYTES + valueOffset, value);
+    }
+
+    byte getByte(int slot, int valueOffset) {
+        return entries.get(offset(slot) + Long.BYTES + valueOffset);
+    }
+
+    void putByte(int slot, int valueOffset, byte value) {
+        entries.put(offset(slot) + Long.BYTES + valueOffset, value);
+    }
+
+    private void grow() {
+        if (capacity >= maxCapacity) {
+            throw new IllegalStateException("Off-heap table is full at " + size + " entries");
+        }
+        ByteBuffer old = entries;
+        int oldCapacity = capacity;
+        allocate(capacity * 2);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int from = slot * entryBytes;
+            long key = old.getLong(from);
+            if (key == EMPTY) {
+                continue;
+            }
+            int to = home(key);
+            while (key(to) != EMPTY) {
+                to = next(to);
+            }
+            entries.put(offset(to), old, from, entryBytes);
+        }
+        // The old buffer is freed once it is garbage collected
+    }
+
+    private void allocate(int newCapacity) {
+        entries = ByteBuffer.allocateDirect(newCapacity * entryBytes).order(ByteOrder.nativeOrder());
+        capacity = newCapacity;
+        shift = Long.SIZE - Integer.numberOfTrailingZeros(newCapacity);
+    }
+
+    private void copy(int from, int to) {
+        entries.put(offset(to), entries, offset(from), entryBytes);
+    }
+
+    private void clear(int slot) {
+        int offset = offset(slot);
+        entries.putLong(offset, EMPTY);
+        for (int i = Long.BYTES; i < Long.BYTES + valueBytes; i++) {
+            entries.put(offset + i, (byte) 0);
+        }
+    }
+
+    private int home(long key) {
+        // Fibonacci hashing spreads the sequential ids orders get across the table
+        return (int) ((key * GOLDEN_RATIO) >>> shift);
+    }
+
+    private int next(int slot) {
+        return (slot + 1) & (capacity - 1);
+    }
+
+    private int offset(int slot) {
+        return slot * entryBytes;
+    }
+
+    private static void checkKey(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Keys must be positive: " + key);
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
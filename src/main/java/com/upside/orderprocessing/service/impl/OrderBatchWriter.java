@@ -0,0 +1,70 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.exception.ConcurrencyLimitExceededException;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists a batch of {@link PendingWrite}s with one multi-row INSERT and records the outcome on
+ * each write. The returned {@code Mono} never errors; failures end up on the writes themselves.
+ */
+@Slf4j
+final class OrderBatchWriter {
+    private final OrderRepository orderRepository;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Counter fallbacks;
+
+    OrderBatchWriter(OrderRepository orderRepository, AdaptiveConcurrencyLimiter limiter, Counter fallbacks) {
+        this.orderRepository = orderRepository;
+        this.limiter = limiter;
+        this.fallbacks = fallbacks;
+    }
+
+    Mono<Void> write(List<? extends PendingWrite> batch) {
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            orders.add(write.order());
+        }
+        return limiter.flux(() -> orderRepository.insertAll(orders))
+                .collectList()
+                .doOnNext(saved -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).succeeded(saved.get(i));
+                    }
+                })
+                .then()
+                .onErrorResume(ConcurrencyLimitExceededException.class, e -> {
+                    // Retrying row by row would only add load the limiter just turned away
+                    batch.forEach(write -> write.failed(e));
+                    return Mono.empty();
+                })
+                .onErrorResume(e -> {
+                    // A failed multi-row INSERT is rolled back as a whole, so one bad order
+                    // must not fail the others that happened to share its batch
+                    log.warn("Batch write of {} orders failed, retrying individually", batch.size(), e);
+                    fallbacks.increment();
+                    return writeIndividually(batch);
+                });
+    }
+
+    private Mono<Void> writeIndividually(List<? extends PendingWrite> batch) {
+        // One at a time and in order, as the lane wrote them, rather than a burst of single inserts
+        return Flux.fromIterable(batch)
+                .concatMap(write -> limiter.flux(() -> orderRepository.insertAll(List.of(write.order())))
+                        .next()
+                        .doOnNext(write::succeeded)
+                        .onErrorResume(e -> {
+                            write.failed(e);
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+}
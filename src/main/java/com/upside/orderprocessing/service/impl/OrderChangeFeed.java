@@ -0,0 +1,197 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Relays the {@code order_events} outbox to in-process subscribers. A single reader per
+ * instance wakes up on a PostgreSQL notification (or the poll interval), reads the new rows
+ * once and multicasts them, so the database load is independent of the subscriber count.
+ * Each subscriber has its own bounded buffer and loses its oldest events when it falls behind,
+ * without slowing down the others.
+ */
+@Slf4j
+@Component
+public class OrderChangeFeed {
+    static final String CHANNEL = "order_events";
+    private static final int MAX_TRACKED_GAPS = 10_000;
+
+    private final OrderEventRepository eventRepository;
+    private final ConnectionFactory connectionFactory;
+    private final OrderProcessingProperties.ChangeFeed config;
+    private final Sinks.Many<OrderEvent> events = Sinks.many().multicast().directBestEffort();
+    private final Counter published;
+    private final Counter dropped;
+    private final Disposable.Composite tasks = Disposables.composite();
+    private final Sinks.Empty<Void> started = Sinks.empty();
+
+    // Only touched by the relay, which reads the outbox one drain at a time
+    private long lastEventId;
+    // Outbox ids are assigned before commit, so a skipped id may still appear; each is
+    // re-checked until gap-timeout, after which it is taken to be a rolled-back write
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+
+    public OrderChangeFeed(OrderEventRepository eventRepository, ConnectionFactory connectionFactory,
+                           OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.eventRepository = eventRepository;
+        this.connectionFactory = connectionFactory;
+        this.config = properties.getChangeFeed();
+        this.published = meterRegistry.counter("orders.changes.published");
+        this.dropped = meterRegistry.counter("orders.changes.dropped");
+        Gauge.builder("orders.changes.subscribers", events, Sinks.Many::currentSubscriberCount)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            started.tryEmitEmpty();
+            return;
+        }
+        tasks.add(eventRepository.findLatestId()
+                .doOnNext(latest -> {
+                    lastEventId = latest;
+                    started.tryEmitEmpty();
+                })
+                .thenMany(Flux.merge(notifications(), Flux.interval(config.getPollInterval())))
+                // A drain reads everything committed so far, so signals arriving meanwhile collapse into one
+                .onBackpressureLatest()
+                .concatMap(signal -> drain(), 1)
+                .subscribe(null, e -> log.error("Order change feed stopped", e)));
+        tasks.add(Flux.interval(config.getRetention().dividedBy(10))
+                .concatMap(tick -> eventRepository.deleteCreatedBefore(LocalDateTime.now().minus(config.getRetention()))
+                        .onErrorResume(e -> {
+                            log.warn("Could not purge the order outbox", e);
+                            return Mono.empty();
+                        }))
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tasks.dispose();
+        events.tryEmitComplete();
+    }
+
+    /**
+     * Completes once the feed knows where it starts, after which every committed change reaches
+     * subscribers; right away when the feed is disabled.
+     */
+    public Mono<Void> started() {
+        return started.asMono();
+    }
+
+    /**
+     * Order changes committed from now on, optionally limited to one status and/or customer.
+     */
+    public Flux<OrderEvent> subscribe(OrderStatus status, String customerId) {
+        return events.asFlux()
+                .filter(event -> (status == null || status == event.getStatus())
+                        && (customerId == null || customerId.equals(event.getCustomerId())))
+                .onBackpressureBuffer(config.getSubscriberBuffer(), event -> dropped.increment(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    private Mono<Void> drain() {
+        return recheckGaps()
+                .then(readPage().expand(page -> page.size() == config.getBatchSize() ? readPage() : Mono.empty()).then())
+                .onErrorResume(e -> {
+                    log.warn("Could not read the order outbox; retrying on the next signal", e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<List<OrderEvent>> readPage() {
+        return Mono.defer(() -> eventRepository.findAfter(lastEventId, config.getBatchSize()).collectList())
+                .doOnNext(page -> {
+                    long now = System.nanoTime();
+                    for (OrderEvent event : page) {
+                        // Counted from the starting cursor too, which an empty outbox leaves at 0; when
+                        // there are more than can be tracked, the ids just below this one are the likely
+                        // uncommitted ones
+                        long from = Math.max(lastEventId + 1, event.getId() - (MAX_TRACKED_GAPS - gaps.size()));
+                        for (long missing = from; missing < event.getId(); missing++) {
+                            gaps.put(missing, now);
+                        }
+                        lastEventId = event.getId();
+                        publish(event);
+                    }
+                });
+    }
+
+    private Mono<Void> recheckGaps() {
+        if (gaps.isEmpty()) {
+            return Mono.empty();
+        }
+        long expiredBefore = System.nanoTime() - config.getGapTimeout().toNanos();
+        gaps.values().removeIf(firstSeen -> firstSeen < expiredBefore);
+        return eventRepository.findAllById(List.copyOf(gaps.keySet()))
+                .doOnNext(event -> {
+                    gaps.remove(event.getId());
+                    publish(event);
+                })
+                .then();
+    }
+
+    private void publish(OrderEvent event) {
+        // Without subscribers there is nobody to deliver to; that is not a failure
+        events.tryEmitNext(event);
+        published.increment();
+    }
+
+    private Flux<Long> notifications() {
+        ConnectionFactory direct = unwrap(connectionFactory);
+        if (!"PostgreSQL".equals(direct.getMetadata().getName())) {
+            return Flux.empty();
+        }
+        // A dedicated connection outside the pool, since it is held for the lifetime of the feed
+        return Flux.usingWhen(direct.create(), this::listen, Connection::close)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Lost LISTEN connection, reconnecting", signal.failure())));
+    }
+
+    private Flux<Long> listen(Connection connection) {
+        PostgresqlConnection postgres = (PostgresqlConnection) connection;
+        return postgres.createStatement("LISTEN " + CHANNEL)
+                .execute()
+                .flatMap(PostgresqlResult::getRowsUpdated)
+                .thenMany(postgres.getNotifications())
+                .map(notification -> 0L);
+    }
+
+    private static ConnectionFactory unwrap(ConnectionFactory factory) {
+        while (factory instanceof Wrapped<?> wrapped && wrapped.unwrap() instanceof ConnectionFactory inner) {
+            factory = inner;
+        }
+        return factory;
+    }
+}
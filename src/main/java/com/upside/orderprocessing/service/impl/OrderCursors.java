@@ -0,0 +1,39 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.exception.InvalidCursorException;
+import com.upside.orderprocessing.model.Order;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Encodes the {@code (created_at, id)} keyset position of an order as an opaque, URL-safe
+ * cursor so clients cannot depend on its layout.
+ */
+final class OrderCursors {
+    private static final char SEPARATOR = '|';
+
+    private OrderCursors() {
+    }
+
+    static String encode(Order order) {
+        String position = order.getCreatedAt().toString() + SEPARATOR + order.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Position decode(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(SEPARATOR);
+            return new Position(
+                    LocalDateTime.parse(position.substring(0, separator)),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException(cursor, e);
+        }
+    }
+
+    record Position(LocalDateTime createdAt, Long id) {
+    }
+}
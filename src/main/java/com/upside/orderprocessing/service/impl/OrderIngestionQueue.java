@@ -0,0 +1,320 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.IngestionBacklogFullException;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.IngestionStatus;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.service.OrderIngestion;
+import com.upside.orderprocessing.service.OrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveStreamCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.ReactiveStreamOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Asynchronous ingestion through a Redis stream. Accepted orders are appended to the stream and
+ * answered with their entry ids as tracking ids; consumers of a consumer group on every instance
+ * read the stream in batches of up to {@code batch-size} and write each batch through
+ * {@link OrderService#processBatchOrders}, so a burst is absorbed by the stream and reaches the
+ * database at the rate the consumers write. An entry is acknowledged and deleted once its
+ * outcome is stored for lookup. Entries left unacknowledged by a consumer that crashed, or whose
+ * write failed for a reason other than the order itself, are claimed again after
+ * {@code claim-idle}; order numbers make writing an order twice return the first row.
+ */
+@Slf4j
+public class OrderIngestionQueue implements OrderIngestion {
+    static final String ORDER_FIELD = "order";
+    private static final int ADD_CONCURRENCY = 64;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    private static final Pattern RECORD_ID = Pattern.compile("\\d+-\\d+");
+
+    private final ReactiveStringRedisTemplate redis;
+    private final ReactiveStreamOperations<String, String, String> stream;
+    private final ObjectMapper objectMapper;
+    private final OrderService orderService;
+    private final OrderProcessingProperties.Ingestion config;
+    private final String consumerName;
+    private final Disposable.Composite tasks = Disposables.composite();
+    private final AtomicLong backlog = new AtomicLong();
+
+    private final Counter enqueued;
+    private final Counter written;
+    private final Counter failed;
+    private final Counter reclaimed;
+
+    public OrderIngestionQueue(ReactiveStringRedisTemplate redis, ObjectMapper objectMapper, OrderService orderService,
+                               OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.redis = redis;
+        this.stream = redis.opsForStream();
+        this.objectMapper = objectMapper;
+        this.orderService = orderService;
+        this.config = properties.getIngestion();
+        this.consumerName = config.getConsumerName() != null ? config.getConsumerName() : InstanceName.get();
+        this.enqueued = meterRegistry.counter("orders.ingestion.enqueued");
+        this.written = meterRegistry.counter("orders.ingestion.written");
+        this.failed = meterRegistry.counter("orders.ingestion.failed");
+        this.reclaimed = meterRegistry.counter("orders.ingestion.reclaimed");
+        Gauge.builder("orders.ingestion.backlog", backlog, AtomicLong::get)
+                .description("Entries in the ingestion stream when last measured")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Starting from the beginning picks up entries added before the group existed
+        Mono<Void> group = stream.createGroup(config.getStreamKey(), ReadOffset.from("0"), config.getGroup())
+                .onErrorResume(OrderIngestionQueue::isGroupExists, e -> Mono.empty())
+                .then();
+        for (int i = 1; i <= config.getConsumers(); i++) {
+            Consumer consumer = Consumer.from(config.getGroup(), consumerName + "-" + i);
+            // After an error the group is created again, in case the stream was lost with it
+            tasks.add(group.then(Mono.defer(() -> drain(consumer)).repeat().then())
+                    .onErrorResume(e -> {
+                        log.warn("Could not drain the ingestion stream; retrying", e);
+                        return Mono.delay(RETRY_DELAY).then();
+                    })
+                    .repeat()
+                    .subscribe());
+        }
+        Consumer reclaimer = Consumer.from(config.getGroup(), consumerName + "-1");
+        tasks.add(Flux.interval(config.getClaimInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> reclaim(reclaimer)
+                        .onErrorResume(e -> {
+                            log.warn("Could not reclaim pending ingestion entries", e);
+                            return Mono.empty();
+                        }), 1)
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Entries read but not yet acknowledged stay pending and are claimed by another consumer
+        tasks.dispose();
+    }
+
+    @Override
+    public Mono<IngestionReceipt> enqueue(Flux<Order> orders) {
+        return orders.collectList().flatMap(batch -> {
+            for (Order order : batch) {
+                // Order numbers are what make writing a redelivered entry again harmless
+                if (!StringUtils.hasText(order.getOrderNumber())) {
+                    return Mono.error(new InvalidOrderException(null, "order number is required"));
+                }
+            }
+            return stream.size(config.getStreamKey()).flatMap(size -> {
+                backlog.set(size);
+                if (size + batch.size() > config.getMaxBacklog()) {
+                    return Mono.error(new IngestionBacklogFullException(size, config.getRetryAfter()));
+                }
+                return Flux.fromIterable(batch)
+                        .flatMapSequential(this::append, ADD_CONCURRENCY)
+                        .map(RecordId::getValue)
+                        .collectList()
+                        .doOnNext(ids -> enqueued.increment(ids.size()))
+                        .map(ids -> new IngestionReceipt(ids.size(), ids));
+            });
+        });
+    }
+
+    @Override
+    public Mono<IngestionStatus> status(String trackingId) {
+        if (!RECORD_ID.matcher(trackingId).matches()) {
+            return Mono.empty();
+        }
+        return redis.opsForValue().get(config.getResultKeyPrefix() + trackingId)
+                .flatMap(json -> Mono.fromCallable(() -> objectMapper.readValue(json, IngestionStatus.class)))
+                .switchIfEmpty(Mono.defer(() -> stream.range(config.getStreamKey(), Range.closed(trackingId, trackingId))
+                        .next()
+                        .map(entry -> new IngestionStatus(trackingId, IngestionStatus.State.QUEUED, null, null))));
+    }
+
+    private Mono<RecordId> append(Order order) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(order))
+                .flatMap(json -> stream.add(StreamRecords.newRecord()
+                        .in(config.getStreamKey())
+                        .ofMap(Map.of(ORDER_FIELD, json))));
+    }
+
+    private Mono<Void> drain(Consumer consumer) {
+        return read(consumer)
+                .collectList()
+                .flatMap(this::write);
+    }
+
+    /**
+     * Reads the next entries for {@code consumer}. The read is issued as a command built from a
+     * list of offsets, since the template only takes them as a generic varargs array.
+     */
+    private Flux<MapRecord<String, String, String>> read(Consumer consumer) {
+        StreamReadOptions options = StreamReadOptions.empty()
+                .count(config.getBatchSize())
+                .block(config.getBlock());
+        ByteBuffer key = redis.getSerializationContext().getKeySerializationPair().write(config.getStreamKey());
+        List<StreamOffset<ByteBuffer>> offsets = List.of(StreamOffset.create(key, ReadOffset.lastConsumed()));
+        ReactiveStreamCommands.ReadCommand command = new ReactiveStreamCommands.ReadCommand(offsets, options, consumer);
+        return redis.execute(connection -> connection.streamCommands().read(Mono.just(command))
+                .concatMap(ReactiveRedisConnection.CommandResponse::getOutput)
+                .map(stream::deserializeRecord));
+    }
+
+    /**
+     * Writes the orders of {@code entries} and completes those with an outcome. Entries whose
+     * write failed for a reason that may pass, such as the database being unavailable, are left
+     * pending to be claimed again.
+     */
+    private Mono<Void> write(List<MapRecord<String, String, String>> entries) {
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<RecordId, IngestionStatus> outcomes = new LinkedHashMap<>();
+        List<Entry> readable = new ArrayList<>(entries.size());
+        for (MapRecord<String, String, String> entry : entries) {
+            try {
+                readable.add(new Entry(entry.getId(), objectMapper.readValue(entry.getValue().get(ORDER_FIELD), Order.class)));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                outcomes.put(entry.getId(), failed(entry.getId(), "Unreadable order: " + e.getMessage()));
+            }
+        }
+        return writeBatch(readable, outcomes)
+                .then(Mono.defer(() -> complete(outcomes)));
+    }
+
+    private Mono<Void> writeBatch(List<Entry> entries, Map<RecordId, IngestionStatus> outcomes) {
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        return orderService.processBatchOrders(Flux.fromIterable(entries).map(Entry::order))
+                .collectMap(Order::getOrderNumber, Order::getId)
+                .doOnNext(ids -> {
+                    for (Entry entry : entries) {
+                        Long id = ids.get(entry.order().getOrderNumber());
+                        outcomes.put(entry.id(), id != null
+                                ? new IngestionStatus(entry.id().getValue(), IngestionStatus.State.WRITTEN, id, null)
+                                : failed(entry.id(), "Order was not written"));
+                    }
+                })
+                .then()
+                .onErrorResume(e -> {
+                    if (!IngestionFailures.isPermanent(e)) {
+                        // Writing the orders one by one would only add load to a database that is struggling
+                        log.warn("Could not write {} ingested orders; they will be claimed again", entries.size(), e);
+                        return Mono.empty();
+                    }
+                    if (entries.size() > 1) {
+                        // One bad order fails the batch, so the orders are written one by one to find it
+                        return Flux.fromIterable(entries)
+                                .concatMap(entry -> writeBatch(List.of(entry), outcomes))
+                                .then();
+                    }
+                    Entry entry = entries.get(0);
+                    outcomes.put(entry.id(), failed(entry.id(), e.getMessage()));
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Stores the outcomes for lookup, then acknowledges and deletes their entries, so an entry
+     * never disappears before its outcome can be read.
+     */
+    private Mono<Void> complete(Map<RecordId, IngestionStatus> outcomes) {
+        if (outcomes.isEmpty()) {
+            return Mono.empty();
+        }
+        RecordId[] ids = outcomes.keySet().toArray(RecordId[]::new);
+        return Flux.fromIterable(outcomes.values())
+                .flatMap(status -> Mono.fromCallable(() -> objectMapper.writeValueAsString(status))
+                        .flatMap(json -> redis.opsForValue().set(config.getResultKeyPrefix() + status.getTrackingId(),
+                                json, config.getResultTtl())))
+                .then(Mono.defer(() -> stream.acknowledge(config.getStreamKey(), config.getGroup(), ids)))
+                .then(Mono.defer(() -> stream.delete(config.getStreamKey(), ids)))
+                .doOnSuccess(done -> outcomes.values().forEach(status ->
+                        (status.getState() == IngestionStatus.State.WRITTEN ? written : failed).increment()))
+                .then();
+    }
+
+    /**
+     * Takes over entries that have been pending for {@code claim-idle} and writes them again, or
+     * marks them as failed once they have been delivered {@code max-deliveries} times.
+     */
+    private Mono<Void> reclaim(Consumer consumer) {
+        return stream.size(config.getStreamKey())
+                .doOnNext(backlog::set)
+                .then(Mono.defer(() -> stream.pending(config.getStreamKey(), config.getGroup(), Range.unbounded(),
+                        config.getBatchSize())))
+                .flatMap(pending -> {
+                    List<RecordId> stale = new ArrayList<>();
+                    Map<RecordId, IngestionStatus> exhausted = new LinkedHashMap<>();
+                    for (PendingMessage message : pending) {
+                        if (message.getElapsedTimeSinceLastDelivery().compareTo(config.getClaimIdle()) < 0) {
+                            continue;
+                        }
+                        if (message.getTotalDeliveryCount() >= config.getMaxDeliveries()) {
+                            exhausted.put(message.getId(), failed(message.getId(),
+                                    "Not written after " + message.getTotalDeliveryCount() + " deliveries"));
+                        } else {
+                            stale.add(message.getId());
+                        }
+                    }
+                    if (stale.isEmpty()) {
+                        return complete(exhausted);
+                    }
+                    // Claiming again checks the idle time, so an entry another instance took meanwhile is skipped
+                    RedisStreamCommands.XClaimOptions options = RedisStreamCommands.XClaimOptions
+                            .minIdle(config.getClaimIdle())
+                            .ids(stale);
+                    return complete(exhausted)
+                            .then(Mono.defer(() -> stream.claim(config.getStreamKey(), config.getGroup(),
+                                    consumer.getName(), options).collectList()))
+                            .doOnNext(claimed -> reclaimed.increment(claimed.size()))
+                            .flatMap(this::write);
+                });
+    }
+
+    private static IngestionStatus failed(RecordId id, String error) {
+        return new IngestionStatus(id.getValue(), IngestionStatus.State.FAILED, null, error);
+    }
+
+    private static boolean isGroupExists(Throwable e) {
+        return String.valueOf(NestedExceptionUtils.getMostSpecificCause(e).getMessage()).startsWith("BUSYGROUP");
+    }
+
+    private record Entry(RecordId id, Order order) {
+    }
+}
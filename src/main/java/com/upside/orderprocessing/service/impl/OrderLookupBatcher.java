@@ -0,0 +1,123 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers concurrent order lookups by id into shared {@code id = ANY(...)} queries, in the manner
+ * of a DataLoader. A batch is queried once it holds {@code batch-size} lookups or its first lookup
+ * has waited {@code max-wait}; lookups of the same id in one batch share a single row, and every
+ * caller is completed with its own result, or empty when the order is not live.
+ */
+@Component
+public class OrderLookupBatcher {
+    private final OrderRepository orderRepository;
+    private final ReplicaReads replicaReads;
+    private final boolean enabled;
+    private final Sinks.Many<Lookup> sink;
+    private final Disposable subscription;
+
+    private final Counter lookups;
+    private final Counter overflows;
+    private final DistributionSummary batchSize;
+
+    public OrderLookupBatcher(OrderRepository orderRepository, ReplicaReads replicaReads,
+                              OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        OrderProcessingProperties.Lookup config = properties.getLookup();
+        this.orderRepository = orderRepository;
+        this.replicaReads = replicaReads;
+        this.enabled = config.isBatching();
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<Lookup>get(config.getQueueDepth()).get());
+        this.lookups = Counter.builder("orders.lookup.batched")
+                .description("Lookups by id answered by a batched query")
+                .register(meterRegistry);
+        this.overflows = Counter.builder("orders.lookup.overflows")
+                .description("Lookups queried on their own because the batch queue was full")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("orders.lookup.batch.size")
+                .description("Distinct ids per batched query")
+                .register(meterRegistry);
+        this.subscription = enabled
+                ? sink.asFlux()
+                        .bufferTimeout(config.getBatchSize(), config.getMaxWait(), true)
+                        .flatMap(this::query, config.getMaxInFlightBatches())
+                        .subscribe()
+                : null;
+    }
+
+    /**
+     * The live order with {@code id}, or empty.
+     */
+    public Mono<Order> load(Long id) {
+        if (!enabled) {
+            return replicaReads.read(orderRepository.findById(id));
+        }
+        return Mono.defer(() -> {
+            Lookup lookup = new Lookup(id);
+            Sinks.EmitResult result;
+            while ((result = sink.tryEmitNext(lookup)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (result.isFailure()) {
+                // A read is better served late than refused
+                overflows.increment();
+                return replicaReads.read(orderRepository.findById(id));
+            }
+            lookups.increment();
+            return lookup.result.asMono();
+        });
+    }
+
+    private Mono<Void> query(List<Lookup> batch) {
+        Map<Long, List<Lookup>> waiting = new HashMap<>(batch.size() * 2);
+        for (Lookup lookup : batch) {
+            waiting.computeIfAbsent(lookup.id, id -> new ArrayList<>(1)).add(lookup);
+        }
+        batchSize.record(waiting.size());
+        return replicaReads.read(orderRepository.findAllByIdIn(waiting.keySet()))
+                .doOnNext(order -> {
+                    List<Lookup> found = waiting.remove(order.getId());
+                    if (found != null) {
+                        found.forEach(lookup -> lookup.result.tryEmitValue(order));
+                    }
+                })
+                .then()
+                .doOnSuccess(done -> waiting.values().forEach(missing -> missing.forEach(lookup -> lookup.result.tryEmitEmpty())))
+                .onErrorResume(e -> {
+                    waiting.values().forEach(failed -> failed.forEach(lookup -> lookup.result.tryEmitError(e)));
+                    return Mono.empty();
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Completing the sink lets bufferTimeout query whatever is still queued
+        if (subscription != null && sink.tryEmitComplete().isFailure()) {
+            subscription.dispose();
+        }
+    }
+
+    private static final class Lookup {
+        private final Long id;
+        private final Sinks.One<Order> result = Sinks.one();
+
+        private Lookup(Long id) {
+            this.id = id;
+        }
+    }
+}
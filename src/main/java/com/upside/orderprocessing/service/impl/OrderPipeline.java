@@ -0,0 +1,262 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ingests orders through four stages (validate, price, persist, publish) in lanes that orders are
+ * hash-partitioned into by customer. Each lane runs on a single scheduler worker and persists its
+ * batches one after another, so the orders of one customer are stored and completed in the order
+ * they were submitted without any locking, while lanes proceed independently of each other.
+ * Inside the lanes an order is held as a {@link CompactOrder} and only turns back into the entity
+ * to be written.
+ */
+@Slf4j
+@Component
+public class OrderPipeline {
+    enum Stage {
+        VALIDATE, PRICE, PERSIST, PUBLISH
+    }
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final boolean enabled;
+    private final Lane[] lanes;
+    private final OrderBatchWriter batchWriter;
+
+    private final LongAdder[] stageDepth = new LongAdder[Stage.values().length];
+    private final Timer[] stageLatency = new Timer[Stage.values().length];
+    private final Counter rejected;
+    private final Counter invalid;
+
+    public OrderPipeline(OrderRepository orderRepository,
+                         AdaptiveConcurrencyLimiter limiter,
+                         OrderProcessingProperties properties,
+                         MeterRegistry meterRegistry) {
+        OrderProcessingProperties.Pipeline pipeline = properties.getProcessing().getPipeline();
+        this.enabled = pipeline.isEnabled();
+        this.batchWriter = new OrderBatchWriter(orderRepository, limiter,
+                Counter.builder("orders.pipeline.fallbacks")
+                        .description("Lane batches retried row by row after the multi-row INSERT failed")
+                        .register(meterRegistry));
+        this.rejected = Counter.builder("orders.pipeline.rejected")
+                .description("Orders rejected because their lane was full")
+                .register(meterRegistry);
+        this.invalid = Counter.builder("orders.pipeline.invalid")
+                .description("Orders that failed validation")
+                .register(meterRegistry);
+
+        for (Stage stage : Stage.values()) {
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            LongAdder depth = new LongAdder();
+            stageDepth[stage.ordinal()] = depth;
+            Gauge.builder("orders.pipeline.stage.depth", depth, LongAdder::sum)
+                    .description("Orders waiting in or passing through a pipeline stage")
+                    .tag("stage", name)
+                    .register(meterRegistry);
+            stageLatency[stage.ordinal()] = Timer.builder("orders.pipeline.stage.latency")
+                    .description("Time an order spends in a pipeline stage, including queueing for it")
+                    .tag("stage", name)
+                    .register(meterRegistry);
+        }
+
+        int partitions = enabled ? Math.max(1, pipeline.getPartitions()) : 0;
+        this.lanes = new Lane[partitions];
+        for (int i = 0; i < partitions; i++) {
+            lanes[i] = new Lane(i, pipeline);
+            Gauge.builder("orders.pipeline.lane.depth", lanes[i].queue, Queue::size)
+                    .description("Orders waiting to enter a lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands the order to its customer's lane and completes with the stored row. Errors with
+     * {@link InvalidOrderException} when validation fails and with {@link RejectedExecutionException}
+     * when {@code lane-capacity} orders are already waiting in the lane.
+     */
+    public Mono<Order> submit(Order order) {
+        return Mono.defer(() -> {
+            if (!enabled) {
+                return Mono.error(new IllegalStateException("Order pipeline is disabled"));
+            }
+            CompactOrder compact = CompactOrder.from(order);
+            Lane lane = lanes[partition(compact.customerId)];
+            Job job = new Job(compact);
+            advance(job, Stage.VALIDATE);
+            Sinks.EmitResult result;
+            while ((result = lane.sink.tryEmitNext(job)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (result.isFailure()) {
+                stageDepth[Stage.VALIDATE.ordinal()].decrement();
+                rejected.increment();
+                return Mono.error(new RejectedExecutionException("Order pipeline lane is full"));
+            }
+            return job.result();
+        });
+    }
+
+    int partition(String customerId) {
+        if (customerId == null) {
+            return 0;
+        }
+        int hash = customerId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    private boolean validateAndPrice(Job job) {
+        CompactOrder order = job.compact;
+        String violation = violation(order);
+        if (violation == null) {
+            advance(job, Stage.PRICE);
+            // The column holds cents; rounding here keeps returned rows equal to what is stored
+            if (!order.price()) {
+                violation = "total amount is out of range";
+            }
+        }
+        if (violation != null) {
+            invalid.increment();
+            job.failed(new InvalidOrderException(order.orderNumber, violation));
+            publish(job);
+            return false;
+        }
+        advance(job, Stage.PERSIST);
+        return true;
+    }
+
+    private static String violation(CompactOrder order) {
+        if (!StringUtils.hasText(order.orderNumber)) {
+            return "order number is required";
+        }
+        if (!StringUtils.hasText(order.customerId)) {
+            return "customer id is required";
+        }
+        if (!StringUtils.hasText(order.productId)) {
+            return "product id is required";
+        }
+        if (order.quantity <= 0) {
+            return "quantity must be positive";
+        }
+        if (!order.hasAmount() || order.amountSignum() < 0) {
+            return "total amount must not be negative";
+        }
+        return null;
+    }
+
+    private Mono<List<Job>> persist(List<Job> batch) {
+        return batchWriter.write(batch)
+                .then(Mono.fromCallable(() -> {
+                    batch.forEach(job -> advance(job, Stage.PUBLISH));
+                    return batch;
+                }));
+    }
+
+    private void publish(Job job) {
+        // Change-feed events are written by the same statement as the row, so completing the
+        // caller is all that is left to publish here
+        advance(job, null);
+        job.complete();
+    }
+
+    private void advance(Job job, Stage next) {
+        long now = System.nanoTime();
+        if (job.stage != null) {
+            stageLatency[job.stage.ordinal()].record(now - job.enteredAt, TimeUnit.NANOSECONDS);
+            stageDepth[job.stage.ordinal()].decrement();
+        }
+        if (next != null) {
+            stageDepth[next.ordinal()].increment();
+        }
+        job.stage = next;
+        job.enteredAt = now;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        // Completing the sinks lets every lane flush what it already holds before its worker goes
+        CompletableFuture<?>[] terminations = new CompletableFuture<?>[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].sink.tryEmitComplete();
+            terminations[i] = lanes[i].termination;
+        }
+        try {
+            CompletableFuture.allOf(terminations).get(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("Order pipeline lanes did not drain within {}s", SHUTDOWN_TIMEOUT_SECONDS, e);
+        }
+        for (Lane lane : lanes) {
+            lane.worker.dispose();
+        }
+    }
+
+    private final class Lane {
+        private final Queue<Job> queue;
+        private final Sinks.Many<Job> sink;
+        private final Scheduler worker;
+        private final CompletableFuture<Void> termination;
+
+        private Lane(int index, OrderProcessingProperties.Pipeline pipeline) {
+            this.queue = Queues.<Job>get(pipeline.getLaneCapacity()).get();
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(queue);
+            // Every stage of the lane, including the batch timer, runs on this one thread
+            this.worker = Schedulers.newSingle("order-lane-" + index);
+            this.termination = sink.asFlux()
+                    .publishOn(worker)
+                    .filter(OrderPipeline.this::validateAndPrice)
+                    .bufferTimeout(pipeline.getBatchSize(), pipeline.getMaxWait(), worker, true)
+                    .concatMap(OrderPipeline.this::persist)
+                    .publishOn(worker)
+                    .doOnNext(batch -> batch.forEach(OrderPipeline.this::publish))
+                    .then()
+                    .toFuture();
+        }
+    }
+
+    private static final class Job extends PendingWrite {
+        private final CompactOrder compact;
+        private Stage stage;
+        private long enteredAt;
+
+        private Job(CompactOrder compact) {
+            this.compact = compact;
+        }
+
+        @Override
+        Order order() {
+            return compact.toOrder();
+        }
+    }
+}
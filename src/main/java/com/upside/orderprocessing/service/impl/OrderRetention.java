@@ -0,0 +1,105 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * Keeps the live {@code orders} table small. Each run creates the monthly partitions needed in
+ * the coming months, moves terminal orders past {@code archive-after} to the archive in batches,
+ * one transaction per batch, and then drops the partitions of months that archiving emptied. The
+ * hot table and its indexes only hold orders that can still change, and queries that cannot prune
+ * by month only visit the months that still hold some.
+ */
+@Slf4j
+@Component
+public class OrderRetention {
+    private final OrderRepository orderRepository;
+    private final OrderProcessingProperties.Retention config;
+    private final Counter archived;
+    private final Disposable.Swap task = Disposables.swap();
+
+    public OrderRetention(OrderRepository orderRepository, OrderProcessingProperties properties,
+                          MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.config = properties.getRetention();
+        this.archived = meterRegistry.counter("orders.archived");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        task.update(Flux.interval(Duration.ZERO, config.getInterval())
+                // A run that overlaps the next tick simply makes that tick unnecessary
+                .onBackpressureDrop()
+                .concatMap(tick -> runOnce(), 1)
+                .subscribe(null, e -> log.error("Order retention stopped", e)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        task.dispose();
+    }
+
+    /**
+     * Creates missing partitions, archives aged terminal orders until a batch comes back short and
+     * drops emptied partitions. Emits the number of orders archived; failures are logged and
+     * retried on the next run.
+     */
+    public Mono<Long> runOnce() {
+        YearMonth now = YearMonth.now();
+        Mono<Void> partitions = orderRepository.createPartitions(now, now.plusMonths(config.getPartitionsAhead()))
+                .doOnNext(month -> log.info("Created orders partition for {}", month))
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Could not create orders partitions", e);
+                    return Mono.empty();
+                });
+        LocalDateTime cutoff = LocalDateTime.now().minus(config.getArchiveAfter());
+        return partitions.then(archive(cutoff))
+                .flatMap(total -> dropEmptyPartitions(cutoff).thenReturn(total));
+    }
+
+    private Mono<Void> dropEmptyPartitions(LocalDateTime cutoff) {
+        return orderRepository.dropEmptyPartitions(cutoff)
+                .doOnNext(month -> log.info("Dropped the emptied orders partition for {}", month))
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Could not drop emptied orders partitions", e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Long> archive(LocalDateTime cutoff) {
+        int batchSize = config.getBatchSize();
+        return Mono.defer(() -> orderRepository.archiveTerminalOrders(cutoff, batchSize))
+                .expand(moved -> moved == batchSize ? orderRepository.archiveTerminalOrders(cutoff, batchSize) : Mono.empty())
+                .doOnNext(archived::increment)
+                .reduce(0L, Long::sum)
+                .doOnNext(total -> {
+                    if (total > 0) {
+                        log.info("Archived {} terminal orders created before {}", total, cutoff);
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.warn("Could not archive terminal orders; retrying on the next run", e);
+                    return Mono.just(0L);
+                });
+    }
+}
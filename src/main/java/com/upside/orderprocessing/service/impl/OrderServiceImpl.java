@@ -1,75 +1,318 @@
 package com.upside.orderprocessing.service.impl;
 
+import com.upside.orderprocessing.analytics.AnalyticsEngine;
+import com.upside.orderprocessing.analytics.OrderRollups;
+import com.upside.orderprocessing.cache.OrderCache;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.BulkStatusUpdateTooLargeException;
+import com.upside.orderprocessing.exception.OrderNotFoundException;
+import com.upside.orderprocessing.exception.OrderStatusConflictException;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.BulkStatusUpdateResult;
 import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderFilter;
+import com.upside.orderprocessing.model.OrderPage;
 import com.upside.orderprocessing.model.OrderStatus;
 import com.upside.orderprocessing.repository.OrderRepository;
 import com.upside.orderprocessing.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderServiceImpl implements OrderService {
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int ID_CHUNK_SIZE = 500;
+
     private final OrderRepository orderRepository;
+    private final OrderProcessingProperties properties;
+    private final OrderWriteCoalescer writeCoalescer;
+    private final OrderPipeline pipeline;
+    private final OrderCache orderCache;
+    private final AnalyticsEngine analyticsEngine;
+    private final OrderRollups rollups;
+    private final OrderChangeFeed changeFeed;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ReplicaReads replicaReads;
+    private final OrderLookupBatcher lookupBatcher;
+    private final ActiveOrderIndex activeOrders;
 
     @Override
     public Mono<Order> processOrder(Order order) {
         return Mono.just(order)
-                .doOnNext(o -> o.setStatus(OrderStatus.PROCESSING))
-                .flatMap(orderRepository::save)
+                .doOnNext(o -> o.setStatus(initialStatus()))
+                .flatMap(o -> pipeline.isEnabled() ? pipeline.submit(o) : writeCoalescer.submit(o))
+                .doOnNext(rollups::record)
+                .doOnNext(activeOrders::record)
+                .doOnSuccess(savedOrder -> analyticsEngine.recordOrdersProcessed(1))
                 .doOnSuccess(savedOrder -> log.debug("Processed order: {}", savedOrder.getOrderNumber()))
                 .doOnError(e -> log.error("Error processing order: {}", order.getOrderNumber(), e));
     }
 
     @Override
     public Flux<Order> processBatchOrders(Flux<Order> orders) {
+        if (pipeline.isEnabled()) {
+            // Lanes batch on their own; the response keeps the order of the request
+            return orders
+                    .doOnNext(order -> order.setStatus(initialStatus()))
+                    .flatMapSequential(pipeline::submit, properties.getBatchSize())
+                    .doOnNext(savedOrder -> analyticsEngine.recordOrdersProcessed(1))
+                    .doOnNext(rollups::record)
+                    .doOnNext(activeOrders::record)
+                    .doOnError(e -> log.error("Error processing batch orders", e));
+        }
         return orders
-                .doOnNext(order -> order.setStatus(OrderStatus.PROCESSING))
-                .flatMap(orderRepository::save)
+                .doOnNext(order -> order.setStatus(initialStatus()))
+                .buffer(properties.getBatchSize())
+                .concatMap(batch -> limiter.flux(() -> orderRepository.insertAll(batch))
+                        .doOnNext(rollups::record)
+                        .doOnNext(activeOrders::record)
+                        .doOnComplete(() -> analyticsEngine.recordOrdersProcessed(batch.size())))
                 .doOnNext(savedOrder -> log.debug("Processed order: {}", savedOrder.getOrderNumber()))
                 .doOnError(e -> log.error("Error processing batch orders", e));
     }
 
+    /**
+     * New orders wait as PENDING for the order workers to lease them; without workers they are
+     * taken to be processing as soon as they are written.
+     */
+    private OrderStatus initialStatus() {
+        return properties.getWorker().isEnabled() ? OrderStatus.PENDING : OrderStatus.PROCESSING;
+    }
+
     @Override
-    @Cacheable(value = "orders", key = "#id")
     public Mono<Order> getOrderById(Long id) {
-        return orderRepository.findById(id)
-                .switchIfEmpty(Mono.error(new RuntimeException("Order not found: " + id)));
+        return orderCache.getById(id, () -> loadOrder(id))
+                .switchIfEmpty(Mono.error(new OrderNotFoundException(id)));
     }
 
     @Override
-    @Cacheable(value = "orders", key = "#orderNumber")
     public Mono<Order> getOrderByOrderNumber(String orderNumber) {
-        return orderRepository.findByOrderNumber(orderNumber)
-                .switchIfEmpty(Mono.error(new RuntimeException("Order not found: " + orderNumber)));
+        return orderCache.getByOrderNumber(orderNumber, () -> replicaReads.read(
+                        orderRepository.findByOrderNumber(orderNumber)
+                                .switchIfEmpty(Mono.defer(() -> orderRepository.findArchivedByOrderNumber(orderNumber)))))
+                .switchIfEmpty(Mono.error(new OrderNotFoundException(orderNumber)));
     }
 
     @Override
-    @CacheEvict(value = "orders", key = "#id")
     public Mono<Order> updateOrderStatus(Long id, OrderStatus status) {
-        return orderRepository.updateOrderStatus(id, status)
+        return updateOrderStatus(id, status, null);
+    }
+
+    @Override
+    public Mono<Order> updateOrderStatus(Long id, OrderStatus status, Long expectedVersion) {
+        return recordTransition(limiter.mono(() -> orderRepository.transitionStatus(id, status, expectedVersion))
+                .switchIfEmpty(Mono.defer(() -> rejectTransition(id, status, expectedVersion))), status);
+    }
+
+    @Override
+    public Mono<Order> updateUnleasedOrderStatus(Long id, OrderStatus status, Long expectedVersion) {
+        return recordTransition(limiter.mono(() -> orderRepository.transitionUnleased(id, status, expectedVersion))
+                .switchIfEmpty(Mono.defer(() -> replicaReads.readForUpdate(orderRepository.findById(id))
+                        // Still where it was expected, so only the lease kept it from moving
+                        .filter(current -> current.getStatus().canTransitionTo(status)
+                                && current.getVersion().equals(expectedVersion))
+                        .hasElement()
+                        .flatMap(leased -> leased ? Mono.<Order>empty()
+                                : rejectTransition(id, status, expectedVersion)))), status);
+    }
+
+    private Mono<Order> recordTransition(Mono<Order> transition, OrderStatus status) {
+        return transition
+                .doOnNext(order -> analyticsEngine.recordTransitions(status, 1))
+                .doOnNext(rollups::record)
+                .doOnNext(activeOrders::record)
+                .doOnNext(order -> replicaReads.statusChanged(order.getId()))
+                .flatMap(order -> orderCache.evict(order).thenReturn(order));
+    }
+
+    @Override
+    public Mono<BulkStatusUpdateResult> updateOrderStatuses(Collection<Long> ids, OrderStatus status) {
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        int max = properties.getMaxBulkStatusUpdate();
+        if (requested.size() > max) {
+            return Mono.error(new BulkStatusUpdateTooLargeException(requested.size(), max));
+        }
+        return limiter.flux(() -> orderRepository.transitionStatuses(requested, status))
+                .collectList()
                 .flatMap(updated -> {
-                    if (updated == 0) {
-                        return Mono.error(new RuntimeException("Order not found: " + id));
+                    List<Long> updatedIds = new ArrayList<>(updated.size());
+                    Set<Long> rejected = new LinkedHashSet<>(requested);
+                    for (Order order : updated) {
+                        updatedIds.add(order.getId());
+                        rejected.remove(order.getId());
                     }
-                    return getOrderById(id);
+                    return recordTransitions(updated, status)
+                            .then(explainRejectedTransitions(rejected))
+                            .map(conflicts -> new BulkStatusUpdateResult(status, requested.size(), updatedIds, conflicts));
+                });
+    }
+
+    @Override
+    public Flux<Order> claimOrders(String owner, int limit, Duration lease) {
+        return Flux.defer(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime expiresAt = now.plus(lease);
+            // Orders whose worker stopped renewing go first, so they are not starved by new ones
+            return limiter.flux(() -> orderRepository.claimExpired(owner, now, expiresAt, limit))
+                    .collectList()
+                    .flatMapMany(expired -> {
+                        if (expired.size() >= limit) {
+                            return Flux.fromIterable(expired);
+                        }
+                        return limiter.flux(() -> orderRepository.claimPending(owner, expiresAt, limit - expired.size()))
+                                .collectList()
+                                .flatMapMany(claimed -> recordTransitions(claimed, OrderStatus.PROCESSING)
+                                        .thenMany(Flux.concat(Flux.fromIterable(expired), Flux.fromIterable(claimed))));
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Integer> renewClaims(String owner, Collection<Long> ids, Duration lease) {
+        // Not limited: a shed renewal would let the lease run out and the order be worked on twice
+        return Mono.defer(() -> orderRepository.renewLeases(owner, ids, LocalDateTime.now().plus(lease)));
+    }
+
+    @Override
+    public Flux<Order> finishClaims(String owner, Collection<Long> ids, OrderStatus status) {
+        return limiter.flux(() -> orderRepository.releaseLeases(owner, ids, status))
+                .collectList()
+                .flatMapMany(released -> recordTransitions(released, status).thenMany(Flux.fromIterable(released)));
+    }
+
+    /**
+     * Passes status changes made by one statement on to everything that follows orders.
+     */
+    private Mono<Void> recordTransitions(List<Order> updated, OrderStatus status) {
+        if (updated.isEmpty()) {
+            return Mono.empty();
+        }
+        updated.forEach(order -> replicaReads.statusChanged(order.getId()));
+        analyticsEngine.recordTransitions(status, updated.size());
+        rollups.recordAll(updated);
+        activeOrders.recordAll(updated);
+        return orderCache.evictAll(updated);
+    }
+
+    private Mono<Order> rejectTransition(Long id, OrderStatus status, Long expectedVersion) {
+        // An archived order is terminal, so it is reported as a conflict rather than as missing
+        return replicaReads.readForUpdate(findLiveOrArchived(id))
+                .switchIfEmpty(Mono.error(new OrderNotFoundException(id)))
+                .flatMap(current -> {
+                    if (!current.getStatus().canTransitionTo(status)) {
+                        return Mono.error(new OrderStatusConflictException(
+                                "Order " + id + " cannot move from " + current.getStatus() + " to " + status));
+                    }
+                    return Mono.error(new OrderStatusConflictException(
+                            "Order " + id + " is at version " + current.getVersion() + ", expected " + expectedVersion));
+                });
+    }
+
+    private Mono<Order> loadOrder(Long id) {
+        if (replicaReads.pinnedToPrimary(id)) {
+            return findLiveOrArchived(id);
+        }
+        return lookupBatcher.load(id)
+                .switchIfEmpty(Mono.defer(() -> replicaReads.read(orderRepository.findArchivedById(id))));
+    }
+
+    private Mono<Order> findLiveOrArchived(Long id) {
+        return orderRepository.findById(id)
+                .switchIfEmpty(Mono.defer(() -> orderRepository.findArchivedById(id)));
+    }
+
+    private Mono<List<BulkStatusUpdateResult.Conflict>> explainRejectedTransitions(Set<Long> rejected) {
+        if (rejected.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        // As for a single order, an archived one is terminal and reported as a conflict
+        return replicaReads.readForUpdate(orderRepository.findAllById(rejected))
+                .collectMap(Order::getId, Order::getStatus)
+                .flatMap(live -> {
+                    List<Long> missing = rejected.stream().filter(id -> !live.containsKey(id)).toList();
+                    return replicaReads.readForUpdate(orderRepository.findAllArchivedById(missing))
+                            .collectMap(Order::getId, Order::getStatus, () -> new HashMap<>(live));
+                })
+                .map(current -> {
+                    List<BulkStatusUpdateResult.Conflict> conflicts = new ArrayList<>(rejected.size());
+                    for (Long id : rejected) {
+                        OrderStatus currentStatus = current.get(id);
+                        conflicts.add(new BulkStatusUpdateResult.Conflict(id,
+                                currentStatus == null
+                                        ? BulkStatusUpdateResult.Reason.NOT_FOUND
+                                        : BulkStatusUpdateResult.Reason.ILLEGAL_TRANSITION,
+                                currentStatus));
+                    }
+                    return conflicts;
                 });
     }
 
     @Override
     public Flux<Order> getOrdersByStatus(OrderStatus status) {
-        return orderRepository.findByStatus(status);
+        if (status != null && activeOrders.serves(status)) {
+            // The index lists the ids, so the rows are fetched by primary key instead of by a scan
+            return Flux.defer(() -> {
+                long[] ids = activeOrders.idsWithStatus(status);
+                return Flux.range(0, ids.length)
+                        .map(i -> ids[i])
+                        .buffer(ID_CHUNK_SIZE)
+                        .concatMap(chunk -> replicaReads.read(orderRepository.findAllByIdIn(chunk)))
+                        .filter(order -> order.getStatus() == status);
+            });
+        }
+        return replicaReads.read(status != null ? orderRepository.findByStatus(status) : orderRepository.findAll());
+    }
+
+    @Override
+    public Flux<Order> getOrders(OrderFilter filter, int limit) {
+        return replicaReads.read(orderRepository.findPage(filter, null, null, limit));
+    }
+
+    @Override
+    public Mono<OrderPage> getOrderPage(OrderFilter filter, String cursor, int size) {
+        return Mono.defer(() -> {
+            OrderCursors.Position after = cursor != null ? OrderCursors.decode(cursor) : null;
+            int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            // One extra row tells whether another page follows without a COUNT query
+            return replicaReads.read(orderRepository.findPage(filter,
+                            after != null ? after.createdAt() : null,
+                            after != null ? after.id() : null,
+                            pageSize + 1))
+                    .collectList()
+                    .map(rows -> {
+                        if (rows.size() <= pageSize) {
+                            return new OrderPage(rows, null);
+                        }
+                        List<Order> items = rows.subList(0, pageSize);
+                        return new OrderPage(items, OrderCursors.encode(items.get(pageSize - 1)));
+                    });
+        });
+    }
+
+    @Override
+    public Flux<OrderEvent> getOrderChanges(OrderStatus status, String customerId) {
+        return changeFeed.subscribe(status, customerId);
     }
 
     @Override
-    @CacheEvict(value = "orders", key = "#id")
     public Mono<Void> deleteOrder(Long id) {
-        return orderRepository.deleteById(id);
+        return limiter.mono(() -> orderRepository.deleteById(id))
+                .doOnSuccess(done -> activeOrders.remove(id))
+                .then(orderCache.evict(id, null));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.OrderNotFoundException;
+import com.upside.orderprocessing.exception.OrderStatusConflictException;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.OrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fails orders that stay PENDING or PROCESSING too long and moves FAILED orders back to PENDING
+ * after a backoff, cancelling them once they have been retried {@code max-retries} times. Every
+ * order in one of those statuses has a deadline on a {@link TimingWheel}, set from the active
+ * order index as it learns of each change, so no query looks for stale orders. Expired orders
+ * are moved in batches through {@link OrderService#updateUnleasedOrderStatus} with the version
+ * they expired at: an order changed since, here or on another instance, is left alone and waits
+ * for the deadline of its new status, and an order an order worker still holds a live lease on
+ * is checked again after another timeout. Each instance only schedules the orders of its shard
+ * ({@code id % shards == shard}), so instances split the orders between them rather than all
+ * racing to move each one. Retries are counted in memory and start again from zero after a
+ * restart.
+ */
+@Slf4j
+@Component
+public class OrderTimeoutScheduler implements ActiveOrderIndex.Listener {
+    // A wheel tag holds the retries so far above the status the deadline belongs to
+    private static final int STATUS_BITS = 3;
+    private static final int STATUS_MASK = (1 << STATUS_BITS) - 1;
+
+    private final OrderService orderService;
+    private final OrderProcessingProperties.Timeouts config;
+    private final boolean indexed;
+    private final int shards;
+    private final int shard;
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<OrderStatus, Counter> moved = new EnumMap<>(OrderStatus.class);
+    private final Counter conflicts;
+    private final Disposable.Swap task = Disposables.swap();
+
+    // Guarded by lock
+    private final TimingWheel wheel;
+
+    private record Expired(long id, long version, int tag, OrderStatus target) {
+    }
+
+    public OrderTimeoutScheduler(OrderService orderService, ActiveOrderIndex activeOrders,
+                                 OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.orderService = orderService;
+        this.config = properties.getTimeouts();
+        this.indexed = properties.getIndex().isEnabled();
+        this.shards = config.getShards();
+        this.shard = config.getShard();
+        if (shards < 1 || shard < 0 || shard >= shards) {
+            throw new IllegalStateException("app.order.timeouts.shard must be from 0 to shards - 1");
+        }
+        this.tickNanos = Math.max(1, config.getTick().toNanos());
+        this.wheel = new TimingWheel(0, config.isEnabled() ? config.getInitialCapacity() : 0);
+        moved.put(OrderStatus.FAILED, meterRegistry.counter("orders.timeouts.expired"));
+        moved.put(OrderStatus.PENDING, meterRegistry.counter("orders.timeouts.retried"));
+        moved.put(OrderStatus.CANCELLED, meterRegistry.counter("orders.timeouts.cancelled"));
+        this.conflicts = meterRegistry.counter("orders.timeouts.conflicts");
+        Gauge.builder("orders.timeouts.scheduled", this, scheduler -> scheduler.locked(scheduler.wheel::size))
+                .description("Orders waiting for a timeout or a retry")
+                .register(meterRegistry);
+        if (config.isEnabled()) {
+            // Registered before the index fills, so the orders it starts with are scheduled too
+            activeOrders.addListener(this);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (!indexed) {
+            log.warn("Order timeouts are enabled but the active order index is not; no order will time out");
+            return;
+        }
+        task.update(Flux.interval(config.getTick())
+                // A run that overlaps the next tick simply makes that tick unnecessary
+                .onBackpressureDrop()
+                .concatMap(tick -> runOnce(), 1)
+                .subscribe(null, e -> log.error("Order timeouts stopped", e)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        task.dispose();
+    }
+
+    @Override
+    public void changed(long id, OrderStatus status, long version, LocalDateTime since) {
+        if (Math.floorMod(id, shards) != shard) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (status == null) {
+                wheel.cancel(id);
+                return;
+            }
+            int retries = wheel.tag(id, 0) >>> STATUS_BITS;
+            Duration wait = status == OrderStatus.FAILED ? backoff(retries) : timeout(status);
+            if (wait == null) {
+                wheel.cancel(id);
+                return;
+            }
+            long elapsed = since == null ? 0 : Math.max(0, Duration.between(since, LocalDateTime.now()).toNanos());
+            wheel.schedule(id, deadline(wait.toNanos() - elapsed), version, tag(retries, status));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the orders whose deadline has passed, a batch at a time until none is left. Emits the
+     * number of orders moved or found changed.
+     */
+    public Mono<Integer> runOnce() {
+        return Mono.defer(this::runBatch)
+                .expand(count -> count == config.getBatchSize() ? runBatch() : Mono.empty())
+                .reduce(0, Integer::sum);
+    }
+
+    private Mono<Integer> runBatch() {
+        List<Expired> batch = expire();
+        if (batch.isEmpty()) {
+            return Mono.just(0);
+        }
+        return Flux.fromIterable(batch)
+                .flatMap(this::move, config.getConcurrency())
+                .then(Mono.just(batch.size()));
+    }
+
+    /**
+     * Takes the orders due off the wheel and puts each back with the deadline of the status it is
+     * about to be moved to, keeping its retries across the move; the change the index then
+     * passes on replaces that deadline with the exact one.
+     */
+    private List<Expired> expire() {
+        List<Expired> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime() - origin;
+            wheel.advance(Math.floorDiv(now, tickNanos), config.getBatchSize(), (id, version, tag) -> {
+                OrderStatus status = OrderStatus.values()[tag & STATUS_MASK];
+                int retries = tag >>> STATUS_BITS;
+                OrderStatus target;
+                if (status != OrderStatus.FAILED) {
+                    target = OrderStatus.FAILED;
+                } else if (retries < config.getMaxRetries()) {
+                    target = OrderStatus.PENDING;
+                } else {
+                    target = OrderStatus.CANCELLED;
+                }
+                batch.add(new Expired(id, version, tag, target));
+            });
+            for (Expired expired : batch) {
+                int retries = expired.tag() >>> STATUS_BITS;
+                switch (expired.target()) {
+                    case FAILED -> wheel.schedule(expired.id(), deadline(backoff(retries).toNanos()),
+                            expired.version(), tag(retries, OrderStatus.FAILED));
+                    case PENDING -> wheel.schedule(expired.id(), deadline(config.getPendingTimeout().toNanos()),
+                            expired.version(), tag(retries + 1, OrderStatus.PENDING));
+                    default -> {
+                        // Cancelled orders are finished
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return batch;
+    }
+
+    private Mono<Void> move(Expired expired) {
+        return orderService.updateUnleasedOrderStatus(expired.id(), expired.target(), expired.version())
+                .doOnNext(order -> moved.get(expired.target()).increment())
+                .switchIfEmpty(Mono.fromRunnable(() -> leased(expired)))
+                .then()
+                .onErrorResume(e -> e instanceof OrderStatusConflictException || e instanceof OrderNotFoundException,
+                        e -> {
+                            // Changed or deleted since it was scheduled; its newer change sets the deadline
+                            conflicts.increment();
+                            forget(expired);
+                            return Mono.empty();
+                        })
+                .onErrorResume(e -> {
+                    log.warn("Could not move order {} to {}; trying again after {}", expired.id(), expired.target(),
+                            config.getRetryBackoff(), e);
+                    retryLater(expired);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Drops the deadline set for the move, unless a newer change has replaced it.
+     */
+    private void forget(Expired expired) {
+        locked(() -> wheel.version(expired.id(), -1) == expired.version() && wheel.cancel(expired.id()));
+    }
+
+    /**
+     * Gives an order still being worked on under a lease another wait in its status.
+     */
+    private void leased(Expired expired) {
+        locked(() -> {
+            if (wheel.version(expired.id(), -1) == expired.version()) {
+                OrderStatus status = OrderStatus.values()[expired.tag() & STATUS_MASK];
+                Duration wait = status == OrderStatus.FAILED ? backoff(expired.tag() >>> STATUS_BITS) : timeout(status);
+                wheel.schedule(expired.id(), deadline(wait.toNanos()), expired.version(), expired.tag());
+            }
+            return null;
+        });
+    }
+
+    private void retryLater(Expired expired) {
+        locked(() -> {
+            if (wheel.version(expired.id(), -1) == expired.version()) {
+                wheel.schedule(expired.id(), deadline(config.getRetryBackoff().toNanos()), expired.version(),
+                        expired.tag());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * How long an order may stay in {@code status}, or null if it has no timeout.
+     */
+    private Duration timeout(OrderStatus status) {
+        return switch (status) {
+            case PENDING -> config.getPendingTimeout();
+            case PROCESSING -> config.getProcessingTimeout();
+            default -> null;
+        };
+    }
+
+    /**
+     * The wait before the next retry: {@code retry-backoff} doubled per retry so far, capped at
+     * {@code max-retry-backoff}, less a random part of up to half.
+     */
+    private Duration backoff(int retries) {
+        long base = config.getRetryBackoff().toNanos();
+        long cap = config.getMaxRetryBackoff().toNanos();
+        long wait = retries < Long.SIZE - 1 && base <= cap >> retries ? base << retries : cap;
+        long half = wait / 2;
+        return Duration.ofNanos(wait - (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0));
+    }
+
+    /**
+     * The tick at which {@code delayNanos} from now has passed.
+     */
+    private long deadline(long delayNanos) {
+        long at = System.nanoTime() - origin + delayNanos;
+        return Math.floorDiv(at, tickNanos) + (Math.floorMod(at, tickNanos) == 0 ? 0 : 1);
+    }
+
+    private static int tag(int retries, OrderStatus status) {
+        return retries << STATUS_BITS | status.ordinal();
+    }
+
+    private <T> T locked(Supplier<T> action) {
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
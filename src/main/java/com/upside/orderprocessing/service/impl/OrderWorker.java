@@ -0,0 +1,191 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.OrderHandler;
+import com.upside.orderprocessing.service.OrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Works PENDING orders through to COMPLETED on every instance that enables it, with the database
+ * as the only coordinator. Each of {@code batches} loops leases up to {@code batch-size} orders,
+ * which moves them to PROCESSING, hands them to the {@link OrderHandler}, and then completes or
+ * fails them in one statement per outcome. Claims skip rows other claims have locked, so
+ * instances never wait for each other and never get the same order, and adding one adds its
+ * batches to the total. Leases are renewed every {@code heartbeat-interval} while orders are
+ * being handled; orders of an instance that stops renewing are taken over by another once their
+ * lease runs out, so an order is handled at least once, and more than once only after such a
+ * takeover. Each batch claims under a token of its own, the instance name followed by a random
+ * part, so a batch that finishes late cannot release orders a later batch claimed again.
+ */
+@Slf4j
+@Component
+public class OrderWorker {
+    private static final OrderHandler COMPLETE_AT_ONCE = order -> Mono.empty();
+
+    private final OrderService orderService;
+    private final OrderHandler handler;
+    private final OrderProcessingProperties.Worker config;
+    private final String owner;
+    // Orders this instance holds a lease on, by id, with the claim they were leased under; renewed by the heartbeat
+    private final Map<Long, String> held = new ConcurrentHashMap<>();
+    private final Counter claimed;
+    private final Counter completed;
+    private final Counter failed;
+    private final Counter lost;
+    private final Disposable.Composite tasks = Disposables.composite();
+
+    public OrderWorker(OrderService orderService, ObjectProvider<OrderHandler> handler,
+                       OrderProcessingProperties properties, MeterRegistry meterRegistry) {
+        this.orderService = orderService;
+        this.handler = handler.getIfAvailable(() -> COMPLETE_AT_ONCE);
+        this.config = properties.getWorker();
+        this.owner = config.getOwner() != null ? config.getOwner() : InstanceName.get();
+        this.claimed = meterRegistry.counter("orders.worker.claimed");
+        this.completed = meterRegistry.counter("orders.worker.completed");
+        this.failed = meterRegistry.counter("orders.worker.failed");
+        this.lost = meterRegistry.counter("orders.worker.leases.lost");
+        Gauge.builder("orders.worker.leases", held, Map::size)
+                .description("Orders this instance holds a lease on")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        for (int i = 0; i < config.getBatches(); i++) {
+            tasks.add(Mono.defer(this::runBatch)
+                    .onErrorResume(e -> {
+                        log.warn("Order worker {} could not work a batch; trying again after {}", owner,
+                                config.getPollInterval(), e);
+                        return Mono.just(0);
+                    })
+                    // A short batch means the backlog is drained for now
+                    .flatMap(count -> count < config.getBatchSize()
+                            ? Mono.delay(config.getPollInterval()).thenReturn(count)
+                            : Mono.just(count))
+                    .repeat()
+                    .subscribe(null, e -> log.error("Order worker {} stopped", owner, e)));
+        }
+        tasks.add(Flux.interval(config.getHeartbeatInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> renewLeases(), 1)
+                .subscribe(null, e -> log.error("Order worker {} stopped renewing leases", owner, e)));
+        log.info("Order worker {} started with {} batches of {}", owner, config.getBatches(), config.getBatchSize());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tasks.dispose();
+    }
+
+    /**
+     * Leases one batch and works it through, emitting the number of orders leased.
+     */
+    public Mono<Integer> runBatch() {
+        String claim = owner + "#" + UUID.randomUUID();
+        return orderService.claimOrders(claim, config.getBatchSize(), config.getLease())
+                .doOnNext(order -> held.put(order.getId(), claim))
+                .collectList()
+                .flatMap(batch -> {
+                    if (batch.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    claimed.increment(batch.size());
+                    return Flux.fromIterable(batch)
+                            .flatMap(this::handle, config.getConcurrency())
+                            .collectList()
+                            .flatMap(handled -> finish(claim, handled))
+                            .doFinally(signal -> batch.forEach(order -> held.remove(order.getId(), claim)))
+                            .thenReturn(batch.size());
+                });
+    }
+
+    private Mono<Order> handle(Order order) {
+        return handler.handle(order)
+                .then(Mono.fromSupplier(() -> {
+                    order.setStatus(OrderStatus.COMPLETED);
+                    return order;
+                }))
+                .onErrorResume(e -> {
+                    log.warn("Order {} failed in its handler", order.getId(), e);
+                    order.setStatus(OrderStatus.FAILED);
+                    return Mono.just(order);
+                });
+    }
+
+    private Mono<Void> finish(String claim, List<Order> handled) {
+        List<Long> succeeded = new ArrayList<>(handled.size());
+        List<Long> rejected = new ArrayList<>();
+        for (Order order : handled) {
+            (order.getStatus() == OrderStatus.COMPLETED ? succeeded : rejected).add(order.getId());
+        }
+        return finish(claim, succeeded, OrderStatus.COMPLETED, completed)
+                .then(finish(claim, rejected, OrderStatus.FAILED, failed));
+    }
+
+    private Mono<Void> finish(String claim, List<Long> ids, OrderStatus status, Counter counter) {
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        return orderService.finishClaims(claim, ids, status)
+                .count()
+                .doOnNext(count -> {
+                    counter.increment(count);
+                    if (count < ids.size()) {
+                        // Their leases ran out and another instance took them over
+                        lost.increment(ids.size() - count);
+                        log.warn("Order worker {} lost the leases of {} orders before finishing them", owner,
+                                ids.size() - count);
+                    }
+                })
+                .then();
+    }
+
+    private Mono<Void> renewLeases() {
+        Map<String, List<Long>> claims = held.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        return Flux.fromIterable(claims.entrySet())
+                .concatMap(claim -> renewClaim(claim.getKey(), claim.getValue()))
+                .then();
+    }
+
+    private Mono<Void> renewClaim(String claim, List<Long> ids) {
+        return orderService.renewClaims(claim, ids, config.getLease())
+                .doOnNext(renewed -> {
+                    // Orders finished meanwhile are no longer held, without having been lost
+                    long working = ids.stream().filter(held::containsKey).count();
+                    if (renewed < working) {
+                        log.warn("Order worker {} could only renew {} of {} leases", owner, renewed, working);
+                    }
+                })
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Order worker {} could not renew its leases", owner, e);
+                    return Mono.empty();
+                });
+    }
+}
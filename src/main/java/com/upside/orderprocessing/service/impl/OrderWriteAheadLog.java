@@ -0,0 +1,631 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.IngestionBacklogFullException;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.IngestionStatus;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.service.OrderIngestion;
+import com.upside.orderprocessing.service.OrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Ingestion through a write-ahead log on local disk. Accepted orders are appended to memory-mapped
+ * segment files and acknowledged once flushed, one flush covering every order appended while the
+ * previous one ran, so acknowledging costs a copy into the page cache plus a share of a flush
+ * rather than a database transaction. A background drain writes the log to the database through
+ * {@link OrderService#processBatchOrders} in order, in batches of up to {@code batch-size}, and
+ * records how far it got in a checkpoint file; segments behind the checkpoint are deleted. On
+ * startup the log is read back, a partly written last record is dropped, and everything after the
+ * checkpoint is written again: orders written just before a crash resolve to their existing rows
+ * by order number.
+ *
+ * <p>Each record is a 16-byte header of payload length, CRC32C and sequence number, followed by
+ * the order in Smile. The sequence number is the order's tracking id.
+ */
+@Slf4j
+public class OrderWriteAheadLog implements OrderIngestion {
+    private static final int HEADER_BYTES = 16;
+    private static final int LENGTH = 0;
+    private static final int CHECKSUM = 4;
+    private static final int SEQUENCE = 8;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "drained.checkpoint";
+    private static final Pattern TRACKING_ID = Pattern.compile("\\d{1,18}");
+    private static final Duration FLUSH_RETRY_DELAY = Duration.ofMillis(100);
+
+    private final ObjectMapper codec;
+    private final OrderService orderService;
+    private final OrderProcessingProperties.Ingestion config;
+    private final OrderProcessingProperties.Wal wal;
+    private final Path directory;
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private final Cache<Long, String> failures;
+    private final Disposable.Composite tasks = Disposables.composite();
+    private final Thread syncThread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // Guarded by lock; segments by first sequence, the last one being appended to
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private boolean closed;
+    // Written under lock
+    private volatile long nextSequence;
+    // Orders up to it are on disk, or in the page cache without fsync, and may be drained
+    private volatile long durableSequence;
+    // Orders up to it are in the database; written by the drain only
+    private volatile long drainedSequence;
+
+    // Position of the next record to drain; used by the drain only
+    private Segment drainSegment;
+    private int drainOffset;
+    private long drainNext;
+
+    private final Counter enqueued;
+    private final Counter written;
+    private final Counter failed;
+    private final Timer syncTimer;
+    private final DistributionSummary syncedOrders;
+
+    public OrderWriteAheadLog(ObjectMapper codec, OrderService orderService, OrderProcessingProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.codec = codec;
+        this.orderService = orderService;
+        this.config = properties.getIngestion();
+        this.wal = config.getWal();
+        this.directory = Paths.get(wal.getDirectory());
+        this.failures = Caffeine.newBuilder()
+                .expireAfterWrite(config.getResultTtl())
+                .build();
+        this.enqueued = meterRegistry.counter("orders.ingestion.enqueued");
+        this.written = meterRegistry.counter("orders.ingestion.written");
+        this.failed = meterRegistry.counter("orders.ingestion.failed");
+        this.syncTimer = Timer.builder("orders.ingestion.wal.sync")
+                .description("Time to flush appended orders to disk")
+                .register(meterRegistry);
+        this.syncedOrders = DistributionSummary.builder("orders.ingestion.wal.sync.orders")
+                .description("Orders acknowledged by one flush")
+                .register(meterRegistry);
+        Gauge.builder("orders.ingestion.backlog", this, log -> log.nextSequence - 1 - log.drainedSequence)
+                .description("Orders in the write-ahead log not yet written to the database")
+                .register(meterRegistry);
+        try {
+            Files.createDirectories(directory);
+            this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            this.drainedSequence = checkpoint.getLong(0);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the write-ahead log in " + directory, e);
+        }
+        if (wal.isFsync()) {
+            syncThread = new Thread(this::syncLoop, "order-wal-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        } else {
+            syncThread = null;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        tasks.add(Flux.interval(wal.getDrainInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.defer(this::drainBatch)
+                        .repeat(() -> drainNext <= durableSequence)
+                        .onErrorResume(e -> {
+                            log.warn("Could not drain the write-ahead log; retrying", e);
+                            return Mono.empty();
+                        }), 1)
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // A batch being written is written again on the next start
+        tasks.dispose();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (syncThread != null) {
+            try {
+                syncThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            checkpointChannel.close();
+        } catch (IOException e) {
+            log.warn("Could not close the write-ahead log", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Mono<IngestionReceipt> enqueue(Flux<Order> orders) {
+        return orders.collectList().flatMap(batch -> {
+            if (batch.isEmpty()) {
+                return Mono.just(new IngestionReceipt(0, List.of()));
+            }
+            List<byte[]> records = new ArrayList<>(batch.size());
+            for (Order order : batch) {
+                // Order numbers are what make replaying the log harmless
+                if (!StringUtils.hasText(order.getOrderNumber())) {
+                    return Mono.error(new InvalidOrderException(null, "order number is required"));
+                }
+                byte[] record;
+                try {
+                    record = codec.writeValueAsBytes(order);
+                } catch (JsonProcessingException e) {
+                    return Mono.error(new InvalidOrderException(order.getOrderNumber(), e.getOriginalMessage()));
+                }
+                if (HEADER_BYTES + record.length > wal.getSegmentSize()) {
+                    return Mono.error(new InvalidOrderException(order.getOrderNumber(), "too large to queue"));
+                }
+                records.add(record);
+            }
+            return Mono.create(sink -> append(records, sink));
+        });
+    }
+
+    @Override
+    public Mono<IngestionStatus> status(String trackingId) {
+        if (!TRACKING_ID.matcher(trackingId).matches()) {
+            return Mono.empty();
+        }
+        long sequence = Long.parseLong(trackingId);
+        return Mono.fromSupplier(() -> {
+            if (sequence <= 0 || sequence >= nextSequence) {
+                return null;
+            }
+            String error = failures.getIfPresent(sequence);
+            if (error != null) {
+                return new IngestionStatus(trackingId, IngestionStatus.State.FAILED, null, error);
+            }
+            // The log does not keep the ids of written orders; they are found by order number
+            return new IngestionStatus(trackingId, sequence > drainedSequence
+                    ? IngestionStatus.State.QUEUED
+                    : IngestionStatus.State.WRITTEN, null, null);
+        });
+    }
+
+    private void append(List<byte[]> records, MonoSink<IngestionReceipt> sink) {
+        IngestionReceipt receipt;
+        lock.lock();
+        try {
+            if (closed) {
+                sink.error(new IllegalStateException("The write-ahead log is closed"));
+                return;
+            }
+            long backlog = nextSequence - 1 - drainedSequence;
+            if (backlog + records.size() > config.getMaxBacklog()) {
+                sink.error(new IngestionBacklogFullException(backlog, config.getRetryAfter()));
+                return;
+            }
+            List<String> trackingIds = new ArrayList<>(records.size());
+            long sequence = 0;
+            for (byte[] record : records) {
+                // Records appended before a failure here are drained like any other; the client
+                // sees the error and sends them again, which resolves to the same rows
+                sequence = append(record);
+                trackingIds.add(Long.toString(sequence));
+            }
+            receipt = new IngestionReceipt(records.size(), trackingIds);
+            if (syncThread != null) {
+                waiters.add(new Waiter(sequence, receipt, sink));
+                appended.signal();
+                return;
+            }
+            durableSequence = sequence;
+        } catch (IOException e) {
+            sink.error(new UncheckedIOException("Could not append to the write-ahead log", e));
+            return;
+        } finally {
+            lock.unlock();
+        }
+        enqueued.increment(records.size());
+        sink.success(receipt);
+    }
+
+    /**
+     * Writes one record at the end of the log, starting a segment if it does not fit in the
+     * current one. Called with the lock held.
+     */
+    private long append(byte[] record) throws IOException {
+        Segment segment = segments.lastEntry().getValue();
+        int size = HEADER_BYTES + record.length;
+        if (segment.writeOffset + size > segment.capacity()) {
+            segment = Segment.create(directory, nextSequence, wal.getSegmentSize(), wal.isFsync());
+            segments.put(segment.firstSequence, segment);
+        }
+        long sequence = nextSequence;
+        int offset = segment.writeOffset;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(offset + SEQUENCE, sequence);
+        buffer.put(offset + HEADER_BYTES, record);
+        buffer.putInt(offset + CHECKSUM, checksum(buffer, offset, record.length));
+        // The length goes last: a record without one is where the log ends
+        buffer.putInt(offset + LENGTH, record.length);
+        segment.writeOffset = offset + size;
+        nextSequence = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * Flushes whatever was appended since the last flush and acknowledges the orders it covers.
+     * Appends keep going during a flush and are all covered by the next one, so the more orders
+     * arrive, the more each flush covers.
+     */
+    private void syncLoop() {
+        List<Segment> dirty = new ArrayList<>(2);
+        List<Integer> ends = new ArrayList<>(2);
+        while (true) {
+            long target;
+            lock.lock();
+            try {
+                while (!closed && nextSequence - 1 == durableSequence) {
+                    appended.awaitUninterruptibly();
+                }
+                if (nextSequence - 1 == durableSequence) {
+                    return;
+                }
+                target = nextSequence - 1;
+                dirty.clear();
+                ends.clear();
+                for (Segment segment : segments.values()) {
+                    if (segment.syncedOffset < segment.writeOffset) {
+                        dirty.add(segment);
+                        ends.add(segment.writeOffset);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            long started = System.nanoTime();
+            try {
+                for (int i = 0; i < dirty.size(); i++) {
+                    Segment segment = dirty.get(i);
+                    segment.buffer.force(segment.syncedOffset, ends.get(i) - segment.syncedOffset);
+                    segment.syncedOffset = ends.get(i);
+                }
+            } catch (RuntimeException e) {
+                // Nothing is acknowledged that may not be on disk; the flush is tried again
+                log.error("Could not flush the write-ahead log", e);
+                LockSupport.parkNanos(FLUSH_RETRY_DELAY.toNanos());
+                continue;
+            }
+            syncTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+            List<Waiter> ready = new ArrayList<>();
+            lock.lock();
+            try {
+                durableSequence = target;
+                while (!waiters.isEmpty() && waiters.peekFirst().sequence <= target) {
+                    ready.add(waiters.pollFirst());
+                }
+            } finally {
+                lock.unlock();
+            }
+            int orders = 0;
+            for (Waiter waiter : ready) {
+                orders += waiter.receipt.getAccepted();
+                waiter.sink.success(waiter.receipt);
+            }
+            enqueued.increment(orders);
+            syncedOrders.record(orders);
+        }
+    }
+
+    /**
+     * Writes the next batch of durable records to the database and moves the checkpoint past
+     * them. A batch that fails for a reason that may pass, such as the database being
+     * unavailable, leaves the checkpoint where it was and is written again on the next attempt.
+     */
+    private Mono<Void> drainBatch() {
+        long limit = durableSequence;
+        Segment segment = drainSegment;
+        int offset = drainOffset;
+        long next = drainNext;
+        List<Entry> entries = new ArrayList<>();
+        Map<Long, String> rejected = new HashMap<>();
+        while (entries.size() + rejected.size() < config.getBatchSize() && next <= limit) {
+            if (offset >= segment.writeOffset) {
+                // The record is durable but not here, so the segment ended before it
+                segment = successor(segment);
+                offset = 0;
+                continue;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int length = buffer.getInt(offset + LENGTH);
+            if (buffer.getLong(offset + SEQUENCE) != next) {
+                return Mono.error(new IllegalStateException("Write-ahead log segment " + segment.path
+                        + " does not hold order " + next + " at " + offset));
+            }
+            if (next > drainedSequence) {
+                byte[] record = new byte[length];
+                buffer.get(offset + HEADER_BYTES, record);
+                try {
+                    entries.add(new Entry(next, codec.readValue(record, Order.class)));
+                } catch (IOException e) {
+                    rejected.put(next, "Unreadable order: " + e.getMessage());
+                }
+            }
+            offset += HEADER_BYTES + length;
+            next++;
+        }
+        if (entries.isEmpty() && rejected.isEmpty()) {
+            return Mono.empty();
+        }
+        Segment endSegment = segment;
+        int endOffset = offset;
+        long end = next;
+        return write(entries, rejected)
+                .then(Mono.fromRunnable(() -> {
+                    failures.putAll(rejected);
+                    written.increment(entries.stream().filter(entry -> !rejected.containsKey(entry.sequence())).count());
+                    failed.increment(rejected.size());
+                    drainSegment = endSegment;
+                    drainOffset = endOffset;
+                    drainNext = end;
+                    checkpoint(end - 1);
+                }));
+    }
+
+    private Mono<Void> write(List<Entry> entries, Map<Long, String> rejected) {
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        return orderService.processBatchOrders(Flux.fromIterable(entries).map(Entry::order))
+                .then()
+                .onErrorResume(e -> {
+                    if (entries.size() > 1) {
+                        // One bad order fails the batch, so the orders are written one by one to find it
+                        return Flux.fromIterable(entries)
+                                .concatMap(entry -> write(List.of(entry), rejected))
+                                .then();
+                    }
+                    if (IngestionFailures.isPermanent(e)) {
+                        rejected.put(entries.get(0).sequence(), e.getMessage());
+                        return Mono.empty();
+                    }
+                    return Mono.error(e);
+                });
+    }
+
+    /**
+     * Records that the orders up to {@code sequence} are in the database and deletes the segments
+     * that hold only such orders.
+     */
+    private void checkpoint(long sequence) {
+        checkpoint.putLong(0, sequence);
+        if (wal.isFsync()) {
+            checkpoint.force();
+        }
+        drainedSequence = sequence;
+        lock.lock();
+        try {
+            while (segments.size() > 1) {
+                Segment first = segments.firstEntry().getValue();
+                if (first == drainSegment || segments.higherKey(first.firstSequence) - 1 > sequence) {
+                    break;
+                }
+                segments.pollFirstEntry();
+                first.delete();
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete a drained write-ahead log segment", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment successor(Segment segment) {
+        lock.lock();
+        try {
+            Map.Entry<Long, Segment> next = segments.higherEntry(segment.firstSequence);
+            if (next == null) {
+                throw new IllegalStateException("Write-ahead log ends in " + segment.path
+                        + " before order " + drainNext);
+            }
+            return next.getValue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads back the segments on disk, keeping each up to its last complete record, and starts a
+     * new segment to append to. A segment that does not continue the one before it holds orders
+     * appended after ones that were lost, which were therefore never acknowledged; it is deleted.
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        long next = -1;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long first = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            if (next != -1 && first != next) {
+                log.warn("Deleting write-ahead log segment {}, which does not continue the log", file);
+                Files.delete(file);
+                continue;
+            }
+            Segment segment = Segment.open(file, first);
+            next = segment.recover();
+            if (next - 1 <= drainedSequence) {
+                segment.delete();
+                continue;
+            }
+            if (wal.isFsync()) {
+                segment.buffer.force();
+            }
+            segments.put(first, segment);
+        }
+        nextSequence = Math.max(next, drainedSequence + 1);
+        durableSequence = nextSequence - 1;
+        if (!segments.isEmpty() && segments.firstKey() > drainedSequence + 1) {
+            log.warn("Write-ahead log resumes at order {} after order {} was drained; orders in between were lost",
+                    segments.firstKey(), drainedSequence);
+        }
+        // Appending after a cut-off record could leave it in the middle of the log
+        Segment active = Segment.create(directory, nextSequence, wal.getSegmentSize(), wal.isFsync());
+        segments.put(active.firstSequence, active);
+
+        drainSegment = segments.firstEntry().getValue();
+        drainOffset = 0;
+        drainNext = drainSegment.firstSequence;
+        if (durableSequence > drainedSequence) {
+            log.info("Write-ahead log holds {} orders to write", durableSequence - drainedSequence);
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + SEQUENCE, Long.BYTES + length));
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        final long firstSequence;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        // Written under the log's lock; records before it are complete
+        volatile int writeOffset;
+        // Used by the flushing thread only
+        int syncedOffset;
+
+        private Segment(long firstSequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.firstSequence = firstSequence;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path directory, long firstSequence, int size, boolean fsync) throws IOException {
+            Path path = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fsync) {
+                // Flushing records only covers the file's contents, not its size or its name
+                channel.force(true);
+                try (FileChannel parent = FileChannel.open(directory, StandardOpenOption.READ)) {
+                    parent.force(true);
+                }
+            }
+            return new Segment(firstSequence, path, channel, buffer);
+        }
+
+        static Segment open(Path path, long firstSequence) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            return new Segment(firstSequence, path, channel, buffer);
+        }
+
+        /**
+         * Finds the end of the complete records and returns the sequence that follows them.
+         */
+        long recover() {
+            int offset = 0;
+            long sequence = firstSequence;
+            while (offset + HEADER_BYTES <= capacity()) {
+                int length = buffer.getInt(offset + LENGTH);
+                if (length <= 0 || length > capacity() - offset - HEADER_BYTES
+                        || buffer.getLong(offset + SEQUENCE) != sequence
+                        || buffer.getInt(offset + CHECKSUM) != checksum(buffer, offset, length)) {
+                    break;
+                }
+                offset += HEADER_BYTES + length;
+                sequence++;
+            }
+            writeOffset = offset;
+            syncedOffset = offset;
+            return sequence;
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        void close() throws IOException {
+            // The mapping itself is released once the buffer is garbage collected
+            channel.close();
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private record Entry(long sequence, Order order) {
+    }
+
+    private record Waiter(long sequence, IngestionReceipt receipt, MonoSink<IngestionReceipt> sink) {
+    }
+}
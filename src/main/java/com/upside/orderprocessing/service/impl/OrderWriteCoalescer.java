@@ -0,0 +1,125 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers concurrent single-order writes into shared multi-row INSERTs. A batch is flushed
+ * once it reaches {@code batch-size} writes or its first write has waited {@code max-wait},
+ * whichever happens first, and every caller is completed individually with its own row.
+ */
+@Component
+public class OrderWriteCoalescer {
+    private final OrderBatchWriter batchWriter;
+    private final Queue<PendingWrite> queue;
+    private final Sinks.Many<PendingWrite> sink;
+    private final Disposable subscription;
+
+    private final Counter submitted;
+    private final Counter rejected;
+    private final DistributionSummary batchSize;
+    private final Timer flushTimer;
+
+    public OrderWriteCoalescer(OrderRepository orderRepository,
+                               AdaptiveConcurrencyLimiter limiter,
+                               OrderProcessingProperties properties,
+                               MeterRegistry meterRegistry) {
+        OrderProcessingProperties.Coalescing coalescing = properties.getProcessing().getCoalescing();
+        this.queue = Queues.<PendingWrite>get(coalescing.getQueueDepth()).get();
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(queue);
+
+        this.submitted = Counter.builder("orders.coalescer.submitted")
+                .description("Single-order writes submitted to the coalescer")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("orders.coalescer.rejected")
+                .description("Writes rejected because the coalescer queue was full")
+                .register(meterRegistry);
+        this.batchWriter = new OrderBatchWriter(orderRepository, limiter,
+                Counter.builder("orders.coalescer.fallbacks")
+                        .description("Batches retried row by row after the multi-row INSERT failed")
+                        .register(meterRegistry));
+        this.batchSize = DistributionSummary.builder("orders.coalescer.batch.size")
+                .description("Writes per flushed batch")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("orders.coalescer.flush")
+                .description("Time to persist a flushed batch")
+                .register(meterRegistry);
+        Gauge.builder("orders.coalescer.queue.depth", queue, Queue::size)
+                .description("Writes waiting to be flushed")
+                .register(meterRegistry);
+
+        this.subscription = sink.asFlux()
+                .bufferTimeout(coalescing.getBatchSize(), coalescing.getMaxWait(), true)
+                .flatMap(this::writeBatch, coalescing.getMaxInFlightBatches())
+                .subscribe();
+    }
+
+    /**
+     * Queues the order for the next batch. Errors with {@link RejectedExecutionException}
+     * when {@code queue-depth} writes are already waiting.
+     */
+    public Mono<Order> submit(Order order) {
+        return Mono.defer(() -> {
+            PendingWrite write = new Write(order);
+            Sinks.EmitResult result;
+            while ((result = sink.tryEmitNext(write)) == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                Thread.onSpinWait();
+            }
+            if (result.isFailure()) {
+                rejected.increment();
+                return Mono.error(new RejectedExecutionException("Order write queue is full"));
+            }
+            submitted.increment();
+            return write.result();
+        });
+    }
+
+    private Mono<Void> writeBatch(List<PendingWrite> batch) {
+        batchSize.record(batch.size());
+        long start = System.nanoTime();
+        return batchWriter.write(batch)
+                .doOnSuccess(done -> {
+                    flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    batch.forEach(PendingWrite::complete);
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Completing the sink lets bufferTimeout flush whatever is still queued
+        if (sink.tryEmitComplete().isFailure()) {
+            subscription.dispose();
+        }
+    }
+
+    private static final class Write extends PendingWrite {
+        private final Order order;
+
+        private Write(Order order) {
+            this.order = order;
+        }
+
+        @Override
+        Order order() {
+            return order;
+        }
+    }
+}
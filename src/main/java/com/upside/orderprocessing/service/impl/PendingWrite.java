@@ -0,0 +1,45 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.upside.orderprocessing.model.Order;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * An order waiting to be persisted as part of a batch, together with the caller waiting for it.
+ * The outcome is recorded first and handed to the caller by {@link #complete()}, so the owner of
+ * the batch decides when callers observe it.
+ */
+abstract class PendingWrite {
+    private final Sinks.One<Order> result = Sinks.one();
+    private Order saved;
+    private Throwable failure;
+
+    /**
+     * The order to insert, in entity form.
+     */
+    abstract Order order();
+
+    Mono<Order> result() {
+        return result.asMono();
+    }
+
+    void succeeded(Order saved) {
+        this.saved = saved;
+    }
+
+    void failed(Throwable failure) {
+        this.failure = failure;
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    void complete() {
+        if (failure != null) {
+            result.tryEmitError(failure);
+        } else {
+            result.tryEmitValue(saved);
+        }
+    }
+}
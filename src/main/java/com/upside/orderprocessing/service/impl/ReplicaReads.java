@@ -0,0 +1,66 @@
+package com.upside.orderprocessing.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.config.ReadWriteRoutingConnectionFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decides which reads of the order service may be served by the replica. Without a replica
+ * configured every query runs on the primary and these methods return their argument unchanged.
+ */
+@Component
+public class ReplicaReads {
+    private static final int MAX_TRACKED_WRITES = 100_000;
+
+    private final boolean enabled;
+    private final boolean readYourWrites;
+    // Orders whose status changed here within read-your-writes-window
+    private final Cache<Long, Boolean> recentWrites;
+
+    public ReplicaReads(OrderProcessingProperties properties) {
+        OrderProcessingProperties.Replica config = properties.getReplica();
+        this.enabled = config.isEnabled();
+        this.readYourWrites = config.isReadYourWrites();
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(config.getReadYourWritesWindow())
+                .maximumSize(MAX_TRACKED_WRITES)
+                .build();
+    }
+
+    public <T> Mono<T> read(Mono<T> query) {
+        return enabled ? query.contextWrite(ReadWriteRoutingConnectionFactory::onReplica) : query;
+    }
+
+    public <T> Flux<T> read(Flux<T> query) {
+        return enabled ? query.contextWrite(ReadWriteRoutingConnectionFactory::onReplica) : query;
+    }
+
+    /**
+     * Whether order {@code id} must be read from the primary because its status changed here
+     * recently and read-your-writes is on.
+     */
+    public boolean pinnedToPrimary(Long id) {
+        return enabled && readYourWrites && recentWrites.getIfPresent(id) != null;
+    }
+
+    /**
+     * Reads that a status update decides on, such as why a transition was rejected.
+     */
+    public <T> Mono<T> readForUpdate(Mono<T> query) {
+        return readYourWrites ? query : read(query);
+    }
+
+    public <T> Flux<T> readForUpdate(Flux<T> query) {
+        return readYourWrites ? query : read(query);
+    }
+
+    public void statusChanged(Long id) {
+        if (enabled && readYourWrites) {
+            recentWrites.put(id, Boolean.TRUE);
+        }
+    }
+}
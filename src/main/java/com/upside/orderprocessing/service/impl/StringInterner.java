@@ -0,0 +1,34 @@
+package com.upside.orderprocessing.service.impl;
+
+/**
+ * Lossy, fixed-size interner: a string is returned as the copy already held in its slot when the
+ * two are equal and otherwise replaces that copy. Frequently seen values therefore end up shared,
+ * while memory stays bounded however many distinct values pass through. Races between threads
+ * only ever cost a missed share, since a slot holds any of the strings written to it.
+ */
+final class StringInterner {
+    private final String[] slots;
+    private final int mask;
+
+    StringInterner(int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two");
+        }
+        this.slots = new String[size];
+        this.mask = size - 1;
+    }
+
+    String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String held = slots[slot];
+        if (value.equals(held)) {
+            return held;
+        }
+        slots[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,231 @@
+package com.upside.orderprocessing.service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of order ids: four levels of 64 slots, each slot of a level spanning
+ * one turn of the level below. An order waits in the slot of the lowest level that reaches its
+ * deadline and drops a level whenever the wheel gets to that slot, so scheduling and cancelling
+ * take constant time however many orders wait, and advancing only touches the orders that move
+ * down or expire. Each order keeps a version and an int tag for the caller. Orders are linked
+ * into their slots by index in parallel arrays, with ids mapped to indexes off-heap: about 60
+ * bytes per order, and nothing allocated once the arrays have grown. Deadlines are in ticks of
+ * the caller's choosing; those further out than the wheel reaches wait in its last slots and are
+ * placed again when those come round. Not thread-safe.
+ */
+public final class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long REACH = 1L << (SLOT_BITS * LEVELS);
+    private static final int NONE = -1;
+    // Value of an id in the index: where its order is in the arrays
+    private static final int POSITION = 0;
+
+    @FunctionalInterface
+    public interface Expiry {
+        void expired(long id, long version, int tag);
+    }
+
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private final OffHeapLongTable index;
+    private long[] ids;
+    private long[] deadlines;
+    private long[] versions;
+    private int[] tags;
+    private int[] slots;
+    private int[] next;
+    private int[] previous;
+    private int used;
+    private int free = NONE;
+    // Orders in the level-0 slot of the current tick are due
+    private long tick;
+
+    public TimingWheel(long tick, int initialCapacity) {
+        this.tick = tick;
+        int capacity = Math.max(16, initialCapacity);
+        index = new OffHeapLongTable(Integer.BYTES, capacity);
+        ids = new long[capacity];
+        deadlines = new long[capacity];
+        versions = new long[capacity];
+        tags = new int[capacity];
+        slots = new int[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        Arrays.fill(heads, NONE);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long tick() {
+        return tick;
+    }
+
+    /**
+     * Schedules order {@code id} to expire at {@code deadline}, in place of any deadline it had.
+     * A deadline that has passed expires on the next {@link #advance}.
+     */
+    public void schedule(long id, long deadline, long version, int tag) {
+        int position;
+        int slot = index.find(id);
+        if (slot >= 0) {
+            position = index.getInt(slot, POSITION);
+            unlink(position);
+        } else {
+            position = allocate();
+            index.putInt(index.insert(id), POSITION, position);
+            ids[position] = id;
+        }
+        deadlines[position] = deadline;
+        versions[position] = version;
+        tags[position] = tag;
+        link(position);
+    }
+
+    /**
+     * Whether {@code id} was scheduled.
+     */
+    public boolean cancel(long id) {
+        int slot = index.find(id);
+        if (slot < 0) {
+            return false;
+        }
+        int position = index.getInt(slot, POSITION);
+        index.remove(id);
+        unlink(position);
+        release(position);
+        return true;
+    }
+
+    /**
+     * The tag {@code id} was scheduled with, or {@code otherwise} if it is not scheduled.
+     */
+    public int tag(long id, int otherwise) {
+        int slot = index.find(id);
+        return slot < 0 ? otherwise : tags[index.getInt(slot, POSITION)];
+    }
+
+    /**
+     * The version {@code id} was scheduled with, or {@code otherwise} if it is not scheduled.
+     */
+    public long version(long id, long otherwise) {
+        int slot = index.find(id);
+        return slot < 0 ? otherwise : versions[index.getInt(slot, POSITION)];
+    }
+
+    /**
+     * Moves the wheel on to {@code until}, removing the orders whose deadline it passes and
+     * handing them to {@code expiry}, at most {@code max} of them. Returns how many expired; if
+     * that is {@code max}, the wheel may have stopped short and should be advanced again.
+     */
+    public int advance(long until, int max, Expiry expiry) {
+        int expired = 0;
+        while (true) {
+            int due = (int) (tick & (SLOTS - 1));
+            while (heads[due] != NONE) {
+                if (expired == max) {
+                    return expired;
+                }
+                int position = heads[due];
+                long id = ids[position];
+                long version = versions[position];
+                int tag = tags[position];
+                index.remove(id);
+                unlink(position);
+                release(position);
+                expired++;
+                expiry.expired(id, version, tag);
+            }
+            if (tick >= until) {
+                return expired;
+            }
+            tick++;
+            cascade();
+        }
+    }
+
+    /**
+     * Moves the orders of every level whose turn starts at the current tick down to the levels
+     * below. A slot of level {@code n} is reached once every 64^(n+1) ticks, when the low 6n bits
+     * of the tick are zero.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            if ((tick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            int slot = level * SLOTS + (int) ((tick >>> shift) & (SLOTS - 1));
+            int position = heads[slot];
+            heads[slot] = NONE;
+            while (position != NONE) {
+                int following = next[position];
+                link(position);
+                position = following;
+            }
+        }
+    }
+
+    private void link(int position) {
+        long deadline = deadlines[position];
+        long delay = deadline - tick;
+        int slot;
+        if (delay <= 0) {
+            slot = (int) (tick & (SLOTS - 1));
+        } else {
+            if (delay >= REACH) {
+                delay = REACH - 1;
+                deadline = tick + delay;
+            }
+            // Level n holds delays of 64^n up to 64^(n+1) ticks
+            int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(delay)) / SLOT_BITS;
+            slot = level * SLOTS + (int) ((deadline >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        }
+        slots[position] = slot;
+        previous[position] = NONE;
+        next[position] = heads[slot];
+        if (heads[slot] != NONE) {
+            previous[heads[slot]] = position;
+        }
+        heads[slot] = position;
+    }
+
+    private void unlink(int position) {
+        int before = previous[position];
+        int after = next[position];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            heads[slots[position]] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int position = free;
+            free = next[position];
+            return position;
+        }
+        if (used == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        return used++;
+    }
+
+    private void release(int position) {
+        next[position] = free;
+        free = position;
+    }
+}
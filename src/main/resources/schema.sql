@@ -1,8 +1,17 @@
+DROP TABLE IF EXISTS order_events;
 DROP TABLE IF EXISTS orders;
+DROP TABLE IF EXISTS orders_archive;
+DROP TABLE IF EXISTS order_numbers;
+DROP TABLE IF EXISTS order_status_rollups;
+DROP TABLE IF EXISTS order_product_rollups;
 
+-- Range-partitioned by month on created_at, so scans bounded by time only touch the partitions
+-- they need and every index stays the size of one month. Monthly partitions are created ahead of
+-- time by the application (app.order.retention.partitions-ahead); the default partition only
+-- catches rows outside every partition.
 CREATE TABLE orders (
-    id BIGSERIAL PRIMARY KEY,
-    order_number VARCHAR(255) NOT NULL UNIQUE,
+    id BIGSERIAL,
+    order_number VARCHAR(255) NOT NULL,
     status VARCHAR(50) NOT NULL,
     total_amount DECIMAL(19,2) NOT NULL,
     customer_id VARCHAR(255) NOT NULL,
@@ -10,14 +19,68 @@ CREATE TABLE orders (
     quantity INTEGER NOT NULL,
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-    version BIGINT NOT NULL DEFAULT 1
-);
+    version BIGINT NOT NULL DEFAULT 1,
+    -- Instance working on the order and until when, while an order worker holds it
+    lease_owner VARCHAR(255),
+    lease_expires_at TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+CREATE TABLE orders_default PARTITION OF orders DEFAULT;
 
 CREATE INDEX IF NOT EXISTS idx_order_number ON orders(order_number);
-CREATE INDEX IF NOT EXISTS idx_status ON orders(status);
-CREATE INDEX IF NOT EXISTS idx_created_at ON orders(created_at);
-CREATE INDEX IF NOT EXISTS idx_customer_id ON orders(customer_id);
-CREATE INDEX IF NOT EXISTS idx_product_id ON orders(product_id);
+-- Keyset pagination seeks on (created_at, id); each filter column leads its own index so
+-- equality lookups and filtered page seeks are served by the same index
+CREATE INDEX IF NOT EXISTS idx_created_at_id ON orders(created_at, id);
+CREATE INDEX IF NOT EXISTS idx_status_created_at_id ON orders(status, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_customer_id_created_at_id ON orders(customer_id, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_product_id_created_at_id ON orders(product_id, created_at, id);
+-- Only leased orders have an expiry, so finding lapsed leases never walks the other orders
+CREATE INDEX IF NOT EXISTS idx_lease_expires_at ON orders(lease_expires_at) WHERE lease_expires_at IS NOT NULL;
+
+-- A unique index on a partitioned table must include the partition key, so order numbers are
+-- kept unique here instead. Claiming the number and skipping the row when it is taken behaves
+-- like ON CONFLICT DO NOTHING, including for concurrent inserts of the same number. Deleting an
+-- order releases its number; archived orders keep theirs, since resubmissions resolve to them.
+CREATE TABLE order_numbers (
+    order_number VARCHAR(255) PRIMARY KEY
+);
+
+CREATE OR REPLACE FUNCTION claim_order_number()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Rows moved out of the default partition into a new one already hold their number
+    IF current_setting('app.moving_orders', true) = 'on' THEN
+        RETURN NEW;
+    END IF;
+    INSERT INTO order_numbers (order_number) VALUES (NEW.order_number) ON CONFLICT DO NOTHING;
+    IF NOT FOUND THEN
+        RETURN NULL;
+    END IF;
+    RETURN NEW;
+END;
+$$ language 'plpgsql';
+
+CREATE TRIGGER claim_order_number
+    BEFORE INSERT ON orders
+    FOR EACH ROW
+    EXECUTE FUNCTION claim_order_number();
+
+CREATE OR REPLACE FUNCTION release_order_number()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Rows moved to the archive or into a new partition keep their number
+    IF current_setting('app.moving_orders', true) IS DISTINCT FROM 'on' THEN
+        DELETE FROM order_numbers WHERE order_number = OLD.order_number;
+    END IF;
+    RETURN NULL;
+END;
+$$ language 'plpgsql';
+
+CREATE TRIGGER release_order_number
+    AFTER DELETE ON orders
+    FOR EACH ROW
+    EXECUTE FUNCTION release_order_number();
 
 -- Add trigger to automatically update updated_at timestamp
 CREATE OR REPLACE FUNCTION update_updated_at_column()
@@ -31,4 +94,70 @@ $$ language 'plpgsql';
 CREATE TRIGGER update_orders_updated_at
     BEFORE UPDATE ON orders
     FOR EACH ROW
-    EXECUTE FUNCTION update_updated_at_column(); 
\ No newline at end of file
+    EXECUTE FUNCTION update_updated_at_column();
+
+-- COMPLETED and CANCELLED orders past app.order.retention.archive-after, moved out of orders
+CREATE TABLE orders_archive (
+    id BIGINT PRIMARY KEY,
+    order_number VARCHAR(255) NOT NULL UNIQUE,
+    status VARCHAR(50) NOT NULL,
+    total_amount DECIMAL(19,2) NOT NULL,
+    customer_id VARCHAR(255) NOT NULL,
+    product_id VARCHAR(255) NOT NULL,
+    quantity INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL,
+    version BIGINT NOT NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_orders_archive_customer_id ON orders_archive(customer_id, created_at);
+
+-- Orders that entered each status, with their revenue, per minute and per product and day. Kept
+-- up to date by the application as changes commit (app.order.rollups.*), so analytics read these
+-- small tables instead of scanning orders. Archiving does not touch them.
+CREATE TABLE order_status_rollups (
+    bucket TIMESTAMP NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    order_count BIGINT NOT NULL,
+    revenue DECIMAL(19,2) NOT NULL,
+    PRIMARY KEY (bucket, status)
+);
+
+CREATE TABLE order_product_rollups (
+    bucket DATE NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    product_id VARCHAR(255) NOT NULL,
+    order_count BIGINT NOT NULL,
+    revenue DECIMAL(19,2) NOT NULL,
+    PRIMARY KEY (bucket, status, product_id)
+);
+
+-- Transactional outbox of order changes, written by the same statement that changes the order
+CREATE TABLE order_events (
+    id BIGSERIAL PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    order_number VARCHAR(255) NOT NULL,
+    customer_id VARCHAR(255) NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    total_amount DECIMAL(19,2) NOT NULL,
+    version BIGINT NOT NULL,
+    type VARCHAR(50) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_order_events_created_at ON order_events(created_at);
+
+-- One notification per writing statement, delivered on commit; listeners read the rows themselves
+CREATE OR REPLACE FUNCTION notify_order_events()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('order_events', '');
+    RETURN NULL;
+END;
+$$ language 'plpgsql';
+
+CREATE TRIGGER notify_order_events
+    AFTER INSERT ON order_events
+    FOR EACH STATEMENT
+    EXECUTE FUNCTION notify_order_events();
@@ -0,0 +1,78 @@
+package com.upside.orderprocessing.analytics;
+
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.InstanceOfAssertFactories.LIST;
+import static org.assertj.core.api.InstanceOfAssertFactories.MAP;
+
+class AnalyticsEngineTest {
+
+    @Test
+    void slidingWindowRatesOnlyCountCompleteSecondsInsideTheWindow() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        SlidingWindowCounter counter = new SlidingWindowCounter(300, clock::get);
+
+        counter.add(10);
+        clock.addAndGet(1_000);
+        counter.add(5);
+        assertThat(counter.ratePerSecond(1)).isEqualTo(10.0);
+
+        clock.addAndGet(1_000);
+        assertThat(counter.ratePerSecond(1)).isEqualTo(5.0);
+        assertThat(counter.ratePerSecond(60)).isEqualTo(15.0 / 60);
+
+        // The ring wraps; stale slots must not leak into the new window
+        clock.addAndGet(301_000);
+        counter.add(3);
+        clock.addAndGet(1_000);
+        assertThat(counter.ratePerSecond(300)).isEqualTo(3.0 / 300);
+    }
+
+    @Test
+    void snapshotsReflectRecordedRequestsOrdersAndErrors() {
+        AnalyticsEngine engine = new AnalyticsEngine();
+        for (int i = 0; i < 9; i++) {
+            engine.requestStarted();
+            engine.requestCompleted(2_000_000L, false);
+        }
+        engine.requestStarted();
+        engine.requestCompleted(40_000_000L, true);
+        engine.recordError("CONFLICT");
+        engine.recordOrdersProcessed(3);
+        engine.recordTransitions(OrderStatus.COMPLETED, 2);
+
+        assertThat(engine.throughputSnapshot())
+                .containsEntry("totalRequests", 10L)
+                .containsEntry("totalOrders", 3L);
+        assertThat(engine.latencySnapshot().get("recent")).asInstanceOf(MAP)
+                .containsEntry("samples", 10L)
+                .containsEntry("max", 40.0);
+        assertThat(engine.bottleneckSnapshot())
+                .containsEntry("inFlightRequests", 0L)
+                .containsEntry("errorRate", 0.1);
+        assertThat(engine.bottleneckSnapshot().get("statusDistribution")).asInstanceOf(MAP)
+                .containsEntry("PROCESSING", 3L)
+                .containsEntry("COMPLETED", 2L);
+        assertThat(engine.errorSnapshot().get("errorDistribution")).asInstanceOf(LIST)
+                .containsExactly(Map.of("type", "CONFLICT", "count", 1L));
+    }
+
+    @Test
+    void recentLatencyForgetsSamplesAfterTwoRotations() {
+        AnalyticsEngine engine = new AnalyticsEngine();
+        engine.requestStarted();
+        engine.requestCompleted(1_000_000L, false);
+
+        engine.rotateLatency();
+        assertThat(engine.latencySnapshot().get("recent")).asInstanceOf(MAP).containsEntry("samples", 1L);
+
+        engine.rotateLatency();
+        assertThat(engine.latencySnapshot().get("recent")).asInstanceOf(MAP).containsEntry("samples", 0L);
+        assertThat(engine.latencySnapshot().get("lifetime")).asInstanceOf(MAP).containsEntry("samples", 1L);
+    }
+}
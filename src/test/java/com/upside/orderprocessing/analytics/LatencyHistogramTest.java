@@ -0,0 +1,47 @@
+package com.upside.orderprocessing.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketBoundsAreContiguous() {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            assertThat(LatencyHistogram.upperBound(i) + 1).isEqualTo(LatencyHistogram.lowerBound(i + 1));
+            assertThat(LatencyHistogram.indexOf(LatencyHistogram.lowerBound(i))).isEqualTo(i);
+            assertThat(LatencyHistogram.indexOf(LatencyHistogram.upperBound(i))).isEqualTo(i);
+        }
+        assertThat(LatencyHistogram.indexOf(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+    }
+
+    @Test
+    void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1_000; millis++) {
+            histogram.record(millis * 1_000_000L);
+        }
+
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        long samples = histogram.addCountsTo(counts);
+
+        assertThat(samples).isEqualTo(1_000);
+        assertThat(LatencyHistogram.valueAtQuantile(counts, samples, 0.5)).isCloseTo(500_000L, within(62_500L));
+        assertThat(LatencyHistogram.valueAtQuantile(counts, samples, 0.99)).isCloseTo(990_000L, within(123_750L));
+        assertThat(histogram.getMaxMicros()).isEqualTo(1_000_000L);
+    }
+
+    @Test
+    void resetClearsSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000L);
+        histogram.reset();
+
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        assertThat(histogram.addCountsTo(counts)).isZero();
+        assertThat(LatencyHistogram.valueAtQuantile(counts, 0, 0.99)).isZero();
+        assertThat(histogram.getMaxMicros()).isZero();
+    }
+}
@@ -0,0 +1,135 @@
+package com.upside.orderprocessing.analytics;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.InvalidAnalyticsRangeException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderRollup;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRollupRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+@Import(OrderRollupRepository.class)
+class OrderRollupsTest {
+    private static final LocalDateTime MINUTE = LocalDateTime.of(2024, 3, 1, 12, 30);
+
+    @Autowired
+    private OrderRollupRepository rollupRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private OrderRollups rollups;
+
+    @BeforeEach
+    void setUp() {
+        databaseClient.sql("DELETE FROM order_status_rollups").then().block();
+        databaseClient.sql("DELETE FROM order_product_rollups").then().block();
+        rollups = new OrderRollups(rollupRepository, new OrderProcessingProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void flushesAddToTheStoredTotals() {
+        rollups.record(createOrder(OrderStatus.PROCESSING, "PROD-A", "10.00", MINUTE.plusSeconds(5)));
+        rollups.record(createOrder(OrderStatus.PROCESSING, "PROD-B", "2.50", MINUTE.plusSeconds(40)));
+        rollups.record(createOrder(OrderStatus.COMPLETED, "PROD-A", "10.00", MINUTE.plusMinutes(1)));
+        rollups.flush().block();
+        rollups.record(createOrder(OrderStatus.PROCESSING, "PROD-A", "1.25", MINUTE.plusSeconds(59)));
+        rollups.flush().block();
+
+        StepVerifier.create(rollups.byStatus(MINUTE, MINUTE.plusMinutes(2)))
+                .expectNext(new OrderRollup(null, OrderStatus.COMPLETED, null, 1, new BigDecimal("10.00")))
+                .expectNext(new OrderRollup(null, OrderStatus.PROCESSING, null, 3, new BigDecimal("13.75")))
+                .verifyComplete();
+        StepVerifier.create(rollups.byMinute(OrderStatus.PROCESSING, MINUTE.minusMinutes(5), MINUTE.plusMinutes(5)))
+                .expectNext(new OrderRollup(MINUTE, OrderStatus.PROCESSING, null, 3, new BigDecimal("13.75")))
+                .verifyComplete();
+        // The end of the range is exclusive
+        StepVerifier.create(rollups.byStatus(MINUTE, MINUTE.plusMinutes(1)))
+                .expectNextMatches(rollup -> rollup.getStatus() == OrderStatus.PROCESSING)
+                .verifyComplete();
+    }
+
+    @Test
+    void topProductsAreRankedByRevenue() {
+        rollups.record(createOrder(OrderStatus.COMPLETED, "PROD-A", "5.00", MINUTE));
+        rollups.record(createOrder(OrderStatus.COMPLETED, "PROD-A", "5.00", MINUTE.plusDays(1)));
+        rollups.record(createOrder(OrderStatus.COMPLETED, "PROD-B", "30.00", MINUTE));
+        rollups.record(createOrder(OrderStatus.COMPLETED, "PROD-C", "1.00", MINUTE));
+        rollups.record(createOrder(OrderStatus.CANCELLED, "PROD-C", "99.00", MINUTE));
+        rollups.flush().block();
+
+        LocalDate day = MINUTE.toLocalDate();
+        StepVerifier.create(rollups.topProducts(OrderStatus.COMPLETED, day, day.plusDays(1), 2))
+                .expectNext(new OrderRollup(null, OrderStatus.COMPLETED, "PROD-B", 1, new BigDecimal("30.00")))
+                .expectNext(new OrderRollup(null, OrderStatus.COMPLETED, "PROD-A", 2, new BigDecimal("10.00")))
+                .verifyComplete();
+    }
+
+    @Test
+    void failedFlushesAreRetried() {
+        OrderRollupRepository failing = mock(OrderRollupRepository.class);
+        when(failing.addAll(anyList(), anyList()))
+                .thenReturn(Mono.error(new IllegalStateException("database unavailable")))
+                .thenReturn(Mono.empty());
+        OrderRollups retrying = new OrderRollups(failing, new OrderProcessingProperties(), new SimpleMeterRegistry());
+
+        retrying.record(createOrder(OrderStatus.COMPLETED, "PROD-A", "1.00", MINUTE));
+        retrying.flush().block();
+        retrying.record(createOrder(OrderStatus.COMPLETED, "PROD-A", "2.00", MINUTE));
+        retrying.flush().block();
+
+        ArgumentCaptor<List<OrderRollup>> minutes = captor();
+        verify(failing, times(2)).addAll(minutes.capture(), anyList());
+        assertThat(minutes.getValue())
+                .containsExactly(new OrderRollup(MINUTE, OrderStatus.COMPLETED, null, 2, new BigDecimal("3.00")));
+    }
+
+    @Test
+    void rejectsEmptyAndOversizedRanges() {
+        StepVerifier.create(rollups.byStatus(MINUTE, MINUTE))
+                .verifyError(InvalidAnalyticsRangeException.class);
+        StepVerifier.create(rollups.byMinute(OrderStatus.COMPLETED, MINUTE.minusDays(40), MINUTE))
+                .verifyError(InvalidAnalyticsRangeException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<OrderRollup>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static Order createOrder(OrderStatus status, String productId, String amount, LocalDateTime updatedAt) {
+        Order order = new Order();
+        order.setOrderNumber("ORD-1");
+        order.setStatus(status);
+        order.setTotalAmount(new BigDecimal(amount));
+        order.setCustomerId("CUST-001");
+        order.setProductId(productId);
+        order.setQuantity(1);
+        order.setUpdatedAt(updatedAt);
+        return order;
+    }
+}
@@ -0,0 +1,193 @@
+package com.upside.orderprocessing.cache;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderCacheTest {
+
+    @Mock
+    private RedisOrderCacheTier remote;
+
+    private OrderProcessingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private Order order;
+
+    @BeforeEach
+    void setUp() {
+        properties = new OrderProcessingProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        order = new Order();
+        order.setId(1L);
+        order.setOrderNumber("ORD-001");
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+    }
+
+    @Test
+    void getById_LoadsOnceThenServesFromNearTier() {
+        OrderCache cache = new OrderCache(properties, meterRegistry, (RedisOrderCacheTier) null);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(cache.getById(1L, () -> Mono.fromSupplier(() -> {
+                        loads.incrementAndGet();
+                        return order;
+                    })))
+                    .expectNext(order)
+                    .verifyComplete();
+        }
+
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "orders.near.id").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void idAndOrderNumberNamespacesDoNotCollide() {
+        OrderCache cache = new OrderCache(properties, meterRegistry, (RedisOrderCacheTier) null);
+        Order other = new Order();
+        other.setId(2L);
+        other.setOrderNumber("1");
+
+        cache.getById(1L, () -> Mono.just(order)).block();
+
+        StepVerifier.create(cache.getByOrderNumber("1", () -> Mono.just(other)))
+                .expectNext(other)
+                .verifyComplete();
+    }
+
+    @Test
+    void evict_DropsBothNamespaces() {
+        OrderCache cache = new OrderCache(properties, meterRegistry, (RedisOrderCacheTier) null);
+        cache.getById(1L, () -> Mono.just(order)).block();
+
+        cache.evict(1L, null).block();
+
+        StepVerifier.create(cache.getById(1L, Mono::empty)).verifyComplete();
+        StepVerifier.create(cache.getByOrderNumber("ORD-001", Mono::empty)).verifyComplete();
+    }
+
+    @Test
+    void getById_RemoteHitPopulatesNearTierWithoutLoading() {
+        when(remote.getById(1L)).thenReturn(Mono.just(order));
+        OrderCache cache = new OrderCache(properties, meterRegistry, remote);
+
+        StepVerifier.create(cache.getById(1L, () -> Mono.error(new AssertionError("loader called"))))
+                .expectNext(order)
+                .verifyComplete();
+        StepVerifier.create(cache.getByOrderNumber("ORD-001", Mono::empty))
+                .expectNext(order)
+                .verifyComplete();
+        verify(remote, never()).put(any(Order.class));
+    }
+
+    @Test
+    void invalidationPayloadRoundTrips() {
+        List<CacheInvalidation> invalidations = List.of(
+                new CacheInvalidation(1L, "ORD-001"),
+                new CacheInvalidation(2L, null),
+                new CacheInvalidation(null, "ORD|003"));
+
+        assertThat(CacheInvalidation.decode(CacheInvalidation.encode(invalidations))).isEqualTo(invalidations);
+    }
+
+    @Test
+    void remoteInvalidationEvictsNearTier() {
+        Sinks.Many<CacheInvalidation> invalidations = Sinks.many().multicast().directBestEffort();
+        when(remote.invalidations()).thenReturn(invalidations.asFlux());
+        when(remote.getById(1L)).thenReturn(Mono.just(order)).thenReturn(Mono.empty());
+        OrderCache cache = new OrderCache(properties, meterRegistry, remote);
+        cache.subscribeToInvalidations();
+        cache.getById(1L, Mono::empty).block();
+
+        invalidations.tryEmitNext(new CacheInvalidation(1L, "ORD-001"));
+
+        StepVerifier.create(cache.getById(1L, Mono::empty)).verifyComplete();
+        cache.shutdown();
+    }
+
+    @Test
+    void getById_ConcurrentMissesShareOneLoad() {
+        OrderCache cache = new OrderCache(properties, meterRegistry, (RedisOrderCacheTier) null);
+        Sinks.One<Order> database = Sinks.one();
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Mono<Order>> callers = List.of(1, 2, 3).stream()
+                .map(i -> cache.getById(1L, () -> {
+                    loads.incrementAndGet();
+                    return database.asMono();
+                }).cache())
+                .toList();
+        callers.forEach(Mono::subscribe);
+        database.tryEmitValue(order);
+
+        for (Mono<Order> caller : callers) {
+            StepVerifier.create(caller).expectNext(order).verifyComplete();
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.counter("orders.cache.coalesced").count()).isEqualTo(2);
+    }
+
+    @Test
+    void evict_StopsNewMissesJoiningALoadInFlight() {
+        OrderCache cache = new OrderCache(properties, meterRegistry, (RedisOrderCacheTier) null);
+        Sinks.One<Order> stale = Sinks.one();
+        Mono<Order> first = cache.getById(1L, stale::asMono).cache();
+        first.subscribe();
+
+        cache.evict(1L, "ORD-001").block();
+        Order updated = new Order();
+        updated.setId(1L);
+        updated.setOrderNumber("ORD-001");
+        updated.setStatus(OrderStatus.COMPLETED);
+
+        StepVerifier.create(cache.getById(1L, () -> Mono.just(updated)))
+                .expectNext(updated)
+                .verifyComplete();
+        stale.tryEmitValue(order);
+        StepVerifier.create(first).expectNext(order).verifyComplete();
+        // The stale load finished last but did not replace the newer entry
+        StepVerifier.create(cache.getById(1L, () -> Mono.error(new AssertionError("loader called"))))
+                .expectNext(updated)
+                .verifyComplete();
+    }
+
+    @Test
+    void evict_KeepsALoadInFlightFromCachingWhatItRead() {
+        when(remote.getById(1L)).thenReturn(Mono.empty());
+        when(remote.getByOrderNumber("ORD-001")).thenReturn(Mono.empty());
+        when(remote.evictAll(any())).thenReturn(Mono.empty());
+        OrderCache cache = new OrderCache(properties, meterRegistry, remote);
+        Sinks.One<Order> stale = Sinks.one();
+        Mono<Order> first = cache.getById(1L, stale::asMono).cache();
+        first.subscribe();
+
+        cache.evict(1L, "ORD-001").block();
+        stale.tryEmitValue(order);
+
+        StepVerifier.create(first).expectNext(order).verifyComplete();
+        verify(remote, never()).put(any(Order.class));
+        StepVerifier.create(cache.getByOrderNumber("ORD-001", Mono::empty)).verifyComplete();
+    }
+}
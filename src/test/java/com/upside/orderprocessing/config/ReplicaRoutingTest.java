@@ -0,0 +1,116 @@
+package com.upside.orderprocessing.config;
+
+import com.upside.orderprocessing.exception.OrderNotFoundException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.OrderService;
+import com.upside.orderprocessing.service.impl.ActiveOrderIndex;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+
+/**
+ * Two independent in-memory databases stand in for a primary and its replica; rows are copied
+ * to the "replica" by hand, with a marker that shows which database answered.
+ */
+@SpringBootTest(properties = {
+        "app.order.replica.enabled=true",
+        "app.order.replica.url=r2dbc:h2:mem:///replicadb;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.order.replica.username=sa",
+        "app.order.replica.password="
+})
+@ActiveProfiles("test")
+class ReplicaRoutingTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ActiveOrderIndex activeOrders;
+
+    @Autowired
+    @Qualifier("replicaConnectionFactory")
+    private ConnectionFactory replicaConnectionFactory;
+
+    private DatabaseClient replica;
+
+    @BeforeEach
+    void setUp() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).populate(replicaConnectionFactory).block();
+        replica = DatabaseClient.create(replicaConnectionFactory);
+        replica.sql("DELETE FROM orders").then().block();
+        orderRepository.deleteAll().block();
+    }
+
+    @Test
+    void readsAreServedByTheReplica() {
+        Order saved = orderRepository.save(createOrder("REPL-1")).block();
+        // Saved around the service, so the index is told of it the way the service would
+        activeOrders.record(orderRepository.findById(saved.getId()).block());
+        copyToReplica(saved);
+
+        StepVerifier.create(orderService.getOrderById(saved.getId()))
+                .expectNextMatches(order -> order.getCustomerId().equals("CUST-REPLICA"))
+                .verifyComplete();
+        StepVerifier.create(orderService.getOrdersByStatus(OrderStatus.PROCESSING))
+                .expectNextMatches(order -> order.getCustomerId().equals("CUST-REPLICA"))
+                .verifyComplete();
+        // Not replicated yet
+        orderRepository.save(createOrder("REPL-2")).block();
+        StepVerifier.create(orderService.getOrderByOrderNumber("REPL-2"))
+                .verifyError(OrderNotFoundException.class);
+    }
+
+    @Test
+    void statusUpdatesWriteThePrimaryAndReadTheirWrites() {
+        Order saved = orderRepository.save(createOrder("REPL-3")).block();
+        copyToReplica(saved);
+
+        StepVerifier.create(orderService.updateOrderStatus(saved.getId(), OrderStatus.COMPLETED))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.COMPLETED)
+                .verifyComplete();
+        // The replica still has the order as PROCESSING
+        StepVerifier.create(orderService.getOrderById(saved.getId()))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.COMPLETED
+                        && order.getCustomerId().equals("CUST-001"))
+                .verifyComplete();
+    }
+
+    private void copyToReplica(Order order) {
+        replica.sql("INSERT INTO orders (id, order_number, status, total_amount, customer_id, product_id, quantity) "
+                        + "VALUES ($1, $2, $3, $4, 'CUST-REPLICA', $5, $6)")
+                .bind(0, order.getId())
+                .bind(1, order.getOrderNumber())
+                .bind(2, order.getStatus().name())
+                .bind(3, order.getTotalAmount())
+                .bind(4, order.getProductId())
+                .bind(5, order.getQuantity())
+                .then()
+                .block();
+    }
+
+    private static Order createOrder(String orderNumber) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
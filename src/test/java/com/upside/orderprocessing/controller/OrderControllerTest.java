@@ -1,20 +1,38 @@
 package com.upside.orderprocessing.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.upside.orderprocessing.analytics.AnalyticsEngine;
+import com.upside.orderprocessing.config.CodecConfig;
+import com.upside.orderprocessing.exception.BulkStatusUpdateTooLargeException;
+import com.upside.orderprocessing.exception.OrderStatusConflictException;
+import com.upside.orderprocessing.model.BulkStatusUpdateResult;
+import com.upside.orderprocessing.model.IngestionReceipt;
 import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderFilter;
+import com.upside.orderprocessing.model.OrderPage;
 import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.OrderIngestion;
 import com.upside.orderprocessing.service.OrderService;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
 
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(OrderController.class)
@@ -26,12 +44,18 @@ class OrderControllerTest {
     @MockBean
     private OrderService orderService;
 
+    @MockBean
+    private AnalyticsEngine analyticsEngine;
+
+    @MockBean
+    private OrderIngestion ingestion;
+
     private Order testOrder;
 
     @Test
     void processBatchOrders_Success() {
         testOrder = createTestOrder();
-        when(orderService.processBatchOrders(any(Flux.class)))
+        when(orderService.processBatchOrders(ArgumentMatchers.<Flux<Order>>any()))
                 .thenReturn(Flux.just(testOrder));
 
         webTestClient.post()
@@ -44,6 +68,96 @@ class OrderControllerTest {
                 .hasSize(1);
     }
 
+    @Test
+    void processBatchOrders_StreamsNdjson() {
+        when(orderService.processBatchOrders(ArgumentMatchers.<Flux<Order>>any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        webTestClient.post()
+                .uri("/api/orders/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"orderNumber\":\"TEST-001\"}\n{\"orderNumber\":\"TEST-002\"}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .isEqualTo(ndjsonLine("TEST-001") + ndjsonLine("TEST-002"));
+    }
+
+    @Test
+    void processBatchOrders_RoundTripsSmile() throws Exception {
+        testOrder = createTestOrder();
+        MediaType smile = MediaType.parseMediaType(CodecConfig.SMILE_VALUE);
+        byte[] body = new ObjectMapper(new SmileFactory()).writeValueAsBytes(List.of(testOrder));
+        when(orderService.processBatchOrders(ArgumentMatchers.<Flux<Order>>any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        webTestClient.post()
+                .uri("/api/orders/batch")
+                .contentType(smile)
+                .accept(CodecConfig.SMILE_STREAM)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(CodecConfig.SMILE_STREAM)
+                .expectBodyList(Order.class)
+                .isEqualTo(List.of(testOrder));
+    }
+
+    @Test
+    void processBatchOrders_RejectsUnsupportedMediaType() {
+        webTestClient.post()
+                .uri("/api/orders/batch")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue("<orders/>")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    @Test
+    void ingestOrders_AcceptsAndReturnsTrackingIds() {
+        when(ingestion.enqueue(ArgumentMatchers.<Flux<Order>>any()))
+                .thenReturn(Mono.just(new IngestionReceipt(2, List.of("1-0", "1-1"))));
+
+        webTestClient.post()
+                .uri("/api/orders/ingest")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"orderNumber\":\"TEST-001\"}\n{\"orderNumber\":\"TEST-002\"}\n")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody()
+                .jsonPath("$.accepted").isEqualTo(2)
+                .jsonPath("$.trackingIds[1]").isEqualTo("1-1");
+    }
+
+    @Test
+    void getIngestionStatus_NotFound() {
+        when(ingestion.status("1-0")).thenReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri("/api/orders/ingest/1-0")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void getOrders_PassesFiltersAndCursor() {
+        testOrder = createTestOrder();
+        OrderFilter filter = new OrderFilter(OrderStatus.PENDING, "CUST-001", null,
+                LocalDateTime.of(2024, 1, 1, 0, 0), null);
+        when(orderService.getOrderPage(filter, "abc", 25))
+                .thenReturn(Mono.just(new OrderPage(List.of(testOrder), "next")));
+
+        webTestClient.get()
+                .uri("/api/orders?status=PENDING&customerId=CUST-001&from=2024-01-01T00:00:00&cursor=abc&size=25")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items[0].orderNumber").isEqualTo("TEST-001")
+                .jsonPath("$.nextCursor").isEqualTo("next");
+    }
+
     @Test
     void getOrder_Success() {
         testOrder = createTestOrder();
@@ -61,7 +175,8 @@ class OrderControllerTest {
     @Test
     void updateOrderStatus_Success() {
         testOrder = createTestOrder();
-        when(orderService.updateOrderStatus(1L, OrderStatus.COMPLETED))
+        testOrder.setStatus(OrderStatus.COMPLETED);
+        when(orderService.updateOrderStatus(1L, OrderStatus.COMPLETED, null))
                 .thenReturn(Mono.just(testOrder));
 
         webTestClient.put()
@@ -72,6 +187,59 @@ class OrderControllerTest {
                 .jsonPath("$.status").isEqualTo("COMPLETED");
     }
 
+    @Test
+    void updateOrderStatus_Conflict() {
+        when(orderService.updateOrderStatus(1L, OrderStatus.PENDING, 3L))
+                .thenReturn(Mono.error(new OrderStatusConflictException("Order 1 cannot move from COMPLETED to PENDING")));
+
+        webTestClient.put()
+                .uri("/api/orders/1/status?status=PENDING&version=3")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void updateOrderStatuses_ReportsConflicts() {
+        when(orderService.updateOrderStatuses(List.of(1L, 2L), OrderStatus.COMPLETED))
+                .thenReturn(Mono.just(new BulkStatusUpdateResult(OrderStatus.COMPLETED, 2, List.of(1L),
+                        List.of(new BulkStatusUpdateResult.Conflict(2L,
+                                BulkStatusUpdateResult.Reason.ILLEGAL_TRANSITION, OrderStatus.CANCELLED)))));
+
+        webTestClient.put()
+                .uri("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"status\":\"COMPLETED\",\"ids\":[1,2]}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.updated[0]").isEqualTo(1)
+                .jsonPath("$.conflicts[0].id").isEqualTo(2)
+                .jsonPath("$.conflicts[0].reason").isEqualTo("ILLEGAL_TRANSITION");
+    }
+
+    @Test
+    void updateOrderStatuses_RejectsEmptyIds() {
+        webTestClient.put()
+                .uri("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"status\":\"COMPLETED\",\"ids\":[]}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void updateOrderStatuses_RejectsTooManyIds() {
+        when(orderService.updateOrderStatuses(List.of(1L, 2L), OrderStatus.COMPLETED))
+                .thenReturn(Mono.error(new BulkStatusUpdateTooLargeException(2, 1)));
+
+        webTestClient.put()
+                .uri("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"status\":\"COMPLETED\",\"ids\":[1,2]}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     void getOrderStream_Success() {
         testOrder = createTestOrder();
@@ -88,26 +256,32 @@ class OrderControllerTest {
     }
 
     @Test
-    void stressTest_Success() {
-        when(orderService.processBatchOrders(any(Flux.class)))
-                .thenReturn(Flux.just(createTestOrder()));
+    void streamOrderChanges_EmitsServerSentEvents() {
+        OrderEvent event = new OrderEvent(7L, 1L, "ORD-1", "CUST-001", OrderStatus.COMPLETED,
+                new BigDecimal("100.00"), 2L, OrderEvent.Type.STATUS_CHANGED, LocalDateTime.now());
+        when(orderService.getOrderChanges(OrderStatus.COMPLETED, "CUST-001"))
+                .thenReturn(Flux.just(event));
 
-        webTestClient.post()
-                .uri("/api/orders/stress-test?orderCount=1000")
+        Flux<ServerSentEvent<OrderEvent>> body = webTestClient.get()
+                .uri("/api/orders/changes?status=COMPLETED&customerId=CUST-001")
+                .accept(MediaType.TEXT_EVENT_STREAM)
                 .exchange()
                 .expectStatus().isOk()
-                .expectBody(String.class)
-                .isEqualTo("Stress test initiated with 1000 orders");
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<OrderEvent>>() {})
+                .getResponseBody();
+
+        StepVerifier.create(body)
+                .expectNextMatches(sse -> "7".equals(sse.id())
+                        && "STATUS_CHANGED".equals(sse.event())
+                        && sse.data().getOrderNumber().equals("ORD-1"))
+                .thenCancel()
+                .verify();
     }
 
-    @Test
-    void stressTest_ExceedsLimit() {
-        webTestClient.post()
-                .uri("/api/orders/stress-test?orderCount=10001")
-                .exchange()
-                .expectStatus().isOk()
-                .expectBody(String.class)
-                .isEqualTo("Maximum 10,000 orders allowed for stress test");
+    private static String ndjsonLine(String orderNumber) {
+        return "{\"id\":null,\"orderNumber\":\"" + orderNumber + "\",\"status\":null,\"totalAmount\":null,"
+                + "\"customerId\":null,\"productId\":null,\"quantity\":null,\"createdAt\":null,"
+                + "\"updatedAt\":null,\"version\":null}\n";
     }
 
     private Order createTestOrder() {
@@ -0,0 +1,81 @@
+package com.upside.orderprocessing.controller;
+
+import com.upside.orderprocessing.analytics.AnalyticsEngine;
+import com.upside.orderprocessing.exception.LoadTestRunningException;
+import com.upside.orderprocessing.loadtest.LoadGenerator;
+import com.upside.orderprocessing.model.LoadTestRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(StressTestController.class)
+class StressTestControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private LoadGenerator loadGenerator;
+
+    @MockBean
+    private AnalyticsEngine analyticsEngine;
+
+    @Test
+    void startTest_AcceptsProfile() {
+        when(loadGenerator.start(argThat(request -> request.getNumOrders() == 2_000_000L
+                && request.getRatePerSecond() == 5_000.0)))
+                .thenReturn(Map.of("runId", "run-1", "isRunning", true));
+
+        webTestClient.post()
+                .uri("/api/stress-test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"numOrders\":2000000,\"ratePerSecond\":5000,\"rampUp\":\"PT30S\"}")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody()
+                .jsonPath("$.runId").isEqualTo("run-1");
+    }
+
+    @Test
+    void startTest_ConflictsWhileAnotherRuns() {
+        when(loadGenerator.start(any(LoadTestRequest.class))).thenThrow(new LoadTestRunningException("run-1"));
+
+        webTestClient.post()
+                .uri("/api/stress-test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"numOrders\":10,\"ratePerSecond\":10}")
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+
+    @Test
+    void startTest_RejectsInvalidProfile() {
+        webTestClient.post()
+                .uri("/api/stress-test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"numOrders\":-1,\"ratePerSecond\":10}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getTestStatus_ReportsCurrentRun() {
+        when(loadGenerator.status()).thenReturn(Map.of("state", "IDLE", "isRunning", false));
+
+        webTestClient.get()
+                .uri("/api/stress-test/status")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.isRunning").isEqualTo(false);
+    }
+}
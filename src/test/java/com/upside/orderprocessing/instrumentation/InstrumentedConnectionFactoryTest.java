@@ -0,0 +1,133 @@
+package com.upside.orderprocessing.instrumentation;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstrumentedConnectionFactoryTest {
+    private SimpleMeterRegistry meterRegistry;
+    private OrderProcessingProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new OrderProcessingProperties();
+    }
+
+    @Test
+    void fingerprint_IgnoresValuesAndRowCounts() {
+        assertThat(QueryFingerprints.of("INSERT INTO orders (a, b) VALUES ($1, $2), ($3, $4)"))
+                .isEqualTo(QueryFingerprints.of("INSERT INTO orders (a, b) VALUES ($1, $2)"))
+                .isEqualTo("INSERT INTO orders (a, b) VALUES (?)");
+        assertThat(QueryFingerprints.of("SELECT * FROM orders\n  WHERE status = 'PENDING' AND id IN ($1, $2, $3) LIMIT 10"))
+                .isEqualTo("SELECT * FROM orders WHERE status = ? AND id IN (?) LIMIT ?");
+        assertThat(QueryFingerprints.of("SELECT o1.id FROM orders_2024_03 o1 WHERE o1.version = -2.5"))
+                .isEqualTo("SELECT o1.id FROM orders_2024_03 o1 WHERE o1.version = ?");
+
+        String longQuery = "SELECT " + "id, ".repeat(100);
+        assertThat(QueryFingerprints.of(longQuery + "a FROM x")).hasSize(QueryFingerprints.MAX_LENGTH)
+                .isNotEqualTo(QueryFingerprints.of(longQuery + "b FROM x"));
+    }
+
+    @Test
+    void statements_AreTimedByFingerprintAndOutcome() {
+        DatabaseClient databaseClient = databaseClient();
+        databaseClient.sql("CREATE TABLE items (id BIGINT PRIMARY KEY, name VARCHAR(50))").then().block();
+
+        for (long id = 1; id <= 3; id++) {
+            databaseClient.sql("INSERT INTO items (id, name) VALUES ($1, $2)")
+                    .bind(0, id)
+                    .bind(1, "item-" + id)
+                    .then()
+                    .block();
+        }
+        StepVerifier.create(databaseClient.sql("SELECT name FROM items WHERE id > $1")
+                        .bind(0, 1L)
+                        .map(row -> row.get("name", String.class))
+                        .all())
+                .expectNextCount(2)
+                .verifyComplete();
+        StepVerifier.create(databaseClient.sql("INSERT INTO items (id, name) VALUES ($1, $2)")
+                        .bind(0, 1L)
+                        .bind(1, "duplicate")
+                        .then())
+                .expectError()
+                .verify();
+
+        assertThat(timer("INSERT INTO items (id, name) VALUES (?)", "success").count()).isEqualTo(3);
+        assertThat(timer("INSERT INTO items (id, name) VALUES (?)", "error").count()).isEqualTo(1);
+        assertThat(timer("SELECT name FROM items WHERE id > ?", "success").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("orders.db.connection.acquire").tag("pool", "primary").timer().count())
+                .isGreaterThanOrEqualTo(6);
+    }
+
+    @Test
+    void statementsInATransactionAreTimedToo() {
+        InstrumentedConnectionFactory connectionFactory = connectionFactory();
+        DatabaseClient databaseClient = DatabaseClient.create(connectionFactory);
+        TransactionalOperator transactional = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+
+        databaseClient.sql("CREATE TABLE counters (id INT PRIMARY KEY, total INT)").then()
+                .then(databaseClient.sql("INSERT INTO counters VALUES (1, 0)").then())
+                .then(databaseClient.sql("UPDATE counters SET total = total + 1 WHERE id = 1").fetch().rowsUpdated())
+                .as(transactional::transactional)
+                .block();
+
+        assertThat(timer("UPDATE counters SET total = total + ? WHERE id = ?", "success").count()).isEqualTo(1);
+        // One connection for the whole transaction
+        assertThat(meterRegistry.get("orders.db.connection.acquire").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void slowStatements_AreCountedAndShowBindShapes() {
+        properties.getInstrumentation().setSlowQueryThreshold(Duration.ZERO);
+        DatabaseClient databaseClient = databaseClient();
+
+        for (int i = 0; i < 3; i++) {
+            databaseClient.sql("SELECT $1 AS a, $2 AS b").bind(0, "text").bindNull(1, Long.class)
+                    .fetch().first().block();
+        }
+
+        assertThat(meterRegistry.get("orders.db.slow.queries").counter().count()).isEqualTo(3);
+        assertThat(InstrumentedStatement.shapeOf("abc")).isEqualTo("String(3)");
+        assertThat(InstrumentedStatement.shapeOf(new Long[]{1L, 2L})).isEqualTo("Long[2]");
+    }
+
+    @Test
+    void fingerprintsPastTheLimitShareATag() {
+        properties.getInstrumentation().setMaxFingerprints(1);
+        DatabaseClient databaseClient = databaseClient();
+
+        databaseClient.sql("SELECT 1").fetch().first().block();
+        databaseClient.sql("SELECT 1 FROM DUAL").fetch().first().block();
+
+        assertThat(timer("SELECT ?", "success").count()).isEqualTo(1);
+        assertThat(timer(QueryMetrics.OTHER_QUERIES, "success").count()).isEqualTo(1);
+    }
+
+    private DatabaseClient databaseClient() {
+        return DatabaseClient.create(connectionFactory());
+    }
+
+    private InstrumentedConnectionFactory connectionFactory() {
+        return new InstrumentedConnectionFactory(
+                ConnectionFactories.get("r2dbc:h2:mem:///instrumented-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"),
+                new QueryMetrics(properties, meterRegistry), meterRegistry);
+    }
+
+    private Timer timer(String query, String outcome) {
+        return meterRegistry.get("orders.db.query").tag("query", query).tag("outcome", outcome).timer();
+    }
+}
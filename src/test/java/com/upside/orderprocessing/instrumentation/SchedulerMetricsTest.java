@@ -0,0 +1,71 @@
+package com.upside.orderprocessing.instrumentation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchedulerMetricsTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        // The decorator is global; take it over from whichever registry set it up first
+        Schedulers.removeExecutorServiceDecorator(SchedulerMetrics.class.getName());
+        SchedulerMetrics.enable(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Schedulers.removeExecutorServiceDecorator(SchedulerMetrics.class.getName());
+    }
+
+    @Test
+    void removesTheMetersOfWorkersThatShutDownAndReusesTheirNames() {
+        Scheduler first = Schedulers.newSingle("metrics-test");
+        runOn(first);
+        assertThat(executorNames()).contains("metrics-test-0");
+
+        first.dispose();
+        assertThat(meterRegistry.find("reactor.executor.completed").tag("scheduler", "metrics-test")
+                .functionCounters()).isEmpty();
+
+        Scheduler second = Schedulers.newSingle("metrics-test");
+        try {
+            runOn(second);
+            assertThat(executorNames()).containsOnlyOnce("metrics-test-0").doesNotContain("metrics-test-1");
+        } finally {
+            second.dispose();
+        }
+    }
+
+    @Test
+    void leavesBoundedElasticWorkersOut() {
+        Scheduler elastic = Schedulers.newBoundedElastic(2, 10, "metrics-elastic");
+        try {
+            runOn(elastic);
+            assertThat(meterRegistry.find("reactor.executor.completed").tag("scheduler", "metrics-elastic")
+                    .functionCounters()).isEmpty();
+        } finally {
+            elastic.dispose();
+        }
+    }
+
+    private static void runOn(Scheduler scheduler) {
+        Mono.fromCallable(() -> 1).subscribeOn(scheduler).block(Duration.ofSeconds(5));
+    }
+
+    private List<String> executorNames() {
+        return meterRegistry.find("reactor.executor.completed").functionCounters().stream()
+                .map(counter -> counter.getId().getTag("name"))
+                .toList();
+    }
+}
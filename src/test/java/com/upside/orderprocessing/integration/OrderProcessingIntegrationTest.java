@@ -1,8 +1,11 @@
 package com.upside.orderprocessing.integration;
 
+import com.upside.orderprocessing.analytics.OrderRollups;
 import com.upside.orderprocessing.model.Order;
 import com.upside.orderprocessing.model.OrderStatus;
 import com.upside.orderprocessing.repository.OrderRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +19,10 @@ import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest
 @AutoConfigureWebTestClient
@@ -28,6 +35,12 @@ class OrderProcessingIntegrationTest {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private OrderRollups orderRollups;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         orderRepository.deleteAll().block();
@@ -39,14 +52,16 @@ class OrderProcessingIntegrationTest {
         Order order1 = createTestOrder("ORD-001");
         Order order2 = createTestOrder("ORD-002");
 
-        webTestClient.post()
+        List<Order> created = webTestClient.post()
                 .uri("/api/orders/batch")
                 .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(Flux.just(order1, order2))
+                .body(Flux.just(order1, order2), Order.class)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(Order.class)
-                .hasSize(2);
+                .hasSize(2)
+                .returnResult()
+                .getResponseBody();
 
         // Verify orders in database
         StepVerifier.create(orderRepository.findAll())
@@ -55,7 +70,7 @@ class OrderProcessingIntegrationTest {
 
         // Update order status
         webTestClient.put()
-                .uri("/api/orders/1/status?status=COMPLETED")
+                .uri("/api/orders/{id}/status?status=COMPLETED", created.get(0).getId())
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody()
@@ -70,11 +85,27 @@ class OrderProcessingIntegrationTest {
                 .expectBodyList(Order.class)
                 .hasSize(1);
 
-        // Stress test
+        // Stress test, awaited so its orders do not leak into other tests
         webTestClient.post()
-                .uri("/api/orders/stress-test?orderCount=1000")
+                .uri("/api/stress-test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"numOrders\":100,\"ratePerSecond\":1000}")
                 .exchange()
-                .expectStatus().isOk();
+                .expectStatus().isAccepted()
+                .expectBody()
+                .jsonPath("$.isRunning").isEqualTo(true);
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        Map<?, ?> status;
+        do {
+            status = webTestClient.get()
+                    .uri("/api/stress-test/status")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(Map.class)
+                    .returnResult()
+                    .getResponseBody();
+        } while (Boolean.TRUE.equals(status.get("isRunning")) && System.nanoTime() < deadline);
+        assertThat(status.get("completed")).isEqualTo(100);
     }
 
     @Test
@@ -87,7 +118,7 @@ class OrderProcessingIntegrationTest {
         webTestClient.post()
                 .uri("/api/orders/batch")
                 .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(orders)
+                .body(orders, Order.class)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(Order.class)
@@ -116,6 +147,63 @@ class OrderProcessingIntegrationTest {
                 .hasSize(2);
     }
 
+    @Test
+    void analyticsReflectCommittedChangesOnceFlushed() {
+        Flux<Order> orders = Flux.range(1, 3).map(i -> {
+            Order order = createTestOrder("ROLLUP-" + i);
+            order.setProductId("PROD-ROLLUP");
+            return order;
+        });
+        List<Order> created = webTestClient.post()
+                .uri("/api/orders/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(orders, Order.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Order.class)
+                .returnResult()
+                .getResponseBody();
+        webTestClient.put()
+                .uri("/api/orders/{id}/status?status=COMPLETED", created.get(0).getId())
+                .exchange()
+                .expectStatus().isOk();
+
+        orderRollups.flush().block();
+
+        webTestClient.get()
+                .uri("/api/analytics/orders/products?status=COMPLETED&limit=100")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[?(@.productId == 'PROD-ROLLUP')].orderCount").isEqualTo(1)
+                .jsonPath("$[?(@.productId == 'PROD-ROLLUP')].revenue").isEqualTo(100.0);
+        webTestClient.get()
+                .uri("/api/analytics/orders/status?from=2024-01-02T00:00:00&to=2024-01-01T00:00:00")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void databaseAndSchedulerMetricsArePublished() {
+        webTestClient.post()
+                .uri("/api/orders/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Flux.just(createTestOrder("METRICS-1")), Order.class)
+                .exchange()
+                .expectStatus().isOk();
+
+        assertThat(meterRegistry.find("orders.db.query").timers())
+                .anySatisfy(timer -> assertThat(timer.getId().getTag("query"))
+                        .contains("INSERT INTO orders (order_number, status").contains("VALUES (?)"));
+        assertThat(meterRegistry.find("orders.db.query").timers().stream().mapToLong(Timer::count).sum())
+                .isPositive();
+        assertThat(meterRegistry.get("orders.db.connection.acquire").tag("pool", "primary").timer().count())
+                .isPositive();
+        assertThat(meterRegistry.find("r2dbc.pool.acquired").gauge()).isNotNull();
+        assertThat(meterRegistry.find("reactor.executor.completed").tag("scheduler", "order-lane-0").functionCounters())
+                .isNotEmpty();
+    }
+
     private Order createTestOrder(String orderNumber) {
         Order order = new Order();
         order.setOrderNumber(orderNumber);
@@ -0,0 +1,152 @@
+package com.upside.orderprocessing.limiter;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.ConcurrencyLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class AdaptiveConcurrencyLimiterTest {
+
+    private OrderProcessingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private VirtualTimeScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        properties = new OrderProcessingProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = VirtualTimeScheduler.getOrSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        VirtualTimeScheduler.reset();
+    }
+
+    @Test
+    void shedsCallsBeyondLimitAndQueueWithRetryAfter() {
+        properties.getLimiter().setInitialLimit(4);
+        properties.getLimiter().setMaxQueued(0);
+        AdaptiveConcurrencyLimiter limiter = createLimiter();
+        Sinks.Empty<Void> blocker = Sinks.empty();
+
+        for (int i = 0; i < 4; i++) {
+            limiter.mono(blocker::asMono).subscribe();
+        }
+
+        StepVerifier.create(limiter.mono(() -> Mono.just("late")))
+                .expectErrorSatisfies(error -> {
+                    assertThat(error).isInstanceOf(ConcurrencyLimitExceededException.class);
+                    assertThat(((ConcurrencyLimitExceededException) error).getHeaders()
+                            .getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+                })
+                .verify();
+        assertThat(meterRegistry.counter("orders.limiter.shed").count()).isEqualTo(1);
+
+        blocker.tryEmitEmpty();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void queuedCallTakesTheNextFreeSlotOrTimesOut() {
+        properties.getLimiter().setInitialLimit(4);
+        properties.getLimiter().setMaxQueued(1);
+        AdaptiveConcurrencyLimiter limiter = createLimiter();
+        Sinks.Empty<Void> first = Sinks.empty();
+        limiter.mono(first::asMono).subscribe();
+        for (int i = 1; i < 4; i++) {
+            limiter.mono(Mono::never).subscribe();
+        }
+
+        StepVerifier.create(limiter.mono(() -> Mono.just("queued")))
+                .then(() -> assertThat(limiter.getQueued()).isEqualTo(1))
+                .then(first::tryEmitEmpty)
+                .expectNext("queued")
+                .verifyComplete();
+
+        limiter.mono(Mono::never).subscribe();
+        StepVerifier.create(limiter.mono(() -> Mono.just("expired")))
+                .then(() -> scheduler.advanceTimeBy(properties.getLimiter().getMaxQueueWait()))
+                .expectError(ConcurrencyLimitExceededException.class)
+                .verify();
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    void holdsGoodputNearPeakUnderTenfoldOverload() {
+        // A database that serves 8 calls at a time in 5ms; beyond that every call slows down
+        int capacity = 8;
+        Duration serviceTime = Duration.ofMillis(5);
+        Duration slo = Duration.ofMillis(25);
+        Duration run = Duration.ofSeconds(10);
+        double peakGoodput = capacity * 1_000.0 / serviceTime.toMillis();
+
+        properties.getLimiter().setEnabled(false);
+        double unlimited = simulateGoodput(createLimiter(), capacity, serviceTime, slo, run);
+
+        properties.getLimiter().setEnabled(true);
+        AdaptiveConcurrencyLimiter limiter = createLimiter();
+        double limited = simulateGoodput(limiter, capacity, serviceTime, slo, run);
+
+        log.info("Goodput at 10x overload: limited {}/s, unlimited {}/s, peak {}/s, converged limit {}",
+                (long) limited, (long) unlimited, (long) peakGoodput, limiter.getLimit());
+        assertThat(limited).isGreaterThan(0.7 * peakGoodput);
+        assertThat(unlimited).isLessThan(0.1 * peakGoodput);
+        assertThat(limiter.getLimit()).isBetween(capacity, 3 * capacity);
+    }
+
+    private double simulateGoodput(AdaptiveConcurrencyLimiter limiter, int capacity, Duration serviceTime,
+                                   Duration slo, Duration run) {
+        AtomicInteger dbInFlight = new AtomicInteger();
+        AtomicLong good = new AtomicLong();
+        long end = scheduler.now(TimeUnit.NANOSECONDS) + run.toNanos();
+
+        Mono<Void> dbCall = Mono.defer(() -> {
+            double slowdown = Math.max(1.0, (double) dbInFlight.incrementAndGet() / capacity);
+            return Mono.delay(Duration.ofNanos((long) (serviceTime.toNanos() * slowdown)))
+                    .doFinally(signal -> dbInFlight.decrementAndGet())
+                    .then();
+        });
+        Mono<Void> client = Mono.defer(() -> {
+            long start = scheduler.now(TimeUnit.NANOSECONDS);
+            return limiter.mono(() -> dbCall)
+                    .doOnSuccess(ignored -> {
+                        if (scheduler.now(TimeUnit.NANOSECONDS) - start <= slo.toNanos()) {
+                            good.incrementAndGet();
+                        }
+                    })
+                    // Shed clients retry almost immediately, keeping the pressure on
+                    .onErrorResume(ConcurrencyLimitExceededException.class,
+                            e -> Mono.delay(Duration.ofMillis(1)).then());
+        });
+
+        // Ten times as many clients as the database can serve concurrently
+        for (int i = 0; i < 10 * capacity; i++) {
+            client.repeat(() -> scheduler.now(TimeUnit.NANOSECONDS) < end).subscribe();
+        }
+        scheduler.advanceTimeBy(run.plusSeconds(1));
+        return good.get() / (double) run.toSeconds();
+    }
+
+    private AdaptiveConcurrencyLimiter createLimiter() {
+        return new AdaptiveConcurrencyLimiter(properties, meterRegistry,
+                () -> scheduler.now(TimeUnit.NANOSECONDS));
+    }
+}
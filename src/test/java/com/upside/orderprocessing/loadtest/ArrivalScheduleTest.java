@@ -0,0 +1,79 @@
+package com.upside.orderprocessing.loadtest;
+
+import com.upside.orderprocessing.exception.InvalidLoadProfileException;
+import com.upside.orderprocessing.model.LoadTestRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ArrivalScheduleTest {
+
+    @Test
+    void constantRate_SpacesArrivalsEvenlyUntilNumOrders() {
+        LoadTestRequest request = new LoadTestRequest();
+        request.setRatePerSecond(1_000.0);
+        request.setNumOrders(5_000_000L);
+
+        ArrivalSchedule schedule = ArrivalSchedule.of(request);
+
+        assertThat(schedule.totalArrivals()).isEqualTo(5_000_000L);
+        assertThat(schedule.offsetNanos(0)).isZero();
+        assertThat(schedule.offsetNanos(1)).isEqualTo(1_000_000L);
+        assertThat(schedule.offsetNanos(4_999_999)).isCloseTo(4_999_999_000_000L, within(1_000L));
+        assertThat(schedule.rateAt(Duration.ofHours(1).toNanos())).isEqualTo(1_000.0);
+    }
+
+    @Test
+    void rampUp_ArrivesAtTheIntegralOfTheRate() {
+        LoadTestRequest request = new LoadTestRequest();
+        request.setRatePerSecond(100.0);
+        request.setRampUp(Duration.ofSeconds(10));
+        request.setDuration(Duration.ofSeconds(10));
+
+        ArrivalSchedule schedule = ArrivalSchedule.of(request);
+
+        // 500 orders while ramping from 0 to 100/s, then 1000 at 100/s
+        assertThat(schedule.totalArrivals()).isEqualTo(1_500);
+        // Half the ramp's orders arrive in its last ~29% (t = 10 * sqrt(0.5))
+        assertThat(schedule.offsetNanos(250)).isCloseTo(Duration.ofMillis(7_071).toNanos(), within(1_000_000L));
+        assertThat(schedule.offsetNanos(500)).isCloseTo(Duration.ofSeconds(10).toNanos(), within(1_000L));
+        assertThat(schedule.offsetNanos(1_000)).isCloseTo(Duration.ofSeconds(15).toNanos(), within(1_000L));
+        assertThat(schedule.offsetNanos(1_500)).isEqualTo(Long.MAX_VALUE);
+        assertThat(schedule.rateAt(Duration.ofSeconds(5).toNanos())).isEqualTo(50.0);
+    }
+
+    @Test
+    void stages_RampBetweenTargetsIncludingDown() {
+        LoadTestRequest request = new LoadTestRequest();
+        request.setStartRate(10);
+        request.setStages(List.of(
+                new LoadTestRequest.Stage(10, Duration.ofSeconds(10)),
+                new LoadTestRequest.Stage(30, Duration.ofSeconds(10)),
+                new LoadTestRequest.Stage(0, Duration.ofSeconds(10))));
+
+        ArrivalSchedule schedule = ArrivalSchedule.of(request);
+
+        assertThat(schedule.totalArrivals()).isEqualTo(100 + 200 + 150);
+        long previous = -1;
+        for (long n = 0; n < schedule.totalArrivals(); n++) {
+            long offset = schedule.offsetNanos(n);
+            assertThat(offset).isGreaterThan(previous);
+            previous = offset;
+        }
+        assertThat(schedule.rateAt(Duration.ofSeconds(25).toNanos())).isEqualTo(15.0);
+    }
+
+    @Test
+    void of_RejectsUnboundedProfiles() {
+        LoadTestRequest request = new LoadTestRequest();
+        request.setRatePerSecond(100.0);
+
+        assertThatThrownBy(() -> ArrivalSchedule.of(request))
+                .isInstanceOf(InvalidLoadProfileException.class);
+    }
+}
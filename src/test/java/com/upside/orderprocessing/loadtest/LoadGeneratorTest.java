@@ -0,0 +1,139 @@
+package com.upside.orderprocessing.loadtest;
+
+import com.upside.orderprocessing.exception.LoadTestRunningException;
+import com.upside.orderprocessing.model.LoadTestRequest;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.service.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LoadGeneratorTest {
+
+    @Mock
+    private OrderService orderService;
+
+    private LoadGenerator loadGenerator;
+
+    @BeforeEach
+    void setUp() {
+        loadGenerator = new LoadGenerator(orderService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loadGenerator.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_SendsOnScheduleAndReportsLatency() throws InterruptedException {
+        when(orderService.processOrder(any(Order.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.<Order>getArgument(0))
+                        .delayElement(Duration.ofMillis(20)));
+
+        loadGenerator.start(request(200, 2_000.0));
+        Map<String, Object> status = awaitFinished();
+
+        assertThat(status).containsEntry("state", LoadTestRun.State.COMPLETED)
+                .containsEntry("completed", 200L)
+                .containsEntry("failed", 0L)
+                .containsEntry("dropped", 0L);
+        Map<String, Object> latency = (Map<String, Object>) status.get("latency");
+        Map<String, Object> responseTime = (Map<String, Object>) latency.get("responseTime");
+        assertThat(responseTime).containsEntry("samples", 200L);
+        assertThat((double) responseTime.get("p50")).isGreaterThanOrEqualTo(17.5);
+        // 200 orders at 2000/s take ~100ms to send however slowly they complete
+        assertThat((long) status.get("elapsedMillis")).isLessThan(1_000);
+        assertThat(((Map<String, Object>) status.get("results"))).containsEntry("success", true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_DropsArrivalsBeyondMaxInFlightInsteadOfWaiting() throws InterruptedException {
+        when(orderService.processOrder(any(Order.class)))
+                .thenReturn(Mono.delay(Duration.ofMillis(200)).then(Mono.empty()));
+        LoadTestRequest request = request(100, 10_000.0);
+        request.setMaxInFlight(10);
+        request.setTimeout(Duration.ofSeconds(5));
+
+        loadGenerator.start(request);
+        Map<String, Object> status = awaitFinished();
+
+        assertThat(status).containsEntry("sent", 10L).containsEntry("dropped", 90L);
+        // Dropped arrivals count at the timeout, so the percentiles show the saturation
+        Map<String, Object> latency = (Map<String, Object>) status.get("latency");
+        Map<String, Object> responseTime = (Map<String, Object>) latency.get("responseTime");
+        assertThat(responseTime).containsEntry("samples", 90L);
+        assertThat((double) responseTime.get("p50")).isGreaterThanOrEqualTo(5_000.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_FailsOrdersThatTakeLongerThanTheTimeout() throws InterruptedException {
+        when(orderService.processOrder(any(Order.class))).thenReturn(Mono.never());
+        LoadTestRequest request = request(5, 1_000.0);
+        request.setTimeout(Duration.ofMillis(50));
+
+        loadGenerator.start(request);
+        Map<String, Object> status = awaitFinished();
+
+        assertThat(status).containsEntry("state", LoadTestRun.State.COMPLETED)
+                .containsEntry("failed", 5L)
+                .containsEntry("inFlight", 0L);
+        assertThat((Map<String, Long>) status.get("errors")).containsEntry("TimeoutException", 5L);
+        Map<String, Object> latency = (Map<String, Object>) status.get("latency");
+        assertThat((Map<String, Object>) latency.get("responseTime")).containsEntry("samples", 5L);
+    }
+
+    @Test
+    void stop_AbandonsOutstandingOrdersAndAllowsANewRun() throws InterruptedException {
+        when(orderService.processOrder(any(Order.class))).thenReturn(Mono.never());
+        loadGenerator.start(request(1_000_000, 1_000.0));
+        while ((long) loadGenerator.status().get("inFlight") == 0) {
+            Thread.sleep(1);
+        }
+
+        assertThatThrownBy(() -> loadGenerator.start(request(10, 10.0)))
+                .isInstanceOf(LoadTestRunningException.class);
+
+        assertThat(loadGenerator.stop()).containsEntry("state", LoadTestRun.State.STOPPED);
+        // An order being dispatched while stopping is abandoned as soon as it is sent
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while ((long) loadGenerator.status().get("inFlight") > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(loadGenerator.status()).containsEntry("inFlight", 0L);
+        assertThat(loadGenerator.start(request(10, 10.0))).containsEntry("isRunning", true);
+    }
+
+    private Map<String, Object> awaitFinished() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        Map<String, Object> status = loadGenerator.status();
+        while (Boolean.TRUE.equals(status.get("isRunning")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = loadGenerator.status();
+        }
+        return status;
+    }
+
+    private static LoadTestRequest request(long numOrders, double ratePerSecond) {
+        LoadTestRequest request = new LoadTestRequest();
+        request.setNumOrders(numOrders);
+        request.setRatePerSecond(ratePerSecond);
+        return request;
+    }
+}
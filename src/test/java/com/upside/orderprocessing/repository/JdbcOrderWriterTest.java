@@ -0,0 +1,161 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.ConcurrencyLimitExceededException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The bulk repository with the JDBC engine, writing to the same in-memory H2 database that
+ * the R2DBC repository reads.
+ */
+@DataR2dbcTest(properties = {
+        "app.order.persistence.engine=jdbc",
+        "app.order.persistence.jdbc.url=" + JdbcOrderWriterTest.URL,
+        "app.order.persistence.jdbc.username=sa",
+        "app.order.persistence.jdbc.password=",
+        "app.order.persistence.jdbc.pool-size=1",
+        "app.order.persistence.jdbc.queue-depth=1"
+})
+@ActiveProfiles("test")
+@Import({OrderNumberFilter.class, JdbcOrderWriter.class})
+@EnableConfigurationProperties(OrderProcessingProperties.class)
+class JdbcOrderWriterTest {
+    static final String URL = "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1;MODE=PostgreSQL";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @BeforeEach
+    void setUp() {
+        databaseClient.sql("DELETE FROM order_events").then().block();
+        orderRepository.deleteAll().block();
+    }
+
+    @Test
+    void insertAll_WritesOrdersAndTheirEventsTogether() {
+        List<Order> saved = orderRepository.insertAll(createOrders("JDBC", 30)).collectList().block();
+
+        assertThat(saved).hasSize(30);
+        for (int i = 0; i < saved.size(); i++) {
+            assertThat(saved.get(i).getOrderNumber()).isEqualTo("JDBC-" + i);
+            assertThat(saved.get(i).getId()).isNotNull();
+            assertThat(saved.get(i).getVersion()).isEqualTo(1L);
+        }
+        StepVerifier.create(orderRepository.findById(saved.get(7).getId()))
+                .expectNextMatches(found -> found.getOrderNumber().equals("JDBC-7")
+                        && found.getTotalAmount().compareTo(new BigDecimal("100.00")) == 0)
+                .verifyComplete();
+        StepVerifier.create(createdEvents())
+                .expectNext(30L)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_ResolvesTakenNumbersWithoutRepeatingTheirEvents() {
+        List<Order> first = orderRepository.insertAll(createOrders("TAKEN", 10)).collectList().block();
+
+        List<Order> retried = createOrders("TAKEN", 15);
+        retried.add(createOrders("TAKEN", 1).get(0));
+        List<Order> saved = orderRepository.insertAll(retried).collectList().block();
+
+        assertThat(saved).hasSize(16);
+        for (int i = 0; i < 10; i++) {
+            assertThat(saved.get(i).getId()).isEqualTo(first.get(i).getId());
+        }
+        assertThat(saved.get(15).getId()).isEqualTo(saved.get(0).getId());
+        StepVerifier.create(createdEvents())
+                .expectNext(15L)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_RollsBackAFailedBatchAndKeepsWriting() {
+        List<Order> invalid = new ArrayList<>(createOrders("BAD", 5));
+        invalid.get(3).setCustomerId(null);
+
+        StepVerifier.create(orderRepository.insertAll(invalid))
+                .expectError()
+                .verify();
+        StepVerifier.create(orderRepository.count())
+                .expectNext(0L)
+                .verifyComplete();
+
+        // The single worker reuses the connection the failed batch ran on
+        StepVerifier.create(orderRepository.insertAll(createOrders("GOOD", 5)))
+                .expectNextCount(5)
+                .verifyComplete();
+        StepVerifier.create(createdEvents())
+                .expectNext(5L)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_TurnsBatchesAwayOnceTheQueueIsFull() throws SQLException {
+        try (Connection holder = DriverManager.getConnection(URL, "sa", "")) {
+            // An uncommitted row with the same number keeps the only worker waiting on its lock
+            holder.setAutoCommit(false);
+            try (Statement statement = holder.createStatement()) {
+                statement.executeUpdate("INSERT INTO orders (order_number, status, total_amount, customer_id, "
+                        + "product_id, quantity, created_at, updated_at, version) VALUES ('HELD-0', 'PROCESSING', "
+                        + "100.00, 'CUST-001', 'PROD-001', 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 1)");
+            }
+            Mono<List<Order>> running = orderRepository.insertAll(createOrders("HELD", 1)).collectList().cache();
+            running.subscribe(rows -> { }, e -> { });
+            Mono<List<Order>> queued = orderRepository.insertAll(createOrders("QUEUED", 1)).collectList().cache();
+            queued.subscribe(rows -> { }, e -> { });
+
+            StepVerifier.create(orderRepository.insertAll(createOrders("TURNED-AWAY", 1)))
+                    .expectError(ConcurrencyLimitExceededException.class)
+                    .verify();
+            holder.rollback();
+
+            StepVerifier.create(queued)
+                    .expectNextMatches(rows -> rows.size() == 1)
+                    .verifyComplete();
+        }
+    }
+
+    private Mono<Long> createdEvents() {
+        return databaseClient.sql("SELECT COUNT(*) AS events FROM order_events WHERE type = 'CREATED'")
+                .map(row -> row.get("events", Long.class))
+                .one();
+    }
+
+    private static List<Order> createOrders(String prefix, int count) {
+        return Flux.range(0, count).map(i -> {
+            Order order = new Order();
+            order.setOrderNumber(prefix + "-" + i);
+            order.setStatus(OrderStatus.PROCESSING);
+            order.setTotalAmount(new BigDecimal("100.00"));
+            order.setCustomerId("CUST-001");
+            order.setProductId("PROD-001");
+            order.setQuantity(1);
+            return order;
+        }).collectList().block();
+    }
+}
@@ -0,0 +1,169 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the H2 test profile by default. Point it at a local Postgres with
+ * {@code -Dspring.r2dbc.url=r2dbc:postgresql://localhost:5432/orderdb} to compare
+ * the two write paths on the production driver. The timings are only logged; throughput is
+ * measured by {@code BatchIngestionBenchmark} in the benchmarks module.
+ */
+@Slf4j
+@DataR2dbcTest
+@ActiveProfiles("test")
+@Import(OrderNumberFilter.class)
+@EnableConfigurationProperties(OrderProcessingProperties.class)
+class OrderBulkRepositoryTest {
+
+    private static final int THROUGHPUT_ORDERS = 10_000;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderNumberFilter orderNumberFilter;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+    }
+
+    @Test
+    void insertAll_ReturnsGeneratedIdsInInputOrder() {
+        List<Order> orders = createOrders("BULK", 50);
+
+        List<Order> saved = orderRepository.insertAll(orders).collectList().block();
+
+        assertThat(saved).hasSize(50);
+        for (int i = 0; i < saved.size(); i++) {
+            assertThat(saved.get(i).getOrderNumber()).isEqualTo("BULK-" + i);
+            assertThat(saved.get(i).getId()).isNotNull();
+        }
+        for (Order order : saved) {
+            StepVerifier.create(orderRepository.findById(order.getId()))
+                    .expectNextMatches(found -> found.getOrderNumber().equals(order.getOrderNumber()))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void insertAll_SplitsOversizedChunks() {
+        int count = OrderBulkRepositoryImpl.MAX_ROWS_PER_STATEMENT + 10;
+
+        StepVerifier.create(orderRepository.insertAll(createOrders("SPLIT", count)))
+                .expectNextCount(count)
+                .verifyComplete();
+
+        StepVerifier.create(orderRepository.count())
+                .expectNext((long) count)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_PersistsAsManyRowsWithIdsAsPerRowSave() {
+        List<Order> perRow = createOrders("ROW", THROUGHPUT_ORDERS);
+        long start = System.nanoTime();
+        List<Order> saved = Flux.fromIterable(perRow).concatMap(orderRepository::save).collectList().block();
+        long perRowNanos = System.nanoTime() - start;
+
+        List<Order> bulk = createOrders("SET", THROUGHPUT_ORDERS);
+        start = System.nanoTime();
+        List<Order> inserted = Flux.fromIterable(bulk).buffer(1000).concatMap(orderRepository::insertAll)
+                .collectList()
+                .block();
+        long bulkNanos = System.nanoTime() - start;
+
+        log.info("Inserted {} orders: per-row {} orders/s, bulk {} orders/s",
+                THROUGHPUT_ORDERS, ordersPerSecond(perRowNanos), ordersPerSecond(bulkNanos));
+
+        assertThat(saved).hasSize(THROUGHPUT_ORDERS).allMatch(order -> order.getId() != null);
+        assertThat(inserted).hasSize(THROUGHPUT_ORDERS).allMatch(order -> order.getId() != null);
+        assertThat(inserted).extracting(Order::getId).doesNotHaveDuplicates();
+        StepVerifier.create(orderRepository.count())
+                .expectNext(2L * THROUGHPUT_ORDERS)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_ResolvesDuplicateOrderNumbersToExistingRows() {
+        List<Order> first = orderRepository.insertAll(createOrders("RETRY", 20)).collectList().block();
+
+        List<Order> retried = createOrders("RETRY", 25);
+        retried.add(createOrders("RETRY", 1).get(0));
+        List<Order> saved = orderRepository.insertAll(retried).collectList().block();
+
+        assertThat(saved).hasSize(26);
+        for (int i = 0; i < 20; i++) {
+            assertThat(saved.get(i).getId()).isEqualTo(first.get(i).getId());
+        }
+        assertThat(saved.get(25).getId()).isEqualTo(saved.get(0).getId());
+        StepVerifier.create(orderRepository.count())
+                .expectNext(25L)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_ResolvesNumbersUnknownToTheFilter() {
+        // Written behind the filter's back, as another instance would
+        Order existing = orderRepository.save(createOrders("OTHER", 1).get(0)).block();
+        orderNumberFilter.markWarm();
+
+        List<Order> saved = orderRepository.insertAll(createOrders("OTHER", 3)).collectList().block();
+
+        assertThat(saved).extracting(Order::getId).contains(existing.getId()).doesNotContainNull();
+        assertThat(orderNumberFilter.mightContain("OTHER-0")).isTrue();
+        StepVerifier.create(orderRepository.count())
+                .expectNext(3L)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_RejectsMissingOrderNumbers() {
+        orderNumberFilter.markWarm();
+        List<Order> orders = createOrders("MISSING", 3);
+        orders.get(1).setOrderNumber(null);
+        orders.get(2).setOrderNumber(" ");
+
+        StepVerifier.create(orderRepository.insertAll(orders))
+                .expectError(InvalidOrderException.class)
+                .verify();
+        StepVerifier.create(orderRepository.count())
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    private static long ordersPerSecond(long nanos) {
+        return THROUGHPUT_ORDERS * 1_000_000_000L / Math.max(1, nanos);
+    }
+
+    private static List<Order> createOrders(String prefix, int count) {
+        return Flux.range(0, count).map(i -> {
+            Order order = new Order();
+            order.setOrderNumber(prefix + "-" + i);
+            order.setStatus(OrderStatus.PROCESSING);
+            order.setTotalAmount(new BigDecimal("100.00"));
+            order.setCustomerId("CUST-001");
+            order.setProductId("PROD-001");
+            order.setQuantity(1);
+            return order;
+        }).collectList().block();
+    }
+}
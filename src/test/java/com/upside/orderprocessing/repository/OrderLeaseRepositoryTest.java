@@ -0,0 +1,151 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+class OrderLeaseRepositoryTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+    }
+
+    @Test
+    void concurrentClaimsNeverGetTheSameOrder() {
+        orderRepository.insertAll(IntStream.range(0, 200)
+                .mapToObj(i -> createOrder("CLAIM-" + i, OrderStatus.PENDING))
+                .toList()).then().block();
+        orderRepository.insertAll(List.of(createOrder("CLAIM-DONE", OrderStatus.COMPLETED))).then().block();
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(1);
+
+        // Eight instances claiming batches of ten side by side until nothing is left
+        List<Order> claimed = Flux.range(0, 8)
+                .flatMap(worker -> orderRepository.claimPending("worker-" + worker, expiresAt, 10)
+                        .collectList()
+                        .repeat()
+                        .takeWhile(batch -> !batch.isEmpty())
+                        .flatMapIterable(batch -> batch))
+                .collectList()
+                .block();
+
+        assertThat(claimed).hasSize(200)
+                .allMatch(order -> order.getStatus() == OrderStatus.PROCESSING && order.getVersion() == 2L);
+        assertThat(claimed.stream().map(Order::getId).distinct()).hasSize(200);
+        assertThat(count("SELECT COUNT(*) FROM orders WHERE lease_owner LIKE 'worker-%'")).isEqualTo(200);
+        assertThat(count("SELECT COUNT(*) FROM order_events WHERE status = 'PROCESSING' AND order_number LIKE 'CLAIM-%'"))
+                .isEqualTo(200);
+    }
+
+    @Test
+    void expiredLeasesAreTakenOverAndOnlyTheHolderFinishes() {
+        orderRepository.insertAll(List.of(createOrder("LEASE-A", OrderStatus.PENDING),
+                createOrder("LEASE-B", OrderStatus.PENDING))).then().block();
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = orderRepository.claimPending("worker-a", now.minusSeconds(1), 10)
+                .map(Order::getId)
+                .collectList()
+                .block();
+        assertThat(ids).hasSize(2);
+        // Nothing is PENDING any more, and a lease that has not run out is not taken over
+        StepVerifier.create(orderRepository.claimPending("worker-b", now.plusMinutes(1), 10)).verifyComplete();
+        StepVerifier.create(orderRepository.claimExpired("worker-b", now.minusMinutes(1), now.plusMinutes(1), 10))
+                .verifyComplete();
+
+        StepVerifier.create(orderRepository.claimExpired("worker-b", now, now.plusMinutes(1), 10))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        StepVerifier.create(orderRepository.renewLeases("worker-a", ids, now.plusMinutes(1)))
+                .expectNext(0)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.releaseLeases("worker-a", ids, OrderStatus.COMPLETED))
+                .verifyComplete();
+        StepVerifier.create(orderRepository.renewLeases("worker-b", ids, now.plusMinutes(2)))
+                .expectNext(2)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.releaseLeases("worker-b", ids, OrderStatus.COMPLETED))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.COMPLETED && order.getVersion() == 3L)
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.COMPLETED && order.getVersion() == 3L)
+                .verifyComplete();
+        assertThat(count("SELECT COUNT(*) FROM orders WHERE lease_owner IS NOT NULL OR lease_expires_at IS NOT NULL"))
+                .isZero();
+    }
+
+    @Test
+    void transitionUnleasedLeavesOrdersHeldUnderALiveLease() {
+        orderRepository.insertAll(List.of(createOrder("LEASE-A", OrderStatus.PENDING))).then().block();
+        LocalDateTime now = LocalDateTime.now();
+        Order held = orderRepository.claimPending("worker-a", now.plusMinutes(1), 10).blockLast();
+
+        StepVerifier.create(orderRepository.transitionUnleased(held.getId(), OrderStatus.FAILED, held.getVersion()))
+                .verifyComplete();
+
+        orderRepository.renewLeases("worker-a", List.of(held.getId()), now.minusSeconds(1)).block();
+        StepVerifier.create(orderRepository.transitionUnleased(held.getId(), OrderStatus.FAILED, held.getVersion()))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.FAILED)
+                .verifyComplete();
+    }
+
+    @Test
+    void statusChangesMadeElsewhereEndTheLease() {
+        orderRepository.insertAll(List.of(createOrder("LEASE-A", OrderStatus.PENDING))).then().block();
+        LocalDateTime now = LocalDateTime.now();
+        Order held = orderRepository.claimPending("worker-a", now.minusSeconds(1), 10).blockLast();
+
+        // Failed, retried and moved back to PROCESSING by hand, which leaves no lease behind to be taken over
+        orderRepository.transitionStatus(held.getId(), OrderStatus.FAILED, null).block();
+        orderRepository.transitionStatus(held.getId(), OrderStatus.PENDING, null).block();
+        orderRepository.transitionStatus(held.getId(), OrderStatus.PROCESSING, null).block();
+
+        assertThat(count("SELECT COUNT(*) FROM orders WHERE lease_owner IS NOT NULL OR lease_expires_at IS NOT NULL"))
+                .isZero();
+        StepVerifier.create(orderRepository.claimExpired("worker-b", now, now.plusMinutes(1), 10)).verifyComplete();
+        StepVerifier.create(orderRepository.releaseLeases("worker-a", List.of(held.getId()), OrderStatus.COMPLETED))
+                .verifyComplete();
+    }
+
+    @Test
+    void releaseOnlyMovesToStatusesProcessingCanReach() {
+        StepVerifier.create(orderRepository.releaseLeases("worker-a", List.of(1L), OrderStatus.PENDING))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    private long count(String sql) {
+        return databaseClient.sql(sql).map(row -> row.get(0, Long.class)).one().block();
+    }
+
+    private static Order createOrder(String orderNumber, OrderStatus status) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(status);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
@@ -0,0 +1,44 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class OrderNumberFilterTest {
+
+    @Test
+    void treatsEveryNumberAsSeenUntilWarm() {
+        OrderNumberFilter filter = createFilter(1_000);
+
+        assertThat(filter.mightContain("ORD-1")).isTrue();
+    }
+
+    @Test
+    void neverForgetsAddedNumbersAndKeepsFalsePositivesNearTarget() {
+        OrderNumberFilter filter = createFilter(100_000);
+        filter.markWarm();
+        for (int i = 0; i < 100_000; i++) {
+            filter.put("ORD-" + i);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(filter.mightContain("ORD-" + i)).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("NEW-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+
+    private static OrderNumberFilter createFilter(long expected) {
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        properties.getIdempotency().setExpectedOrderNumbers(expected);
+        return new OrderNumberFilter(properties, mock(DatabaseClient.class));
+    }
+}
@@ -0,0 +1,91 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderFilter;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+class OrderQueryRepositoryTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+        // Pairs of orders share a created_at so the id tie-breaker is exercised
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Order order = new Order();
+            order.setOrderNumber("ORD-" + i);
+            order.setStatus(i % 2 == 0 ? OrderStatus.PENDING : OrderStatus.COMPLETED);
+            order.setTotalAmount(new BigDecimal("100.00"));
+            order.setCustomerId(i % 5 == 0 ? "CUST-A" : "CUST-B");
+            order.setProductId("PROD-001");
+            order.setQuantity(1);
+            order.setCreatedAt(BASE.plusMinutes(i / 2));
+            orders.add(order);
+        }
+        orderRepository.insertAll(orders).blockLast();
+    }
+
+    @Test
+    void findPage_WalksAllRowsNewestFirstWithoutGapsOrDuplicates() {
+        List<Order> seen = readAllPages(new OrderFilter(), 7);
+
+        assertThat(seen).hasSize(25);
+        assertThat(seen).extracting(Order::getOrderNumber).doesNotHaveDuplicates();
+        for (int i = 1; i < seen.size(); i++) {
+            Order previous = seen.get(i - 1);
+            Order current = seen.get(i);
+            assertThat(previous.getCreatedAt()).isAfterOrEqualTo(current.getCreatedAt());
+            if (previous.getCreatedAt().equals(current.getCreatedAt())) {
+                assertThat(previous.getId()).isGreaterThan(current.getId());
+            }
+        }
+    }
+
+    @Test
+    void findPage_AppliesFilters() {
+        OrderFilter filter = new OrderFilter(OrderStatus.PENDING, "CUST-A", "PROD-001",
+                BASE.plusMinutes(1), BASE.plusMinutes(10));
+
+        List<Order> seen = readAllPages(filter, 2);
+
+        // Even indexes divisible by 5 with created_at in [1, 10) minutes: 10
+        assertThat(seen).extracting(Order::getOrderNumber).containsExactly("ORD-10");
+    }
+
+    private List<Order> readAllPages(OrderFilter filter, int pageSize) {
+        List<Order> seen = new ArrayList<>();
+        LocalDateTime afterCreatedAt = null;
+        Long afterId = null;
+        while (true) {
+            List<Order> page = orderRepository.findPage(filter, afterCreatedAt, afterId, pageSize)
+                    .collectList().block();
+            seen.addAll(page);
+            if (page.size() < pageSize) {
+                return seen;
+            }
+            Order last = page.get(page.size() - 1);
+            afterCreatedAt = last.getCreatedAt();
+            afterId = last.getId();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+@Import(OrderNumberFilter.class)
+@EnableConfigurationProperties(OrderProcessingProperties.class)
+class OrderRetentionRepositoryTest {
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private Order oldCompleted;
+    private Order oldCancelled;
+    private Order oldPending;
+    private Order recentCompleted;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        List<Order> saved = orderRepository.insertAll(List.of(
+                createOrder("ARC-1", OrderStatus.COMPLETED, CUTOFF.minusDays(3)),
+                createOrder("ARC-2", OrderStatus.CANCELLED, CUTOFF.minusDays(2)),
+                createOrder("ARC-3", OrderStatus.PENDING, CUTOFF.minusDays(1)),
+                createOrder("ARC-4", OrderStatus.COMPLETED, CUTOFF.plusDays(1)))).collectList().block();
+        oldCompleted = saved.get(0);
+        oldCancelled = saved.get(1);
+        oldPending = saved.get(2);
+        recentCompleted = saved.get(3);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        orderRepository.deleteAll().block();
+        databaseClient.sql("DELETE FROM orders_archive").then().block();
+    }
+
+    @Test
+    void archiveTerminalOrders_MovesOnlyAgedTerminalOrders() {
+        StepVerifier.create(orderRepository.archiveTerminalOrders(CUTOFF, 100))
+                .expectNext(2)
+                .verifyComplete();
+
+        assertThat(orderRepository.findAll().map(Order::getId).collectList().block())
+                .containsExactlyInAnyOrder(oldPending.getId(), recentCompleted.getId());
+        StepVerifier.create(orderRepository.findArchivedById(oldCompleted.getId()))
+                .expectNextMatches(order -> order.getOrderNumber().equals("ARC-1")
+                        && order.getStatus() == OrderStatus.COMPLETED
+                        && order.getCreatedAt().equals(CUTOFF.minusDays(3)))
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findArchivedByOrderNumber("ARC-2"))
+                .expectNextMatches(order -> order.getId().equals(oldCancelled.getId()))
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findArchivedById(oldPending.getId()))
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findAllArchivedById(List.of(oldCompleted.getId(), oldPending.getId())))
+                .expectNextMatches(order -> order.getId().equals(oldCompleted.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void archiveTerminalOrders_MovesOldestFirstUpToTheLimit() {
+        StepVerifier.create(orderRepository.archiveTerminalOrders(CUTOFF, 1))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findArchivedById(oldCompleted.getId()))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        StepVerifier.create(orderRepository.archiveTerminalOrders(CUTOFF, 1))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.archiveTerminalOrders(CUTOFF, 1))
+                .expectNext(0)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_ResolvesArchivedOrderNumbersToTheArchivedOrder() {
+        orderRepository.archiveTerminalOrders(CUTOFF, 100).block();
+
+        StepVerifier.create(orderRepository.insertAll(List.of(createOrder("ARC-1", OrderStatus.PENDING, null))))
+                .expectNextMatches(order -> order.getId().equals(oldCompleted.getId())
+                        && order.getStatus() == OrderStatus.COMPLETED)
+                .verifyComplete();
+        StepVerifier.create(orderRepository.count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void createPartitions_IsANoOpWithoutPartitioning() {
+        StepVerifier.create(orderRepository.createPartitions(YearMonth.of(2024, 1), YearMonth.of(2024, 4)))
+                .verifyComplete();
+        StepVerifier.create(orderRepository.dropEmptyPartitions(CUTOFF))
+                .verifyComplete();
+    }
+
+    private static Order createOrder(String orderNumber, OrderStatus status, LocalDateTime createdAt) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(status);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        order.setCreatedAt(createdAt);
+        return order;
+    }
+}
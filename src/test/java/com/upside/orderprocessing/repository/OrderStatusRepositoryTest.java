@@ -0,0 +1,79 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+class OrderStatusRepositoryTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private Order pending;
+    private Order completed;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+        List<Order> saved = orderRepository.insertAll(List.of(
+                createOrder("ORD-1", OrderStatus.PENDING),
+                createOrder("ORD-2", OrderStatus.COMPLETED))).collectList().block();
+        pending = saved.get(0);
+        completed = saved.get(1);
+    }
+
+    @Test
+    void transitionStatus_ReturnsUpdatedRowWithBumpedVersion() {
+        StepVerifier.create(orderRepository.transitionStatus(pending.getId(), OrderStatus.PROCESSING, 1L))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.PROCESSING
+                        && order.getVersion() == 2L
+                        && order.getOrderNumber().equals("ORD-1"))
+                .verifyComplete();
+    }
+
+    @Test
+    void transitionStatus_RejectsStaleVersion() {
+        StepVerifier.create(orderRepository.transitionStatus(pending.getId(), OrderStatus.PROCESSING, 7L))
+                .verifyComplete();
+        StepVerifier.create(orderRepository.findById(pending.getId()))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.PENDING)
+                .verifyComplete();
+    }
+
+    @Test
+    void transitionStatus_RejectsIllegalTransition() {
+        StepVerifier.create(orderRepository.transitionStatus(completed.getId(), OrderStatus.PENDING, null))
+                .verifyComplete();
+    }
+
+    @Test
+    void transitionStatuses_UpdatesOnlyLegalRows() {
+        StepVerifier.create(orderRepository.transitionStatuses(
+                        List.of(pending.getId(), completed.getId(), -1L), OrderStatus.CANCELLED))
+                .expectNextMatches(order -> order.getId().equals(pending.getId())
+                        && order.getStatus() == OrderStatus.CANCELLED)
+                .verifyComplete();
+    }
+
+    private static Order createOrder(String orderNumber, OrderStatus status) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(status);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
@@ -0,0 +1,187 @@
+package com.upside.orderprocessing.repository;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Covers the partitioned PostgreSQL schema and its order number registry, which the H2 test schema
+ * does not model. Runs against
+ * the database from docker-compose (schema.sql applied) when it listens on localhost:5432, and
+ * only touches orders numbered PART-* in months long past.
+ */
+@DataR2dbcTest(properties = {
+        "spring.r2dbc.url=r2dbc:postgresql://localhost:5432/orderdb",
+        "spring.r2dbc.username=postgres",
+        "spring.r2dbc.password=postgres",
+        "spring.sql.init.mode=never"
+})
+@ActiveProfiles("test")
+@Import(OrderNumberFilter.class)
+@EnableConfigurationProperties(OrderProcessingProperties.class)
+@EnabledIf("postgresAvailable")
+class PostgresOrderSchemaTest {
+    private static final YearMonth JANUARY = YearMonth.of(2001, 1);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @BeforeEach
+    @AfterEach
+    void cleanUp() {
+        databaseClient.sql("DELETE FROM orders WHERE order_number LIKE 'PART-%'").then().block();
+        databaseClient.sql("DELETE FROM orders_archive WHERE order_number LIKE 'PART-%'").then().block();
+        databaseClient.sql("DELETE FROM order_numbers WHERE order_number LIKE 'PART-%'").then().block();
+        databaseClient.sql("DROP TABLE IF EXISTS orders_p2001_01, orders_p2001_02, orders_p2001_03, "
+                + "orders_p2001_02_overlap").then().block();
+    }
+
+    @Test
+    void createPartitions_MovesTheMonthsRowsOutOfTheDefaultPartition() {
+        Order january = orderRepository.insertAll(List.of(createOrder("PART-1", JANUARY.atDay(15).atStartOfDay())))
+                .blockLast();
+        orderRepository.insertAll(List.of(createOrder("PART-2", JANUARY.plusMonths(2).atDay(15).atStartOfDay())))
+                .blockLast();
+        assertThat(partitionOf("PART-1")).isEqualTo("orders_default");
+
+        StepVerifier.create(orderRepository.createPartitions(JANUARY, JANUARY.plusMonths(1)))
+                .expectNext(JANUARY, JANUARY.plusMonths(1))
+                .verifyComplete();
+
+        assertThat(partitionOf("PART-1")).isEqualTo("orders_p2001_01");
+        assertThat(partitionOf("PART-2")).isEqualTo("orders_default");
+        // The moved order keeps its number, so a resubmission still resolves to it
+        StepVerifier.create(orderRepository.insertAll(List.of(createOrder("PART-1", null))))
+                .expectNextMatches(order -> order.getId().equals(january.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void createPartitions_CreatesTheOtherMonthsWhenOneFails() {
+        orderRepository.insertAll(List.of(createOrder("PART-1", JANUARY.atDay(15).atStartOfDay()))).blockLast();
+        databaseClient.sql("CREATE TABLE orders_p2001_02_overlap PARTITION OF orders "
+                + "FOR VALUES FROM ('2001-02-10') TO ('2001-02-20')").then().block();
+
+        StepVerifier.create(orderRepository.createPartitions(JANUARY, JANUARY.plusMonths(2)))
+                .expectNext(JANUARY, JANUARY.plusMonths(2))
+                .verifyComplete();
+
+        assertThat(partitionOf("PART-1")).isEqualTo("orders_p2001_01");
+        // The failed month rolled back with the default partition still attached
+        StepVerifier.create(databaseClient.sql("SELECT COUNT(*) FROM pg_inherits "
+                        + "WHERE inhrelid = 'orders_default'::regclass")
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void createPartitions_CreatesMonthsTheDefaultPartitionHoldsNothingFor() {
+        StepVerifier.create(orderRepository.createPartitions(JANUARY, JANUARY))
+                .expectNext(JANUARY)
+                .verifyComplete();
+
+        orderRepository.insertAll(List.of(createOrder("PART-1", JANUARY.atDay(15).atStartOfDay()))).blockLast();
+        assertThat(partitionOf("PART-1")).isEqualTo("orders_p2001_01");
+    }
+
+    @Test
+    void dropEmptyPartitions_DropsOnlyEmptiedMonthsThatEnded() {
+        orderRepository.createPartitions(JANUARY, JANUARY.plusMonths(2)).blockLast();
+        Order completed = createOrder("PART-1", JANUARY.atDay(15).atStartOfDay());
+        completed.setStatus(OrderStatus.COMPLETED);
+        orderRepository.insertAll(List.of(completed,
+                createOrder("PART-2", JANUARY.plusMonths(1).atDay(15).atStartOfDay()))).blockLast();
+        orderRepository.archiveTerminalOrders(JANUARY.plusMonths(1).atDay(1).atStartOfDay(), 100).block();
+
+        // March is empty but has not ended by the cutoff; February still holds an order
+        StepVerifier.create(orderRepository.dropEmptyPartitions(JANUARY.plusMonths(3).atDay(1).atStartOfDay()
+                        .minusDays(1)))
+                .expectNext(JANUARY)
+                .verifyComplete();
+
+        assertThat(partitionOf("PART-2")).isEqualTo("orders_p2001_02");
+        StepVerifier.create(databaseClient.sql("SELECT COUNT(*) FROM pg_class WHERE relname = 'orders_p2001_01'")
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void insertAll_AcceptsTheNumberOfADeletedOrder() {
+        Order deleted = orderRepository.insertAll(List.of(createOrder("PART-1", null))).blockLast();
+        orderRepository.deleteById(deleted.getId()).block();
+
+        StepVerifier.create(orderRepository.insertAll(List.of(createOrder("PART-1", null))))
+                .expectNextMatches(order -> order.getId() != null && !order.getId().equals(deleted.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void archiveTerminalOrders_KeepsTheNumberClaimed() {
+        Order completed = createOrder("PART-1", JANUARY.atDay(15).atStartOfDay());
+        completed.setStatus(OrderStatus.COMPLETED);
+        Order archived = orderRepository.insertAll(List.of(completed)).blockLast();
+        orderRepository.archiveTerminalOrders(JANUARY.plusMonths(1).atDay(1).atStartOfDay(), 100).block();
+
+        StepVerifier.create(orderRepository.insertAll(List.of(createOrder("PART-1", null))))
+                .expectNextMatches(order -> order.getId().equals(archived.getId())
+                        && order.getStatus() == OrderStatus.COMPLETED)
+                .verifyComplete();
+    }
+
+    private String partitionOf(String orderNumber) {
+        return databaseClient.sql("SELECT tableoid::regclass::text FROM orders WHERE order_number = $1")
+                .bind(0, orderNumber)
+                .map(row -> row.get(0, String.class))
+                .one()
+                .block();
+    }
+
+    static boolean postgresAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 5432), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Order createOrder(String orderNumber, LocalDateTime createdAt) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        order.setCreatedAt(createdAt);
+        return order;
+    }
+}
@@ -0,0 +1,239 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderRollup;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.impl.ActiveOrderIndex;
+import com.upside.orderprocessing.service.impl.OrderChangeFeed;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+class ActiveOrderIndexTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private final Sinks.Many<OrderEvent> events = Sinks.many().multicast().directBestEffort();
+    private ActiveOrderIndex index;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+        OrderChangeFeed changeFeed = mock(OrderChangeFeed.class);
+        when(changeFeed.subscribe(null, null)).thenReturn(events.asFlux());
+        when(changeFeed.started()).thenReturn(Mono.empty());
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        // Small enough that the tests below make the tables grow
+        properties.getIndex().setInitialCapacity(16);
+        index = new ActiveOrderIndex(orderRepository, changeFeed, properties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    void warmsUpFromTheDatabaseAndServesActiveStatuses() {
+        List<Order> saved = orderRepository.insertAll(IntStream.range(0, 30)
+                .mapToObj(i -> createOrder("INDEX-" + i, OrderStatus.values()[i % OrderStatus.values().length]))
+                .toList()).collectList().block();
+
+        // Served from the database until the index is filled
+        assertThat(index.serves(OrderStatus.PENDING)).isFalse();
+        assertThat(totals()).containsEntry(OrderStatus.PENDING, 6L);
+
+        startIndex();
+
+        assertThat(index.serves(OrderStatus.COMPLETED)).isFalse();
+        assertThat(index.idsWithStatus(OrderStatus.PROCESSING))
+                .containsExactly(idsOf(saved, OrderStatus.PROCESSING));
+        assertThat(totals()).containsOnly(
+                Map.entry(OrderStatus.PENDING, 6L),
+                Map.entry(OrderStatus.PROCESSING, 6L),
+                Map.entry(OrderStatus.FAILED, 6L));
+        assertThat(index.totals().collectList().block())
+                .allMatch(rollup -> rollup.getRevenue().compareTo(new BigDecimal("600.00")) == 0);
+    }
+
+    @Test
+    void olderChangesNeverOverwriteNewerOnes() {
+        List<String> passedOn = new ArrayList<>();
+        index.addListener((id, status, version, since) -> passedOn.add(id + " " + status + " " + version));
+        startIndex();
+
+        index.record(indexed(1L, OrderStatus.PROCESSING, 2L));
+        // The feed delivers this instance's own writes too, often after newer ones
+        events.tryEmitNext(event(1L, OrderStatus.PENDING, 1L));
+        assertThat(index.idsWithStatus(OrderStatus.PROCESSING)).containsExactly(1L);
+        assertThat(index.idsWithStatus(OrderStatus.PENDING)).isEmpty();
+
+        events.tryEmitNext(event(1L, OrderStatus.COMPLETED, 3L));
+        index.record(indexed(1L, OrderStatus.PROCESSING, 2L));
+        assertThat(index.idsWithStatus(OrderStatus.PROCESSING)).isEmpty();
+
+        index.record(indexed(2L, OrderStatus.FAILED, 1L));
+        index.remove(2L);
+        assertThat(totals()).containsOnly(
+                Map.entry(OrderStatus.PENDING, 0L),
+                Map.entry(OrderStatus.PROCESSING, 0L),
+                Map.entry(OrderStatus.FAILED, 0L));
+        assertThat(passedOn).containsExactly("1 PROCESSING 2", "1 null 3", "2 FAILED 1", "2 null " + Long.MAX_VALUE);
+    }
+
+    @Test
+    void passesChangesOnInVersionOrderWithoutHoldingUpWriters() throws Exception {
+        Map<Long, Long> lastPassedOn = new ConcurrentHashMap<>();
+        List<String> outOfOrder = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        index.addListener((id, status, version, since) -> {
+            Long previous = lastPassedOn.put(id, version);
+            if (previous != null && previous >= version) {
+                outOfOrder.add(id + ": " + version + " after " + previous);
+            }
+            if (id == 1L) {
+                awaitQuietly(release);
+            }
+        });
+        startIndex();
+
+        // Ids 1 and 17 share a stripe; the write of 17 neither waits for the listener busy with 1
+        // nor is passed on before it
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> index.record(indexed(1L, OrderStatus.PENDING, 1L)));
+        while (!lastPassedOn.containsKey(1L)) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture.runAsync(() -> index.record(indexed(17L, OrderStatus.PENDING, 1L))).get(5, TimeUnit.SECONDS);
+        assertThat(index.idsWithStatus(OrderStatus.PENDING)).containsExactly(1L, 17L);
+        assertThat(lastPassedOn).doesNotContainKey(17L);
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        assertThat(lastPassedOn).containsEntry(17L, 1L);
+
+        // Writers racing on the same orders, each with versions in its own order
+        List<CompletableFuture<Void>> writers = IntStream.range(0, 4)
+                .mapToObj(writer -> CompletableFuture.runAsync(() -> {
+                    Random random = new Random(writer);
+                    for (int i = 0; i < 5_000; i++) {
+                        long id = 100 + random.nextInt(64);
+                        OrderStatus status = OrderStatus.values()[random.nextInt(OrderStatus.values().length)];
+                        index.record(indexed(id, status, 1 + random.nextInt(1_000)));
+                    }
+                }))
+                .toList();
+        CompletableFuture.allOf(writers.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        assertThat(outOfOrder).isEmpty();
+    }
+
+    @Test
+    void matchesAMapThroughGrowthAndRemovals() {
+        startIndex();
+
+        Random random = new Random(42);
+        Map<Long, OrderStatus> expected = new HashMap<>();
+        Map<Long, Long> versions = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long id = 1 + random.nextInt(5_000);
+            OrderStatus status = OrderStatus.values()[random.nextInt(OrderStatus.values().length)];
+            long version = versions.merge(id, 1L, Long::sum);
+            index.record(indexed(id, status, version));
+            if (status.isTerminal()) {
+                expected.remove(id);
+            } else {
+                expected.put(id, status);
+            }
+        }
+
+        for (OrderStatus status : List.of(OrderStatus.PENDING, OrderStatus.PROCESSING, OrderStatus.FAILED)) {
+            long[] ids = expected.entrySet().stream()
+                    .filter(entry -> entry.getValue() == status)
+                    .mapToLong(Map.Entry::getKey)
+                    .sorted()
+                    .toArray();
+            assertThat(index.idsWithStatus(status)).containsExactly(ids);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startIndex() {
+        index.start();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!index.serves(OrderStatus.PENDING) && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(index.serves(OrderStatus.PENDING)).isTrue();
+    }
+
+    private Map<OrderStatus, Long> totals() {
+        return index.totals().collectMap(OrderRollup::getStatus, OrderRollup::getOrderCount).block();
+    }
+
+    private static long[] idsOf(List<Order> orders, OrderStatus status) {
+        return orders.stream()
+                .filter(order -> order.getStatus() == status)
+                .mapToLong(Order::getId)
+                .sorted()
+                .toArray();
+    }
+
+    private static Order indexed(long id, OrderStatus status, long version) {
+        Order order = createOrder("INDEX-" + id, status);
+        order.setId(id);
+        order.setVersion(version);
+        return order;
+    }
+
+    private static OrderEvent event(long orderId, OrderStatus status, long version) {
+        return new OrderEvent(null, orderId, "INDEX-" + orderId, "CUST-001", status, new BigDecimal("100.00"),
+                version, OrderEvent.Type.STATUS_CHANGED, LocalDateTime.now());
+    }
+
+    private static Order createOrder(String orderNumber, OrderStatus status) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(status);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
@@ -0,0 +1,79 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.CompactOrder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactOrderTest {
+
+    @Test
+    void toOrder_RestoresEveryField() {
+        Order order = createOrder("100.00");
+        order.setId(42L);
+        order.setCreatedAt(LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_000));
+        order.setUpdatedAt(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_000));
+        order.setVersion(3L);
+
+        CompactOrder compact = CompactOrder.from(order);
+
+        assertThat(compact.price()).isTrue();
+        assertThat(compact.toOrder()).isEqualTo(order);
+    }
+
+    @Test
+    void price_RoundsHalfEvenIntoMinorUnits() {
+        for (String amount : new String[]{"10.005", "10.015", "-10.025", "10.0051", "1E+3", "7", "0.00000000000000000000001"}) {
+            assertThat(priced(amount)).as(amount)
+                    .isEqualTo(new BigDecimal(amount).setScale(2, RoundingMode.HALF_EVEN));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong() >> (8 + random.nextInt(40)), random.nextInt(12));
+            assertThat(priced(amount.toString())).as(amount.toString())
+                    .isEqualTo(amount.setScale(2, RoundingMode.HALF_EVEN));
+        }
+    }
+
+    @Test
+    void price_FailsWithoutAnAmountThatFitsInMinorUnits() {
+        assertThat(CompactOrder.from(createOrder(null)).price()).isFalse();
+        assertThat(CompactOrder.from(createOrder("92233720368547758.08")).price()).isFalse();
+        assertThat(CompactOrder.from(createOrder("1E+20")).price()).isFalse();
+        assertThat(CompactOrder.from(createOrder("123456789012345678901.001")).price()).isFalse();
+    }
+
+    @Test
+    void from_SharesRepeatedIds() {
+        Order first = createOrder("1.00");
+        Order second = createOrder("2.00");
+        second.setCustomerId(new String(first.getCustomerId()));
+
+        assertThat(CompactOrder.from(second).toOrder().getCustomerId())
+                .isSameAs(CompactOrder.from(first).toOrder().getCustomerId());
+    }
+
+    private static BigDecimal priced(String amount) {
+        CompactOrder compact = CompactOrder.from(createOrder(amount));
+        assertThat(compact.price()).as(amount).isTrue();
+        return compact.toOrder().getTotalAmount();
+    }
+
+    private static Order createOrder(String amount) {
+        Order order = new Order();
+        order.setOrderNumber("ORD-1");
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(amount != null ? new BigDecimal(amount) : null);
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
@@ -0,0 +1,160 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderEvent;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderEventRepository;
+import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.impl.OrderChangeFeed;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+class OrderChangeFeedTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderEventRepository eventRepository;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private OrderProcessingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private OrderChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+        eventRepository.deleteAll().block();
+        properties = new OrderProcessingProperties();
+        properties.getChangeFeed().setPollInterval(Duration.ofMillis(20));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (changeFeed != null) {
+            changeFeed.shutdown();
+        }
+    }
+
+    @Test
+    void writesRecordOneOutboxEventPerChangedRow() {
+        List<Order> saved = orderRepository.insertAll(List.of(
+                createOrder("ORD-1", "CUST-1"), createOrder("ORD-2", "CUST-2"))).collectList().block();
+        // A retried order and a rejected transition change nothing, so they record nothing
+        orderRepository.insertAll(List.of(createOrder("ORD-1", "CUST-1"))).blockLast();
+        orderRepository.transitionStatus(saved.get(0).getId(), OrderStatus.PROCESSING, null).block();
+        orderRepository.transitionStatus(saved.get(1).getId(), OrderStatus.PENDING, null).block();
+
+        StepVerifier.create(eventRepository.findAfter(0, 10).map(event -> event.getType() + ":" + event.getOrderNumber()))
+                .expectNext("CREATED:ORD-1", "CREATED:ORD-2", "STATUS_CHANGED:ORD-1")
+                .verifyComplete();
+    }
+
+    @Test
+    void deliversCommittedChangesToMatchingSubscribers() {
+        startFeed();
+
+        StepVerifier.create(changeFeed.subscribe(OrderStatus.PROCESSING, "CUST-1"))
+                .then(() -> {
+                    List<Order> saved = orderRepository.insertAll(List.of(
+                            createOrder("ORD-1", "CUST-1"), createOrder("ORD-2", "CUST-2"))).collectList().block();
+                    orderRepository.transitionStatuses(List.of(saved.get(0).getId(), saved.get(1).getId()),
+                            OrderStatus.PROCESSING).blockLast();
+                })
+                .expectNextMatches(event -> event.getOrderNumber().equals("ORD-1")
+                        && event.getType() == OrderEvent.Type.STATUS_CHANGED)
+                .expectNoEvent(Duration.ofMillis(200))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void slowSubscribersKeepOnlyTheNewestEventsWithinTheirBuffer() {
+        properties.getChangeFeed().setSubscriberBuffer(2);
+        startFeed();
+
+        StepVerifier.create(changeFeed.subscribe(null, null), 0)
+                .then(() -> orderRepository.insertAll(List.of(
+                        createOrder("ORD-1", "CUST-1"), createOrder("ORD-2", "CUST-1"),
+                        createOrder("ORD-3", "CUST-1"), createOrder("ORD-4", "CUST-1"))).blockLast())
+                .then(() -> awaitPublished(4))
+                .thenRequest(10)
+                .expectNextMatches(event -> event.getOrderNumber().equals("ORD-3"))
+                .expectNextMatches(event -> event.getOrderNumber().equals("ORD-4"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(meterRegistry.counter("orders.changes.dropped").count()).isEqualTo(2);
+    }
+
+    @Test
+    void deliversChangesCommittedOutOfIdOrderFromAnEmptyOutbox() {
+        startFeed();
+
+        StepVerifier.create(changeFeed.subscribe(null, null))
+                .then(() -> insertEvent(1_000_002L, "ORD-2"))
+                .expectNextMatches(event -> event.getOrderNumber().equals("ORD-2"))
+                // A lower id committed after a higher one was read is picked up from the gaps
+                .then(() -> insertEvent(1_000_001L, "ORD-1"))
+                .expectNextMatches(event -> event.getOrderNumber().equals("ORD-1"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    private void insertEvent(long id, String orderNumber) {
+        databaseClient.sql("INSERT INTO order_events (id, order_id, order_number, customer_id, status, "
+                        + "total_amount, version, type) VALUES (:id, 1, :orderNumber, 'CUST-1', 'PENDING', 100.00, 1, 'CREATED')")
+                .bind("id", id)
+                .bind("orderNumber", orderNumber)
+                .then()
+                .block();
+    }
+
+    private void startFeed() {
+        changeFeed = new OrderChangeFeed(eventRepository, connectionFactory, properties, meterRegistry);
+        changeFeed.start();
+        changeFeed.started().block(Duration.ofSeconds(5));
+    }
+
+    private void awaitPublished(int count) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (meterRegistry.counter("orders.changes.published").count() < count && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Order createOrder(String orderNumber, String customerId) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId(customerId);
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
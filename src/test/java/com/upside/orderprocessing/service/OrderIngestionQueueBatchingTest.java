@@ -0,0 +1,244 @@
+package com.upside.orderprocessing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.IngestionStatus;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.OrderIngestionQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.ReactiveRedisCallback;
+import org.springframework.data.redis.core.ReactiveStreamOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Covers how the Redis ingestion queue batches, settles and reclaims entries, with the stream
+ * commands stubbed; {@link OrderIngestionQueueTest} runs the queue against a Redis server.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderIngestionQueueBatchingTest {
+    private static final String STREAM = "orders:ingest";
+    private static final String GROUP = "order-writers";
+
+    @Mock
+    private ReactiveStringRedisTemplate redis;
+
+    @Mock
+    private ReactiveStreamOperations<String, String, String> stream;
+
+    @Mock
+    private ReactiveValueOperations<String, String> values;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final OrderService orderService = mock(OrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderProcessingProperties properties = new OrderProcessingProperties();
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicLong ids = new AtomicLong();
+    private OrderIngestionQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        OrderProcessingProperties.Ingestion ingestion = properties.getIngestion();
+        ingestion.setConsumerName("test");
+        ingestion.setConsumers(1);
+        ingestion.setClaimInterval(Duration.ofHours(1));
+        ingestion.setMaxDeliveries(3);
+
+        when(redis.<String, String>opsForStream()).thenReturn(stream);
+        when(redis.opsForValue()).thenReturn(values);
+        when(redis.getSerializationContext()).thenReturn(RedisSerializationContext.string());
+        when(stream.createGroup(eq(STREAM), any(), eq(GROUP))).thenReturn(Mono.just("OK"));
+        when(stream.size(STREAM)).thenReturn(Mono.just(0L));
+        when(stream.acknowledge(eq(STREAM), eq(GROUP), any(RecordId[].class))).thenReturn(Mono.just(1L));
+        when(stream.delete(eq(STREAM), any(RecordId[].class))).thenReturn(Mono.just(1L));
+        when(stream.range(eq(STREAM), any())).thenReturn(Flux.empty());
+        when(values.set(anyString(), anyString(), any(Duration.class))).thenAnswer(invocation -> {
+            results.put(invocation.getArgument(0), invocation.getArgument(1));
+            return Mono.just(true);
+        });
+        when(values.get(anyString())).thenAnswer(invocation -> Mono.justOrEmpty(results.get(invocation.<String>getArgument(0))));
+        when(orderService.processBatchOrders(ArgumentMatchers.<Flux<Order>>any())).thenAnswer(invocation -> {
+            Flux<Order> orders = invocation.getArgument(0);
+            return orders.collectList().flatMapMany(batch -> {
+                batchSizes.add(batch.size());
+                for (Order order : batch) {
+                    if (order.getOrderNumber().startsWith("BAD")) {
+                        return Flux.error(new InvalidOrderException(order.getOrderNumber(), "rejected"));
+                    }
+                    if (order.getOrderNumber().startsWith("FLAKY")) {
+                        return Flux.error(new TransientDataAccessResourceException("database unavailable"));
+                    }
+                }
+                batch.forEach(order -> order.setId(ids.incrementAndGet()));
+                return Flux.fromIterable(batch);
+            });
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void writesABatchAtOnceAndSettlesEachEntryOfAFailedOneOnItsOwn() throws Exception {
+        when(redis.execute(ArgumentMatchers.<ReactiveRedisCallback<MapRecord<String, String, String>>>any()))
+                .thenReturn(Flux.just(entry("1-0", order("INGEST-1")), entry("2-0", "{not json"),
+                        entry("3-0", order("BAD-1")), entry("4-0", order("FLAKY-1")), entry("5-0", order("INGEST-2"))))
+                .thenReturn(Flux.never());
+        queue = createQueue();
+
+        queue.start();
+
+        awaitSettled(4);
+        verify(stream).delete(STREAM, RecordId.of("2-0"), RecordId.of("1-0"), RecordId.of("3-0"),
+                RecordId.of("5-0"));
+        verify(stream).acknowledge(STREAM, GROUP, RecordId.of("2-0"), RecordId.of("1-0"), RecordId.of("3-0"),
+                RecordId.of("5-0"));
+        // The readable orders go in one batch; once it fails, each is written alone
+        assertThat(batchSizes).containsExactly(4, 1, 1, 1, 1);
+        assertThat(status("1-0").getState()).isEqualTo(IngestionStatus.State.WRITTEN);
+        assertThat(status("1-0").getOrderId()).isNotNull();
+        assertThat(status("2-0").getError()).startsWith("Unreadable order");
+        assertThat(status("3-0").getState()).isEqualTo(IngestionStatus.State.FAILED);
+        assertThat(status("5-0").getState()).isEqualTo(IngestionStatus.State.WRITTEN);
+        // A failure that may pass leaves the entry pending to be claimed again
+        assertThat(queue.status("4-0").block()).isNull();
+        assertThat(meterRegistry.counter("orders.ingestion.written").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("orders.ingestion.failed").count()).isEqualTo(2);
+    }
+
+    @Test
+    void leavesABatchThatFailedForAReasonThatMayPassPendingAsAWhole() throws Exception {
+        when(redis.execute(ArgumentMatchers.<ReactiveRedisCallback<MapRecord<String, String, String>>>any()))
+                .thenReturn(Flux.just(entry("1-0", order("INGEST-1")), entry("2-0", order("FLAKY-1"))))
+                .thenReturn(Flux.never());
+        queue = createQueue();
+
+        queue.start();
+
+        verify(orderService, timeout(2000)).processBatchOrders(ArgumentMatchers.<Flux<Order>>any());
+        verify(stream, after(200).never()).delete(eq(STREAM), any(RecordId[].class));
+        assertThat(batchSizes).containsExactly(2);
+        assertThat(queue.status("1-0").block()).isNull();
+        assertThat(queue.status("2-0").block()).isNull();
+    }
+
+    @Test
+    void claimsEntriesIdleTooLongAndFailsThoseDeliveredTooOften() throws Exception {
+        OrderProcessingProperties.Ingestion ingestion = properties.getIngestion();
+        ingestion.setConsumers(0);
+        ingestion.setClaimInterval(Duration.ofMillis(20));
+        Consumer crashed = Consumer.from(GROUP, "crashed");
+        when(stream.pending(eq(STREAM), eq(GROUP), any(), anyLong()))
+                .thenReturn(Mono.just(new PendingMessages(GROUP, List.of(
+                        new PendingMessage(RecordId.of("1-0"), crashed, Duration.ofSeconds(1), 1),
+                        new PendingMessage(RecordId.of("2-0"), crashed, Duration.ofMinutes(5), 1),
+                        new PendingMessage(RecordId.of("3-0"), crashed, Duration.ofMinutes(5), 3)))))
+                .thenReturn(Mono.just(new PendingMessages(GROUP, List.of())));
+        ArgumentCaptor<RedisStreamCommands.XClaimOptions> claimed =
+                ArgumentCaptor.forClass(RedisStreamCommands.XClaimOptions.class);
+        when(stream.claim(eq(STREAM), eq(GROUP), eq("test-1"), claimed.capture()))
+                .thenReturn(Flux.just(entry("2-0", order("INGEST-3"))));
+        queue = createQueue();
+
+        queue.start();
+
+        awaitSettled(2);
+        verify(stream).delete(STREAM, RecordId.of("2-0"));
+        verify(stream).delete(STREAM, RecordId.of("3-0"));
+        assertThat(claimed.getValue().getIds()).containsExactly(RecordId.of("2-0"));
+        assertThat(claimed.getValue().getMinIdleTime()).isEqualTo(ingestion.getClaimIdle());
+        assertThat(status("2-0").getState()).isEqualTo(IngestionStatus.State.WRITTEN);
+        assertThat(status("3-0").getError()).isEqualTo("Not written after 3 deliveries");
+        // Still within claim-idle of its delivery, so its consumer may yet write it
+        verify(stream, after(100).never()).delete(STREAM, RecordId.of("1-0"));
+        assertThat(meterRegistry.counter("orders.ingestion.reclaimed").count()).isEqualTo(1);
+    }
+
+    private OrderIngestionQueue createQueue() {
+        return new OrderIngestionQueue(redis, objectMapper, orderService, properties, meterRegistry);
+    }
+
+    private void awaitSettled(int entries) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (meterRegistry.counter("orders.ingestion.written").count()
+                + meterRegistry.counter("orders.ingestion.failed").count() < entries && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private IngestionStatus status(String trackingId) {
+        return queue.status(trackingId).block();
+    }
+
+    private MapRecord<String, String, String> entry(String id, Order order) throws Exception {
+        return entry(id, objectMapper.writeValueAsString(order));
+    }
+
+    private static MapRecord<String, String, String> entry(String id, String json) {
+        return StreamRecords.newRecord()
+                .in(STREAM)
+                .withId(RecordId.of(id))
+                .ofMap(Map.of("order", json));
+    }
+
+    private static Order order(String orderNumber) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setStatus(OrderStatus.PENDING);
+        return order;
+    }
+}
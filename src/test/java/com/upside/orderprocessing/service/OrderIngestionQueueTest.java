@@ -0,0 +1,183 @@
+package com.upside.orderprocessing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.IngestionBacklogFullException;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.IngestionStatus;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.OrderIngestionQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.redis.connection.ReactiveStreamCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs against a Redis server on localhost:6379, for example one started with
+ * {@code docker run -p 6379:6379 redis}, and is skipped when there is none.
+ */
+@EnabledIf("redisAvailable")
+class OrderIngestionQueueTest {
+
+    private final AtomicLong ids = new AtomicLong();
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private LettuceConnectionFactory connectionFactory;
+    private ReactiveStringRedisTemplate redis;
+    private OrderService orderService;
+    private OrderProcessingProperties properties;
+    private OrderIngestionQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory("localhost", 6379);
+        connectionFactory.afterPropertiesSet();
+        redis = new ReactiveStringRedisTemplate(connectionFactory);
+        orderService = mock(OrderService.class);
+        when(orderService.processBatchOrders(ArgumentMatchers.<Flux<Order>>any())).thenAnswer(invocation -> {
+            Flux<Order> orders = invocation.getArgument(0);
+            return orders.handle((order, sink) -> {
+                if (order.getOrderNumber().startsWith("BAD")) {
+                    sink.error(new InvalidOrderException(null, "rejected"));
+                } else {
+                    order.setId(ids.incrementAndGet());
+                    sink.next(order);
+                }
+            }).collectList().flatMapIterable(list -> list);
+        });
+        properties = new OrderProcessingProperties();
+        OrderProcessingProperties.Ingestion ingestion = properties.getIngestion();
+        String prefix = "test:" + UUID.randomUUID();
+        ingestion.setStreamKey(prefix + ":stream");
+        ingestion.setResultKeyPrefix(prefix + ":result:");
+        ingestion.setConsumerName("test");
+        ingestion.setBlock(Duration.ofMillis(100));
+        ingestion.setClaimIdle(Duration.ofMillis(200));
+        ingestion.setClaimInterval(Duration.ofMillis(100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        redis.delete(properties.getIngestion().getStreamKey()).block();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void writesQueuedOrdersAndRecordsTheirOutcome() {
+        queue = createQueue();
+        IngestionReceipt receipt = queue.enqueue(Flux.just(order("INGEST-1"), order("BAD-1"), order("INGEST-2")))
+                .block();
+        assertThat(receipt.getAccepted()).isEqualTo(3);
+        assertThat(queue.status(receipt.getTrackingIds().get(0)).block().getState())
+                .isEqualTo(IngestionStatus.State.QUEUED);
+
+        queue.start();
+
+        List<IngestionStatus> outcomes = awaitOutcomes(receipt);
+        assertThat(outcomes).extracting(IngestionStatus::getState).containsExactly(
+                IngestionStatus.State.WRITTEN, IngestionStatus.State.FAILED, IngestionStatus.State.WRITTEN);
+        assertThat(outcomes.get(0).getOrderId()).isNotNull();
+        assertThat(redis.opsForStream().size(properties.getIngestion().getStreamKey()).block()).isZero();
+    }
+
+    @Test
+    void claimsEntriesLeftPendingByAnotherConsumer() {
+        queue = createQueue();
+        IngestionReceipt receipt = queue.enqueue(Flux.just(order("INGEST-3"), order("INGEST-4"))).block();
+        OrderProcessingProperties.Ingestion ingestion = properties.getIngestion();
+        // A consumer that reads the entries and crashes before writing them
+        redis.opsForStream().createGroup(ingestion.getStreamKey(), ReadOffset.from("0"), ingestion.getGroup()).block();
+        ReactiveStreamCommands.ReadCommand read = new ReactiveStreamCommands.ReadCommand(
+                List.of(StreamOffset.create(ByteBuffer.wrap(ingestion.getStreamKey().getBytes(StandardCharsets.UTF_8)),
+                        ReadOffset.lastConsumed())),
+                StreamReadOptions.empty(), Consumer.from(ingestion.getGroup(), "crashed"));
+        redis.execute(connection -> connection.streamCommands().read(Mono.just(read))).blockLast();
+
+        queue.start();
+
+        assertThat(awaitOutcomes(receipt)).extracting(IngestionStatus::getState)
+                .containsOnly(IngestionStatus.State.WRITTEN);
+    }
+
+    @Test
+    void rejectsOrdersOnceTheBacklogIsFull() {
+        properties.getIngestion().setMaxBacklog(2);
+        queue = createQueue();
+
+        StepVerifier.create(queue.enqueue(Flux.just(order("INGEST-5"), order("INGEST-6"), order("INGEST-7"))))
+                .expectError(IngestionBacklogFullException.class)
+                .verify();
+        StepVerifier.create(queue.enqueue(Flux.just(order(null))))
+                .expectError(InvalidOrderException.class)
+                .verify();
+    }
+
+    private OrderIngestionQueue createQueue() {
+        return new OrderIngestionQueue(redis, objectMapper, orderService, properties, new SimpleMeterRegistry());
+    }
+
+    private List<IngestionStatus> awaitOutcomes(IngestionReceipt receipt) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        List<IngestionStatus> outcomes;
+        do {
+            outcomes = Flux.fromIterable(receipt.getTrackingIds())
+                    .concatMap(queue::status)
+                    .collectList()
+                    .block();
+        } while (outcomes.stream().anyMatch(status -> status.getState() == IngestionStatus.State.QUEUED)
+                && System.nanoTime() < deadline);
+        return outcomes;
+    }
+
+    private static Order order(String orderNumber) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setStatus(OrderStatus.PENDING);
+        return order;
+    }
+
+    static boolean redisAvailable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", 6379), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
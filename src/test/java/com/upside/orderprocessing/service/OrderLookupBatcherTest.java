@@ -0,0 +1,102 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.impl.OrderLookupBatcher;
+import com.upside.orderprocessing.service.impl.ReplicaReads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+class OrderLookupBatcherTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private OrderLookupBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll().block();
+        meterRegistry = new SimpleMeterRegistry();
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        properties.getLookup().setMaxWait(Duration.ofMillis(50));
+        batcher = new OrderLookupBatcher(orderRepository, new ReplicaReads(properties), properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void concurrentLookupsShareBatchedQueries() {
+        List<Order> saved = orderRepository.insertAll(IntStream.range(0, 10)
+                .mapToObj(i -> createOrder("LOOKUP-" + i))
+                .toList()).collectList().block();
+        long missingId = saved.stream().mapToLong(Order::getId).max().orElseThrow() + 1_000;
+
+        // A skewed mix: most lookups hit the first two orders, one asks for an order that does not exist
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            ids.add(saved.get(i % 3 == 0 ? i % 10 : i % 2).getId());
+        }
+        ids.add(missingId);
+
+        List<Optional<Order>> results = Flux.fromIterable(ids)
+                .flatMapSequential(id -> batcher.load(id).map(Optional::of).defaultIfEmpty(Optional.empty()), ids.size())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        for (int i = 0; i < ids.size() - 1; i++) {
+            assertThat(results.get(i)).get().extracting(Order::getId).isEqualTo(ids.get(i));
+        }
+        assertThat(results.get(ids.size() - 1)).isEmpty();
+        var batchSize = meterRegistry.get("orders.lookup.batch.size").summary();
+        assertThat(batchSize.count()).isLessThan(ids.size() / 10);
+        assertThat(batchSize.totalAmount()).isLessThanOrEqualTo(11 * batchSize.count());
+    }
+
+    @Test
+    void lookupsStillWorkWithoutBatching() {
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        properties.getLookup().setBatching(false);
+        OrderLookupBatcher direct = new OrderLookupBatcher(orderRepository, new ReplicaReads(properties),
+                properties, new SimpleMeterRegistry());
+        Order saved = orderRepository.save(createOrder("LOOKUP-DIRECT")).block();
+
+        assertThat(direct.load(saved.getId()).block()).extracting(Order::getOrderNumber).isEqualTo("LOOKUP-DIRECT");
+        assertThat(direct.load(saved.getId() + 1).blockOptional()).isEmpty();
+        direct.shutdown();
+    }
+
+    private static Order createOrder(String orderNumber) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
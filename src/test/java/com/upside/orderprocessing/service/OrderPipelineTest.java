@@ -0,0 +1,141 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.impl.OrderPipeline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderPipelineTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    private OrderProcessingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private OrderPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        properties = new OrderProcessingProperties();
+        properties.getProcessing().getPipeline().setPartitions(4);
+        properties.getProcessing().getPipeline().setBatchSize(8);
+        properties.getProcessing().getPipeline().setMaxWait(Duration.ofMillis(5));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void submit_PersistsEachCustomersOrdersInSubmissionOrder() {
+        AtomicLong ids = new AtomicLong();
+        when(orderRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            // Uneven write latency would reorder batches if lanes wrote them concurrently
+            return Flux.defer(() -> {
+                        orders.forEach(order -> order.setId(ids.incrementAndGet()));
+                        return Flux.fromIterable(orders);
+                    })
+                    .delaySubscription(Duration.ofMillis(ThreadLocalRandom.current().nextInt(5)));
+        });
+        pipeline = createPipeline();
+
+        List<Order> saved = Flux.range(0, 400)
+                .flatMap(i -> pipeline.submit(createOrder("ORD-" + i, "CUST-" + (i % 10))), 400)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(saved).hasSize(400);
+        Map<String, List<Order>> byCustomer = saved.stream()
+                .collect(Collectors.groupingBy(Order::getCustomerId));
+        byCustomer.values().forEach(orders -> {
+            orders.sort((a, b) -> Integer.compare(sequence(a), sequence(b)));
+            assertThat(orders).extracting(Order::getId).isSorted();
+        });
+    }
+
+    @Test
+    void submit_RejectsInvalidOrdersWithoutWriting() {
+        pipeline = createPipeline();
+        Order order = createOrder("ORD-1", "CUST-001");
+        order.setQuantity(0);
+
+        StepVerifier.create(pipeline.submit(order))
+                .expectError(InvalidOrderException.class)
+                .verify(Duration.ofSeconds(5));
+
+        verify(orderRepository, never()).insertAll(anyList());
+        assertThat(meterRegistry.counter("orders.pipeline.invalid").count()).isEqualTo(1);
+    }
+
+    @Test
+    void submit_NormalisesAmountAndReportsStages() {
+        when(orderRepository.insertAll(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Order>>getArgument(0)));
+        pipeline = createPipeline();
+        Order order = createOrder("ORD-1", "CUST-001");
+        order.setTotalAmount(new BigDecimal("10.005"));
+
+        StepVerifier.create(pipeline.submit(order))
+                .expectNextMatches(saved -> saved.getTotalAmount().equals(new BigDecimal("10.00")))
+                .verifyComplete();
+
+        for (String stage : List.of("validate", "price", "persist", "publish")) {
+            assertThat(meterRegistry.get("orders.pipeline.stage.latency").tag("stage", stage).timer().count())
+                    .isEqualTo(1);
+            assertThat(meterRegistry.get("orders.pipeline.stage.depth").tag("stage", stage).gauge().value())
+                    .isZero();
+        }
+    }
+
+    private OrderPipeline createPipeline() {
+        return new OrderPipeline(orderRepository, new AdaptiveConcurrencyLimiter(properties, meterRegistry),
+                properties, meterRegistry);
+    }
+
+    private static int sequence(Order order) {
+        return Integer.parseInt(order.getOrderNumber().substring("ORD-".length()));
+    }
+
+    private Order createOrder(String orderNumber, String customerId) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId(customerId);
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
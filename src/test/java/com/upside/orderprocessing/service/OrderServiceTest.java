@@ -1,22 +1,55 @@
 package com.upside.orderprocessing.service;
 
+import com.upside.orderprocessing.analytics.AnalyticsEngine;
+import com.upside.orderprocessing.analytics.OrderRollups;
+import com.upside.orderprocessing.cache.OrderCache;
+import com.upside.orderprocessing.cache.RedisOrderCacheTier;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.BulkStatusUpdateTooLargeException;
+import com.upside.orderprocessing.exception.InvalidCursorException;
+import com.upside.orderprocessing.exception.OrderNotFoundException;
+import com.upside.orderprocessing.exception.OrderStatusConflictException;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.BulkStatusUpdateResult;
 import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderFilter;
+import com.upside.orderprocessing.model.OrderPage;
 import com.upside.orderprocessing.model.OrderStatus;
 import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.impl.ActiveOrderIndex;
+import com.upside.orderprocessing.service.impl.OrderChangeFeed;
+import com.upside.orderprocessing.service.impl.OrderLookupBatcher;
+import com.upside.orderprocessing.service.impl.OrderPipeline;
 import com.upside.orderprocessing.service.impl.OrderServiceImpl;
+import com.upside.orderprocessing.service.impl.OrderWriteCoalescer;
+import com.upside.orderprocessing.service.impl.ReplicaReads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.InstanceOfAssertFactories.MAP;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,6 +58,41 @@ class OrderServiceTest {
     @Mock
     private OrderRepository orderRepository;
 
+    @Spy
+    private OrderProcessingProperties properties = new OrderProcessingProperties();
+
+    @Mock
+    private OrderWriteCoalescer writeCoalescer;
+
+    @Mock
+    private OrderPipeline pipeline;
+
+    @Spy
+    private OrderCache orderCache = new OrderCache(
+            new OrderProcessingProperties(), new SimpleMeterRegistry(), (RedisOrderCacheTier) null);
+
+    @Spy
+    private AnalyticsEngine analyticsEngine = new AnalyticsEngine();
+
+    @Mock
+    private OrderRollups rollups;
+
+    @Mock
+    private OrderChangeFeed changeFeed;
+
+    @Spy
+    private AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+            new OrderProcessingProperties(), new SimpleMeterRegistry());
+
+    @Mock
+    private OrderLookupBatcher lookupBatcher;
+
+    @Spy
+    private ReplicaReads replicaReads = new ReplicaReads(new OrderProcessingProperties());
+
+    @Mock
+    private ActiveOrderIndex activeOrders;
+
     @InjectMocks
     private OrderServiceImpl orderService;
 
@@ -43,7 +111,7 @@ class OrderServiceTest {
 
     @Test
     void processOrder_Success() {
-        when(orderRepository.save(any(Order.class))).thenReturn(Mono.just(testOrder));
+        when(writeCoalescer.submit(any(Order.class))).thenReturn(Mono.just(testOrder));
 
         StepVerifier.create(orderService.processOrder(testOrder))
                 .expectNextMatches(order -> 
@@ -52,24 +120,93 @@ class OrderServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void processOrder_LeavesOrdersPendingForTheWorkers() {
+        properties.getWorker().setEnabled(true);
+        when(writeCoalescer.submit(any(Order.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(orderService.processOrder(testOrder))
+                .expectNextMatches(order -> order.getStatus() == OrderStatus.PENDING)
+                .verifyComplete();
+    }
+
     @Test
     void processBatchOrders_Success() {
         Order order2 = new Order();
         order2.setOrderNumber("TEST-002");
         order2.setStatus(OrderStatus.PENDING);
 
-        when(orderRepository.save(any(Order.class)))
-                .thenReturn(Mono.just(testOrder))
-                .thenReturn(Mono.just(order2));
+        when(orderRepository.insertAll(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Order>>getArgument(0)));
+
+        StepVerifier.create(orderService.processBatchOrders(Flux.just(testOrder, order2)))
+                .expectNext(testOrder, order2)
+                .verifyComplete();
+    }
+
+    @Test
+    void processBatchOrders_RoutesThroughPipelineWhenEnabled() {
+        Order order2 = new Order();
+        order2.setOrderNumber("TEST-002");
+        when(pipeline.isEnabled()).thenReturn(true);
+        when(pipeline.submit(any(Order.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.<Order>getArgument(0)));
 
         StepVerifier.create(orderService.processBatchOrders(Flux.just(testOrder, order2)))
-                .expectNextCount(2)
+                .expectNext(testOrder, order2)
                 .verifyComplete();
+
+        verify(orderRepository, never()).insertAll(anyList());
+        assertThat(testOrder.getStatus()).isEqualTo(OrderStatus.PROCESSING);
+        assertThat(analyticsEngine.throughputSnapshot()).containsEntry("totalOrders", 2L);
+    }
+
+    @Test
+    void processBatchOrders_ChunksByBatchSize() {
+        properties.setBatchSize(2);
+        when(orderRepository.insertAll(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Order>>getArgument(0)));
+
+        Flux<Order> orders = Flux.range(1, 5).map(i -> {
+            Order order = new Order();
+            order.setOrderNumber("TEST-" + i);
+            return order;
+        });
+
+        StepVerifier.create(orderService.processBatchOrders(orders))
+                .expectNextCount(5)
+                .verifyComplete();
+
+        verify(orderRepository, times(3)).insertAll(anyList());
+        assertThat(analyticsEngine.throughputSnapshot()).containsEntry("totalOrders", 5L);
     }
 
     @Test
     void getOrderById_Success() {
-        when(orderRepository.findById(1L)).thenReturn(Mono.just(testOrder));
+        when(lookupBatcher.load(1L)).thenReturn(Mono.just(testOrder));
+
+        StepVerifier.create(orderService.getOrderById(1L))
+                .expectNext(testOrder)
+                .verifyComplete();
+    }
+
+    @Test
+    void getOrderById_ServedFromCacheOnSecondCall() {
+        testOrder.setId(1L);
+        when(lookupBatcher.load(1L)).thenReturn(Mono.just(testOrder));
+
+        StepVerifier.create(orderService.getOrderById(1L).then(orderService.getOrderById(1L)))
+                .expectNext(testOrder)
+                .verifyComplete();
+
+        verify(lookupBatcher, times(1)).load(1L);
+    }
+
+    @Test
+    void getOrderById_FallsBackToArchive() {
+        testOrder.setStatus(OrderStatus.COMPLETED);
+        when(lookupBatcher.load(1L)).thenReturn(Mono.empty());
+        when(orderRepository.findArchivedById(1L)).thenReturn(Mono.just(testOrder));
 
         StepVerifier.create(orderService.getOrderById(1L))
                 .expectNext(testOrder)
@@ -78,7 +215,8 @@ class OrderServiceTest {
 
     @Test
     void getOrderById_NotFound() {
-        when(orderRepository.findById(1L)).thenReturn(Mono.empty());
+        when(lookupBatcher.load(1L)).thenReturn(Mono.empty());
+        when(orderRepository.findArchivedById(1L)).thenReturn(Mono.empty());
 
         StepVerifier.create(orderService.getOrderById(1L))
                 .expectError(RuntimeException.class)
@@ -87,9 +225,7 @@ class OrderServiceTest {
 
     @Test
     void updateOrderStatus_Success() {
-        when(orderRepository.updateOrderStatus(1L, OrderStatus.COMPLETED))
-                .thenReturn(Mono.just(1));
-        when(orderRepository.findById(1L))
+        when(orderRepository.transitionStatus(1L, OrderStatus.COMPLETED, null))
                 .thenReturn(Mono.just(testOrder));
 
         StepVerifier.create(orderService.updateOrderStatus(1L, OrderStatus.COMPLETED))
@@ -97,6 +233,97 @@ class OrderServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void updateOrderStatus_IllegalTransition() {
+        testOrder.setStatus(OrderStatus.COMPLETED);
+        when(orderRepository.transitionStatus(1L, OrderStatus.PENDING, null)).thenReturn(Mono.empty());
+        when(orderRepository.findById(1L)).thenReturn(Mono.just(testOrder));
+
+        StepVerifier.create(orderService.updateOrderStatus(1L, OrderStatus.PENDING))
+                .expectError(OrderStatusConflictException.class)
+                .verify();
+    }
+
+    @Test
+    void updateOrderStatus_NotFound() {
+        when(orderRepository.transitionStatus(1L, OrderStatus.COMPLETED, 2L)).thenReturn(Mono.empty());
+        when(orderRepository.findById(1L)).thenReturn(Mono.empty());
+        when(orderRepository.findArchivedById(1L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(orderService.updateOrderStatus(1L, OrderStatus.COMPLETED, 2L))
+                .expectError(OrderNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void updateOrderStatuses_ReportsPerIdConflicts() {
+        Order updated = new Order();
+        updated.setId(1L);
+        Order completed = new Order();
+        completed.setId(2L);
+        completed.setStatus(OrderStatus.COMPLETED);
+        when(orderRepository.transitionStatuses(anyCollection(), any(OrderStatus.class)))
+                .thenReturn(Flux.just(updated));
+        Order archived = new Order();
+        archived.setId(4L);
+        archived.setStatus(OrderStatus.CANCELLED);
+        when(orderRepository.findAllById(anyIterable())).thenReturn(Flux.just(completed));
+        when(orderRepository.findAllArchivedById(List.of(3L, 4L))).thenReturn(Flux.just(archived));
+
+        StepVerifier.create(orderService.updateOrderStatuses(List.of(1L, 2L, 3L, 1L, 4L), OrderStatus.CANCELLED))
+                .expectNextMatches(result -> result.getRequested() == 4
+                        && result.getUpdated().equals(List.of(1L))
+                        && result.getConflicts().equals(List.of(
+                                new BulkStatusUpdateResult.Conflict(2L,
+                                        BulkStatusUpdateResult.Reason.ILLEGAL_TRANSITION, OrderStatus.COMPLETED),
+                                new BulkStatusUpdateResult.Conflict(3L,
+                                        BulkStatusUpdateResult.Reason.NOT_FOUND, null),
+                                new BulkStatusUpdateResult.Conflict(4L,
+                                        BulkStatusUpdateResult.Reason.ILLEGAL_TRANSITION, OrderStatus.CANCELLED))))
+                .verifyComplete();
+
+        assertThat(analyticsEngine.bottleneckSnapshot().get("statusDistribution"))
+                .asInstanceOf(MAP)
+                .containsEntry("CANCELLED", 1L);
+    }
+
+    @Test
+    void updateOrderStatuses_RejectsMoreOrdersThanTheConfiguredMaximum() {
+        properties.setMaxBulkStatusUpdate(2);
+
+        StepVerifier.create(orderService.updateOrderStatuses(List.of(1L, 2L, 3L), OrderStatus.CANCELLED))
+                .expectError(BulkStatusUpdateTooLargeException.class)
+                .verify();
+        verify(orderRepository, never()).transitionStatuses(anyCollection(), any(OrderStatus.class));
+    }
+
+    @Test
+    void claimOrders_TakesOverLapsedLeasesBeforeClaimingPendingOrders() {
+        Order lapsed = new Order();
+        lapsed.setId(1L);
+        lapsed.setStatus(OrderStatus.PROCESSING);
+        Order claimed = new Order();
+        claimed.setId(2L);
+        claimed.setStatus(OrderStatus.PROCESSING);
+        when(orderRepository.claimExpired(eq("worker-1"), any(), any(), eq(10))).thenReturn(Flux.just(lapsed));
+        when(orderRepository.claimPending(eq("worker-1"), any(), eq(9))).thenReturn(Flux.just(claimed));
+
+        StepVerifier.create(orderService.claimOrders("worker-1", 10, Duration.ofSeconds(30)))
+                .expectNext(lapsed, claimed)
+                .verifyComplete();
+
+        // Only the claimed order changed status
+        verify(activeOrders).recordAll(List.of(claimed));
+    }
+
+    private Order createPagedOrder(Long id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setOrderNumber("PAGE-" + id);
+        order.setCreatedAt(LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(id));
+        return order;
+    }
+
     @Test
     void getOrdersByStatus_Success() {
         when(orderRepository.findByStatus(OrderStatus.PENDING))
@@ -107,6 +334,46 @@ class OrderServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void getOrdersByStatus_FetchesActiveOrdersListedByTheIndex() {
+        Order moved = createPagedOrder(2L);
+        moved.setStatus(OrderStatus.PROCESSING);
+        when(activeOrders.serves(OrderStatus.PENDING)).thenReturn(true);
+        when(activeOrders.idsWithStatus(OrderStatus.PENDING)).thenReturn(new long[] {1L, 2L});
+        when(orderRepository.findAllByIdIn(List.of(1L, 2L))).thenReturn(Flux.just(testOrder, moved));
+
+        // A row that changed status after the ids were listed is left out
+        StepVerifier.create(orderService.getOrdersByStatus(OrderStatus.PENDING))
+                .expectNext(testOrder)
+                .verifyComplete();
+        verify(orderRepository, never()).findByStatus(any());
+    }
+
+    @Test
+    void getOrderPage_ReturnsCursorWhenMoreRowsExist() {
+        Order first = createPagedOrder(3L);
+        Order second = createPagedOrder(2L);
+        Order third = createPagedOrder(1L);
+        OrderFilter filter = OrderFilter.byStatus(OrderStatus.PENDING);
+        when(orderRepository.findPage(filter, null, null, 3)).thenReturn(Flux.just(first, second, third));
+        when(orderRepository.findPage(filter, second.getCreatedAt(), 2L, 3)).thenReturn(Flux.just(third));
+
+        OrderPage page = orderService.getOrderPage(filter, null, 2).block();
+
+        assertThat(page.getItems()).containsExactly(first, second);
+        assertThat(page.getNextCursor()).isNotNull();
+        StepVerifier.create(orderService.getOrderPage(filter, page.getNextCursor(), 2))
+                .expectNextMatches(next -> next.getItems().equals(List.of(third)) && next.getNextCursor() == null)
+                .verifyComplete();
+    }
+
+    @Test
+    void getOrderPage_RejectsMalformedCursor() {
+        StepVerifier.create(orderService.getOrderPage(new OrderFilter(), "not-a-cursor", 10))
+                .expectError(InvalidCursorException.class)
+                .verify();
+    }
+
     @Test
     void deleteOrder_Success() {
         when(orderRepository.deleteById(1L)).thenReturn(Mono.empty());
@@ -0,0 +1,159 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.OrderStatusConflictException;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.ActiveOrderIndex;
+import com.upside.orderprocessing.service.impl.OrderTimeoutScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderTimeoutSchedulerTest {
+    private final OrderService orderService = mock(OrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OrderTimeoutScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        OrderProcessingProperties.Timeouts timeouts = properties.getTimeouts();
+        timeouts.setEnabled(true);
+        timeouts.setTick(Duration.ofMillis(5));
+        timeouts.setPendingTimeout(Duration.ofMillis(50));
+        timeouts.setProcessingTimeout(Duration.ofHours(1));
+        timeouts.setRetryBackoff(Duration.ofMillis(40));
+        timeouts.setMaxRetries(1);
+        scheduler = new OrderTimeoutScheduler(orderService, mock(ActiveOrderIndex.class), properties, meterRegistry);
+        scheduler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void failsOrdersOnlyOnceTheyHaveWaitedTooLong() {
+        moveAsTheIndexWould();
+        LocalDateTime now = LocalDateTime.now();
+
+        scheduler.changed(1, OrderStatus.PENDING, 3, now.minusMinutes(1));
+        scheduler.changed(2, OrderStatus.PROCESSING, 1, now);
+        scheduler.changed(3, OrderStatus.PENDING, 1, now);
+        scheduler.changed(3, null, 2, now);
+
+        verify(orderService, timeout(2000)).updateUnleasedOrderStatus(1L, OrderStatus.FAILED, 3L);
+        verify(orderService, after(200).never()).updateUnleasedOrderStatus(eq(2L), any(), anyLong());
+        verify(orderService, never()).updateUnleasedOrderStatus(eq(3L), any(), anyLong());
+        // Order 1 timed out again after its retry and was cancelled; order 2 still has an hour
+        awaitScheduled(1);
+        assertThat(meterRegistry.counter("orders.timeouts.expired").count()).isEqualTo(2);
+    }
+
+    @Test
+    void retriesFailedOrdersWithBackoffAndCancelsThemOnceRetriesRunOut() {
+        moveAsTheIndexWould();
+
+        scheduler.changed(1, OrderStatus.FAILED, 1, LocalDateTime.now());
+
+        InOrder moves = inOrder(orderService);
+        moves.verify(orderService, timeout(2000)).updateUnleasedOrderStatus(1L, OrderStatus.PENDING, 1L);
+        // Moved back to PENDING, it timed out again, and one retry is all it gets
+        moves.verify(orderService, timeout(2000)).updateUnleasedOrderStatus(1L, OrderStatus.FAILED, 2L);
+        moves.verify(orderService, timeout(2000)).updateUnleasedOrderStatus(1L, OrderStatus.CANCELLED, 3L);
+        awaitScheduled(0);
+        assertThat(meterRegistry.counter("orders.timeouts.retried").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("orders.timeouts.cancelled").count()).isEqualTo(1);
+    }
+
+    @Test
+    void leavesOrdersThatChangedSinceTheyWereScheduled() {
+        when(orderService.updateUnleasedOrderStatus(anyLong(), any(), anyLong())).thenReturn(
+                Mono.error(new OrderStatusConflictException("Order 1 is at version 2, expected 1")));
+
+        scheduler.changed(1, OrderStatus.PENDING, 1, LocalDateTime.now().minusMinutes(1));
+
+        verify(orderService, timeout(2000)).updateUnleasedOrderStatus(1L, OrderStatus.FAILED, 1L);
+        awaitScheduled(0);
+        verify(orderService, after(200).times(1)).updateUnleasedOrderStatus(anyLong(), any(), anyLong());
+        assertThat(meterRegistry.counter("orders.timeouts.conflicts").count()).isEqualTo(1);
+    }
+
+    @Test
+    void checksOrdersHeldUnderALeaseAgainAfterAnotherTimeout() {
+        when(orderService.updateUnleasedOrderStatus(anyLong(), any(), anyLong()))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.error(new OrderStatusConflictException("Order 1 is at version 2, expected 1")));
+
+        scheduler.changed(1, OrderStatus.PENDING, 1, LocalDateTime.now().minusMinutes(1));
+
+        verify(orderService, timeout(2000).times(2)).updateUnleasedOrderStatus(1L, OrderStatus.FAILED, 1L);
+        awaitScheduled(0);
+        assertThat(meterRegistry.counter("orders.timeouts.expired").count()).isZero();
+    }
+
+    @Test
+    void schedulesOnlyTheOrdersOfItsShard() {
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        properties.getTimeouts().setEnabled(true);
+        properties.getTimeouts().setShards(2);
+        properties.getTimeouts().setShard(1);
+        SimpleMeterRegistry shardRegistry = new SimpleMeterRegistry();
+        OrderTimeoutScheduler sharded = new OrderTimeoutScheduler(orderService, mock(ActiveOrderIndex.class),
+                properties, shardRegistry);
+
+        for (long id = 1; id <= 4; id++) {
+            sharded.changed(id, OrderStatus.PENDING, 1, LocalDateTime.now());
+        }
+
+        assertThat(shardRegistry.get("orders.timeouts.scheduled").gauge().value()).isEqualTo(2);
+    }
+
+    /**
+     * Applies each move and passes it back to the scheduler, as the index does for a write.
+     */
+    private void moveAsTheIndexWould() {
+        when(orderService.updateUnleasedOrderStatus(anyLong(), any(), anyLong())).thenAnswer(invocation -> {
+            Order order = new Order();
+            order.setId(invocation.getArgument(0));
+            order.setStatus(invocation.getArgument(1));
+            order.setVersion(invocation.<Long>getArgument(2) + 1);
+            order.setUpdatedAt(LocalDateTime.now());
+            scheduler.changed(order.getId(), order.getStatus().isTerminal() ? null : order.getStatus(),
+                    order.getVersion(), order.getUpdatedAt());
+            return Mono.just(order);
+        });
+    }
+
+    private void awaitScheduled(int orders) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (scheduled() != orders && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(scheduled()).isEqualTo(orders);
+    }
+
+    private double scheduled() {
+        return meterRegistry.get("orders.timeouts.scheduled").gauge().value();
+    }
+}
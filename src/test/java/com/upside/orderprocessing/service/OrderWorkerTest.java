@@ -0,0 +1,143 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.OrderWorker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderWorkerTest {
+    private static final String OWNER = "worker-1";
+    private static final String CLAIM = OWNER + "#";
+    private static final Duration LEASE = Duration.ofSeconds(30);
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderProcessingProperties properties = new OrderProcessingProperties();
+    private OrderWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        OrderProcessingProperties.Worker config = properties.getWorker();
+        config.setEnabled(true);
+        config.setOwner(OWNER);
+        config.setBatchSize(10);
+        config.setBatches(1);
+        config.setLease(LEASE);
+        config.setHeartbeatInterval(Duration.ofMillis(20));
+        config.setPollInterval(Duration.ofMillis(20));
+        when(orderService.finishClaims(startsWith(CLAIM), anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(1);
+            return Flux.fromIterable(ids).map(id -> order(id, invocation.getArgument(2)));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (worker != null) {
+            worker.shutdown();
+        }
+    }
+
+    @Test
+    void completesLeasedOrdersAndFailsThoseTheHandlerRejects() {
+        when(orderService.claimOrders(startsWith(CLAIM), eq(10), eq(LEASE))).thenReturn(Flux.just(
+                order(1L, OrderStatus.PROCESSING), order(2L, OrderStatus.PROCESSING), order(3L, OrderStatus.PROCESSING)));
+        worker = worker(order -> order.getId() == 2L ? Mono.error(new IllegalStateException("out of stock")) : Mono.empty());
+
+        StepVerifier.create(worker.runBatch())
+                .expectNext(3)
+                .verifyComplete();
+
+        String claim = claim();
+        verify(orderService).finishClaims(claim, List.of(1L, 3L), OrderStatus.COMPLETED);
+        verify(orderService).finishClaims(claim, List.of(2L), OrderStatus.FAILED);
+        assertThat(meterRegistry.counter("orders.worker.completed").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("orders.worker.failed").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("orders.worker.leases").gauge().value()).isZero();
+    }
+
+    @Test
+    void renewsLeasesWhileOrdersAreHandled() {
+        when(orderService.claimOrders(startsWith(CLAIM), eq(10), eq(LEASE)))
+                .thenReturn(Flux.just(order(1L, OrderStatus.PROCESSING)))
+                .thenReturn(Flux.empty());
+        when(orderService.renewClaims(startsWith(CLAIM), anyCollection(), eq(LEASE))).thenReturn(Mono.just(1));
+        Sinks.Empty<Void> handled = Sinks.empty();
+        worker = worker(order -> handled.asMono());
+
+        worker.start();
+
+        verify(orderService, timeout(2000).atLeast(2)).renewClaims(startsWith(CLAIM), eq(List.of(1L)), eq(LEASE));
+        String claim = claim();
+        verify(orderService, atLeast(2)).renewClaims(claim, List.of(1L), LEASE);
+        handled.tryEmitEmpty();
+        verify(orderService, timeout(2000)).finishClaims(claim, List.of(1L), OrderStatus.COMPLETED);
+        verify(orderService, timeout(2000).atLeast(2)).claimOrders(startsWith(CLAIM), anyInt(), eq(LEASE));
+    }
+
+    @Test
+    void claimsEveryBatchUnderATokenOfItsOwn() {
+        when(orderService.claimOrders(startsWith(CLAIM), eq(10), eq(LEASE)))
+                .thenReturn(Flux.just(order(1L, OrderStatus.PROCESSING)));
+        worker = worker(order -> Mono.empty());
+
+        worker.runBatch().block();
+        worker.runBatch().block();
+
+        ArgumentCaptor<String> claims = ArgumentCaptor.forClass(String.class);
+        verify(orderService, times(2)).claimOrders(claims.capture(), eq(10), eq(LEASE));
+        assertThat(claims.getAllValues()).doesNotHaveDuplicates();
+        // A batch finishes only what it claimed itself
+        claims.getAllValues().forEach(claim ->
+                verify(orderService).finishClaims(claim, List.of(1L), OrderStatus.COMPLETED));
+    }
+
+    // The claim of the first batch
+    private String claim() {
+        ArgumentCaptor<String> claim = ArgumentCaptor.forClass(String.class);
+        verify(orderService, atLeast(1)).claimOrders(claim.capture(), anyInt(), eq(LEASE));
+        return claim.getAllValues().get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private OrderWorker worker(OrderHandler handler) {
+        ObjectProvider<OrderHandler> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable(any())).thenReturn(handler);
+        return new OrderWorker(orderService, provider, properties, meterRegistry);
+    }
+
+    private static Order order(Long id, OrderStatus status) {
+        Order order = new Order();
+        order.setId(id);
+        order.setOrderNumber("ORD-" + id);
+        order.setStatus(status);
+        return order;
+    }
+}
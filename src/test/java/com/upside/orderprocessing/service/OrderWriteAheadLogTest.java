@@ -0,0 +1,258 @@
+package com.upside.orderprocessing.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.exception.IngestionBacklogFullException;
+import com.upside.orderprocessing.exception.InvalidOrderException;
+import com.upside.orderprocessing.model.IngestionReceipt;
+import com.upside.orderprocessing.model.IngestionStatus;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.service.impl.OrderWriteAheadLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderWriteAheadLogTest {
+    static final String ACKNOWLEDGED = "ACKNOWLEDGED";
+    private static final int BATCH_SIZE = 10;
+
+    @TempDir
+    Path directory;
+
+    private final List<OrderWriteAheadLog> logs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        logs.forEach(OrderWriteAheadLog::shutdown);
+    }
+
+    @Test
+    void acknowledgesOnceFlushedAndDrainsInOrder() throws IOException {
+        OrderProcessingProperties properties = properties(directory.resolve("wal"));
+        // Small enough that the orders span several segments
+        properties.getIngestion().getWal().setSegmentSize(1024);
+        Path written = directory.resolve("written");
+        OrderWriteAheadLog log = open(properties, written);
+
+        IngestionReceipt first = log.enqueue(orders(1, 30)).block();
+        IngestionReceipt second = log.enqueue(Flux.just(order("BAD-1"), order("WAL-31"))).block();
+        assertThat(first.getTrackingIds()).hasSize(30).startsWith("1", "2");
+        assertThat(second.getTrackingIds()).containsExactly("31", "32");
+        assertThat(log.status("1").block().getState()).isEqualTo(IngestionStatus.State.QUEUED);
+        assertThat(log.status("33").blockOptional()).isEmpty();
+        assertThat(segments(properties)).hasSizeGreaterThan(2);
+
+        log.start();
+
+        assertThat(awaitOutcome(log, "32").getState()).isEqualTo(IngestionStatus.State.WRITTEN);
+        assertThat(log.status("31").block().getState()).isEqualTo(IngestionStatus.State.FAILED);
+        assertThat(Files.readAllLines(written)).containsExactlyElementsOf(Stream.concat(
+                IntStream.rangeClosed(1, 30).mapToObj(i -> "WAL-" + i), Stream.of("WAL-31")).toList());
+        // Drained segments are deleted, down to the one being appended to
+        assertThat(segments(properties)).hasSize(1);
+    }
+
+    @Test
+    void dropsACutOffLastRecordAndReplaysTheRest() throws IOException {
+        OrderProcessingProperties properties = properties(directory.resolve("wal"));
+        properties.getIngestion().getWal().setSegmentSize(4096);
+        Path written = directory.resolve("written");
+        OrderWriteAheadLog log = open(properties, written);
+        log.enqueue(orders(1, 5)).block();
+        log.shutdown();
+        // The process died while copying the last order into the log
+        Path segment = segments(properties).get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int end = bytes.length - 1;
+        while (bytes[end] == 0) {
+            end--;
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) ~bytes[end]}), end);
+        }
+
+        OrderWriteAheadLog recovered = open(properties, written);
+        assertThat(recovered.status("5").blockOptional()).isEmpty();
+        assertThat(recovered.enqueue(Flux.just(order("WAL-6"))).block().getTrackingIds()).containsExactly("5");
+        recovered.start();
+
+        awaitOutcome(recovered, "5");
+        assertThat(Files.readAllLines(written)).containsExactly("WAL-1", "WAL-2", "WAL-3", "WAL-4", "WAL-6");
+    }
+
+    @Test
+    void refusesOrdersOnceTheBacklogIsFull() {
+        OrderProcessingProperties properties = properties(directory.resolve("wal"));
+        properties.getIngestion().setMaxBacklog(5);
+        OrderWriteAheadLog log = open(properties, directory.resolve("written"));
+
+        StepVerifier.create(log.enqueue(orders(1, 6)))
+                .expectError(IngestionBacklogFullException.class)
+                .verify();
+        StepVerifier.create(log.enqueue(Flux.just(order(null))))
+                .expectError(InvalidOrderException.class)
+                .verify();
+        StepVerifier.create(log.enqueue(orders(1, 5)))
+                .expectNextMatches(receipt -> receipt.getAccepted() == 5)
+                .verifyComplete();
+    }
+
+    @Test
+    void replaysUndrainedOrdersAfterTheProcessIsKilledMidDrain() throws Exception {
+        int orders = 200;
+        Path wal = directory.resolve("wal");
+        Path written = directory.resolve("written");
+        Path output = directory.resolve("output");
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                WalCrashProcess.class.getName(), wal.toString(), written.toString(), String.valueOf(orders))
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+        try {
+            awaitLines(output, lines -> lines.contains(ACKNOWLEDGED));
+            awaitLines(written, lines -> lines.size() >= orders / 4);
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+        List<String> beforeCrash = Files.readAllLines(written);
+        assertThat(beforeCrash).hasSizeLessThan(orders);
+        Files.delete(written);
+
+        OrderWriteAheadLog recovered = open(properties(wal), written);
+        recovered.start();
+
+        assertThat(awaitOutcome(recovered, String.valueOf(orders)).getState())
+                .isEqualTo(IngestionStatus.State.WRITTEN);
+        List<String> afterCrash = Files.readAllLines(written);
+        Set<String> all = new HashSet<>(beforeCrash);
+        all.addAll(afterCrash);
+        assertThat(all).hasSize(orders);
+        // Only the batch that was being written when the process died is written twice
+        Set<String> twice = new HashSet<>(beforeCrash);
+        twice.retainAll(afterCrash);
+        assertThat(twice).hasSizeLessThanOrEqualTo(BATCH_SIZE);
+        assertThat(afterCrash).isSortedAccordingTo((a, b) ->
+                Integer.compare(Integer.parseInt(a.substring(4)), Integer.parseInt(b.substring(4))));
+    }
+
+    private OrderWriteAheadLog open(OrderProcessingProperties properties, Path written) {
+        OrderWriteAheadLog log = new OrderWriteAheadLog(codec(), orderService(written), properties,
+                new SimpleMeterRegistry());
+        logs.add(log);
+        return log;
+    }
+
+    private static IngestionStatus awaitOutcome(OrderWriteAheadLog log, String trackingId) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+        IngestionStatus status;
+        do {
+            status = log.status(trackingId).block();
+        } while (status.getState() == IngestionStatus.State.QUEUED && System.nanoTime() < deadline);
+        return status;
+    }
+
+    private static void awaitLines(Path file, Predicate<List<String>> condition)
+            throws IOException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (!(Files.exists(file) && condition.test(Files.readAllLines(file))) && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(Files.exists(file) && condition.test(Files.readAllLines(file)))
+                .as("%s within 30s", file.getFileName())
+                .isTrue();
+    }
+
+    private static List<Path> segments(OrderProcessingProperties properties) throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(properties.getIngestion().getWal().getDirectory()))) {
+            return files.filter(file -> file.toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    private static Flux<Order> orders(int from, int to) {
+        return Flux.range(from, to - from + 1).map(i -> order("WAL-" + i));
+    }
+
+    static OrderProcessingProperties properties(Path directory) {
+        OrderProcessingProperties properties = new OrderProcessingProperties();
+        properties.getIngestion().setBatchSize(BATCH_SIZE);
+        properties.getIngestion().getWal().setDirectory(directory.toString());
+        properties.getIngestion().getWal().setDrainInterval(Duration.ofMillis(10));
+        return properties;
+    }
+
+    static ObjectMapper codec() {
+        return new ObjectMapper(new SmileFactory()).registerModule(new JavaTimeModule());
+    }
+
+    /**
+     * Writes orders slowly, appending their numbers to {@code written}, and rejects those whose
+     * number starts with BAD.
+     */
+    static OrderService orderService(Path written) {
+        OrderService orderService = mock(OrderService.class);
+        when(orderService.processBatchOrders(ArgumentMatchers.<Flux<Order>>any())).thenAnswer(invocation -> {
+            Flux<Order> orders = invocation.getArgument(0);
+            return orders.collectList()
+                    .delayElement(Duration.ofMillis(20))
+                    .flatMap(batch -> {
+                        if (batch.stream().anyMatch(order -> order.getOrderNumber().startsWith("BAD"))) {
+                            return Mono.error(new InvalidOrderException(null, "rejected"));
+                        }
+                        StringBuilder lines = new StringBuilder();
+                        batch.forEach(order -> lines.append(order.getOrderNumber()).append('\n'));
+                        try {
+                            Files.writeString(written, lines, StandardCharsets.UTF_8,
+                                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return Mono.just(batch);
+                    })
+                    .flatMapIterable(batch -> batch);
+        });
+        return orderService;
+    }
+
+    static Order order(String orderNumber) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setStatus(OrderStatus.PENDING);
+        return order;
+    }
+}
@@ -0,0 +1,187 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.limiter.AdaptiveConcurrencyLimiter;
+import com.upside.orderprocessing.model.Order;
+import com.upside.orderprocessing.model.OrderStatus;
+import com.upside.orderprocessing.repository.OrderRepository;
+import com.upside.orderprocessing.service.impl.OrderWriteCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderWriteCoalescerTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    private OrderProcessingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private AdaptiveConcurrencyLimiter limiter;
+    private OrderWriteCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        properties = new OrderProcessingProperties();
+        properties.getProcessing().getCoalescing().setBatchSize(10);
+        properties.getProcessing().getCoalescing().setMaxWait(Duration.ofMillis(50));
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new AdaptiveConcurrencyLimiter(properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+    }
+
+    @Test
+    void submit_CoalescesConcurrentWritesIntoBatches() {
+        AtomicLong ids = new AtomicLong();
+        when(orderRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            orders.forEach(order -> order.setId(ids.incrementAndGet()));
+            return Flux.fromIterable(orders);
+        });
+        coalescer = new OrderWriteCoalescer(orderRepository, limiter, properties, meterRegistry);
+
+        StepVerifier.create(Flux.range(0, 100)
+                        .flatMap(i -> coalescer.submit(createOrder("ORD-" + i))
+                                .map(saved -> saved.getOrderNumber().equals("ORD-" + i) && saved.getId() != null)))
+                .expectNextCount(100)
+                .verifyComplete();
+
+        verify(orderRepository, atMost(20)).insertAll(anyList());
+        verify(orderRepository, never()).save(any(Order.class));
+        assertThat(meterRegistry.counter("orders.coalescer.submitted").count()).isEqualTo(100);
+    }
+
+    @Test
+    void submit_FlushesPartialBatchAfterMaxWait() {
+        when(orderRepository.insertAll(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Order>>getArgument(0)));
+        coalescer = new OrderWriteCoalescer(orderRepository, limiter, properties, meterRegistry);
+
+        StepVerifier.create(coalescer.submit(createOrder("ORD-1")))
+                .expectNextMatches(order -> order.getOrderNumber().equals("ORD-1"))
+                .verifyComplete();
+
+        verify(orderRepository, times(1)).insertAll(anyList());
+    }
+
+    @Test
+    void submit_FallsBackToPerRowWritesWhenBatchFails() {
+        when(orderRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            return orders.stream().anyMatch(order -> order.getOrderNumber().equals("BAD"))
+                    ? Flux.error(new IllegalStateException("null value in column"))
+                    : Flux.fromIterable(orders);
+        });
+        coalescer = new OrderWriteCoalescer(orderRepository, limiter, properties, meterRegistry);
+
+        Mono<Order> good = coalescer.submit(createOrder("GOOD")).cache();
+        Mono<Order> bad = coalescer.submit(createOrder("BAD")).cache();
+        good.subscribe();
+        bad.subscribe();
+
+        StepVerifier.create(good)
+                .expectNextMatches(order -> order.getOrderNumber().equals("GOOD"))
+                .verifyComplete();
+        StepVerifier.create(bad)
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertThat(meterRegistry.counter("orders.coalescer.fallbacks").count()).isEqualTo(1);
+    }
+
+    @Test
+    void submit_RetriesAFailedBatchOneRowAtATimeInOrder() {
+        List<String> written = new CopyOnWriteArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        when(orderRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            if (orders.size() > 1) {
+                return Flux.error(new IllegalStateException("null value in column"));
+            }
+            return Mono.delay(Duration.ofMillis(5))
+                    .doOnSubscribe(subscription -> mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                    .doOnNext(tick -> written.add(orders.get(0).getOrderNumber()))
+                    .doOnTerminate(inFlight::decrementAndGet)
+                    .thenMany(Flux.fromIterable(orders));
+        });
+        coalescer = new OrderWriteCoalescer(orderRepository, limiter, properties, meterRegistry);
+
+        List<Mono<Order>> writes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Mono<Order> write = coalescer.submit(createOrder("ORD-" + i)).cache();
+            write.subscribe();
+            writes.add(write);
+        }
+
+        StepVerifier.create(Flux.concat(writes))
+                .expectNextCount(5)
+                .verifyComplete();
+        assertThat(written).containsExactly("ORD-0", "ORD-1", "ORD-2", "ORD-3", "ORD-4");
+        assertThat(mostInFlight.get()).isEqualTo(1);
+    }
+
+    @Test
+    void submit_RejectsWhenQueueIsFull() {
+        properties.getProcessing().getCoalescing().setQueueDepth(1);
+        properties.getProcessing().getCoalescing().setMaxInFlightBatches(1);
+        lenient().when(orderRepository.insertAll(anyList())).thenReturn(Flux.never());
+        coalescer = new OrderWriteCoalescer(orderRepository, limiter, properties, meterRegistry);
+
+        // Writes beyond the stuck in-flight batch, the open buffer and the queue are rejected
+        StepVerifier.create(Flux.range(0, 2000)
+                        .flatMap(i -> coalescer.submit(createOrder("ORD-" + i))
+                                .then(Mono.just(false))
+                                .onErrorResume(RejectedExecutionException.class, e -> Mono.just(true)), 2000)
+                        .filter(rejected -> rejected)
+                        .take(1))
+                .expectNext(true)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(meterRegistry.counter("orders.coalescer.rejected").count()).isPositive();
+    }
+
+    private Order createOrder(String orderNumber) {
+        Order order = new Order();
+        order.setOrderNumber(orderNumber);
+        order.setStatus(OrderStatus.PROCESSING);
+        order.setTotalAmount(new BigDecimal("100.00"));
+        order.setCustomerId("CUST-001");
+        order.setProductId("PROD-001");
+        order.setQuantity(1);
+        return order;
+    }
+}
@@ -0,0 +1,96 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.service.impl.TimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    @Test
+    void expiresEachOrderOnItsDeadlineAtEveryLevel() {
+        TimingWheel wheel = new TimingWheel(0, 16);
+        Random random = new Random(42);
+        Map<Long, Long> deadlines = new HashMap<>();
+        for (long id = 1; id <= 5000; id++) {
+            // Up to four levels deep, and some beyond what the wheel reaches
+            long deadline = switch ((int) (id % 5)) {
+                case 0 -> random.nextInt(64);
+                case 1 -> random.nextInt(4096);
+                case 2 -> random.nextInt(262_144);
+                case 3 -> random.nextInt(16_777_216);
+                default -> 16_777_216L + random.nextInt(1_000_000);
+            };
+            wheel.schedule(id, deadline, id * 10, (int) id);
+            deadlines.put(id, deadline);
+        }
+        // Rescheduled and cancelled orders keep only their latest deadline
+        for (long id = 1; id <= 5000; id += 7) {
+            long deadline = random.nextInt(300_000);
+            wheel.schedule(id, deadline, id * 10 + 1, (int) id);
+            deadlines.put(id, deadline);
+        }
+        for (long id = 3; id <= 5000; id += 11) {
+            assertThat(wheel.cancel(id)).isTrue();
+            deadlines.remove(id);
+        }
+        assertThat(wheel.cancel(99_999)).isFalse();
+        assertThat(wheel.size()).isEqualTo(deadlines.size());
+
+        Map<Long, Long> expiredAt = new HashMap<>();
+        long until = 0;
+        while (wheel.size() > 0) {
+            long from = until;
+            until += 1 + random.nextInt(50_000);
+            long to = until;
+            wheel.advance(to, Integer.MAX_VALUE, (id, version, tag) -> {
+                assertThat(deadlines.get(id)).as("deadline of %d", id).isBetween(from == 0 ? 0 : from + 1, to);
+                assertThat(version).isEqualTo(id % 7 == 1 ? id * 10 + 1 : id * 10);
+                assertThat(tag).isEqualTo((int) id);
+                expiredAt.put(id, to);
+            });
+        }
+        assertThat(expiredAt.keySet()).isEqualTo(deadlines.keySet());
+    }
+
+    @Test
+    void stopsAfterTheGivenNumberAndResumes() {
+        TimingWheel wheel = new TimingWheel(100, 16);
+        for (long id = 1; id <= 10; id++) {
+            // Deadlines that have passed are due at once
+            wheel.schedule(id, id < 5 ? 50 : 100 + id * 100, 0, 0);
+        }
+        List<Long> expired = new ArrayList<>();
+        assertThat(wheel.advance(100, 3, (id, version, tag) -> expired.add(id))).isEqualTo(3);
+        assertThat(wheel.advance(100, 3, (id, version, tag) -> expired.add(id))).isEqualTo(1);
+        assertThat(expired).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+
+        expired.clear();
+        assertThat(wheel.advance(2000, 3, (id, version, tag) -> expired.add(id))).isEqualTo(3);
+        assertThat(wheel.tick()).isEqualTo(900);
+        assertThat(wheel.advance(2000, 3, (id, version, tag) -> expired.add(id))).isEqualTo(3);
+        assertThat(expired).containsExactly(5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(wheel.size()).isZero();
+        assertThat(wheel.tick()).isEqualTo(2000);
+    }
+
+    @Test
+    void reusesTheEntriesOfExpiredOrders() {
+        TimingWheel wheel = new TimingWheel(0, 16);
+        for (int round = 0; round < 100; round++) {
+            for (long id = 1; id <= 16; id++) {
+                wheel.schedule(round * 16L + id, round + 1, round, 7);
+            }
+            assertThat(wheel.tag(round * 16L + 1, -1)).isEqualTo(7);
+            assertThat(wheel.advance(round + 1, Integer.MAX_VALUE, (id, version, tag) -> { })).isEqualTo(16);
+            assertThat(wheel.tag(round * 16L + 1, -1)).isEqualTo(-1);
+        }
+        assertThat(wheel.size()).isZero();
+    }
+}
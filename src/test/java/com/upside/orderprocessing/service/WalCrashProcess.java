@@ -0,0 +1,32 @@
+package com.upside.orderprocessing.service;
+
+import com.upside.orderprocessing.config.OrderProcessingProperties;
+import com.upside.orderprocessing.service.impl.OrderWriteAheadLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * Queues orders in a write-ahead log and drains it slowly, noting every order it writes, until
+ * {@link OrderWriteAheadLogTest} kills it.
+ */
+public class WalCrashProcess {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Path.of(args[0]);
+        Path written = Path.of(args[1]);
+        int orders = Integer.parseInt(args[2]);
+
+        OrderProcessingProperties properties = OrderWriteAheadLogTest.properties(directory);
+        OrderWriteAheadLog log = new OrderWriteAheadLog(OrderWriteAheadLogTest.codec(),
+                OrderWriteAheadLogTest.orderService(written), properties, new SimpleMeterRegistry());
+        log.enqueue(Flux.fromStream(IntStream.rangeClosed(1, orders)
+                .mapToObj(i -> OrderWriteAheadLogTest.order("WAL-" + i)))).block();
+        System.out.println(OrderWriteAheadLogTest.ACKNOWLEDGED);
+        System.out.flush();
+        log.start();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
@@ -1,6 +1,27 @@
 CREATE TABLE IF NOT EXISTS orders (
     id BIGSERIAL PRIMARY KEY,
-    order_number VARCHAR(255) NOT NULL,
+    order_number VARCHAR(255) NOT NULL UNIQUE,
+    status VARCHAR(50) NOT NULL,
+    total_amount DECIMAL(19,2) NOT NULL,
+    customer_id VARCHAR(255) NOT NULL,
+    product_id VARCHAR(255) NOT NULL,
+    quantity INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    version BIGINT DEFAULT 1,
+    lease_owner VARCHAR(255),
+    lease_expires_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_order_number ON orders(order_number);
+CREATE INDEX IF NOT EXISTS idx_created_at_id ON orders(created_at, id);
+CREATE INDEX IF NOT EXISTS idx_status_created_at_id ON orders(status, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_lease_expires_at ON orders(lease_expires_at);
+
+-- PostgreSQL partitions orders; H2 cannot, so order numbers stay unique on the table itself
+CREATE TABLE IF NOT EXISTS orders_archive (
+    id BIGINT PRIMARY KEY,
+    order_number VARCHAR(255) NOT NULL UNIQUE,
     status VARCHAR(50) NOT NULL,
     total_amount DECIMAL(19,2) NOT NULL,
     customer_id VARCHAR(255) NOT NULL,
@@ -8,9 +29,37 @@ CREATE TABLE IF NOT EXISTS orders (
     quantity INTEGER NOT NULL,
     created_at TIMESTAMP NOT NULL,
     updated_at TIMESTAMP NOT NULL,
-    version BIGINT
+    version BIGINT NOT NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
-CREATE INDEX IF NOT EXISTS idx_order_number ON orders(order_number);
-CREATE INDEX IF NOT EXISTS idx_status ON orders(status);
-CREATE INDEX IF NOT EXISTS idx_created_at ON orders(created_at); 
\ No newline at end of file
+CREATE TABLE IF NOT EXISTS order_events (
+    id BIGSERIAL PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    order_number VARCHAR(255) NOT NULL,
+    customer_id VARCHAR(255) NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    total_amount DECIMAL(19,2) NOT NULL,
+    version BIGINT,
+    type VARCHAR(50) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_order_events_created_at ON order_events(created_at);
+
+CREATE TABLE IF NOT EXISTS order_status_rollups (
+    bucket TIMESTAMP NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    order_count BIGINT NOT NULL,
+    revenue DECIMAL(19,2) NOT NULL,
+    PRIMARY KEY (bucket, status)
+);
+
+CREATE TABLE IF NOT EXISTS order_product_rollups (
+    bucket DATE NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    product_id VARCHAR(255) NOT NULL,
+    order_count BIGINT NOT NULL,
+    revenue DECIMAL(19,2) NOT NULL,
+    PRIMARY KEY (bucket, status, product_id)
+);